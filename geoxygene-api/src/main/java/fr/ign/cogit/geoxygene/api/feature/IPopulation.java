@@ -1,5 +1,8 @@
 package fr.ign.cogit.geoxygene.api.feature;
 
+import java.util.List;
+import java.util.function.Supplier;
+
 import javax.persistence.Id;
 import javax.persistence.ManyToOne;
 import javax.persistence.Transient;
@@ -151,6 +154,35 @@ public interface IPopulation<Feat extends IFeature> extends
    */
   public abstract Feat nouvelElement(Class<?>[] signature, Object[] param);
 
+  /**
+   * Crée en une seule fois un nouvel élément de la population pour chacune des
+   * géométries données, instances de sa classe par défaut, et les ajoute à la
+   * population. Le constructeur de la classe n'est recherché qu'une fois, les
+   * identifiants sont réservés en un seul bloc et l'index spatial et
+   * l'enveloppe de la population ne sont mis à jour qu'une fois.
+   * <p>
+   * Si la population est persistante, alors les nouveaux éléments sont rendus
+   * persistants dans cette méthode.
+   * @param geometries géométries des nouveaux éléments
+   * @return les nouveaux éléments, dans l'ordre des géométries, ou null en cas
+   *         de problème à la création
+   */
+  public abstract List<Feat> nouveauxElements(List<? extends IGeometry> geometries);
+
+  /**
+   * Crée en une seule fois un nouvel élément de la population pour chacune des
+   * géométries données, à l'aide de la fabrique donnée, et les ajoute à la
+   * population.
+   * @param geometries géométries des nouveaux éléments
+   * @param fabrique fabrique des nouveaux éléments. Si elle est nulle, le
+   *          constructeur par défaut de la classe de la population est utilisé.
+   * @return les nouveaux éléments, dans l'ordre des géométries, ou null en cas
+   *         de problème à la création
+   * @see #nouveauxElements(List)
+   */
+  public abstract List<Feat> nouveauxElements(List<? extends IGeometry> geometries,
+      Supplier<? extends Feat> fabrique);
+
   // ////////////////////////////////////////////////
   // Copie de population
   /**
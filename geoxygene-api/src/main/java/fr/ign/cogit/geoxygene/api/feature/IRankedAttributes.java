@@ -0,0 +1,45 @@
+package fr.ign.cogit.geoxygene.api.feature;
+
+/**
+ * Objet dont les attributs peuvent être lus par leur rang, sans rechercher
+ * leur nom à chaque lecture. Interface optionnelle : un {@link IFeature} qui
+ * ne l'implémente pas est lu par {@link IFeature#getAttribute(String)}.
+ */
+public interface IRankedAttributes {
+  /**
+   * Objet qui fixe le rang des attributs de cet objet (table de
+   * correspondance, stockage...) : tous les objets qui renvoient le même
+   * rangent un attribut donné au même rang, tant qu'il n'est pas modifié.
+   * 
+   * @return l'objet qui fixe les rangs, ou null si les attributs n'ont pas de
+   *         rang
+   */
+  public abstract Object getAttributeRanking();
+
+  /**
+   * Rang d'un attribut, pour le lire ensuite avec {@link #getAttribute(int)}.
+   * 
+   * @param nomAttribut nom de l'attribut
+   * @return le rang de l'attribut, ou -1 s'il n'est pas accessible par son rang
+   */
+  public abstract int getAttributeRank(String nomAttribut);
+
+  /**
+   * Vérifie, sans parcourir tous les attributs, qu'un rang obtenu auparavant
+   * est toujours celui de l'attribut : les correspondances entre noms et rangs
+   * peuvent être modifiées.
+   * 
+   * @param nomAttribut nom de l'attribut
+   * @param rang rang obtenu par {@link #getAttributeRank(String)}
+   * @return vrai si l'attribut est toujours à ce rang
+   */
+  public abstract boolean isAttributeRank(String nomAttribut, int rang);
+
+  /**
+   * Methode pour recupérer la valeur d'un attribut par son rang.
+   * 
+   * @param rang le rang de l'attribut
+   * @return la valeur de l'attribut sous forme d'Object
+   */
+  public abstract Object getAttribute(int rang);
+}
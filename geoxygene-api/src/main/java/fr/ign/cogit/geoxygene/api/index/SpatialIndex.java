@@ -51,6 +51,19 @@ public interface SpatialIndex<Feat extends IFeature> {
    */
   public abstract void update(Feat value, int cas);
 
+  /**
+   * Met a jour l'index avec un ensemble de FT_Feature, en une seule fois. Par
+   * défaut, les FT_Feature sont traités l'un après l'autre.
+   * @param values FT_Feature provocant la mise à jour de l'index
+   * @param cas type de modification de l'index, comme pour
+   *          {@link #update(IFeature, int)}
+   */
+  public default void update(Collection<? extends Feat> values, int cas) {
+    for (Feat value : values) {
+      this.update(value, cas);
+    }
+  }
+
   /**
    * Selection dans le carre dont P est le centre, de cote D. NB: D peut être
    * nul.
@@ -19,8 +19,10 @@
 
 package fr.ign.cogit.geoxygene.appli;
 
+import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.Toolkit;
 import java.awt.geom.AffineTransform;
@@ -116,11 +118,18 @@ public class Viewport {
      * utilise pour le calcul de l'echelle courante de la vue. Elle est calculée
      * à partir de la résolution de l'écran en DPI. par exemple si la résolution
      * est 90DPI, c'est: 90 pix/inch = 1/90 inch/pix = 0.0254/90 meter/pix.
+     * Sans écran (rendu headless), la résolution vaut
+     * {@link #HEADLESS_SCREEN_RESOLUTION}.
      */
     private final static double METERS_PER_PIXEL;
+    /** Résolution en DPI utilisée quand il n'y a pas d'écran. */
+    private final static int HEADLESS_SCREEN_RESOLUTION = 90;
     static {
-        METERS_PER_PIXEL = 0.02540005 / Toolkit.getDefaultToolkit()
-                .getScreenResolution();
+        int resolution = HEADLESS_SCREEN_RESOLUTION;
+        if (!GraphicsEnvironment.isHeadless()) {
+            resolution = Toolkit.getDefaultToolkit().getScreenResolution();
+        }
+        METERS_PER_PIXEL = 0.02540005 / resolution;
     }
 
     /**
@@ -166,8 +175,7 @@ public class Viewport {
      */
     public final void update() throws NoninvertibleTransformException {
         this.modelToViewTransform = Viewport.modelToViewTransform(this.scale,
-                this.viewOrigin, this.layerViewPanels.iterator().next()
-                        .getHeight());
+                this.viewOrigin, this.getViewHeight());
         for (LayerViewPanel lvp : this.layerViewPanels) {
             lvp.repaint();
         }
@@ -258,13 +266,66 @@ public class Viewport {
 
         this.viewToModelTransform = src.viewToModelTransform == null ? null
                 : new AffineTransform(src.viewToModelTransform);
+        this.offscreenWidth = src.offscreenWidth;
+        this.offscreenHeight = src.offscreenHeight;
+    }
+
+    /** Size of the view when the viewport is not attached to any panel. */
+    private int offscreenWidth = 0;
+    private int offscreenHeight = 0;
+
+    /**
+     * Constructor of an offscreen viewport, not associated with any
+     * {@link LayerViewPanel}. It is used to render directly into images of
+     * the given size.
+     * 
+     * @param width
+     *            width of the view in pixels
+     * @param height
+     *            height of the view in pixels
+     */
+    public Viewport(final int width, final int height) {
+        this.offscreenWidth = width;
+        this.offscreenHeight = height;
+    }
+
+    /**
+     * @return The width of the view: the width of the first layer view panel
+     *         or the offscreen width if there is no panel
+     */
+    public int getViewWidth() {
+        if (this.layerViewPanels.isEmpty()) {
+            return this.offscreenWidth;
+        }
+        return this.layerViewPanels.iterator().next().getWidth();
+    }
+
+    /**
+     * @return The height of the view: the height of the first layer view
+     *         panel or the offscreen height if there is no panel
+     */
+    public int getViewHeight() {
+        if (this.layerViewPanels.isEmpty()) {
+            return this.offscreenHeight;
+        }
+        return this.layerViewPanels.iterator().next().getHeight();
+    }
+
+    /**
+     * @return The visible rectangle of the view, in pixels
+     */
+    public Rectangle getViewRectangle() {
+        if (this.layerViewPanels.isEmpty()) {
+            return new Rectangle(0, 0, this.offscreenWidth,
+                    this.offscreenHeight);
+        }
+        return this.layerViewPanels.iterator().next().getVisibleRect();
     }
 
     /** @return The envelope of the panel in model coordinates. */
     public final IEnvelope getEnvelopeInModelCoordinates() {
-        LayerViewPanel lvp = this.layerViewPanels.iterator().next();
-        double widthAsPerceivedByModel = lvp.getWidth() / this.scale;
-        double heightAsPerceivedByModel = lvp.getHeight() / this.scale;
+        double widthAsPerceivedByModel = this.getViewWidth() / this.scale;
+        double heightAsPerceivedByModel = this.getViewHeight() / this.scale;
         return new GM_Envelope(this.viewOrigin.getX(), this.viewOrigin.getX()
                 + widthAsPerceivedByModel, this.viewOrigin.getY(),
                 this.viewOrigin.getY() + heightAsPerceivedByModel);
@@ -636,11 +697,11 @@ public class Viewport {
                 || extent.height() == 0) {
             return;
         }
-        LayerViewPanel lvp = this.layerViewPanels.iterator().next();
-        this.scale = Math.min(lvp.getWidth() / extent.width(), lvp.getHeight()
-                / extent.length());
-        double xCenteringOffset = (lvp.getWidth() / this.scale - extent.width()) / 2d;
-        double yCenteringOffset = (lvp.getHeight() / this.scale - extent
+        this.scale = Math.min(this.getViewWidth() / extent.width(),
+                this.getViewHeight() / extent.length());
+        double xCenteringOffset = (this.getViewWidth() / this.scale
+                - extent.width()) / 2d;
+        double yCenteringOffset = (this.getViewHeight() / this.scale - extent
                 .length()) / 2d;
         this.viewOrigin = new Point2D.Double(extent.minX() - xCenteringOffset,
                 extent.minY() - yCenteringOffset);
@@ -657,9 +718,8 @@ public class Viewport {
      */
     public final void center(final IDirectPosition centroid)
             throws NoninvertibleTransformException {
-        LayerViewPanel lvp = this.layerViewPanels.iterator().next();
-        double xCenteringOffset = lvp.getWidth() / this.scale / 2d;
-        double yCenteringOffset = lvp.getHeight() / this.scale / 2d;
+        double xCenteringOffset = this.getViewWidth() / this.scale / 2d;
+        double yCenteringOffset = this.getViewHeight() / this.scale / 2d;
         this.viewOrigin = new Point2D.Double(
                 centroid.getX() - xCenteringOffset, centroid.getY()
                         - yCenteringOffset);
@@ -731,11 +791,10 @@ public class Viewport {
     public final void zoom(final int x, final int y,
             final double widthOfNewView, final double heightOfNewView)
             throws NoninvertibleTransformException {
-        LayerViewPanel lvp = this.layerViewPanels.iterator().next();
-        double zoomFactor = Math.min(lvp.getWidth() / widthOfNewView,
-                lvp.getHeight() / heightOfNewView);
-        double realWidthOfNewView = lvp.getWidth() / zoomFactor;
-        double realHeightOfNewView = lvp.getHeight() / zoomFactor;
+        double zoomFactor = Math.min(this.getViewWidth() / widthOfNewView,
+                this.getViewHeight() / heightOfNewView);
+        double realWidthOfNewView = this.getViewWidth() / zoomFactor;
+        double realHeightOfNewView = this.getViewHeight() / zoomFactor;
         IEnvelope zoomEnvelope;
         try {
             zoomEnvelope = this.toModelEnvelope(x - Viewport.ZERO_POINT_FIVE
@@ -899,8 +958,7 @@ public class Viewport {
      *             throws an exception when the transformation fails
      */
     public final void moveUp() throws NoninvertibleTransformException {
-        this.moveOf(0, this.layerViewPanels.iterator().next().getHeight()
-                * Viewport.MOVE_FACTOR);
+        this.moveOf(0, this.getViewHeight() * Viewport.MOVE_FACTOR);
     }
 
     /**
@@ -910,8 +968,7 @@ public class Viewport {
      *             throws an exception when the transformation fails
      */
     public final void moveDown() throws NoninvertibleTransformException {
-        this.moveOf(0, -this.layerViewPanels.iterator().next().getHeight()
-                * Viewport.MOVE_FACTOR);
+        this.moveOf(0, -this.getViewHeight() * Viewport.MOVE_FACTOR);
     }
 
     /**
@@ -921,8 +978,7 @@ public class Viewport {
      *             throws an exception when the transformation fails
      */
     public final void moveRight() throws NoninvertibleTransformException {
-        this.moveOf(this.layerViewPanels.iterator().next().getWidth()
-                * Viewport.MOVE_FACTOR, 0);
+        this.moveOf(this.getViewWidth() * Viewport.MOVE_FACTOR, 0);
     }
 
     /**
@@ -932,8 +988,7 @@ public class Viewport {
      *             throws an exception when the transformation fails
      */
     public final void moveLeft() throws NoninvertibleTransformException {
-        this.moveOf(-this.layerViewPanels.iterator().next().getWidth()
-                * Viewport.MOVE_FACTOR, 0);
+        this.moveOf(-this.getViewWidth() * Viewport.MOVE_FACTOR, 0);
     }
 
     /**
@@ -965,9 +1020,8 @@ public class Viewport {
     public final void moveTo(final Point point)
             throws NoninvertibleTransformException {
         Point2D modelPoint = this.toModelPoint(point);
-        LayerViewPanel lvp = this.layerViewPanels.iterator().next();
-        modelPoint.setLocation(modelPoint.getX() - lvp.getWidth()
-                / (2 * this.scale), modelPoint.getY() - lvp.getHeight()
+        modelPoint.setLocation(modelPoint.getX() - this.getViewWidth()
+                / (2 * this.scale), modelPoint.getY() - this.getViewHeight()
                 / (2 * this.scale));
         this.viewOrigin.setLocation(modelPoint);
         this.update();
@@ -986,9 +1040,8 @@ public class Viewport {
         // such as bezier)
         AdapterFactory.setSpacing(this.getSpacingInPixels() / this.getScale());
         Point2D modelPoint = new Point2D.Double(center.getX(), center.getY());
-        LayerViewPanel lvp = this.layerViewPanels.iterator().next();
-        modelPoint.setLocation(modelPoint.getX() - lvp.getWidth()
-                / (2 * this.scale), modelPoint.getY() - lvp.getHeight()
+        modelPoint.setLocation(modelPoint.getX() - this.getViewWidth()
+                / (2 * this.scale), modelPoint.getY() - this.getViewHeight()
                 / (2 * this.scale));
         this.viewOrigin.setLocation(modelPoint);
         try {
@@ -524,9 +524,7 @@ public class GLComplexFactory {
 
         if (simpleRendering) {
             GLSimpleComplex primitive = new GLSimpleComplex(id, minX, minY);
-            for (IPolygon polygon : polygons) {
-                LineTesselator.createPolygonOutline(primitive, polygon, stroke, minX, minY);
-            }
+            LineTesselator.createPolygonOutlines(primitive, polygons, stroke, minX, minY);
             primitive.setColor(stroke.getColor());
             primitive.setOverallOpacity(stroke.getColor().getAlpha() / 255.);
             return primitive;
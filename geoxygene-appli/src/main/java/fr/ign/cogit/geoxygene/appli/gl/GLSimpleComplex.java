@@ -37,6 +37,7 @@ import static org.lwjgl.opengl.GL30.glBindVertexArray;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 import org.lwjgl.BufferUtils;
@@ -80,6 +81,15 @@ public class GLSimpleComplex extends AbstractGLComplex<GLSimpleVertex>
     private double overallOpacity = 1.;
     private GLSimpleRenderingCapability[] renderingCapabilities = null;
     int stride = -1;
+    // Packed triangles added without GLSimpleVertex objects: (x, y) pairs and
+    // indices relative to the first packed vertex. They are stored after the
+    // vertex objects in the VBO and drawn by packedMesh.
+    private float[] packedVertices = null;
+    private int packedVertexCount = 0;
+    private int[] packedIndices = null;
+    private int packedIndexCount = 0;
+    private GLMesh packedMesh = null;
+    private final float[] packedRGBA = new float[] { 1f, 0f, 0f, 1f };
 
     public enum GLSimpleRenderingCapability implements GLRenderingCapability {
         POSITION, COLOR, TEXTURE,
@@ -147,6 +157,68 @@ public class GLSimpleComplex extends AbstractGLComplex<GLSimpleVertex>
         for (GLSimpleVertex vertex : this.getVertices()) {
             vertex.setRGBA(color);
         }
+        this.packedRGBA[0] = color.getRed() / 255.f;
+        this.packedRGBA[1] = color.getGreen() / 255.f;
+        this.packedRGBA[2] = color.getBlue() / 255.f;
+        this.packedRGBA[3] = color.getAlpha() / 255.f;
+    }
+
+    /**
+     * Add GL_TRIANGLES without creating a GLSimpleVertex per vertex. Vertices
+     * have no texture coordinates and share the color given by
+     * {@link #setColor(java.awt.Color)}.
+     * 
+     * @param xy
+     *            vertices as (x, y) pairs
+     * @param vertexCount
+     *            number of vertices to read from xy
+     * @param indices
+     *            triangle indices, relative to the first vertex of xy
+     * @param indexCount
+     *            number of indices to read
+     */
+    public void addTriangles(float[] xy, int vertexCount, int[] indices,
+            int indexCount) {
+        if (this.packedMesh == null) {
+            this.packedVertices = new float[Math.max(2 * vertexCount, 16)];
+            this.packedIndices = new int[Math.max(indexCount, 16)];
+            this.packedMesh = this.addGLMesh(GL11.GL_TRIANGLES);
+        }
+        if (2 * (this.packedVertexCount + vertexCount) > this.packedVertices.length) {
+            this.packedVertices = Arrays.copyOf(this.packedVertices, Math.max(
+                    2 * (this.packedVertexCount + vertexCount),
+                    2 * this.packedVertices.length));
+        }
+        if (this.packedIndexCount + indexCount > this.packedIndices.length) {
+            this.packedIndices = Arrays.copyOf(this.packedIndices, Math.max(
+                    this.packedIndexCount + indexCount,
+                    2 * this.packedIndices.length));
+        }
+        System.arraycopy(xy, 0, this.packedVertices,
+                2 * this.packedVertexCount, 2 * vertexCount);
+        for (int i = 0; i < indexCount; i++) {
+            this.packedIndices[this.packedIndexCount + i] = indices[i]
+                    + this.packedVertexCount;
+        }
+        this.packedVertexCount += vertexCount;
+        this.packedIndexCount += indexCount;
+        this.invalidateBuffers();
+    }
+
+    /**
+     * Add the triangles generated by a thick line tesselator
+     */
+    public void addTriangles(ThickLineTesselator tesselator) {
+        this.addTriangles(tesselator.getVertices(),
+                tesselator.getVertexCount(), tesselator.getIndices(),
+                tesselator.getIndexCount());
+    }
+
+    /**
+     * @return the number of vertices added by addTriangles()
+     */
+    public int getPackedVertexCount() {
+        return this.packedVertexCount;
     }
 
     /*
@@ -181,7 +253,7 @@ public class GLSimpleComplex extends AbstractGLComplex<GLSimpleVertex>
     public FloatBuffer getFlippedVerticesBuffer() {
         if (this.verticesBuffer == null) {
             this.verticesBuffer = BufferUtils
-                    .createFloatBuffer(this.getVertices().size()
+                    .createFloatBuffer((this.getVertices().size() + this.packedVertexCount)
                             * this.getStride() / (Float.SIZE / 8));
             // BufferUtils.createByteBuffer(this.vertices.size() *
             // GLSimpleVertex.VERTEX_BYTESIZE).asFloatBuffer();
@@ -193,12 +265,17 @@ public class GLSimpleComplex extends AbstractGLComplex<GLSimpleVertex>
                 // Arrays.toString(vertex.getUV()));
                 // System.err.println("add RGBA to vertex buffer: " +
                 // Arrays.toString(vertex.getRGBA()));
-                this.verticesBuffer.put(new float[] { (vertex.getXYZ()[0]),
-                        (vertex.getXYZ()[1]), vertex.getXYZ()[2] });
+                this.verticesBuffer.put(vertex.getXYZ());
                 this.verticesBuffer.put(vertex.getUV());
                 this.verticesBuffer.put(vertex.getRGBA());
 
             }
+            for (int i = 0; i < this.packedVertexCount; i++) {
+                this.verticesBuffer.put(this.packedVertices[2 * i])
+                        .put(this.packedVertices[2 * i + 1]).put(0f);
+                this.verticesBuffer.put(0f).put(0f);
+                this.verticesBuffer.put(this.packedRGBA);
+            }
             this.verticesBuffer.flip();
             // System.err.println("create a new vertex buffer = ");
             // GLTools.displayBuffer(this.verticesBuffer);
@@ -234,17 +311,29 @@ public class GLSimpleComplex extends AbstractGLComplex<GLSimpleVertex>
         for (GLMesh mesh : this.getMeshes()) {
             nbIndices += mesh.getIndices().size();
         }
+        nbIndices += this.packedIndexCount;
         // fill the indices buffer (VBO indices)
         // and generate a range of indices in the indices buffer
         this.indicesBuffer = BufferUtils.createIntBuffer(nbIndices);
         int currentStartIndex = 0;
+        int packedBase = this.getVertices().size();
         for (GLMesh mesh : this.getMeshes()) {
-            for (int nIndex = 0; nIndex < mesh.getIndices().size(); nIndex++) {
-                this.indicesBuffer
-                        .put(mesh.getIndices().get(nIndex).intValue());
+            int meshIndexCount;
+            if (mesh == this.packedMesh) {
+                for (int nIndex = 0; nIndex < this.packedIndexCount; nIndex++) {
+                    this.indicesBuffer.put(this.packedIndices[nIndex]
+                            + packedBase);
+                }
+                meshIndexCount = this.packedIndexCount;
+            } else {
+                for (int nIndex = 0; nIndex < mesh.getIndices().size(); nIndex++) {
+                    this.indicesBuffer.put(mesh.getIndices().get(nIndex)
+                            .intValue());
+                }
+                meshIndexCount = mesh.getIndices().size();
             }
             mesh.setFirstIndex(currentStartIndex);
-            currentStartIndex = currentStartIndex + mesh.getIndices().size();
+            currentStartIndex = currentStartIndex + meshIndexCount;
             mesh.setLastIndex(currentStartIndex - 1);
         }
         this.indicesBuffer.flip();
@@ -0,0 +1,563 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package fr.ign.cogit.geoxygene.appli.gl;
+
+import java.awt.BasicStroke;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.function.Function1D;
+import fr.ign.cogit.geoxygene.function.FunctionEvaluationException;
+
+/**
+ * Thick line tesselator writing into growable primitive buffers. Polylines are
+ * fed point by point, then tesselated into GL_TRIANGLES: vertices are stored as
+ * (x, y) float pairs and triangles as int indices relative to the first vertex
+ * of the buffer. No object is allocated per point, edge or join.
+ * <p>
+ * An instance is meant to be reused across features (see {@link #reset()}) and
+ * is not thread safe: use one instance per thread or per layer to tesselate
+ * layers in parallel. The result can be appended to a {@link GLSimpleComplex}
+ * or written directly into buffers ready for VBO upload.
+ *
+ * @see LineTesselator
+ */
+public class ThickLineTesselator {
+
+    private static final double anglePrecision = Math.PI / 40;
+    private static final double epsilon = 1E-6;
+    private static final int INITIAL_CAPACITY = 256;
+    // above this size (in array elements), buffers are released on reset
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    // polyline being fed (x, y pairs)
+    private double[] points = new double[INITIAL_CAPACITY];
+    private int pointCount = 0;
+    // edge vectors and normals of the polyline being tesselated (x, y pairs)
+    private double[] edges = new double[INITIAL_CAPACITY];
+    private double[] normals = new double[INITIAL_CAPACITY];
+    // output
+    private float[] vertices = new float[INITIAL_CAPACITY];
+    private int vertexCount = 0;
+    private int[] indices = new int[INITIAL_CAPACITY];
+    private int indexCount = 0;
+
+    // current width parameters
+    private Function1D widthFunction = null;
+    private double constantWidth = 0;
+    // result of the last call to intersection()
+    private double intersectionX = 0;
+    private double intersectionY = 0;
+
+    /**
+     * Clear the current polyline and the tesselation result, keeping the
+     * allocated buffers unless they grew too large.
+     */
+    public void reset() {
+        this.pointCount = 0;
+        this.vertexCount = 0;
+        this.indexCount = 0;
+        if (this.points.length > MAX_RETAINED_CAPACITY) {
+            this.points = new double[INITIAL_CAPACITY];
+            this.edges = new double[INITIAL_CAPACITY];
+            this.normals = new double[INITIAL_CAPACITY];
+        }
+        if (this.vertices.length > MAX_RETAINED_CAPACITY) {
+            this.vertices = new float[INITIAL_CAPACITY];
+        }
+        if (this.indices.length > MAX_RETAINED_CAPACITY) {
+            this.indices = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Append a point to the current polyline. Points closer than epsilon to
+     * the previous one are skipped.
+     */
+    public void addPoint(double x, double y) {
+        if (this.pointCount > 0) {
+            double dx = x - this.points[2 * this.pointCount - 2];
+            double dy = y - this.points[2 * this.pointCount - 1];
+            if (Math.sqrt(dx * dx + dy * dy) <= epsilon) {
+                return;
+            }
+        }
+        if (2 * this.pointCount + 2 > this.points.length) {
+            this.points = Arrays.copyOf(this.points,
+                    2 * this.points.length);
+        }
+        this.points[2 * this.pointCount] = x;
+        this.points[2 * this.pointCount + 1] = y;
+        this.pointCount++;
+    }
+
+    /**
+     * Append a list of positions to the current polyline, translated by
+     * (-minX, -minY)
+     */
+    public void addPoints(IDirectPositionList dlist, double minX, double minY) {
+        int size = dlist.size();
+        for (int i = 0; i < size; ++i) {
+            this.addPoint(dlist.get(i).getX() - minX, dlist.get(i).getY()
+                    - minY);
+        }
+    }
+
+    /**
+     * @return the number of points of the current polyline
+     */
+    public int getPointCount() {
+        return this.pointCount;
+    }
+
+    /**
+     * Tesselate the current polyline with a constant width and clear it. The
+     * result is appended to the vertex and index buffers.
+     */
+    public void tesselate(double width, int join, int cap, double miterLimit,
+            boolean closedLine) {
+        this.widthFunction = null;
+        this.constantWidth = width;
+        try {
+            this.tesselatePolyline(join, cap, miterLimit, closedLine);
+        } catch (FunctionEvaluationException e) {
+            // no function is evaluated with a constant width
+            throw new IllegalStateException(e);
+        } finally {
+            this.pointCount = 0;
+        }
+    }
+
+    /**
+     * Tesselate the current polyline with a width varying along the line and
+     * clear it. The width function is evaluated on the curvilinear abscissa
+     * normalized between 0 and 1.
+     */
+    public void tesselate(Function1D getWidth, int join, int cap,
+            double miterLimit, boolean closedLine)
+            throws FunctionEvaluationException {
+        this.widthFunction = getWidth;
+        try {
+            this.tesselatePolyline(join, cap, miterLimit, closedLine);
+        } finally {
+            this.widthFunction = null;
+            this.pointCount = 0;
+        }
+    }
+
+    /**
+     * @return the number of vertices generated since the last reset
+     */
+    public int getVertexCount() {
+        return this.vertexCount;
+    }
+
+    /**
+     * @return the vertex buffer as (x, y) pairs. Only the first 2 *
+     *         getVertexCount() values are meaningful
+     */
+    public float[] getVertices() {
+        return this.vertices;
+    }
+
+    /**
+     * @return the number of indices (three per triangle) generated since the
+     *         last reset
+     */
+    public int getIndexCount() {
+        return this.indexCount;
+    }
+
+    /**
+     * @return the GL_TRIANGLES index buffer. Only the first getIndexCount()
+     *         values are meaningful
+     */
+    public int[] getIndices() {
+        return this.indices;
+    }
+
+    /**
+     * Write the vertices into a buffer using the GLSimpleVertex layout
+     * (position xyz, texture uv, color rgba)
+     *
+     * @param buffer
+     *            destination buffer, it must have 9 * getVertexCount() floats
+     *            remaining
+     * @param rgba
+     *            color given to all vertices
+     */
+    public void putVertices(FloatBuffer buffer, float[] rgba) {
+        for (int i = 0; i < this.vertexCount; i++) {
+            buffer.put(this.vertices[2 * i]).put(this.vertices[2 * i + 1])
+                    .put(0f);
+            buffer.put(0f).put(0f);
+            buffer.put(rgba, 0, 4);
+        }
+    }
+
+    /**
+     * Write the indices into a buffer
+     *
+     * @param buffer
+     *            destination buffer
+     * @param base
+     *            index of the first vertex of this tesselator in the vertex
+     *            buffer
+     */
+    public void putIndices(IntBuffer buffer, int base) {
+        if (base == 0) {
+            buffer.put(this.indices, 0, this.indexCount);
+            return;
+        }
+        for (int i = 0; i < this.indexCount; i++) {
+            buffer.put(this.indices[i] + base);
+        }
+    }
+
+    private double halfWidth(float t) throws FunctionEvaluationException {
+        if (this.widthFunction == null) {
+            return this.constantWidth / 2;
+        }
+        return this.widthFunction.evaluate(t) / 2;
+    }
+
+    private int addVertex(double x, double y) {
+        if (2 * this.vertexCount + 2 > this.vertices.length) {
+            this.vertices = Arrays.copyOf(this.vertices,
+                    2 * this.vertices.length);
+        }
+        this.vertices[2 * this.vertexCount] = (float) x;
+        this.vertices[2 * this.vertexCount + 1] = (float) y;
+        return this.vertexCount++;
+    }
+
+    private void addTriangle(int i0, int i1, int i2) {
+        if (this.indexCount + 3 > this.indices.length) {
+            this.indices = Arrays.copyOf(this.indices,
+                    2 * this.indices.length);
+        }
+        this.indices[this.indexCount++] = i0;
+        this.indices[this.indexCount++] = i1;
+        this.indices[this.indexCount++] = i2;
+    }
+
+    /**
+     * Intersection of the lines (a, ea) and (b, eb), stored in intersectionX
+     * and intersectionY
+     */
+    private void intersection(double ax, double ay, double eax, double eay,
+            double bx, double by, double ebx, double eby) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double det = ebx * eay - eby * eax;
+        double u = (dy * ebx - dx * eby) / det;
+        this.intersectionX = ax + u * eax;
+        this.intersectionY = ay + u * eay;
+    }
+
+    /**
+     * Thick line tesselation of the current polyline. Same algorithm as the
+     * former Point2D based implementation of LineTesselator.
+     */
+    private void tesselatePolyline(int join, int cap, double miterLimit,
+            boolean closedLine) throws FunctionEvaluationException {
+        int size = this.pointCount;
+        if (size < 2) {
+            return;
+        }
+        double[] p = this.points;
+        int edgeCount = closedLine ? size : size - 1;
+        if (p[0] == p[2 * size - 2] && p[1] == p[2 * size - 1]) {
+            // if the last point is the same as the first one, remove the last
+            // from the list of points
+            edgeCount -= 1;
+            size -= 1;
+        }
+        if (edgeCount < 1) {
+            return;
+        }
+        if (2 * edgeCount > this.edges.length) {
+            this.edges = new double[Math.max(2 * edgeCount,
+                    2 * this.edges.length)];
+            this.normals = new double[this.edges.length];
+        }
+        double[] e = this.edges;
+        double[] n = this.normals;
+        float arcLength = 0;
+        for (int edgeIndex = 0; edgeIndex < edgeCount; edgeIndex++) {
+            int i0 = 2 * edgeIndex;
+            int i1 = 2 * ((edgeIndex + 1) % size);
+            double ex = p[i1] - p[i0];
+            double ey = p[i1 + 1] - p[i0 + 1];
+            double length = Math.sqrt(ex * ex + ey * ey);
+            e[i0] = ex;
+            e[i0 + 1] = ey;
+            n[i0] = -ey / length;
+            n[i0 + 1] = ex / length;
+            arcLength += length;
+        }
+
+        float currentLength = 0;
+        double e0x = e[0];
+        double e0y = e[1];
+        double n0x = n[0];
+        double n0y = n[1];
+        double l = this.halfWidth(currentLength / arcLength);
+        double vertex0x = p[0] - l * n0x;
+        double vertex0y = p[1] - l * n0y;
+        double vertex1x = p[0] + l * n0x;
+        double vertex1y = p[1] + l * n0y;
+        int vertexIndex0 = this.addVertex(vertex0x, vertex0y);
+        int vertexIndex1 = this.addVertex(vertex1x, vertex1y);
+        if (!closedLine) { // initial cap
+            this.createCap(l, cap, vertexIndex0, vertexIndex1, e0x, e0y, n0x,
+                    n0y, vertex0x, vertex0y, vertex1x, vertex1y, true);
+        }
+
+        // treat all segments (draw segment + join to the next segment)
+        for (int currentEdgeIndex = 0; currentEdgeIndex < edgeCount; currentEdgeIndex++) {
+            int nextEdgeIndex = (currentEdgeIndex + 1) % edgeCount;
+            int endIndex = 2 * ((currentEdgeIndex + 1) % size);
+            double px = p[endIndex];
+            double py = p[endIndex + 1];
+            e0x = e[2 * currentEdgeIndex];
+            e0y = e[2 * currentEdgeIndex + 1];
+            n0x = n[2 * currentEdgeIndex];
+            n0y = n[2 * currentEdgeIndex + 1];
+            double e1x = e[2 * nextEdgeIndex];
+            double e1y = e[2 * nextEdgeIndex + 1];
+            double n1x = n[2 * nextEdgeIndex];
+            double n1y = n[2 * nextEdgeIndex + 1];
+
+            // side to cap is in the same direction than normals ? then 1, else
+            // -1
+            int sideToCap = -1;
+            double turnDirection = e0x * n1x + e0y * n1y;
+            double segmentLength = Math.sqrt(e0x * e0x + e0y * e0y);
+            if (segmentLength < epsilon) {
+                // if two points are at the same position, skip it
+                continue;
+            }
+            currentLength += segmentLength;
+
+            if (turnDirection > epsilon) {
+                sideToCap = 1;
+            } else if (turnDirection < -epsilon) {
+                sideToCap = -1;
+            } else {
+                // if points are exactly aligned, we can go directly to the next
+                // point. If there is only two points in the line, add triangles
+                if (edgeCount == 1) {
+                    int vertexIndex2 = this.addVertex(px - l * n0x, py - l
+                            * n0y);
+                    int vertexIndex3 = this.addVertex(px + l * n0x, py + l
+                            * n0y);
+                    this.addTriangle(vertexIndex0, vertexIndex1, vertexIndex2);
+                    this.addTriangle(vertexIndex1, vertexIndex2, vertexIndex3);
+                    vertexIndex0 = vertexIndex2;
+                    vertexIndex1 = vertexIndex3;
+                }
+                continue;
+            }
+            l = this.halfWidth(currentLength / arcLength);
+
+            // join between lines
+            double inner = -sideToCap * l;
+            this.intersection(px + inner * n0x, py + inner * n0y, e0x, e0y, px
+                    + inner * n1x, py + inner * n1y, e1x, e1y);
+            double midX = this.intersectionX;
+            double midY = this.intersectionY;
+
+            if (currentEdgeIndex == edgeCount - 1 && !closedLine) {
+                // last point
+                int vertexIndex2 = this.addVertex(px - l * n0x, py - l * n0y);
+                int vertexIndex3 = this.addVertex(px + l * n0x, py + l * n0y);
+                this.addTriangle(vertexIndex0, vertexIndex1, vertexIndex2);
+                this.addTriangle(vertexIndex1, vertexIndex2, vertexIndex3);
+                vertexIndex0 = vertexIndex2;
+                vertexIndex1 = vertexIndex3;
+                continue;
+            }
+
+            // in AWT if the angle is too small, miter join is switched to
+            // bevel join to avoid potential infinite miter point
+            switch (join) {
+            case BasicStroke.JOIN_MITER: {
+                double outer = sideToCap * l;
+                this.intersection(px + outer * n0x, py + outer * n0y, e0x,
+                        e0y, px + outer * n1x, py + outer * n1y, e1x, e1y);
+                double miterX = this.intersectionX;
+                double miterY = this.intersectionY;
+                double dx = midX - miterX;
+                double dy = midY - miterY;
+                if (Math.sqrt(dx * dx + dy * dy) < miterLimit * l * 2) {
+                    int miterVertexIndex = this.addVertex(miterX, miterY);
+                    int midVertexIndex = this.addVertex(midX, midY);
+                    if (sideToCap == 1) {
+                        this.addTriangle(vertexIndex0, vertexIndex1,
+                                midVertexIndex);
+                        this.addTriangle(vertexIndex1, midVertexIndex,
+                                miterVertexIndex);
+                        vertexIndex0 = midVertexIndex;
+                        vertexIndex1 = miterVertexIndex;
+                    } else {
+                        this.addTriangle(vertexIndex0, vertexIndex1,
+                                miterVertexIndex);
+                        this.addTriangle(vertexIndex1, miterVertexIndex,
+                                midVertexIndex);
+                        vertexIndex0 = miterVertexIndex;
+                        vertexIndex1 = midVertexIndex;
+                    }
+                    break;
+                }
+                // miter should be represented as bevel due to too small
+                // angle between lines
+            }
+            case BasicStroke.JOIN_BEVEL: {
+                int vertexIndex2 = (sideToCap == 1) ? this.addVertex(midX,
+                        midY) : this.addVertex(px - l * n0x, py - l * n0y);
+                int vertexIndex3 = (sideToCap == -1) ? this.addVertex(midX,
+                        midY) : this.addVertex(px + l * n0x, py + l * n0y);
+                int vertexIndex4 = this.addVertex(px + sideToCap * l * n1x, py
+                        + sideToCap * l * n1y);
+                this.addTriangle(vertexIndex0, vertexIndex1, vertexIndex2);
+                this.addTriangle(vertexIndex1, vertexIndex2, vertexIndex3);
+                this.addTriangle(vertexIndex2, vertexIndex4, vertexIndex3);
+                vertexIndex0 = (sideToCap == 1) ? vertexIndex2 : vertexIndex4;
+                vertexIndex1 = (sideToCap == 1) ? vertexIndex4 : vertexIndex3;
+            }
+                break;
+            case BasicStroke.JOIN_ROUND: {
+                // the edges intersection is the center of the round join
+                double vertex2x = (sideToCap == 1) ? midX : px - l * n0x;
+                double vertex2y = (sideToCap == 1) ? midY : py - l * n0y;
+                double vertex3x = (sideToCap == -1) ? midX : px + l * n0x;
+                double vertex3y = (sideToCap == -1) ? midY : py + l * n0y;
+                double vertex4x = px + sideToCap * l * n1x;
+                double vertex4y = py + sideToCap * l * n1y;
+                int vertexIndex2 = this.addVertex(vertex2x, vertex2y);
+                int vertexIndex3 = this.addVertex(vertex3x, vertex3y);
+                int vertexIndex4 = this.addVertex(vertex4x, vertex4y);
+                int midVertexIndex = this.addVertex(midX, midY);
+                this.addTriangle(vertexIndex0, vertexIndex1, vertexIndex2);
+                this.addTriangle(vertexIndex1, vertexIndex2, vertexIndex3);
+
+                double border1x = ((sideToCap == 1) ? vertex3x : vertex2x) - px;
+                double border1y = ((sideToCap == 1) ? vertex3y : vertex2y) - py;
+                double alpha1 = Math.atan2(border1y, border1x);
+                double alpha2 = Math.atan2(vertex4y - py, vertex4x - px);
+                if (alpha1 < 0) {
+                    alpha1 += 2 * Math.PI;
+                }
+                if (alpha2 < 0) {
+                    alpha2 += 2 * Math.PI;
+                }
+                if (sideToCap == -1 && alpha2 < alpha1) {
+                    alpha2 += Math.PI * 2;
+                } else if (sideToCap == 1 && alpha1 < alpha2) {
+                    alpha2 -= Math.PI * 2;
+                }
+                int nbJoinPoints = (int) Math.abs((alpha2 - alpha1)
+                        / anglePrecision);
+                // from vertex3 (or vertex2) to vertex4
+                int previousVertexIndex = (sideToCap == 1) ? vertexIndex3
+                        : vertexIndex2;
+                if (nbJoinPoints == 0) {
+                    this.addTriangle(midVertexIndex, previousVertexIndex,
+                            vertexIndex4);
+                }
+                for (int i = 1; i <= nbJoinPoints; i++) { // round part
+                    double angle = i * (alpha2 - alpha1) / nbJoinPoints;
+                    double c = Math.cos(angle);
+                    double s = Math.sin(angle);
+                    int currentVertexIndex = this.addVertex(px
+                            + (border1x * c - border1y * s), py
+                            + (border1x * s + border1y * c));
+                    this.addTriangle(midVertexIndex, previousVertexIndex,
+                            currentVertexIndex);
+                    previousVertexIndex = currentVertexIndex;
+                }
+                vertexIndex0 = (sideToCap == 1) ? vertexIndex2 : vertexIndex4;
+                vertexIndex1 = (sideToCap == 1) ? vertexIndex4 : vertexIndex3;
+            }
+                break;
+            }
+        }
+
+        // end Cap
+        if (!closedLine) {
+            this.createCap(l, cap, vertexIndex0, vertexIndex1, e0x, e0y, n0x,
+                    n0y, this.vertices[2 * vertexIndex0],
+                    this.vertices[2 * vertexIndex0 + 1],
+                    this.vertices[2 * vertexIndex1],
+                    this.vertices[2 * vertexIndex1 + 1], false);
+        }
+    }
+
+    private void createCap(double l, int cap, int vertexIndex0,
+            int vertexIndex1, double e0x, double e0y, double n0x, double n0y,
+            double vertex0x, double vertex0y, double vertex1x,
+            double vertex1y, boolean startPoint) {
+        switch (cap) {
+        case BasicStroke.CAP_BUTT:
+            // BUTT is the default computation of start points
+            break;
+        case BasicStroke.CAP_SQUARE: {
+            // move the last points along the edge
+            double length = Math.sqrt(e0x * e0x + e0y * e0y);
+            double shift = startPoint ? -l : l;
+            double decX = shift * (e0x / length);
+            double decY = shift * (e0y / length);
+            float[] v = this.vertices;
+            v[2 * vertexIndex0] = (float) (v[2 * vertexIndex0] + decX);
+            v[2 * vertexIndex0 + 1] = (float) (v[2 * vertexIndex0 + 1] + decY);
+            v[2 * vertexIndex1] = (float) (v[2 * vertexIndex1] + decX);
+            v[2 * vertexIndex1 + 1] = (float) (v[2 * vertexIndex1 + 1] + decY);
+        }
+            break;
+        case BasicStroke.CAP_ROUND: {
+            double splitX = 0.5 * (vertex0x + vertex1x);
+            double splitY = 0.5 * (vertex0y + vertex1y);
+            int splitVertexIndex = this.addVertex(splitX, splitY);
+            int nbCapPoints = Math.max(3, (int) (Math.PI / anglePrecision));
+            double sideX = l * n0x;
+            double sideY = l * n0y;
+            int previousVertexIndex = vertexIndex1;
+            for (int i = 1; i <= nbCapPoints; i++) {
+                double angle = i * Math.PI / nbCapPoints;
+                if (!startPoint) {
+                    angle *= -1;
+                }
+                double c = Math.cos(angle);
+                double s = Math.sin(angle);
+                int currentVertexIndex = this.addVertex(splitX
+                        + (sideX * c - sideY * s), splitY
+                        + (sideX * s + sideY * c));
+                this.addTriangle(splitVertexIndex, previousVertexIndex,
+                        currentVertexIndex);
+                previousVertexIndex = currentVertexIndex;
+            }
+        }
+            break;
+        }
+    }
+
+}
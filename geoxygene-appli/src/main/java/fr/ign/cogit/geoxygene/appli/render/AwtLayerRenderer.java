@@ -37,10 +37,13 @@ import java.util.Set;
 import org.apache.log4j.Logger;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.appli.layer.LayerViewPanel;
+import fr.ign.cogit.geoxygene.filter.CompiledFilter;
+import fr.ign.cogit.geoxygene.filter.Filter;
 import fr.ign.cogit.geoxygene.style.FeatureTypeStyle;
 import fr.ign.cogit.geoxygene.style.Layer;
 import fr.ign.cogit.geoxygene.style.Rule;
@@ -67,6 +70,15 @@ public class AwtLayerRenderer extends AbstractLayerRenderer {
   private int offscreenHeight = 0;
   /** Layer view panel. */
   private LayerViewPanel layerViewPanel = null;
+  /** Simplified geometries of the features of the layer. */
+  private DisplayGeometryCache displayGeometryCache = null;
+  /** Feature collection the display geometry cache listens to. */
+  private IFeatureCollection<? extends IFeature> cachedCollection = null;
+  /**
+   * Compiled filters of the rules, with the filter they were compiled from.
+   * Cleared before each rendering.
+   */
+  private final Map<Rule, Pair<Filter, Filter>> compiledFilters = new HashMap<Rule, Pair<Filter, Filter>>();
 
   /**
    * Constructor of renderer using a {@link Layer} and a {@link LayerViewPanel}.
@@ -229,6 +241,9 @@ public class AwtLayerRenderer extends AbstractLayerRenderer {
   public void initializeRendering() {
     super.initializeRendering();
     this.clearImageCache();
+    synchronized (this.compiledFilters) {
+      this.compiledFilters.clear();
+    }
     this.setImage(new BufferedImage(AwtLayerRenderer.this.getWidth(),
         AwtLayerRenderer.this.getHeight(), BufferedImage.TYPE_INT_ARGB));
   }
@@ -249,15 +264,26 @@ public class AwtLayerRenderer extends AbstractLayerRenderer {
     int featureRenderIndex = 0;
     List<Pair<Symbolizer, IFeature>> featuresToRender = this
         .generateFeaturesToRender(envelope);
-    if (featuresToRender != null) {
-      for (Pair<Symbolizer, IFeature> pair : featuresToRender) {
-        if (this.isCancelled()) {
-          return;
+    if (featuresToRender != null && theImage != null) {
+      // one graphics for the whole pass, simple symbolizers are batched
+      Graphics2D graphics = theImage.createGraphics();
+      graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+          RenderingHints.VALUE_ANTIALIAS_ON);
+      try {
+        BatchedSymbolizerPainter painter = new BatchedSymbolizerPainter(this
+            .getLayerViewPanel().getViewport(), graphics, this.getLayer()
+            .getOpacity(), theImage);
+        painter.setDisplayGeometryCache(this.getDisplayGeometryCache());
+        for (Pair<Symbolizer, IFeature> pair : featuresToRender) {
+          if (this.isCancelled()) {
+            return;
+          }
+          painter.paint(pair.getU(), pair.getV());
+          featureRenderIndex++;
         }
-        Symbolizer symbolizer = pair.getU();
-        IFeature feature = pair.getV();
-        this.render(symbolizer, feature, theImage);
-        featureRenderIndex++;
+        painter.flush();
+      } finally {
+        graphics.dispose();
       }
     }
     this.fireActionPerformed(new ActionEvent(this, 5,
@@ -288,12 +314,13 @@ public class AwtLayerRenderer extends AbstractLayerRenderer {
       if (this.isCancelled()) {
         return;
       }
+      Filter filter = CompiledFilter.compile(rule.getFilter());
       filteredCollection = new ArrayList<IFeature>();
       for (IFeature feature : collection) {
         if (this.isCancelled()) {
           return;
         }
-        if (rule.getFilter().evaluate(feature)) {
+        if (filter.evaluate(feature)) {
           filteredCollection.add(feature);
         }
       }
@@ -343,6 +370,30 @@ public class AwtLayerRenderer extends AbstractLayerRenderer {
         .getViewport(), graphics, this.getLayer().getOpacity(), theImage);
   }
 
+  /**
+   * @return the cache of the geometries of the layer simplified for display,
+   *         bound to the current feature collection of the layer
+   */
+  public synchronized DisplayGeometryCache getDisplayGeometryCache() {
+    IFeatureCollection<? extends IFeature> collection = this.getLayer()
+        .getFeatureCollection();
+    if (this.displayGeometryCache == null) {
+      this.displayGeometryCache = new DisplayGeometryCache();
+    }
+    if (collection != this.cachedCollection) {
+      if (this.cachedCollection != null) {
+        this.cachedCollection
+            .removeFeatureCollectionListener(this.displayGeometryCache);
+      }
+      this.displayGeometryCache.clear();
+      if (collection != null) {
+        collection.addFeatureCollectionListener(this.displayGeometryCache);
+      }
+      this.cachedCollection = collection;
+    }
+    return this.displayGeometryCache;
+  }
+
   /** Clear the image cache, i.e. delete the current image. */
   public void clearImageCache() {
     this.setImage(null);
@@ -386,6 +437,25 @@ public class AwtLayerRenderer extends AbstractLayerRenderer {
         .getLayerViewPanel().getHeight() : this.getOffscreenHeight();
   }
 
+  /**
+   * Compile the filter of a rule once and reuse it for the following features.
+   * The rule is compiled again if its filter has been replaced.
+   * @param rule the rule
+   * @return the compiled filter of the rule, null if it has no filter
+   */
+  private Filter getCompiledFilter(final Rule rule) {
+    Filter source = rule.getFilter();
+    synchronized (this.compiledFilters) {
+      Pair<Filter, Filter> compiled = this.compiledFilters.get(rule);
+      if (compiled == null || compiled.getU() != source) {
+        compiled = new Pair<Filter, Filter>(source,
+            CompiledFilter.compile(source));
+        this.compiledFilters.put(rule, compiled);
+      }
+      return compiled.getV();
+    }
+  }
+
   /**
    * @param theImage the image
    * @param feature the feature
@@ -410,11 +480,12 @@ public class AwtLayerRenderer extends AbstractLayerRenderer {
               return;
             }
             Rule rule = featureTypeStyle.getRules().get(indexRule);
+            Filter filter = this.getCompiledFilter(rule);
+            if (filter != null && !filter.evaluate(feature)) {
+              continue;
+            }
             for (Symbolizer symbolizer : rule.getSymbolizers()) {
-              if (rule.getFilter() == null
-                  || rule.getFilter().evaluate(feature)) {
-                this.render(symbolizer, feature, theImage);
-              }
+              this.render(symbolizer, feature, theImage);
             }
           }
         }
@@ -464,13 +535,15 @@ public class AwtLayerRenderer extends AbstractLayerRenderer {
             return;
           }
           Map<Rule, Set<IFeature>> filteredFeatures = new HashMap<Rule, Set<IFeature>>();
+          Map<Rule, Filter> filters = new HashMap<Rule, Filter>();
           for (Rule rule : featureTypeStyle.getRules()) {
             filteredFeatures.put(rule, new HashSet<IFeature>());
+            filters.put(rule, CompiledFilter.compile(rule.getFilter()));
           }
           for (IFeature feature : visibleFeatures) {
             for (Rule rule : featureTypeStyle.getRules()) {
-              if (rule.getFilter() == null
-                  || rule.getFilter().evaluate(feature)) {
+              Filter filter = filters.get(rule);
+              if (filter == null || filter.evaluate(feature)) {
                 filteredFeatures.get(rule).add(feature);
                 break;
               }
@@ -493,7 +566,12 @@ public class AwtLayerRenderer extends AbstractLayerRenderer {
   }
 
   @Override
-  public void reset() {
-    // nothing to reset
+  public synchronized void reset() {
+    if (this.cachedCollection != null) {
+      this.cachedCollection
+          .removeFeatureCollectionListener(this.displayGeometryCache);
+      this.cachedCollection = null;
+    }
+    this.displayGeometryCache = null;
   }
 }
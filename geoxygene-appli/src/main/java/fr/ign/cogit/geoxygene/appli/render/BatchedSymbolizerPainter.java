@@ -0,0 +1,552 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.appli.render;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+import java.util.Objects;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiSurface;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.ICurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableSurface;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IRing;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.appli.Viewport;
+import fr.ign.cogit.geoxygene.appli.render.DisplayGeometryCache.DisplayGeometry;
+import fr.ign.cogit.geoxygene.style.Fill;
+import fr.ign.cogit.geoxygene.style.LineSymbolizer;
+import fr.ign.cogit.geoxygene.style.PolygonSymbolizer;
+import fr.ign.cogit.geoxygene.style.Symbolizer;
+import fr.ign.cogit.geoxygene.util.ColorUtil;
+
+/**
+ * Paints a sequence of (symbolizer, feature) pairs into a single
+ * {@link Graphics2D}, batching the simple polygon and line symbolizers.
+ * <p>
+ * A symbolizer is simple when it only uses a solid fill and/or a solid stroke:
+ * no shadow, graphic fill or stroke, texture, colour map, categorized map,
+ * proxy symbol or perpendicular offset. Consecutive features painted with the
+ * same simple symbolizer and the same opaque colour, either as a fill or as a
+ * stroke, are accumulated in one {@link Path2D}, painted in a single call when
+ * the symbolizer or the colour changes. Coordinates are copied into a primitive
+ * array and transformed in bulk by the model to view transform, vertices closer
+ * than half a pixel to the previous one are dropped and features smaller than a
+ * pixel, outline included, are collapsed to a single pixel, painted at most
+ * once per batch. When a {@link DisplayGeometryCache} is set, the geometries
+ * are read from it, already simplified for the scale of the viewport. Other
+ * symbolizers and geometries are painted by {@link RenderUtil} as usual.
+ * <p>
+ * Painting such a batch at once gives the same image as painting its features
+ * one by one. Features that are both filled and stroked, or painted with a
+ * translucent colour, are still painted one at a time (fill then stroke) so
+ * that an overlapping feature hides the outline of the previous one and
+ * overlapping translucent features are blended as before.
+ *
+ * @see AwtLayerRenderer
+ * @see RenderUtil
+ */
+public class BatchedSymbolizerPainter {
+
+  /** Number of coordinates after which the current batch is painted. */
+  private static final int MAX_BATCH_COORDINATES = 1 << 16;
+  /** Vertices closer than this distance (in pixels) are merged. */
+  private static final double PIXEL_TOLERANCE = 0.5;
+
+  private final Viewport viewport;
+  private final Graphics2D graphics;
+  private final double opacity;
+  private final BufferedImage image;
+  /** Model to view transform, null if not invertible. */
+  private AffineTransform transform = null;
+  /** Simplified geometries, null to use the full geometries. */
+  private DisplayGeometryCache cache = null;
+
+  /** The symbolizer of the current batch. */
+  private Symbolizer symbolizer = null;
+  /** True if the current symbolizer is batched. */
+  private boolean batched = false;
+  private Color fillColor = null;
+  private Color strokeColor = null;
+  private Stroke stroke = null;
+  /** Width of {@link #stroke} in pixels. */
+  private double strokeWidth = 0;
+
+  /** Rings and lines of the current batch. */
+  private final Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO,
+      1024);
+  /** Features smaller than a pixel, collapsed to one pixel each. */
+  private final Path2D.Double pixels = new Path2D.Double(
+      Path2D.WIND_NON_ZERO, 256);
+  /** Pixels already in {@link #pixels}. */
+  private final BitSet paintedPixels = new BitSet();
+  private int nbCoordinates = 0;
+  /** Current tolerance of {@link #toView(int)}, in pixels. */
+  private double tolerance = PIXEL_TOLERANCE;
+  private double[] buffer = new double[256];
+
+  /**
+   * @param viewport the viewport defining the model to view transform
+   * @param graphics the graphics to paint into, shared by all the features
+   * @param opacity the opacity of the layer
+   * @param image the image behind the graphics, used by textured fills
+   */
+  public BatchedSymbolizerPainter(Viewport viewport, Graphics2D graphics,
+      double opacity, BufferedImage image) {
+    this.viewport = viewport;
+    this.graphics = graphics;
+    this.opacity = opacity;
+    this.image = image;
+    try {
+      this.transform = viewport.getModelToViewTransform();
+    } catch (NoninvertibleTransformException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Use simplified geometries from a cache instead of the full geometries of
+   * the features.
+   *
+   * @param cache the cache, null to use the full geometries
+   */
+  public void setDisplayGeometryCache(DisplayGeometryCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * @param symbolizer a symbolizer
+   * @return true if the features painted with this symbolizer can be batched
+   */
+  public static boolean isBatchable(Symbolizer symbolizer) {
+    if (symbolizer.getShadow() != null) {
+      return false;
+    }
+    if (symbolizer.getStroke() != null
+        && symbolizer.getStroke().getGraphicType() != null) {
+      return false;
+    }
+    if (symbolizer instanceof PolygonSymbolizer) {
+      PolygonSymbolizer polygonSymbolizer = (PolygonSymbolizer) symbolizer;
+      Fill fill = polygonSymbolizer.getFill();
+      return polygonSymbolizer.getColorMap() == null
+          && polygonSymbolizer.getCategorizedMap() == null
+          && (fill == null || (fill.getGraphicFill() == null && fill
+              .getExpressiveFill() == null));
+    }
+    if (symbolizer instanceof LineSymbolizer) {
+      LineSymbolizer lineSymbolizer = (LineSymbolizer) symbolizer;
+      return lineSymbolizer.getStroke() != null
+          && lineSymbolizer.getColorMap() == null
+          && lineSymbolizer.getCategorizedMap() == null
+          && lineSymbolizer.getProxySymbol() == null
+          && lineSymbolizer.getPerpendicularOffset() == 0;
+    }
+    return false;
+  }
+
+  /**
+   * Paint a feature with a symbolizer, or add it to the current batch.
+   *
+   * @param theSymbolizer the symbolizer
+   * @param feature the feature
+   */
+  public void paint(Symbolizer theSymbolizer, IFeature feature) {
+    if (theSymbolizer != this.symbolizer) {
+      this.flush();
+      this.setSymbolizer(theSymbolizer);
+    }
+    IGeometry geometry = this.batched ? RenderUtil.getGeometry(
+        theSymbolizer.getGeometryPropertyName(), feature) : null;
+    if (!this.batched || geometry == null || !this.add(feature, geometry)) {
+      this.flush();
+      this.paintUnbatched(theSymbolizer, feature);
+    }
+  }
+
+  /**
+   * Paint the current batch.
+   */
+  public void flush() {
+    if (this.nbCoordinates > 0) {
+      if (this.fillColor != null) {
+        this.graphics.setColor(this.fillColor);
+        this.graphics.fill(this.path);
+      }
+      if (this.strokeColor != null) {
+        this.graphics.setColor(this.strokeColor);
+        if (this.symbolizer instanceof PolygonSymbolizer) {
+          // polygon outlines are filled like in RenderUtil
+          this.graphics.fill(this.stroke.createStrokedShape(this.path));
+        } else {
+          this.graphics.setStroke(this.stroke);
+          this.graphics.draw(this.path);
+        }
+      }
+      this.path.reset();
+      this.nbCoordinates = 0;
+    }
+    if (!this.paintedPixels.isEmpty()) {
+      this.graphics.setColor(this.strokeColor != null ? this.strokeColor
+          : this.fillColor);
+      this.graphics.fill(this.pixels);
+      this.pixels.reset();
+      this.paintedPixels.clear();
+    }
+  }
+
+  private void setSymbolizer(Symbolizer theSymbolizer) {
+    this.symbolizer = theSymbolizer;
+    this.batched = this.transform != null && isBatchable(theSymbolizer);
+    this.fillColor = null;
+    this.strokeColor = null;
+    this.stroke = null;
+    this.strokeWidth = 0;
+    if (!this.batched) {
+      return;
+    }
+    double scale = 1;
+    if (!theSymbolizer.getUnitOfMeasure().equalsIgnoreCase(Symbolizer.PIXEL)) {
+      scale = this.transform.getScaleX();
+    }
+    fr.ign.cogit.geoxygene.style.Stroke symbolizerStroke = theSymbolizer
+        .getStroke();
+    if (theSymbolizer instanceof PolygonSymbolizer) {
+      Fill fill = ((PolygonSymbolizer) theSymbolizer).getFill();
+      if (fill != null && fill.getColor() != null && this.opacity > 0f
+          && fill.getFillOpacity() * this.opacity > 0f) {
+        float[] components = fill.getColor().getComponents(null);
+        this.fillColor = new Color(components[0], components[1],
+            components[2], components[3] * (float) this.opacity);
+      }
+      if (symbolizerStroke != null) {
+        // same line caps as RenderUtil for polygon outlines
+        if (symbolizerStroke.getStrokeLineJoin() == BasicStroke.JOIN_MITER) {
+          symbolizerStroke.setStrokeLineCap(BasicStroke.CAP_SQUARE);
+        } else if (symbolizerStroke.getStrokeLineJoin() == BasicStroke.JOIN_BEVEL) {
+          symbolizerStroke.setStrokeLineCap(BasicStroke.CAP_BUTT);
+        } else if (symbolizerStroke.getStrokeLineJoin() == BasicStroke.JOIN_ROUND) {
+          symbolizerStroke.setStrokeLineCap(BasicStroke.CAP_ROUND);
+        }
+        if (symbolizerStroke.getStrokeOpacity() <= 0f) {
+          symbolizerStroke = null;
+        }
+      }
+    }
+    if (symbolizerStroke != null) {
+      this.stroke = symbolizerStroke.toAwtStroke((float) scale);
+      if (this.stroke instanceof BasicStroke) {
+        this.strokeWidth = ((BasicStroke) this.stroke).getLineWidth();
+      }
+    }
+  }
+
+  /**
+   * Add a feature to the current batch.
+   *
+   * @return false if the geometry can not be batched
+   */
+  private boolean add(IFeature feature, IGeometry geometry) {
+    boolean polygon = this.symbolizer instanceof PolygonSymbolizer;
+    if (polygon) {
+      if (!geometry.isPolygon() && !geometry.isMultiSurface()) {
+        return false;
+      }
+    } else if (!(geometry instanceof ICurve) && !geometry.isPolygon()
+        && !geometry.isMultiCurve()) {
+      return false;
+    }
+    if (this.stroke != null) {
+      Color color = this.symbolizer.getStroke().getColor(feature);
+      if (color != null) {
+        color = ColorUtil.getColorWithOpacity(color, this.opacity);
+      } else if (!polygon) {
+        return true;
+      }
+      if (!Objects.equals(color, this.strokeColor)) {
+        this.flush();
+        this.strokeColor = color;
+      }
+    }
+    if (this.fillColor == null && this.strokeColor == null) {
+      return true;
+    }
+    IEnvelope envelope = geometry.getEnvelope();
+    double width = envelope.width() * Math.abs(this.transform.getScaleX());
+    double height = envelope.length() * Math.abs(this.transform.getScaleY());
+    if (width >= 1 || height >= 1) {
+      this.addGeometry(feature, geometry, polygon);
+    } else if (this.strokeColor == null
+        || Math.max(width, height) + this.strokeWidth < 1) {
+      this.collapse(envelope);
+    } else {
+      // wide outline around a feature smaller than a pixel: keep all its
+      // vertices
+      this.tolerance = 0;
+      try {
+        this.addGeometry(null, geometry, polygon);
+      } finally {
+        this.tolerance = PIXEL_TOLERANCE;
+      }
+    }
+    if (!this.isMergeable() || this.nbCoordinates > MAX_BATCH_COORDINATES) {
+      this.flush();
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the next features can be added to the current batch,
+   *         i.e. if the batch is painted with a single opaque colour
+   */
+  private boolean isMergeable() {
+    if (this.fillColor != null && this.strokeColor != null) {
+      return false;
+    }
+    Color color = this.fillColor != null ? this.fillColor : this.strokeColor;
+    return color.getAlpha() == 255;
+  }
+
+  /**
+   * Add the geometry of a feature to the current batch, read from the display
+   * geometry cache if any.
+   *
+   * @param feature the feature, null to ignore the display geometry cache
+   */
+  @SuppressWarnings("unchecked")
+  private void addGeometry(IFeature feature, IGeometry geometry,
+      boolean polygon) {
+    DisplayGeometry displayGeometry = null;
+    if (this.cache != null && feature != null && geometry == feature.getGeom()) {
+      displayGeometry = this.cache.get(feature,
+          Math.abs(this.transform.getScaleX()));
+    }
+    if (displayGeometry != null) {
+      this.add(displayGeometry, polygon);
+    } else if (polygon) {
+      if (geometry.isPolygon()) {
+        this.addPolygon((IPolygon) geometry);
+      } else {
+        for (IOrientableSurface surface : (IMultiSurface<IOrientableSurface>) geometry) {
+          if (surface instanceof IPolygon) {
+            this.addPolygon((IPolygon) surface);
+          }
+        }
+      }
+    } else if (geometry.isPolygon()) {
+      this.addLine(this.toView(((IPolygon) geometry).getExterior().coord()));
+    } else if (geometry.isMultiCurve()) {
+      for (IOrientableCurve curve : (IMultiCurve<IOrientableCurve>) geometry) {
+        this.addLine(this.toView(curve.coord()));
+      }
+    } else {
+      this.addLine(this.toView(geometry.coord()));
+    }
+  }
+
+  /**
+   * Collapse a geometry smaller than a pixel, outline included, to the pixel
+   * of the center of its envelope.
+   */
+  private void collapse(IEnvelope envelope) {
+    IDirectPosition center = envelope.center();
+    this.buffer[0] = center.getX();
+    this.buffer[1] = center.getY();
+    this.transform.transform(this.buffer, 0, this.buffer, 0, 1);
+    int x = (int) Math.floor(this.buffer[0]);
+    int y = (int) Math.floor(this.buffer[1]);
+    int width = this.viewport.getViewWidth();
+    if (x < 0 || y < 0 || x >= width || y >= this.viewport.getViewHeight()) {
+      return;
+    }
+    int index = y * width + x;
+    if (!this.paintedPixels.get(index)) {
+      this.paintedPixels.set(index);
+      this.pixels.append(new Rectangle(x, y, 1, 1), false);
+    }
+  }
+
+  /**
+   * Add the parts of a simplified geometry: all its rings for a polygon
+   * symbolizer, its lines and exteriors for a line symbolizer.
+   */
+  private void add(DisplayGeometry geometry, boolean polygon) {
+    for (int part = 0; part < geometry.getNbParts(); part++) {
+      byte type = geometry.getPartType(part);
+      if (polygon) {
+        if (type != DisplayGeometry.LINE) {
+          this.addRing(this.toView(geometry, part),
+              type == DisplayGeometry.EXTERIOR);
+        }
+      } else if (type != DisplayGeometry.INTERIOR) {
+        this.addLine(this.toView(geometry, part));
+      }
+    }
+  }
+
+  private void addPolygon(IPolygon polygon) {
+    if (polygon.getExterior() == null) {
+      return;
+    }
+    this.addRing(this.toView(polygon.getExterior().coord()), true);
+    for (IRing ring : polygon.getInterior()) {
+      this.addRing(this.toView(ring.coord()), false);
+    }
+  }
+
+  /**
+   * Add the n first vertices of {@link #buffer} as a ring, oriented so that
+   * the non-zero winding rule fills the exteriors and leaves the holes empty.
+   */
+  private void addRing(int n, boolean exterior) {
+    if (n < 3) {
+      return;
+    }
+    double area = 0;
+    for (int i = 0, j = n - 1; i < n; j = i++) {
+      area += this.buffer[2 * j] * this.buffer[2 * i + 1] - this.buffer[2 * i]
+          * this.buffer[2 * j + 1];
+    }
+    if ((area > 0) == exterior) {
+      this.path.moveTo(this.buffer[0], this.buffer[1]);
+      for (int i = 1; i < n; i++) {
+        this.path.lineTo(this.buffer[2 * i], this.buffer[2 * i + 1]);
+      }
+    } else {
+      this.path.moveTo(this.buffer[2 * n - 2], this.buffer[2 * n - 1]);
+      for (int i = n - 2; i >= 0; i--) {
+        this.path.lineTo(this.buffer[2 * i], this.buffer[2 * i + 1]);
+      }
+    }
+    this.path.closePath();
+    this.nbCoordinates += n;
+  }
+
+  /**
+   * Add the n first vertices of {@link #buffer} as a line.
+   */
+  private void addLine(int n) {
+    if (n < 2) {
+      return;
+    }
+    this.path.moveTo(this.buffer[0], this.buffer[1]);
+    for (int i = 1; i < n; i++) {
+      this.path.lineTo(this.buffer[2 * i], this.buffer[2 * i + 1]);
+    }
+    this.nbCoordinates += n;
+  }
+
+  /**
+   * Transform a list of positions into view coordinates in {@link #buffer}.
+   *
+   * @return the number of vertices kept
+   * @see #toView(int)
+   */
+  private int toView(IDirectPositionList list) {
+    int n = list.size();
+    this.ensureBufferCapacity(n);
+    for (int i = 0; i < n; i++) {
+      IDirectPosition p = list.get(i);
+      this.buffer[2 * i] = p.getX();
+      this.buffer[2 * i + 1] = p.getY();
+    }
+    return this.toView(n);
+  }
+
+  /**
+   * Transform a part of a simplified geometry into view coordinates in
+   * {@link #buffer}.
+   *
+   * @return the number of vertices kept
+   * @see #toView(int)
+   */
+  private int toView(DisplayGeometry geometry, int part) {
+    int start = geometry.getPartStart(part);
+    int n = geometry.getPartEnd(part) - start;
+    this.ensureBufferCapacity(n);
+    float[] coordinates = geometry.getCoordinates();
+    double originX = geometry.getOriginX();
+    double originY = geometry.getOriginY();
+    for (int i = 0; i < n; i++) {
+      this.buffer[2 * i] = originX + coordinates[2 * (start + i)];
+      this.buffer[2 * i + 1] = originY + coordinates[2 * (start + i) + 1];
+    }
+    return this.toView(n);
+  }
+
+  private void ensureBufferCapacity(int n) {
+    if (this.buffer.length < 2 * n) {
+      this.buffer = new double[Math.max(2 * n, 2 * this.buffer.length)];
+    }
+  }
+
+  /**
+   * Transform the n first model positions of {@link #buffer} into view
+   * coordinates, dropping the vertices closer than the current tolerance to
+   * the previous one (the first and last vertices are always kept).
+   *
+   * @return the number of vertices kept
+   */
+  private int toView(int n) {
+    this.transform.transform(this.buffer, 0, this.buffer, 0, n);
+    int kept = n > 0 ? 1 : 0;
+    for (int i = 1; i < n; i++) {
+      double x = this.buffer[2 * i];
+      double y = this.buffer[2 * i + 1];
+      if (i == n - 1
+          || Math.abs(x - this.buffer[2 * kept - 2]) >= this.tolerance
+          || Math.abs(y - this.buffer[2 * kept - 1]) >= this.tolerance) {
+        this.buffer[2 * kept] = x;
+        this.buffer[2 * kept + 1] = y;
+        kept++;
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Paint a feature with {@link RenderUtil}, restoring the clip and the
+   * composite it may change since the graphics is shared.
+   */
+  private void paintUnbatched(Symbolizer theSymbolizer, IFeature feature) {
+    Shape clip = this.graphics.getClip();
+    Composite composite = this.graphics.getComposite();
+    RenderUtil.paint(theSymbolizer, feature, this.viewport, this.graphics,
+        this.opacity, this.image);
+    this.graphics.setClip(clip);
+    this.graphics.setComposite(composite);
+  }
+}
@@ -0,0 +1,514 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.appli.render;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.event.FeatureCollectionEvent;
+import fr.ign.cogit.geoxygene.api.feature.event.FeatureCollectionListener;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiSurface;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.ICurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableSurface;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IRing;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+
+/**
+ * Display-side cache of simplified feature geometries.
+ * <p>
+ * For each feature and zoom level, the cache holds the geometry simplified
+ * with the Douglas-Peucker algorithm at a tolerance of
+ * {@link #PIXEL_TOLERANCE} pixel, as float coordinates relative to an origin.
+ * Zoom levels are half octaves of the viewport scale, the tolerance being
+ * computed for the largest scale of the level. Only curves, polygons and their
+ * aggregates are cached.
+ * <p>
+ * The cache is bounded in memory, the least recently used features being
+ * evicted first. A cached geometry is rebuilt when the geometry of its feature
+ * has been replaced; the cache also listens to its feature collection to drop
+ * removed features.
+ *
+ * @see BatchedSymbolizerPainter
+ */
+public class DisplayGeometryCache implements FeatureCollectionListener {
+
+  /** Default memory bound of a cache, in bytes. */
+  public static final long DEFAULT_MAX_BYTES = 64L << 20;
+  /** Simplification tolerance, in pixels. */
+  public static final double PIXEL_TOLERANCE = 0.5;
+  /** Number of zoom levels per octave of the scale. */
+  private static final int LEVELS_PER_OCTAVE = 2;
+  /** Maximum number of zoom levels kept for a feature. */
+  private static final int MAX_LEVELS_PER_FEATURE = 3;
+  /** Approximate memory used by a cache entry besides its coordinates. */
+  private static final int ENTRY_OVERHEAD = 96;
+
+  /**
+   * A simplified geometry: parts (rings or lines) stored as x, y float
+   * coordinates relative to an origin.
+   */
+  public static final class DisplayGeometry {
+    /** Exterior ring of a polygon. */
+    public static final byte EXTERIOR = 0;
+    /** Interior ring of a polygon. */
+    public static final byte INTERIOR = 1;
+    /** Line. */
+    public static final byte LINE = 2;
+
+    private final double originX;
+    private final double originY;
+    private final float[] coordinates;
+    private final int[] partEnds;
+    private final byte[] partTypes;
+
+    DisplayGeometry(double originX, double originY, float[] coordinates,
+        int[] partEnds, byte[] partTypes) {
+      this.originX = originX;
+      this.originY = originY;
+      this.coordinates = coordinates;
+      this.partEnds = partEnds;
+      this.partTypes = partTypes;
+    }
+
+    public double getOriginX() {
+      return this.originX;
+    }
+
+    public double getOriginY() {
+      return this.originY;
+    }
+
+    /** @return x, y coordinates of all the parts, relative to the origin */
+    public float[] getCoordinates() {
+      return this.coordinates;
+    }
+
+    public int getNbParts() {
+      return this.partEnds.length;
+    }
+
+    /** @return the index of the first point of the part */
+    public int getPartStart(int part) {
+      return part == 0 ? 0 : this.partEnds[part - 1];
+    }
+
+    /** @return the index following the last point of the part */
+    public int getPartEnd(int part) {
+      return this.partEnds[part];
+    }
+
+    /** @return {@link #EXTERIOR}, {@link #INTERIOR} or {@link #LINE} */
+    public byte getPartType(int part) {
+      return this.partTypes[part];
+    }
+
+    long sizeInBytes() {
+      return 4L * this.coordinates.length + 5L * this.partEnds.length
+          + ENTRY_OVERHEAD;
+    }
+  }
+
+  /** Cached levels of a feature, linked in least recently used order. */
+  private static final class Entry {
+    final IFeature feature;
+    IGeometry geometry;
+    final int[] levels = new int[MAX_LEVELS_PER_FEATURE];
+    final DisplayGeometry[] geometries = new DisplayGeometry[MAX_LEVELS_PER_FEATURE];
+    int nbLevels = 0;
+    long bytes = 0;
+    Entry previous;
+    Entry next;
+
+    Entry(IFeature feature) {
+      this.feature = feature;
+    }
+  }
+
+  private final Map<IFeature, Entry> entries = new IdentityHashMap<IFeature, Entry>();
+  /** Sentinel of the circular list, head.next being the most recently used. */
+  private final Entry head = new Entry(null);
+  private long maxBytes;
+  private long bytes = 0;
+
+  /** Working arrays used while building a geometry. */
+  private double[] xs = new double[256];
+  private double[] ys = new double[256];
+  private boolean[] kept = new boolean[256];
+  private int[] stack = new int[2 * 256 + 2];
+  private double originX;
+  private double originY;
+  private float[] coordinates = new float[512];
+  private int nbCoordinates;
+  private int[] partEnds = new int[8];
+  private byte[] partTypes = new byte[8];
+  private int nbParts;
+
+  public DisplayGeometryCache() {
+    this(DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * @param maxBytes the memory bound of the cache, in bytes
+   */
+  public DisplayGeometryCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.head.previous = this.head;
+    this.head.next = this.head;
+  }
+
+  public synchronized long getMaxBytes() {
+    return this.maxBytes;
+  }
+
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.evict();
+  }
+
+  /** @return the approximate memory used by the cache, in bytes */
+  public synchronized long getBytes() {
+    return this.bytes;
+  }
+
+  /** @return the number of features in the cache */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * @param scale a viewport scale, in pixels per model unit
+   * @return the zoom level of the scale
+   */
+  public static int getLevel(double scale) {
+    return (int) Math.floor(LEVELS_PER_OCTAVE * Math.log(scale) / Math.log(2));
+  }
+
+  /**
+   * @param level a zoom level
+   * @return the simplification tolerance of the level, in model units
+   */
+  public static double getTolerance(int level) {
+    return PIXEL_TOLERANCE
+        / Math.pow(2, (level + 1) / (double) LEVELS_PER_OCTAVE);
+  }
+
+  /**
+   * Get the geometry of a feature simplified for the given scale, building it
+   * if it is not cached yet.
+   *
+   * @param feature a feature
+   * @param scale the viewport scale, in pixels per model unit
+   * @return the simplified geometry of the feature, or null if its geometry is
+   *         neither a curve nor a polygon nor one of their aggregates
+   */
+  public synchronized DisplayGeometry get(IFeature feature, double scale) {
+    IGeometry geometry = feature.getGeom();
+    if (geometry == null) {
+      return null;
+    }
+    int level = getLevel(scale);
+    Entry entry = this.entries.get(feature);
+    if (entry != null && entry.geometry != geometry) {
+      this.remove(entry);
+      entry = null;
+    }
+    if (entry != null) {
+      this.unlink(entry);
+      this.link(entry);
+      for (int i = 0; i < entry.nbLevels; i++) {
+        if (entry.levels[i] == level) {
+          return entry.geometries[i];
+        }
+      }
+    }
+    DisplayGeometry result = this.build(geometry, getTolerance(level));
+    if (result == null) {
+      return null;
+    }
+    if (entry == null) {
+      entry = new Entry(feature);
+      entry.geometry = geometry;
+      this.entries.put(feature, entry);
+      this.link(entry);
+    }
+    if (entry.nbLevels == MAX_LEVELS_PER_FEATURE) {
+      // forget the oldest level of the feature
+      long size = entry.geometries[0].sizeInBytes();
+      entry.bytes -= size;
+      this.bytes -= size;
+      System.arraycopy(entry.levels, 1, entry.levels, 0,
+          MAX_LEVELS_PER_FEATURE - 1);
+      System.arraycopy(entry.geometries, 1, entry.geometries, 0,
+          MAX_LEVELS_PER_FEATURE - 1);
+      entry.nbLevels--;
+    }
+    entry.levels[entry.nbLevels] = level;
+    entry.geometries[entry.nbLevels] = result;
+    entry.nbLevels++;
+    entry.bytes += result.sizeInBytes();
+    this.bytes += result.sizeInBytes();
+    this.evict();
+    return result;
+  }
+
+  /**
+   * Remove a feature from the cache.
+   *
+   * @param feature a feature
+   */
+  public synchronized void invalidate(IFeature feature) {
+    Entry entry = this.entries.get(feature);
+    if (entry != null) {
+      this.remove(entry);
+    }
+  }
+
+  /** Remove all the features from the cache. */
+  public synchronized void clear() {
+    this.entries.clear();
+    this.head.previous = this.head;
+    this.head.next = this.head;
+    this.bytes = 0;
+  }
+
+  @Override
+  public void changed(FeatureCollectionEvent event) {
+    if (event.getType() == FeatureCollectionEvent.Type.ADDED) {
+      // new features are not in the cache yet
+      return;
+    }
+    if (event.getFeature() == null) {
+      this.clear();
+    } else {
+      this.invalidate(event.getFeature());
+    }
+  }
+
+  private void link(Entry entry) {
+    entry.previous = this.head;
+    entry.next = this.head.next;
+    this.head.next.previous = entry;
+    this.head.next = entry;
+  }
+
+  private void unlink(Entry entry) {
+    entry.previous.next = entry.next;
+    entry.next.previous = entry.previous;
+  }
+
+  private void remove(Entry entry) {
+    this.unlink(entry);
+    this.entries.remove(entry.feature);
+    this.bytes -= entry.bytes;
+  }
+
+  private void evict() {
+    while (this.bytes > this.maxBytes && this.head.previous != this.head) {
+      this.remove(this.head.previous);
+    }
+  }
+
+  /**
+   * Build the simplified version of a geometry.
+   *
+   * @return null if the geometry is not handled
+   */
+  @SuppressWarnings("unchecked")
+  private DisplayGeometry build(IGeometry geometry, double tolerance) {
+    this.nbCoordinates = 0;
+    this.nbParts = 0;
+    if (geometry.isPolygon()) {
+      this.addPolygon((IPolygon) geometry, tolerance);
+    } else if (geometry.isMultiSurface()) {
+      for (IOrientableSurface surface : (IMultiSurface<IOrientableSurface>) geometry) {
+        if (surface instanceof IPolygon) {
+          this.addPolygon((IPolygon) surface, tolerance);
+        }
+      }
+    } else if (geometry instanceof ICurve) {
+      this.addPart(geometry.coord(), DisplayGeometry.LINE, tolerance);
+    } else if (geometry.isMultiCurve()) {
+      for (IOrientableCurve curve : (IMultiCurve<IOrientableCurve>) geometry) {
+        this.addPart(curve.coord(), DisplayGeometry.LINE, tolerance);
+      }
+    } else {
+      return null;
+    }
+    int[] ends = new int[this.nbParts];
+    byte[] types = new byte[this.nbParts];
+    System.arraycopy(this.partEnds, 0, ends, 0, this.nbParts);
+    System.arraycopy(this.partTypes, 0, types, 0, this.nbParts);
+    float[] result = new float[this.nbCoordinates];
+    System.arraycopy(this.coordinates, 0, result, 0, this.nbCoordinates);
+    return new DisplayGeometry(this.originX, this.originY, result, ends, types);
+  }
+
+  private void addPolygon(IPolygon polygon, double tolerance) {
+    if (polygon.getExterior() == null) {
+      return;
+    }
+    this.addPart(polygon.getExterior().coord(), DisplayGeometry.EXTERIOR,
+        tolerance);
+    for (IRing ring : polygon.getInterior()) {
+      this.addPart(ring.coord(), DisplayGeometry.INTERIOR, tolerance);
+    }
+  }
+
+  /**
+   * Simplify a list of positions and append it as a new part.
+   */
+  private void addPart(IDirectPositionList list, byte type, double tolerance) {
+    int n = list.size();
+    if (n < 2) {
+      return;
+    }
+    if (this.xs.length < n) {
+      int length = Math.max(n, 2 * this.xs.length);
+      this.xs = new double[length];
+      this.ys = new double[length];
+      this.kept = new boolean[length];
+      this.stack = new int[2 * length + 2];
+    }
+    for (int i = 0; i < n; i++) {
+      IDirectPosition p = list.get(i);
+      this.xs[i] = p.getX();
+      this.ys[i] = p.getY();
+    }
+    int nbKept = this.douglasPeucker(n, tolerance);
+    if (type != DisplayGeometry.LINE && nbKept < 4) {
+      if (type == DisplayGeometry.INTERIOR) {
+        // the hole is smaller than the tolerance
+        return;
+      }
+      // keep the exterior as a degenerate ring through its farthest point
+      int farthest = this.farthest(0, n - 1);
+      if (!this.kept[farthest]) {
+        this.kept[farthest] = true;
+        nbKept++;
+      }
+    }
+    if (this.nbCoordinates == 0) {
+      this.originX = this.xs[0];
+      this.originY = this.ys[0];
+    }
+    if (this.coordinates.length < this.nbCoordinates + 2 * nbKept) {
+      float[] array = new float[Math.max(this.nbCoordinates + 2 * nbKept,
+          2 * this.coordinates.length)];
+      System.arraycopy(this.coordinates, 0, array, 0, this.nbCoordinates);
+      this.coordinates = array;
+    }
+    for (int i = 0; i < n; i++) {
+      if (this.kept[i]) {
+        this.coordinates[this.nbCoordinates++] = (float) (this.xs[i] - this.originX);
+        this.coordinates[this.nbCoordinates++] = (float) (this.ys[i] - this.originY);
+      }
+    }
+    if (this.nbParts == this.partEnds.length) {
+      int[] ends = new int[2 * this.nbParts];
+      byte[] types = new byte[2 * this.nbParts];
+      System.arraycopy(this.partEnds, 0, ends, 0, this.nbParts);
+      System.arraycopy(this.partTypes, 0, types, 0, this.nbParts);
+      this.partEnds = ends;
+      this.partTypes = types;
+    }
+    this.partEnds[this.nbParts] = this.nbCoordinates / 2;
+    this.partTypes[this.nbParts] = type;
+    this.nbParts++;
+  }
+
+  /**
+   * Mark in {@link #kept} the vertices kept by the Douglas-Peucker algorithm
+   * among the n first vertices of {@link #xs}, {@link #ys}.
+   *
+   * @return the number of vertices kept
+   */
+  private int douglasPeucker(int n, double tolerance) {
+    for (int i = 0; i < n; i++) {
+      this.kept[i] = false;
+    }
+    this.kept[0] = true;
+    this.kept[n - 1] = true;
+    int nbKept = (n > 1) ? 2 : 1;
+    double tolerance2 = tolerance * tolerance;
+    int top = 0;
+    this.stack[top++] = 0;
+    this.stack[top++] = n - 1;
+    while (top > 0) {
+      int last = this.stack[--top];
+      int first = this.stack[--top];
+      if (last - first < 2) {
+        continue;
+      }
+      int index = this.farthest(first, last);
+      if (this.distance2(index, first, last) > tolerance2) {
+        this.kept[index] = true;
+        nbKept++;
+        this.stack[top++] = first;
+        this.stack[top++] = index;
+        this.stack[top++] = index;
+        this.stack[top++] = last;
+      }
+    }
+    return nbKept;
+  }
+
+  /** @return the vertex strictly between first and last farthest from them */
+  private int farthest(int first, int last) {
+    int index = first + 1;
+    double max = -1;
+    for (int i = first + 1; i < last; i++) {
+      double d = this.distance2(i, first, last);
+      if (d > max) {
+        max = d;
+        index = i;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * @return the square of the distance between the vertex i and the segment
+   *         [first, last], or the vertex first if it is the same as last
+   */
+  private double distance2(int i, int first, int last) {
+    double dx = this.xs[last] - this.xs[first];
+    double dy = this.ys[last] - this.ys[first];
+    double px = this.xs[i] - this.xs[first];
+    double py = this.ys[i] - this.ys[first];
+    double length2 = dx * dx + dy * dy;
+    if (length2 > 0) {
+      double t = (px * dx + py * dy) / length2;
+      if (t > 1) {
+        px = this.xs[i] - this.xs[last];
+        py = this.ys[i] - this.ys[last];
+      } else if (t > 0) {
+        px -= t * dx;
+        py -= t * dy;
+      }
+    }
+    return px * px + py * py;
+  }
+}
@@ -21,8 +21,14 @@ package fr.ign.cogit.geoxygene.appli.render;
 
 import java.awt.Graphics2D;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -33,6 +39,14 @@ import fr.ign.cogit.geoxygene.util.gl.RenderingException;
 /**
  * A rendering manager responsible for rendering layers in a
  * {@link LayerViewPanel}.
+ * <p>
+ * Each layer renders its own offscreen image on a bounded pool of worker
+ * threads shared by all the managers, so several layers are rendered at the
+ * same time. The renderings of a given layer never overlap: a new rendering
+ * request cancels the current one and starts when it is over, and requests
+ * that are superseded before starting are skipped. The panel is repainted
+ * each time a layer is finished, the images being composited in the order of
+ * the layers.
  * 
  * @author Julien Perret
  */
@@ -71,73 +85,32 @@ public class MultithreadedRenderingManager implements RenderingManager {
     return this.selectionRenderer;
   }
 
-  /** The current daemon. */
-  private Thread daemon = null;
-  /** Maximum time a daemon waits for a runnable to be added to the queue. */
-  public static final long DAEMON_MAXIMUM_WAITING_TIME = 5000L;
-  /** Queue containg the runnables, one for each layer. */
-  private final LinkedBlockingQueue<Runnable> runnableQueue = new LinkedBlockingQueue<Runnable>();
-
-  /** @return The queue containg the runnables, one for each layer. */
-  public final LinkedBlockingQueue<Runnable> getRunnableQueue() {
-    return this.runnableQueue;
-  }
+  /** Number of threads used to render the layers. */
+  public static final int NB_RENDERING_THREADS = Math.max(1, Runtime
+      .getRuntime().availableProcessors());
+
+  /** Worker threads shared by all the rendering managers. */
+  private static final ExecutorService RENDERING_POOL = Executors
+      .newFixedThreadPool(NB_RENDERING_THREADS, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "rendering-" //$NON-NLS-1$
+              + this.count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
 
   /**
-   * Create a new daemon.
-   * 
-   * @return the new daemon
-   * @see Thread
+   * Last rendering request of each renderer: the task of a request only runs
+   * if it is still the last one when it starts.
    */
-  private Thread createDaemon() {
-    Thread newDaemon = new Thread() {
-      @Override
-      public void run() {
-        try {
-          for (;;) {
-            Runnable runnable;
-            synchronized (MultithreadedRenderingManager.this.getRunnableQueue()) {
-              if (MultithreadedRenderingManager.this.getRunnableQueue()
-                  .isEmpty()) {
-                try {
-                  MultithreadedRenderingManager.this
-                      .getRunnableQueue()
-                      .wait(
-                          MultithreadedRenderingManager.DAEMON_MAXIMUM_WAITING_TIME);
-                } catch (InterruptedException ie) {
-                  if (LOGGER.isTraceEnabled()) {
-                    LOGGER.trace(ie.getMessage());
-                    // ie.printStackTrace();
-                  }
-                }
-              }
-              runnable = MultithreadedRenderingManager.this.getRunnableQueue()
-                  .poll();
-              if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace(MultithreadedRenderingManager.this
-                    .getRunnableQueue().size() + " runnables in the queue" //$NON-NLS-1$
-                );
-              }
-              if (runnable == null) {
-                return;
-              }
-            }
-            try {
-              runnable.run();
-            } catch (Exception e) {
-              e.printStackTrace();
-            }
-          }
-        } finally {
-          if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("Deamon thread finished"); //$NON-NLS-1$
-          }
-          // MultithreadedRenderingManager.this.getLayerViewPanel().superRepaint();
-        }
-      }
-    };
-    newDaemon.setDaemon(true);
-    return newDaemon;
+  private final Map<LayerRenderer, Request> requests = new HashMap<LayerRenderer, Request>();
+
+  private static class Request {
+    private CompletableFuture<Void> task;
   }
 
   /**
@@ -171,22 +144,12 @@ public class MultithreadedRenderingManager implements RenderingManager {
   @Override
   public final void renderAll() {
 
-    // if the daemon is still alive, interrupt it
-    if (this.daemon != null && this.daemon.isAlive()) {
-      synchronized (this.daemon) {
-        this.daemon.interrupt();
-      }
-    }
+    // cancel the renderings in progress, the viewport has changed
+    this.cancelAll();
     if (this.getLayerViewPanel().getProjectFrame() == null
         || this.getLayerViewPanel().getProjectFrame().getSld() == null) {
       return;
     }
-    // create a new daemon
-    this.daemon = this.createDaemon();
-    // clear the queue of runnables
-    this.getRunnableQueue().clear();
-    // start the new daemon
-    this.daemon.start();
 
     synchronized (this.getLayerViewPanel().getProjectFrame().getSld()
         .getLayers()) {
@@ -202,6 +165,22 @@ public class MultithreadedRenderingManager implements RenderingManager {
     this.render(this.selectionRenderer);
   }
 
+  /**
+   * Cancel all the renderings, running or waiting for a worker.
+   */
+  private void cancelAll() {
+    synchronized (this.requests) {
+      for (Map.Entry<LayerRenderer, Request> e : this.requests.entrySet()) {
+        e.getKey().cancel();
+        // replace the request so that a waiting task is skipped, but keep its
+        // task to chain the next rendering after it
+        Request r = new Request();
+        r.task = e.getValue().task;
+        e.setValue(r);
+      }
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -238,10 +217,17 @@ public class MultithreadedRenderingManager implements RenderingManager {
   @Override
   public final void removeLayer(final Layer layer) {
     synchronized (this.rendererMap) {
-      if (this.rendererMap.get(layer) == null) {
+      AwtLayerRenderer renderer = this.rendererMap.remove(layer);
+      if (renderer == null) {
         return;
       }
-      this.rendererMap.remove(layer);
+      synchronized (this.requests) {
+        // stop the rendering in progress and skip the waiting one, and do not
+        // keep the renderer in the requests
+        renderer.cancel();
+        this.requests.remove(renderer);
+      }
+      renderer.reset();
     }
   }
 
@@ -255,16 +241,36 @@ public class MultithreadedRenderingManager implements RenderingManager {
   @Override
   public void render(final LayerRenderer renderer) {
 
-    // if the renderer is already rendering, interrupt the current
-    // rendering to start a new one
     if (renderer == null) {
       LOGGER.warn("Rendering process requested but no renderer has been set");
       return;
     }
     LOGGER.trace("rendering process for " + renderer.getClass());
 
-    if (renderer.isRendering()) {
+    synchronized (this.requests) {
+      // if the renderer is already rendering, interrupt the current
+      // rendering to start a new one
       renderer.cancel();
+      final Request request = new Request();
+      Request previous = this.requests.get(renderer);
+      CompletableFuture<Void> start = CompletableFuture.completedFuture(null);
+      if (previous != null && previous.task != null) {
+        // wait for the end of the previous rendering of this renderer
+        start = previous.task.exceptionally(t -> null);
+      }
+      this.requests.put(renderer, request);
+      request.task = start.thenRunAsync(() -> this.run(renderer, request),
+          RENDERING_POOL);
+    }
+  }
+
+  /**
+   * Actual rendering of a request, in a worker thread.
+   */
+  private void run(final LayerRenderer renderer, final Request request) {
+    if (!this.isLastRequest(renderer, request)) {
+      // a newer request has been made
+      return;
     }
     // clear the image cache
     try {
@@ -272,19 +278,24 @@ public class MultithreadedRenderingManager implements RenderingManager {
     } catch (RenderingException e) {
       e.printStackTrace();
     }
-    // create a new runnable for the rendering
+    // create a new runnable for the rendering and run it
     Runnable runnable = renderer.createRunnable();
-    if (runnable != null) {
-      synchronized (this.getRunnableQueue()) {
-        // add it to the queue
-        this.getRunnableQueue().add(runnable);
-        // notify the queue which should wake the daemon up as it
-        // should be waiting on it
-        this.getRunnableQueue().notify();
+    // createRunnable() resets the cancellation, check again
+    if (runnable != null && this.isLastRequest(renderer, request)) {
+      try {
+        runnable.run();
+      } catch (Exception e) {
+        e.printStackTrace();
       }
     }
   }
 
+  private boolean isLastRequest(LayerRenderer renderer, Request request) {
+    synchronized (this.requests) {
+      return this.requests.get(renderer) == request;
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -351,13 +362,16 @@ public class MultithreadedRenderingManager implements RenderingManager {
   @Override
   public final void dispose() {
     synchronized (this.rendererMap) {
+      for (AwtLayerRenderer renderer : this.rendererMap.values()) {
+        renderer.reset();
+      }
       this.rendererMap.clear();
     }
-    this.getRunnableQueue().clear();
-    if (this.daemon != null) {
-      synchronized (this.daemon) {
-        this.daemon.interrupt();
+    synchronized (this.requests) {
+      for (LayerRenderer renderer : this.requests.keySet()) {
+        renderer.cancel();
       }
+      this.requests.clear();
     }
   }
 
@@ -370,26 +384,12 @@ public class MultithreadedRenderingManager implements RenderingManager {
    */
   @Override
   public void repaint() {
-    // we check if there is still something being rendered
-    // the fastest way is to check for renderers in the queue
-    if (!this.getRunnableQueue().isEmpty()) {
-      return;
-    }
-    // then we check if there is still a renderer working
-    for (LayerRenderer r : this.getRenderers()) {
-      if (r.isRendering() || !r.isRendered()) {
-        return;
-      }
-    }
-    if (this.selectionRenderer != null
-        && (this.selectionRenderer.isRendering() || !this.selectionRenderer
-            .isRendered())) {
-      return;
-    }
+    // called each time a layer is finished: the finished layers are
+    // composited without waiting for the other ones (swing merges the
+    // repaint requests)
     if (LOGGER.isTraceEnabled()) {
       LOGGER.trace("Repaint"); //$NON-NLS-1$
     }
-    // nothing is being rendered, we can actually repaint the panel
     MultithreadedRenderingManager.this.getLayerViewPanel().superRepaint();
   }
 
@@ -402,10 +402,13 @@ public class MultithreadedRenderingManager implements RenderingManager {
    */
   @Override
   public boolean isRendering() {
-    // we check if there is still something being rendered
-    // the fastest way is to check for renderers in the queue
-    if (!this.getRunnableQueue().isEmpty()) {
-      return true;
+    // we check if there is still a rendering waiting for a worker
+    synchronized (this.requests) {
+      for (Request request : this.requests.values()) {
+        if (request.task != null && !request.task.isDone()) {
+          return true;
+        }
+      }
     }
     // then we check if there is still a renderer working
     for (LayerRenderer r : this.getRenderers()) {
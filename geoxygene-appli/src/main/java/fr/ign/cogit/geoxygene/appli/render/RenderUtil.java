@@ -1528,7 +1528,7 @@ public final class RenderUtil {
 
       GridCoverageRenderer renderer = new GridCoverageRenderer(
           coverage.getCoordinateReferenceSystem(), renderEnvelope,
-          viewport.getLayerViewPanels().iterator().next().getVisibleRect(),
+          viewport.getViewRectangle(),
           null);
       // For geotools, we create a style
       org.geotools.styling.RasterSymbolizer s = new StyleBuilder()
@@ -39,6 +39,7 @@ import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.log4j.Logger;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.appli.gl.GLSimpleComplex;
 import fr.ign.cogit.geoxygene.appli.render.GeoxygeneGLRenderer;
 import fr.ign.cogit.geoxygene.style.Symbolizer;
 import fr.ign.cogit.geoxygene.util.gl.GLComplex;
@@ -233,6 +234,10 @@ public class RenderingStatistics {
         nbGLComplex++;
         meshCount += primitive.getMeshes().size();
         vertexCount += primitive.getVertices().size();
+        if (primitive instanceof GLSimpleComplex) {
+            // vertices stored in the packed buffers of the tesselated lines
+            vertexCount += ((GLSimpleComplex) primitive).getPackedVertexCount();
+        }
         for (GLMesh mesh : primitive.getMeshes()) {
             triangleCount += (mesh.getLastIndex() - mesh.getFirstIndex()) / 3;
         }
@@ -0,0 +1,69 @@
+package fr.ign.cogit.geoxygene.util.batchrenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Write each tile as a PNG file in a directory, either as prefix + "i_j.png"
+ * (the naming used by {@link GeoxBatchRenderer}) or in a z/x/y layout.
+ */
+public class DirectoryTileSink implements TileSink {
+
+  private final File outputDir;
+  private final String prefix;
+  private final int zoom;
+  private final int nbRows;
+
+  /**
+   * Tiles are written as outputDir/prefix + "i_j.png".
+   * @param outputDir
+   * @param prefix
+   */
+  public DirectoryTileSink(String outputDir, String prefix) {
+    this.outputDir = new File(outputDir);
+    this.prefix = prefix;
+    this.zoom = -1;
+    this.nbRows = 0;
+  }
+
+  /**
+   * Tiles are written as outputDir/zoom/col/y.png, y being counted from the
+   * northern row of the grid as in XYZ tile servers.
+   * @param outputDir
+   * @param zoom the zoom level of the tiles
+   * @param nbRows the number of rows of the grid
+   */
+  public DirectoryTileSink(String outputDir, int zoom, int nbRows) {
+    this.outputDir = new File(outputDir);
+    this.prefix = "";
+    this.zoom = zoom;
+    this.nbRows = nbRows;
+  }
+
+  @Override
+  public void write(int row, int col, BufferedImage image) throws IOException {
+    File file;
+    if (this.zoom < 0) {
+      file = new File(this.outputDir, this.prefix + row + "_" + col + ".png");
+    } else {
+      file = new File(this.outputDir, this.zoom + File.separator + col
+          + File.separator + (this.nbRows - 1 - row) + ".png");
+    }
+    File dir = file.getParentFile();
+    // another thread may create the directory at the same time
+    if (!dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Cannot create directory " + dir);
+    }
+    if (!ImageIO.write(image, "png", file)) {
+      throw new IOException("No PNG writer for tile " + file);
+    }
+  }
+
+  @Override
+  public void close() {
+    // nothing to close
+  }
+}
@@ -38,6 +38,7 @@ import fr.ign.cogit.geoxygene.util.conversion.WktGeOxygene;
  * it expects a data connector (postgis implementation provided)
  * referencing the features tables,
  * the SLD files and optionally some rasters
+ * @see HeadlessTileRenderer for rendering many tiles without any frame
  * @author imran
  *
  */
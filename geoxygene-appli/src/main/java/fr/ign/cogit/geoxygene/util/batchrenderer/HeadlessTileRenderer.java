@@ -0,0 +1,370 @@
+package fr.ign.cogit.geoxygene.util.batchrenderer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBException;
+
+import org.apache.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.appli.Viewport;
+import fr.ign.cogit.geoxygene.appli.layer.LayerFactory;
+import fr.ign.cogit.geoxygene.appli.layer.LayerFactory.LayerType;
+import fr.ign.cogit.geoxygene.appli.render.RenderUtil;
+import fr.ign.cogit.geoxygene.feature.DataSet;
+import fr.ign.cogit.geoxygene.filter.CompiledFilter;
+import fr.ign.cogit.geoxygene.filter.Filter;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.style.FeatureTypeStyle;
+import fr.ign.cogit.geoxygene.style.Layer;
+import fr.ign.cogit.geoxygene.style.Rule;
+import fr.ign.cogit.geoxygene.style.Style;
+import fr.ign.cogit.geoxygene.style.StyledLayerDescriptor;
+import fr.ign.cogit.geoxygene.style.Symbolizer;
+import fr.ign.cogit.geoxygene.style.UserStyle;
+import fr.ign.cogit.geoxygene.util.Grid;
+import fr.ign.cogit.geoxygene.util.index.HilbertRTree;
+
+/**
+ * Batch renderer that does not use any frame or layer view panel: the
+ * symbolizers of the SLDs are painted with {@link RenderUtil} directly into
+ * images, through an offscreen {@link Viewport}.
+ * <p>
+ * The tiles of the grid are grouped in metatiles of metaTileSize x
+ * metaTileSize tiles. The features of a metatile are loaded once from the
+ * {@link DataConnector}, then its tiles are rendered concurrently on a
+ * fork/join pool and written to a {@link TileSink}. Rasters are loaded once
+ * for the whole rendering.
+ * <p>
+ * Layers are drawn in the order of the connector tables, then the rasters,
+ * as in {@link GeoxBatchRenderer}. The styles of a table are those of the
+ * layer with the same name in the last SLD describing it.
+ */
+public class HeadlessTileRenderer {
+
+  private static Logger LOGGER = Logger.getLogger(HeadlessTileRenderer.class
+      .getName());
+
+  private final DataConnector connector;
+  /** Styles and opacity of the layers, by name. */
+  private final Map<String, List<CompiledStyle>> styles = new HashMap<String, List<CompiledStyle>>();
+  private final Map<String, Double> opacities = new HashMap<String, Double>();
+  /** Features of the rasters, by layer name. */
+  private final Map<String, IFeatureCollection<IFeature>> rasterData = new LinkedHashMap<String, IFeatureCollection<IFeature>>();
+  private Color background = Color.WHITE;
+  private int metaTileSize = 4;
+  private int marginInPixels = 32;
+  private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+  /**
+   * @param connector the source of the features
+   * @param sldFiles the SLD files describing the layers
+   * @param rasters GeoTIFF files drawn above the features
+   */
+  @SuppressWarnings("unchecked")
+  public HeadlessTileRenderer(DataConnector connector, List<String> sldFiles,
+      List<String> rasters) {
+    this.connector = connector;
+    for (String f : sldFiles) {
+      try {
+        this.addSLD(StyledLayerDescriptor.unmarshall(new File(f)
+            .getAbsolutePath()));
+      } catch (FileNotFoundException | JAXBException e) {
+        e.printStackTrace();
+      }
+    }
+    if (rasters != null && !rasters.isEmpty()) {
+      LayerFactory factory = new LayerFactory(new StyledLayerDescriptor(
+          new DataSet()));
+      for (String raster : rasters) {
+        Layer l = factory.createLayer(raster, LayerType.GEOTIFF);
+        if (l != null && l.getFeatureCollection() != null) {
+          this.addStyles(l);
+          this.rasterData.put(l.getName(),
+              (IFeatureCollection<IFeature>) l.getFeatureCollection());
+        }
+      }
+    }
+  }
+
+  /**
+   * Add the styles of the layers described in the SLD, replacing those of the
+   * layers with the same names.
+   * @param sld
+   */
+  public void addSLD(StyledLayerDescriptor sld) {
+    for (Layer layer : sld.getLayers()) {
+      this.addStyles(layer);
+    }
+    if (sld.getBackground() != null && sld.getBackground().getColor() != null) {
+      this.background = sld.getBackground().getColor();
+    }
+  }
+
+  private void addStyles(Layer layer) {
+    List<CompiledStyle> compiled = new ArrayList<CompiledStyle>();
+    if (layer.getActiveStyles() != null) {
+      for (Style style : layer.getActiveStyles()) {
+        if (style.isUserStyle()) {
+          for (FeatureTypeStyle fts : ((UserStyle) style)
+              .getFeatureTypeStyles()) {
+            compiled.add(new CompiledStyle(fts));
+          }
+        }
+      }
+    }
+    this.styles.put(layer.getName(), compiled);
+    this.opacities.put(layer.getName(), layer.getOpacity());
+  }
+
+  public void setBackground(Color background) {
+    this.background = background;
+  }
+
+  public Color getBackground() {
+    return this.background;
+  }
+
+  /**
+   * @param metaTileSize number of tiles per side of a metatile, i.e. of
+   *          tiles sharing the same loaded features
+   */
+  public void setMetaTileSize(int metaTileSize) {
+    this.metaTileSize = Math.max(1, metaTileSize);
+  }
+
+  public int getMetaTileSize() {
+    return this.metaTileSize;
+  }
+
+  /**
+   * @param marginInPixels margin around a tile in which the features are
+   *          still drawn, so that symbols crossing the tile border are not
+   *          cut
+   */
+  public void setMarginInPixels(int marginInPixels) {
+    this.marginInPixels = marginInPixels;
+  }
+
+  public int getMarginInPixels() {
+    return this.marginInPixels;
+  }
+
+  /**
+   * @param pool the pool rendering the tiles (the common pool by default)
+   */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Render all the tiles of the grid.
+   * @param g the grid
+   * @param largeur the width of the tiles in pixels
+   * @param sink the destination of the tiles
+   * @throws IOException
+   */
+  public void renderTiles(Grid g, int largeur, TileSink sink)
+      throws IOException {
+    this.renderTiles(g, 0, g.nbRows(), 0, g.nbCols(), largeur, sink);
+  }
+
+  /**
+   * Render the tiles [fromLine, toLine[ x [fromCol, toCol[ of the grid.
+   * @param g the grid
+   * @param fromLine
+   * @param toLine
+   * @param fromCol
+   * @param toCol
+   * @param largeur the width of the tiles in pixels
+   * @param sink the destination of the tiles
+   * @throws IOException
+   */
+  public void renderTiles(final Grid g, int fromLine, int toLine,
+      int fromCol, int toCol, final int largeur, final TileSink sink)
+      throws IOException {
+    for (int mi = fromLine; mi < toLine; mi += this.metaTileSize) {
+      for (int mj = fromCol; mj < toCol; mj += this.metaTileSize) {
+        int li = Math.min(mi + this.metaTileSize, toLine);
+        int lj = Math.min(mj + this.metaTileSize, toCol);
+        IEnvelope metaEnv = new GM_Envelope(g.getTileExtentUpperRight(li - 1,
+            lj - 1), g.getTileExtentLowerLeft(mi, mj));
+        final Map<String, IFeatureCollection<IFeature>> data = this
+            .load(metaEnv);
+
+        List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+        for (int i = mi; i < li; i++) {
+          for (int j = mj; j < lj; j++) {
+            final int row = i;
+            final int col = j;
+            final IEnvelope env = new GM_Envelope(g.getTileExtentUpperRight(
+                row, col), g.getTileExtentLowerLeft(row, col));
+            tasks.add(this.pool.submit(() -> {
+              sink.write(row, col, this.renderTile(data, env, largeur));
+              return null;
+            }));
+          }
+        }
+        for (Future<Void> task : tasks) {
+          try {
+            task.get();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+          } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+              throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+          }
+        }
+        LOGGER.info("Metatile " + mi + "_" + mj + " rendered"); //$NON-NLS-1$
+      }
+    }
+  }
+
+  /**
+   * Load the features of all the tables intersecting the envelope, indexed
+   * for the concurrent selections of the tiles.
+   */
+  private Map<String, IFeatureCollection<IFeature>> load(IEnvelope env) {
+    Map<String, IFeatureCollection<IFeature>> data = new LinkedHashMap<String, IFeatureCollection<IFeature>>();
+    for (String table : this.connector.getCouches()) {
+      IPopulation<IFeature> pop = null;
+      try {
+        pop = this.connector.getPopulation(table, env);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+      if (pop == null) {
+        continue;
+      }
+      if (!pop.hasSpatialIndex()) {
+        pop.initSpatialIndex(HilbertRTree.class, false);
+      }
+      data.put(table, pop);
+    }
+    return data;
+  }
+
+  /**
+   * Render a tile into a new image.
+   * @param data the features of the tables
+   * @param env the extent of the tile
+   * @param largeur the width of the image
+   * @return the image
+   */
+  public BufferedImage renderTile(Map<String, IFeatureCollection<IFeature>> data,
+      IEnvelope env, int largeur) {
+    int hauteur = (int) Math.round(largeur * env.length() / env.width());
+    BufferedImage image = new BufferedImage(largeur, hauteur,
+        BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = image.createGraphics();
+    graphics.setColor(this.background);
+    graphics.fillRect(0, 0, largeur, hauteur);
+    graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+        RenderingHints.VALUE_ANTIALIAS_ON);
+
+    Viewport viewport = new Viewport(largeur, hauteur);
+    try {
+      viewport.zoom(env);
+    } catch (NoninvertibleTransformException e) {
+      e.printStackTrace();
+      return image;
+    }
+    double margin = this.marginInPixels / viewport.getScale();
+    IDirectPosition ll = env.getLowerCorner();
+    IDirectPosition ur = env.getUpperCorner();
+    IEnvelope selection = new GM_Envelope(ll.getX() - margin, ur.getX()
+        + margin, ll.getY() - margin, ur.getY() + margin);
+
+    this.render(data, selection, viewport, graphics, image);
+    this.render(this.rasterData, selection, viewport, graphics, image);
+    graphics.dispose();
+    return image;
+  }
+
+  private void render(Map<String, IFeatureCollection<IFeature>> data,
+      IEnvelope selection, Viewport viewport, Graphics2D graphics,
+      BufferedImage image) {
+    for (Map.Entry<String, IFeatureCollection<IFeature>> entry : data
+        .entrySet()) {
+      List<CompiledStyle> layerStyles = this.styles.get(entry.getKey());
+      if (layerStyles == null) {
+        continue;
+      }
+      Collection<IFeature> features = entry.getValue().select(selection);
+      double opacity = this.opacities.get(entry.getKey());
+      for (CompiledStyle style : layerStyles) {
+        style.render(features, viewport, graphics, opacity, image);
+      }
+    }
+  }
+
+  /**
+   * A feature type style whose filters are compiled once and shared by the
+   * rendering threads.
+   */
+  private static class CompiledStyle {
+    private final List<Rule> rules;
+    private final Filter[] filters;
+
+    CompiledStyle(FeatureTypeStyle fts) {
+      this.rules = fts.getRules();
+      this.filters = new Filter[this.rules.size()];
+      for (int i = 0; i < this.filters.length; i++) {
+        this.filters[i] = CompiledFilter.compile(this.rules.get(i).getFilter());
+      }
+    }
+
+    /**
+     * Same as the layer renderers: a feature belongs to the first rule whose
+     * filter it satisfies, and the rules are drawn from the last one to the
+     * first one.
+     */
+    void render(Collection<? extends IFeature> features, Viewport viewport,
+        Graphics2D graphics, double opacity, BufferedImage image) {
+      List<List<IFeature>> filtered = new ArrayList<List<IFeature>>(
+          this.rules.size());
+      for (int i = 0; i < this.rules.size(); i++) {
+        filtered.add(new ArrayList<IFeature>());
+      }
+      for (IFeature feature : features) {
+        for (int i = 0; i < this.filters.length; i++) {
+          if (this.filters[i] == null || this.filters[i].evaluate(feature)) {
+            filtered.get(i).add(feature);
+            break;
+          }
+        }
+      }
+      for (int i = this.rules.size() - 1; i >= 0; i--) {
+        for (IFeature feature : filtered.get(i)) {
+          for (Symbolizer symbolizer : this.rules.get(i).getSymbolizers()) {
+            RenderUtil.paint(symbolizer, feature, viewport, graphics, opacity,
+                image);
+          }
+        }
+      }
+    }
+  }
+}
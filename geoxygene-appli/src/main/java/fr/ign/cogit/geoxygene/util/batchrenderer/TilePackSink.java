@@ -0,0 +1,104 @@
+package fr.ign.cogit.geoxygene.util.batchrenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Write all the tiles in a single file. The PNG of each tile is appended as
+ * soon as it is rendered; the index is written when the sink is closed:
+ * <ul>
+ * <li>header: MAGIC (int), VERSION (int)</li>
+ * <li>tiles: PNG bytes, one after the other</li>
+ * <li>index: number of tiles (int), then for each tile row (int), col (int),
+ * offset (long), length (int)</li>
+ * <li>trailer: offset of the index (long)</li>
+ * </ul>
+ * All values are big endian.
+ */
+public class TilePackSink implements TileSink {
+
+  /** "GXTP" */
+  public static final int MAGIC = 0x47585450;
+  public static final int VERSION = 1;
+
+  private final RandomAccessFile file;
+  private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+  private final DataOutputStream indexOut = new DataOutputStream(this.index);
+  private int nbTiles = 0;
+
+  public TilePackSink(String fileName) throws IOException {
+    this.file = new RandomAccessFile(fileName, "rw");
+    this.file.setLength(0);
+    this.file.writeInt(MAGIC);
+    this.file.writeInt(VERSION);
+  }
+
+  @Override
+  public void write(int row, int col, BufferedImage image) throws IOException {
+    // encode in the calling thread, only the append is serialized
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    if (!ImageIO.write(image, "png", png)) {
+      throw new IOException("No PNG writer for tile " + row + "_" + col);
+    }
+    synchronized (this) {
+      long offset = this.file.getFilePointer();
+      this.file.write(png.toByteArray());
+      this.indexOut.writeInt(row);
+      this.indexOut.writeInt(col);
+      this.indexOut.writeLong(offset);
+      this.indexOut.writeInt(png.size());
+      this.nbTiles++;
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      long indexOffset = this.file.getFilePointer();
+      this.file.writeInt(this.nbTiles);
+      this.file.write(this.index.toByteArray());
+      this.file.writeLong(indexOffset);
+    } finally {
+      this.file.close();
+    }
+  }
+
+  /**
+   * Read a tile from a pack.
+   * @param fileName the pack
+   * @param row
+   * @param col
+   * @return the tile or null if the pack does not contain it
+   * @throws IOException
+   */
+  public static BufferedImage readTile(String fileName, int row, int col)
+      throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(fileName, "r")) {
+      if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+        throw new IOException("Not a tile pack: " + fileName);
+      }
+      raf.seek(raf.length() - 8);
+      raf.seek(raf.readLong());
+      int nb = raf.readInt();
+      for (int i = 0; i < nb; i++) {
+        int r = raf.readInt();
+        int c = raf.readInt();
+        long offset = raf.readLong();
+        int length = raf.readInt();
+        if (r == row && c == col) {
+          byte[] png = new byte[length];
+          raf.seek(offset);
+          raf.readFully(png);
+          return ImageIO.read(new ByteArrayInputStream(png));
+        }
+      }
+      return null;
+    }
+  }
+}
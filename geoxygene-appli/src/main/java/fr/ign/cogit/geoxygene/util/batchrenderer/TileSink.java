@@ -0,0 +1,21 @@
+package fr.ign.cogit.geoxygene.util.batchrenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the tiles produced by a {@link HeadlessTileRenderer}. Tiles
+ * are written from the rendering threads, so implementations must accept
+ * concurrent calls to {@link #write(int, int, BufferedImage)}.
+ */
+public interface TileSink extends Closeable {
+  /**
+   * Write the tile (row, col) of the grid.
+   * @param row the row of the tile, 0 being the southern row
+   * @param col the column of the tile
+   * @param image the rendered tile
+   * @throws IOException
+   */
+  void write(int row, int col, BufferedImage image) throws IOException;
+}
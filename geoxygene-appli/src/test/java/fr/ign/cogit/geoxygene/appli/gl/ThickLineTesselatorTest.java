@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ *******************************************************************************/
+
+package fr.ign.cogit.geoxygene.appli.gl;
+
+import java.awt.BasicStroke;
+import java.awt.geom.Point2D;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.function.ConstantFunction;
+import fr.ign.cogit.geoxygene.function.Function1D;
+import fr.ign.cogit.geoxygene.function.LinearFunction;
+import fr.ign.cogit.geoxygene.util.gl.GLMesh;
+import fr.ign.cogit.geoxygene.util.gl.GLSimpleVertex;
+
+/**
+ * Tests of the primitive buffer thick line tesselator.
+ */
+public class ThickLineTesselatorTest {
+
+  private static final double EPSILON = 1E-5;
+  private static final double MITER_LIMIT = 10;
+  private static final int[] JOINS = { BasicStroke.JOIN_MITER,
+      BasicStroke.JOIN_BEVEL, BasicStroke.JOIN_ROUND };
+  private static final int[] CAPS = { BasicStroke.CAP_BUTT,
+      BasicStroke.CAP_SQUARE, BasicStroke.CAP_ROUND };
+
+  @Test
+  public void testSegment() {
+    ThickLineTesselator tesselator = new ThickLineTesselator();
+    tesselator.addPoint(0, 0);
+    tesselator.addPoint(10, 0);
+    tesselator.addPoint(10, 0); // duplicate, skipped
+    Assert.assertEquals(2, tesselator.getPointCount());
+    tesselator.tesselate(2, BasicStroke.JOIN_MITER, BasicStroke.CAP_BUTT, 10,
+        false);
+    Assert.assertEquals(0, tesselator.getPointCount());
+    Assert.assertEquals(4, tesselator.getVertexCount());
+    Assert.assertEquals(6, tesselator.getIndexCount());
+    float[] v = tesselator.getVertices();
+    Assert.assertArrayEquals(new float[] { 0, -1, 0, 1, 10, -1, 10, 1 },
+        Arrays.copyOf(v, 8), (float) EPSILON);
+  }
+
+  @Test
+  public void testSquareCap() {
+    ThickLineTesselator tesselator = new ThickLineTesselator();
+    tesselator.addPoint(0, 0);
+    tesselator.addPoint(10, 0);
+    tesselator.tesselate(2, BasicStroke.JOIN_MITER, BasicStroke.CAP_SQUARE, 10,
+        false);
+    float[] v = tesselator.getVertices();
+    // both ends are extended by half the width
+    Assert.assertEquals(-1, v[0], EPSILON);
+    Assert.assertEquals(-1, v[2], EPSILON);
+    Assert.assertEquals(11, v[4], EPSILON);
+    Assert.assertEquals(11, v[6], EPSILON);
+  }
+
+  @Test
+  public void testRingAndReuse() {
+    ThickLineTesselator tesselator = new ThickLineTesselator();
+    for (int join : new int[] { BasicStroke.JOIN_MITER,
+        BasicStroke.JOIN_BEVEL, BasicStroke.JOIN_ROUND }) {
+      tesselator.reset();
+      // two squares appended to the same buffers
+      for (int i = 0; i < 2; i++) {
+        tesselator.addPoint(100 * i, 0);
+        tesselator.addPoint(100 * i + 50, 0);
+        tesselator.addPoint(100 * i + 50, 50);
+        tesselator.addPoint(100 * i, 50);
+        tesselator.addPoint(100 * i, 0);
+        tesselator.tesselate(4, join, BasicStroke.CAP_BUTT, 10, true);
+      }
+      Assert.assertTrue(tesselator.getIndexCount() > 0);
+      Assert.assertEquals(0, tesselator.getIndexCount() % 3);
+      for (int i = 0; i < tesselator.getIndexCount(); i++) {
+        int index = tesselator.getIndices()[i];
+        Assert.assertTrue(index >= 0 && index < tesselator.getVertexCount());
+      }
+      // the outline stays within half the width of the squares
+      float[] v = tesselator.getVertices();
+      for (int i = 0; i < tesselator.getVertexCount(); i++) {
+        Assert.assertTrue(v[2 * i] >= -2 - EPSILON
+            && v[2 * i] <= 152 + EPSILON);
+        Assert.assertTrue(v[2 * i + 1] >= -2 - EPSILON
+            && v[2 * i + 1] <= 52 + EPSILON);
+      }
+    }
+  }
+
+  @Test
+  public void testBuffers() {
+    ThickLineTesselator tesselator = new ThickLineTesselator();
+    tesselator.addPoint(0, 0);
+    tesselator.addPoint(10, 0);
+    tesselator.tesselate(2, BasicStroke.JOIN_MITER, BasicStroke.CAP_BUTT, 10,
+        false);
+    FloatBuffer vertices = FloatBuffer.allocate(9 * tesselator
+        .getVertexCount());
+    tesselator.putVertices(vertices, new float[] { 0f, 0f, 1f, 1f });
+    Assert.assertFalse(vertices.hasRemaining());
+    Assert.assertEquals(10, vertices.get(9 * 2), EPSILON);
+    Assert.assertEquals(1, vertices.get(9 * 2 + 7), EPSILON);
+    IntBuffer indices = IntBuffer.allocate(tesselator.getIndexCount());
+    tesselator.putIndices(indices, 5);
+    Assert.assertEquals(tesselator.getIndices()[0] + 5, indices.get(0));
+  }
+
+  /**
+   * Polylines covering straight segments, aligned points, angles above the
+   * miter limit, a square and random polylines.
+   */
+  private static List<Point2D[]> polylines() {
+    List<Point2D[]> polylines = new ArrayList<Point2D[]>();
+    polylines.add(polyline(0, 0, 10, 0));
+    polylines.add(polyline(0, 0, 5, 0, 10, 0, 10, 10));
+    polylines.add(polyline(0, 0, 20, 0, 0, 1, 15, 3));
+    polylines.add(polyline(0, 0, 50, 0, 50, 50, 0, 50));
+    Random random = new Random(42);
+    for (int n = 0; n < 20; n++) {
+      Point2D[] polyline = new Point2D[3 + random.nextInt(10)];
+      for (int i = 0; i < polyline.length; i++) {
+        polyline[i] = new Point2D.Double(100 * random.nextDouble(),
+            100 * random.nextDouble());
+      }
+      polylines.add(polyline);
+    }
+    return polylines;
+  }
+
+  private static Point2D[] polyline(double... xy) {
+    Point2D[] polyline = new Point2D[xy.length / 2];
+    for (int i = 0; i < polyline.length; i++) {
+      polyline[i] = new Point2D.Double(xy[2 * i], xy[2 * i + 1]);
+    }
+    return polyline;
+  }
+
+  private static Function1D[] widths() {
+    return new Function1D[] { new ConstantFunction(4),
+        new LinearFunction(6, 1) };
+  }
+
+  /** Triangles of all the polylines appended to a complex by the reference */
+  private static GLSimpleComplex reference(List<Point2D[]> polylines,
+      Function1D width, int join, int cap, boolean closed) throws Exception {
+    GLSimpleComplex complex = new GLSimpleComplex("reference", 0, 0);
+    for (Point2D[] polyline : polylines) {
+      ReferenceLineTesselator.tesselateThickLine(complex, width, polyline,
+          join, cap, MITER_LIMIT, closed);
+    }
+    return complex;
+  }
+
+  private static float[] referenceVertices(GLSimpleComplex complex) {
+    float[] xy = new float[2 * complex.getVertices().size()];
+    for (int i = 0; i < complex.getVertices().size(); i++) {
+      GLSimpleVertex vertex = complex.getVertices().get(i);
+      xy[2 * i] = vertex.getXYZ()[0];
+      xy[2 * i + 1] = vertex.getXYZ()[1];
+    }
+    return xy;
+  }
+
+  private static int[] referenceIndices(GLSimpleComplex complex) {
+    List<Integer> indices = new ArrayList<Integer>();
+    for (GLMesh mesh : complex.getMeshes()) {
+      indices.addAll(mesh.getIndices());
+    }
+    int[] result = new int[indices.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = indices.get(i).intValue();
+    }
+    return result;
+  }
+
+  private static String description(Function1D width, int join, int cap,
+      boolean closed) {
+    return width.getClass().getSimpleName() + " join=" + join + " cap=" + cap
+        + " closed=" + closed;
+  }
+
+  /**
+   * The tesselator produces the same vertices and triangles as the Point2D
+   * implementation, for all joins and caps, when a single instance is reused
+   * across lines and across resets.
+   */
+  @Test
+  public void testSameTrianglesAsReference() throws Exception {
+    List<Point2D[]> polylines = polylines();
+    ThickLineTesselator tesselator = new ThickLineTesselator();
+    for (Function1D width : widths()) {
+      for (int join : JOINS) {
+        for (int cap : CAPS) {
+          for (boolean closed : new boolean[] { false, true }) {
+            String message = description(width, join, cap, closed);
+            GLSimpleComplex expected = reference(polylines, width, join, cap,
+                closed);
+            tesselator.reset();
+            for (Point2D[] polyline : polylines) {
+              for (Point2D point : polyline) {
+                tesselator.addPoint(point.getX(), point.getY());
+              }
+              tesselator.tesselate(width, join, cap, MITER_LIMIT, closed);
+            }
+            Assert.assertArrayEquals(message, referenceVertices(expected),
+                Arrays.copyOf(tesselator.getVertices(),
+                    2 * tesselator.getVertexCount()), 0f);
+            Assert.assertArrayEquals(message, referenceIndices(expected),
+                Arrays.copyOf(tesselator.getIndices(),
+                    tesselator.getIndexCount()));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The static LineTesselator API, backed by one reused tesselator per
+   * thread, builds the same VBO content as the reference when complexes are
+   * built from several threads at once.
+   */
+  @Test
+  public void testLineTesselatorFromSeveralThreads() throws Exception {
+    final List<Point2D[]> polylines = polylines();
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> results = new ArrayList<Future<?>>();
+      for (int t = 0; t < 8; t++) {
+        results.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (Function1D width : widths()) {
+              for (int join : JOINS) {
+                for (int cap : CAPS) {
+                  for (boolean closed : new boolean[] { false, true }) {
+                    String message = description(width, join, cap, closed);
+                    GLSimpleComplex expected = reference(polylines, width,
+                        join, cap, closed);
+                    GLSimpleComplex complex = new GLSimpleComplex("packed",
+                        0, 0);
+                    for (Point2D[] polyline : polylines) {
+                      LineTesselator.tesselateThickLine(complex, width,
+                          polyline, join, cap, MITER_LIMIT, closed);
+                    }
+                    assertSameBuffers(message, expected, complex);
+                  }
+                }
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /** Compare the positions and the indices of the VBO of two complexes */
+  private static void assertSameBuffers(String message,
+      GLSimpleComplex expected, GLSimpleComplex actual) {
+    FloatBuffer expectedVertices = expected.getFlippedVerticesBuffer();
+    FloatBuffer actualVertices = actual.getFlippedVerticesBuffer();
+    Assert.assertEquals(message, expectedVertices.remaining(),
+        actualVertices.remaining());
+    for (int i = 0; i < expectedVertices.remaining(); i += 9) {
+      Assert.assertEquals(message, expectedVertices.get(i),
+          actualVertices.get(i), 0f);
+      Assert.assertEquals(message, expectedVertices.get(i + 1),
+          actualVertices.get(i + 1), 0f);
+    }
+    IntBuffer expectedIndices = expected.getFlippedIndicesBuffer();
+    IntBuffer actualIndices = actual.getFlippedIndicesBuffer();
+    Assert.assertEquals(message, expectedIndices, actualIndices);
+  }
+}
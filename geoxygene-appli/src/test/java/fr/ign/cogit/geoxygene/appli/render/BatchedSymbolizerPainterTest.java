@@ -0,0 +1,165 @@
+package fr.ign.cogit.geoxygene.appli.render;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.appli.Viewport;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.style.Fill;
+import fr.ign.cogit.geoxygene.style.PolygonSymbolizer;
+import fr.ign.cogit.geoxygene.style.Stroke;
+
+/**
+ * Compare the images painted by {@link BatchedSymbolizerPainter} to the ones
+ * painted feature by feature by {@link RenderUtil}.
+ */
+public class BatchedSymbolizerPainterTest {
+
+  private static final int SIZE = 100;
+
+  Viewport viewport;
+  List<IFeature> features;
+
+  @Before
+  public void setUp() throws Exception {
+    // one model unit per pixel, with integer view coordinates
+    this.viewport = new Viewport(SIZE, SIZE);
+    this.viewport.zoom(new GM_Envelope(0, SIZE, 0, SIZE));
+    this.features = new ArrayList<IFeature>();
+    IPolygon holed = new GM_Polygon(new GM_Envelope(10, 60, 10, 60));
+    holed.addInterior(new GM_Polygon(new GM_Envelope(25, 40, 25, 40))
+        .getExterior());
+    this.features.add(new DefaultFeature(holed));
+    // overlapping features
+    this.features.add(new DefaultFeature(new GM_Polygon(new GM_Envelope(40,
+        90, 30, 80))));
+    this.features.add(new DefaultFeature(new GM_Polygon(new GM_Envelope(20,
+        50, 50, 90))));
+  }
+
+  private static PolygonSymbolizer symbolizer(Color fillColor,
+      float fillOpacity, Color strokeColor, float strokeOpacity) {
+    PolygonSymbolizer symbolizer = new PolygonSymbolizer();
+    if (fillColor != null) {
+      Fill fill = new Fill();
+      fill.setFillOpacity(fillOpacity);
+      fill.setColor(fillColor);
+      symbolizer.setFill(fill);
+    } else {
+      symbolizer.setFill(null);
+    }
+    if (strokeColor != null) {
+      Stroke stroke = new Stroke();
+      stroke.setStrokeOpacity(strokeOpacity);
+      stroke.setStroke(strokeColor);
+      stroke.setStrokeWidth(3f);
+      symbolizer.setStroke(stroke);
+    } else {
+      symbolizer.setStroke(null);
+    }
+    return symbolizer;
+  }
+
+  private static Graphics2D graphics(BufferedImage image) {
+    Graphics2D graphics = image.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+        RenderingHints.VALUE_STROKE_PURE);
+    return graphics;
+  }
+
+  /**
+   * Paint the features with and without batching and compare the images.
+   */
+  private void compare(PolygonSymbolizer symbolizer, double opacity) {
+    BufferedImage expected = new BufferedImage(SIZE, SIZE,
+        BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = BatchedSymbolizerPainterTest.graphics(expected);
+    for (IFeature feature : this.features) {
+      RenderUtil.paint(symbolizer, feature, this.viewport, graphics, opacity,
+          expected);
+    }
+    graphics.dispose();
+
+    BufferedImage actual = new BufferedImage(SIZE, SIZE,
+        BufferedImage.TYPE_INT_ARGB);
+    graphics = BatchedSymbolizerPainterTest.graphics(actual);
+    BatchedSymbolizerPainter painter = new BatchedSymbolizerPainter(
+        this.viewport, graphics, opacity, actual);
+    for (IFeature feature : this.features) {
+      painter.paint(symbolizer, feature);
+    }
+    painter.flush();
+    graphics.dispose();
+
+    int nbPainted = 0;
+    int nbDifferent = 0;
+    for (int x = 0; x < SIZE; x++) {
+      for (int y = 0; y < SIZE; y++) {
+        int rgb1 = expected.getRGB(x, y);
+        int rgb2 = actual.getRGB(x, y);
+        if (rgb1 != 0) {
+          nbPainted++;
+        }
+        for (int shift = 0; shift < 32; shift += 8) {
+          if (Math.abs(((rgb1 >>> shift) & 0xFF) - ((rgb2 >>> shift) & 0xFF)) > 2) {
+            nbDifferent++;
+            break;
+          }
+        }
+      }
+    }
+    Assert.assertTrue(nbPainted > 0);
+    // the outlines are not built from the same paths: allow a few pixels
+    Assert.assertTrue(nbDifferent + " different pixels", nbDifferent <= 4);
+  }
+
+  @Test
+  public void testOpaqueFill() {
+    this.compare(symbolizer(Color.RED, 1f, null, 1f), 1);
+  }
+
+  @Test
+  public void testFillAndStroke() {
+    // each outline must be hidden by the fill of the next features
+    this.compare(symbolizer(Color.RED, 1f, Color.BLACK, 1f), 1);
+  }
+
+  @Test
+  public void testTranslucentFill() {
+    // the overlaps must be blended twice
+    this.compare(symbolizer(Color.BLUE, 0.5f, null, 1f), 1);
+  }
+
+  @Test
+  public void testTranslucentStroke() {
+    this.compare(symbolizer(null, 1f, Color.GREEN, 0.5f), 1);
+  }
+
+  @Test
+  public void testLayerOpacity() {
+    this.compare(symbolizer(Color.RED, 1f, null, 1f), 0.6);
+  }
+
+  @Test
+  public void testSubPixelWideStroke() {
+    // features smaller than a pixel but with a 3 pixels wide outline
+    this.features.clear();
+    this.features.add(new DefaultFeature(new GM_Polygon(new GM_Envelope(20.2,
+        20.5, 20.2, 20.5))));
+    this.features.add(new DefaultFeature(new GM_Polygon(new GM_Envelope(70.4,
+        70.6, 30.4, 30.6))));
+    this.compare(symbolizer(null, 1f, Color.BLACK, 1f), 1);
+  }
+}
@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ *******************************************************************************/
+
+package fr.ign.cogit.geoxygene.appli.render;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.appli.render.DisplayGeometryCache.DisplayGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
+
+/**
+ * Tests of the display-side simplification cache.
+ */
+public class DisplayGeometryCacheTest {
+
+  private static final double EPSILON = 1E-3;
+
+  /** A zigzag of n vertices starting at (1000, 2000). */
+  private static GM_LineString zigzag(int n, double amplitude) {
+    DirectPositionList list = new DirectPositionList();
+    for (int i = 0; i < n; i++) {
+      list.add(new DirectPosition(1000 + i, 2000 + ((i % 2 == 0) ? amplitude
+          : -amplitude)));
+    }
+    return new GM_LineString(list);
+  }
+
+  private static GM_Ring square(double x, double y, double size) {
+    DirectPositionList list = new DirectPositionList();
+    list.add(new DirectPosition(x, y));
+    list.add(new DirectPosition(x + size, y));
+    list.add(new DirectPosition(x + size, y + size));
+    list.add(new DirectPosition(x, y + size));
+    list.add(new DirectPosition(x, y));
+    return new GM_Ring(new GM_LineString(list));
+  }
+
+  @Test
+  public void testSimplification() {
+    DisplayGeometryCache cache = new DisplayGeometryCache();
+    IFeature feature = new DefaultFeature(zigzag(10000, 0.1));
+    // 1 pixel per 10 units: the zigzags are far below the tolerance
+    DisplayGeometry coarse = cache.get(feature, 0.1);
+    Assert.assertEquals(1, coarse.getNbParts());
+    Assert.assertEquals(DisplayGeometry.LINE, coarse.getPartType(0));
+    Assert.assertEquals(2, coarse.getPartEnd(0));
+    float[] c = coarse.getCoordinates();
+    Assert.assertEquals(1000, coarse.getOriginX() + c[0], EPSILON);
+    Assert.assertEquals(1000 + 9999, coarse.getOriginX() + c[2], EPSILON);
+    // 100 pixels per unit: every vertex is kept
+    DisplayGeometry fine = cache.get(feature, 100);
+    Assert.assertEquals(10000, fine.getPartEnd(0));
+    // cached
+    Assert.assertSame(coarse, cache.get(feature, 0.1));
+    Assert.assertSame(fine, cache.get(feature, 101));
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testPolygon() {
+    DisplayGeometryCache cache = new DisplayGeometryCache();
+    GM_Polygon polygon = new GM_Polygon(square(0, 0, 100));
+    polygon.addInterior(square(10, 10, 1));
+    polygon.addInterior(square(50, 50, 20));
+    IFeature feature = new DefaultFeature(polygon);
+    DisplayGeometry full = cache.get(feature, 10);
+    Assert.assertEquals(3, full.getNbParts());
+    Assert.assertEquals(DisplayGeometry.EXTERIOR, full.getPartType(0));
+    Assert.assertEquals(DisplayGeometry.INTERIOR, full.getPartType(1));
+    // at 1 pixel per 10 units, the small hole disappears
+    DisplayGeometry coarse = cache.get(feature, 0.1);
+    Assert.assertEquals(2, coarse.getNbParts());
+    Assert.assertEquals(5, coarse.getPartEnd(0));
+    Assert.assertEquals(5, coarse.getPartEnd(1) - coarse.getPartStart(1));
+    // points are not cached
+    Assert.assertNull(cache.get(new DefaultFeature(new GM_Point(
+        new DirectPosition(0, 0))), 1));
+  }
+
+  @Test
+  public void testInvalidation() {
+    DisplayGeometryCache cache = new DisplayGeometryCache();
+    FT_FeatureCollection<IFeature> collection = new FT_FeatureCollection<IFeature>();
+    IFeature feature = new DefaultFeature(zigzag(100, 10));
+    collection.add(feature);
+    collection.addFeatureCollectionListener(cache);
+    DisplayGeometry first = cache.get(feature, 1);
+    // new geometry: rebuilt
+    feature.setGeom(zigzag(50, 10));
+    DisplayGeometry second = cache.get(feature, 1);
+    Assert.assertNotSame(first, second);
+    Assert.assertEquals(50, second.getPartEnd(0));
+    // removed from the collection: evicted
+    collection.remove(feature);
+    Assert.assertEquals(0, cache.size());
+    Assert.assertEquals(0, cache.getBytes());
+    collection.removeFeatureCollectionListener(cache);
+  }
+
+  @Test
+  public void testMemoryBound() {
+    IFeature[] features = new IFeature[100];
+    for (int i = 0; i < features.length; i++) {
+      features[i] = new DefaultFeature(zigzag(1000, 10));
+    }
+    DisplayGeometryCache cache = new DisplayGeometryCache(Long.MAX_VALUE);
+    cache.get(features[0], 100);
+    long size = cache.getBytes();
+    cache.setMaxBytes(10 * size);
+    for (IFeature feature : features) {
+      cache.get(feature, 100);
+    }
+    Assert.assertEquals(10, cache.size());
+    Assert.assertTrue(cache.getBytes() <= 10 * size);
+    // the most recently used features are kept
+    DisplayGeometry last = cache.get(features[99], 100);
+    Assert.assertSame(last, cache.get(features[99], 100));
+    Assert.assertEquals(10, cache.size());
+  }
+}
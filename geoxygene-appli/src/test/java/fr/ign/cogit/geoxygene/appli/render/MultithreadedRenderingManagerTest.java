@@ -0,0 +1,251 @@
+package fr.ign.cogit.geoxygene.appli.render;
+
+import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.appli.layer.LayerViewPanel;
+import fr.ign.cogit.geoxygene.style.Layer;
+
+/**
+ * Scheduling of the renderings by {@link MultithreadedRenderingManager}, with
+ * stub renderers that record what they do.
+ */
+public class MultithreadedRenderingManagerTest {
+
+  private static final long TIMEOUT = 10000;
+
+  /**
+   * A renderer whose runnables record the number of requests made when they
+   * were created, and run a given action.
+   */
+  private static class StubRenderer implements LayerRenderer {
+    /** Number of render requests made by the test. */
+    final AtomicInteger requested = new AtomicInteger();
+    /** Value of requested when each executed runnable was created. */
+    final List<Integer> executed = new CopyOnWriteArrayList<Integer>();
+    final AtomicInteger nbCreated = new AtomicInteger();
+    final AtomicInteger nbRunning = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    volatile Runnable action = null;
+
+    @Override
+    public Runnable createRunnable() {
+      this.nbCreated.incrementAndGet();
+      final int request = this.requested.get();
+      return new Runnable() {
+        @Override
+        public void run() {
+          int running = StubRenderer.this.nbRunning.incrementAndGet();
+          StubRenderer.this.maxRunning.accumulateAndGet(running, Math::max);
+          try {
+            Runnable a = StubRenderer.this.action;
+            if (a != null) {
+              a.run();
+            }
+            StubRenderer.this.executed.add(Integer.valueOf(request));
+          } finally {
+            StubRenderer.this.nbRunning.decrementAndGet();
+          }
+        }
+      };
+    }
+
+    @Override
+    public Layer getLayer() {
+      return null;
+    }
+
+    @Override
+    public boolean isRendering() {
+      return this.nbRunning.get() > 0;
+    }
+
+    @Override
+    public boolean isRendered() {
+      return true;
+    }
+
+    @Override
+    public void cancel() {
+    }
+
+    @Override
+    public void initializeRendering() {
+    }
+
+    @Override
+    public void finalizeRendering() {
+    }
+
+    @Override
+    public void addActionListener(ActionListener l) {
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public LayerViewPanel getLayerViewPanel() {
+      return null;
+    }
+  }
+
+  MultithreadedRenderingManager manager;
+
+  @Before
+  public void setUp() {
+    this.manager = new MultithreadedRenderingManager(null);
+  }
+
+  @After
+  public void tearDown() {
+    this.manager.dispose();
+  }
+
+  private void request(StubRenderer renderer) {
+    renderer.requested.incrementAndGet();
+    this.manager.render(renderer);
+  }
+
+  private void waitForRenderings() throws InterruptedException {
+    long end = System.currentTimeMillis() + TIMEOUT;
+    while (this.manager.isRendering()) {
+      Assert.assertTrue("renderings not finished",
+          System.currentTimeMillis() < end);
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Requests made while a rendering is running wait for it, and only the last
+   * one is rendered.
+   */
+  @Test
+  public void testSupersededRequestsAreSkipped() throws Exception {
+    final StubRenderer renderer = new StubRenderer();
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    renderer.action = new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    this.request(renderer);
+    Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    renderer.action = null;
+    this.request(renderer);
+    this.request(renderer);
+    this.request(renderer);
+    release.countDown();
+    this.waitForRenderings();
+    Assert.assertEquals(2, renderer.nbCreated.get());
+    Assert.assertEquals(2, renderer.executed.size());
+    Assert.assertEquals(Integer.valueOf(1), renderer.executed.get(0));
+    Assert.assertEquals(Integer.valueOf(4), renderer.executed.get(1));
+  }
+
+  /**
+   * A request made while the runnable of the previous one is being created
+   * prevents it from running.
+   */
+  @Test
+  public void testRequestDuringCreateRunnable() throws Exception {
+    final StubRenderer renderer = new StubRenderer() {
+      @Override
+      public Runnable createRunnable() {
+        Runnable runnable = super.createRunnable();
+        if (this.nbCreated.get() == 1) {
+          MultithreadedRenderingManagerTest.this.request(this);
+        }
+        return runnable;
+      }
+    };
+    this.request(renderer);
+    this.waitForRenderings();
+    Assert.assertEquals(2, renderer.nbCreated.get());
+    Assert.assertEquals(1, renderer.executed.size());
+    Assert.assertEquals(Integer.valueOf(2), renderer.executed.get(0));
+  }
+
+  /**
+   * The renderings of a layer never overlap, run in the order of the
+   * requests, and the last request is always rendered.
+   */
+  @Test
+  public void testRenderingsOfALayerAreSequential() throws Exception {
+    StubRenderer renderer = new StubRenderer();
+    renderer.action = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(2);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    for (int i = 0; i < 50; i++) {
+      this.request(renderer);
+      if (i % 5 == 0) {
+        Thread.sleep(3);
+      }
+    }
+    this.waitForRenderings();
+    Assert.assertEquals(1, renderer.maxRunning.get());
+    Assert.assertFalse(renderer.executed.isEmpty());
+    for (int i = 1; i < renderer.executed.size(); i++) {
+      Assert.assertTrue(renderer.executed.get(i - 1).intValue() <= renderer.executed
+          .get(i).intValue());
+    }
+    Assert.assertEquals(Integer.valueOf(50),
+        renderer.executed.get(renderer.executed.size() - 1));
+  }
+
+  /**
+   * Different layers are rendered at the same time: each rendering waits for
+   * the other one to start.
+   */
+  @Test
+  public void testLayersAreRenderedConcurrently() throws Exception {
+    Assume.assumeTrue(MultithreadedRenderingManager.NB_RENDERING_THREADS >= 2);
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    final AtomicInteger nbMet = new AtomicInteger();
+    Runnable meet = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          barrier.await(TIMEOUT, TimeUnit.MILLISECONDS);
+          nbMet.incrementAndGet();
+        } catch (Exception e) {
+          // the other layer did not start in time
+        }
+      }
+    };
+    StubRenderer first = new StubRenderer();
+    first.action = meet;
+    StubRenderer second = new StubRenderer();
+    second.action = meet;
+    this.request(first);
+    this.request(second);
+    this.waitForRenderings();
+    Assert.assertEquals(2, nbMet.get());
+  }
+}
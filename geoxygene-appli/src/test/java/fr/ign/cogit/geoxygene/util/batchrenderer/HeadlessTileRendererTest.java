@@ -0,0 +1,90 @@
+package fr.ign.cogit.geoxygene.util.batchrenderer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.Population;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.style.StyledLayerDescriptor;
+import fr.ign.cogit.geoxygene.util.Grid;
+
+public class HeadlessTileRendererTest {
+
+  private static final String TABLE = "polygons";
+  private static final int SIZE = 100;
+
+  /** A connector serving a single square in the tile (0, 0). */
+  private static class MemoryConnector implements DataConnector {
+    @Override
+    public List<String> getCouches() {
+      return Arrays.asList(TABLE);
+    }
+
+    @Override
+    public IPopulation<IFeature> getPopulation(String table, IEnvelope extent) {
+      Assert.assertFalse(extent.isEmpty());
+      IPopulation<IFeature> pop = new Population<IFeature>(table);
+      pop.add(new DefaultFeature(new GM_Polygon(new GM_Envelope(20, 80, 20,
+          80))));
+      return pop;
+    }
+  }
+
+  /** A sink keeping the tiles in memory. */
+  private static class MemorySink implements TileSink {
+    final Map<String, BufferedImage> tiles = new ConcurrentHashMap<String, BufferedImage>();
+
+    @Override
+    public void write(int row, int col, BufferedImage image) {
+      this.tiles.put(row + "_" + col, image);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  @Test
+  public void testRenderTiles() throws Exception {
+    StyledLayerDescriptor sld = new StyledLayerDescriptor();
+    sld.add(sld.createLayer(TABLE, GM_Polygon.class, Color.RED, Color.RED,
+        1f));
+    HeadlessTileRenderer renderer = new HeadlessTileRenderer(
+        new MemoryConnector(), new ArrayList<String>(), null);
+    renderer.addSLD(sld);
+    renderer.setBackground(Color.WHITE);
+    renderer.setPool(new ForkJoinPool(2));
+    // 2 x 2 tiles of 100 x 100 model units, one model unit per pixel
+    Grid grid = new Grid(2, 2, new DirectPosition(0, 0), new DirectPosition(
+        200, 200));
+    MemorySink sink = new MemorySink();
+    renderer.renderTiles(grid, SIZE, sink);
+
+    Assert.assertEquals(4, sink.tiles.size());
+    BufferedImage tile = sink.tiles.get("0_0");
+    Assert.assertEquals(SIZE, tile.getWidth());
+    Assert.assertEquals(SIZE, tile.getHeight());
+    Assert.assertEquals(Color.RED.getRGB(), tile.getRGB(SIZE / 2, SIZE / 2));
+    Assert.assertEquals(Color.WHITE.getRGB(), tile.getRGB(5, 5));
+    for (String key : new String[] { "0_1", "1_0", "1_1" }) {
+      BufferedImage empty = sink.tiles.get(key);
+      Assert.assertEquals(Color.WHITE.getRGB(),
+          empty.getRGB(SIZE / 2, SIZE / 2));
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package fr.ign.cogit.geoxygene.util.batchrenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TilePackSinkTest {
+
+  private static final int NB_ROWS = 8;
+  private static final int NB_COLS = 12;
+  private static final int SIZE = 16;
+
+  /** A tile whose pixels encode its position in the grid. */
+  private static BufferedImage tile(int row, int col) {
+    BufferedImage image = new BufferedImage(SIZE, SIZE,
+        BufferedImage.TYPE_INT_ARGB);
+    for (int x = 0; x < SIZE; x++) {
+      for (int y = 0; y < SIZE; y++) {
+        image.setRGB(x, y, 0xFF000000 | (row << 16) | (col << 8) | (x + y));
+      }
+    }
+    return image;
+  }
+
+  @Test
+  public void testConcurrentWrites() throws Exception {
+    File file = File.createTempFile("tiles", ".gxtp");
+    file.deleteOnExit();
+    final TilePackSink sink = new TilePackSink(file.getAbsolutePath());
+    final int nbThreads = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    try {
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int t = 0; t < nbThreads; t++) {
+        final int first = t;
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = first; i < NB_ROWS * NB_COLS; i += nbThreads) {
+              sink.write(i / NB_COLS, i % NB_COLS,
+                  TilePackSinkTest.tile(i / NB_COLS, i % NB_COLS));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+      sink.close();
+    }
+    for (int row = 0; row < NB_ROWS; row++) {
+      for (int col = 0; col < NB_COLS; col++) {
+        BufferedImage image = TilePackSink.readTile(file.getAbsolutePath(),
+            row, col);
+        Assert.assertNotNull("missing tile " + row + "_" + col, image);
+        Assert.assertEquals(SIZE, image.getWidth());
+        Assert.assertEquals(SIZE, image.getHeight());
+        BufferedImage expected = TilePackSinkTest.tile(row, col);
+        for (int x = 0; x < SIZE; x++) {
+          for (int y = 0; y < SIZE; y++) {
+            Assert.assertEquals(expected.getRGB(x, y), image.getRGB(x, y));
+          }
+        }
+      }
+    }
+    Assert.assertNull(TilePackSink.readTile(file.getAbsolutePath(), NB_ROWS,
+        0));
+  }
+}
@@ -22,11 +22,16 @@ package fr.ign.cogit.geoxygene.contrib.cartetopo;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 
@@ -34,6 +39,18 @@ import javax.swing.event.EventListenerList;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateArrays;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.noding.FastNodingValidator;
+import org.locationtech.jts.noding.IntersectionAdder;
+import org.locationtech.jts.noding.MCIndexNoder;
+import org.locationtech.jts.noding.NodedSegmentString;
+import org.locationtech.jts.noding.Noder;
+import org.locationtech.jts.noding.SegmentString;
+import org.locationtech.jts.noding.snapround.MCIndexSnapRounder;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
 import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
@@ -63,6 +80,7 @@ import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 import fr.ign.cogit.geoxygene.util.algo.JtsAlgorithms;
 import fr.ign.cogit.geoxygene.util.conversion.AdapterFactory;
+import fr.ign.cogit.geoxygene.util.conversion.JtsGeOxygene;
 import fr.ign.cogit.geoxygene.util.index.Tiling;
 
 /**
@@ -591,22 +609,7 @@ public class CarteTopo extends DataSet {
    *          auxquels se raccrocher au lieu d'en créer de nouveaux.
    */
   public void creeNoeudsManquants(double tolerance) {
-    // initialisation de l'index au besoin
-    // si on peut, on prend les mêmes paramètres que le dallage des arcs
-    if (!this.getPopNoeuds().hasSpatialIndex()) {
-      if (this.getPopArcs().hasSpatialIndex()) {
-        this.getPopNoeuds()
-            .initSpatialIndex(this.getPopArcs().getSpatialIndex());
-        this.getPopNoeuds().getSpatialIndex().setAutomaticUpdate(true);
-      } else {
-        IEnvelope enveloppe = this.getPopArcs().envelope();
-        int nb = (int) Math.sqrt(this.getPopArcs().size() / 20);
-        if (nb == 0) {
-          nb = 1;
-        }
-        this.getPopNoeuds().initSpatialIndex(Tiling.class, true, enveloppe, nb);
-      }
-    }
+    this.indexeNoeuds();
     this.fireActionPerformed(new ActionEvent(this, 0,
         I18N.getString("CarteTopo.MissingNodesCreation"), //$NON-NLS-1$
         this.getPopArcs().size()));
@@ -651,6 +654,54 @@ public class CarteTopo extends DataSet {
         I18N.getString("CarteTopo.MissingNodesCreated"))); //$NON-NLS-1$
   }
 
+  /**
+   * Initialisation de l'index des noeuds au besoin : si on peut, on prend les
+   * mêmes paramètres que le dallage des arcs, sinon un dallage avec à peu près
+   * 20 arcs par dalle.
+   */
+  void indexeNoeuds() {
+    if (!this.getPopNoeuds().hasSpatialIndex()) {
+      if (this.getPopArcs().hasSpatialIndex()) {
+        this.getPopNoeuds()
+            .initSpatialIndex(this.getPopArcs().getSpatialIndex());
+        this.getPopNoeuds().getSpatialIndex().setAutomaticUpdate(true);
+      } else {
+        IEnvelope enveloppe = this.getPopArcs().envelope();
+        int nb = (int) Math.sqrt(this.getPopArcs().size() / 20);
+        if (nb == 0) {
+          nb = 1;
+        }
+        this.getPopNoeuds().initSpatialIndex(Tiling.class, true, enveloppe, nb);
+      }
+    }
+  }
+
+  /**
+   * Variante de {@link #creeTopologieArcsNoeuds(double)} qui range arcs et
+   * noeuds dans une grille et fait les recherches en parallèle, sur le pool
+   * fork/join commun. Le résultat est le même, à ceci près que si plusieurs
+   * noeuds conviennent pour une extrémité, c'est le premier de la population
+   * qui est retenu et non un noeud pris au hasard.
+   * @param tolerance distance maximale entre un noeud et une extrémité d'arc
+   */
+  public void creeTopologieArcsNoeudsParDalles(double tolerance) {
+    ConstructionParDalles.creeTopologieArcsNoeuds(this, tolerance);
+  }
+
+  /**
+   * Variante de {@link #creeNoeudsManquants(double)} qui traite en parallèle,
+   * sur le pool fork/join commun, des amas d'extrémités d'arcs voisines. Les
+   * noeuds sont créés dans le même ordre et avec les mêmes identifiants que par
+   * la méthode séquentielle ; si plusieurs noeuds conviennent pour une
+   * extrémité, c'est toujours un noeud existant, puis le premier créé, qui est
+   * retenu.
+   * @param tolerance tolérance utilisée pour chercher des noeuds existants
+   *          auxquels se raccrocher au lieu d'en créer de nouveaux.
+   */
+  public void creeNoeudsManquantsParDalles(double tolerance) {
+    ConstructionParDalles.creeNoeudsManquants(this, tolerance);
+  }
+
   /**
    * Filtrage des noeuds isolés (c'est-à-dire connectés à aucun arc). Ceux-ci
    * sont enlevés de la Carte Topo IMPORTANT : La topologie de réseau doit avoir
@@ -1389,11 +1440,262 @@ public class CarteTopo extends DataSet {
       CarteTopo.logger.debug("Creating missing nodes");
     }
     this.creeNoeudsManquants(tolerance);
-    /**
-     * vérification des arcs qui s'intersectent presque à moins de tolérance
-     * FIXME ATTENTION : ce bout de code est à nettoyer et à corriger
-     * éventuellement.
-     */
+    this.decoupeArcsProchesNoeuds(tolerance);
+  }
+
+  /**
+   * Variante de {@link #rendPlanaire(double)} pour les gros graphes : toutes
+   * les intersections entre arcs sont calculées d'un bloc par noeudage JTS,
+   * puis les arcs et la topologie arcs/noeuds sont reconstruits d'un bloc,
+   * sans sélection ni mise à jour d'index à chaque découpe.
+   * <p>
+   * Si la tolérance est positive, le noeudage est un arrondi sur une grille de
+   * pas égal à la tolérance ({@link MCIndexSnapRounder}) : tous les sommets des
+   * arcs sont arrondis à la grille (les arcs non découpés prennent leur
+   * géométrie arrondie) et les intersections calculées sont exactement sur
+   * les deux arcs. Si elle est nulle, le noeudage se fait en précision
+   * flottante ({@link MCIndexNoder}) et est repris tant que le résultat n'est
+   * pas planaire. Dans les deux cas, le résultat est vérifié
+   * ({@link FastNodingValidator}) ; s'il n'est toujours pas planaire après
+   * quelques passes, on se rabat sur {@link #rendPlanaire(double)}.
+   * <ul>
+   * <li>NB: comme pour {@link #rendPlanaire(double)}, la topologie arcs/noeuds
+   * de la carte en sortie est instanciée, les "correspondants" et l'orientation
+   * suivent le découpage, les arcs de même géométrie sont fusionnés (leurs
+   * correspondants sont cumulés et l'orientation devient double sens si elle
+   * diffère) et la topologie des faces est détruite.
+   * <li>Les arcs qui ne sont ni découpés ni fusionnés sont conservés, avec
+   * leurs attributs et liens particuliers. Les arcs réduits à un point par
+   * l'arrondi sont conservés tels quels.
+   * <li>Les auto-intersections des arcs sont aussi découpées.
+   * <li>Les index spatiaux des arcs et des noeuds sont reconstruits (dallage
+   * par défaut pour les arcs).
+   * </ul>
+   * @param tolerance paramètre de tolérance sur la localisation des noeuds:
+   *          deux extrémités d'arc à moins de cette distance sont considérées
+   *          superposées (utilisé lors de la construction de la topologie
+   *          arcs/noeuds). Ce paramètre peut être nul.
+   */
+  @SuppressWarnings("unchecked")
+  public void rendPlanaireEnBloc(double tolerance) {
+    // si pas d'arc, c'est planaire
+    if (this.getPopArcs().isEmpty()) {
+      return;
+    }
+    // calcul de toutes les intersections
+    List<Arc> arcs = new ArrayList<Arc>(this.getPopArcs());
+    GeometryFactory factory = JtsGeOxygene.getGeometryFactory(0);
+    PrecisionModel precision = tolerance > 0 ? new PrecisionModel(
+        1 / tolerance) : new PrecisionModel();
+    List<SegmentString> lignes = new ArrayList<SegmentString>(arcs.size());
+    boolean[] arrondis = new boolean[arcs.size()];
+    for (int i = 0; i < arcs.size(); i++) {
+      ILineString geometrie = arcs.get(i).getGeometrie();
+      if (geometrie == null || geometrie.sizeControlPoint() < 2) {
+        continue; // traité par creeNoeudsManquants
+      }
+      Coordinate[] coordonnees = AdapterFactory.toCoordinateSequence(factory,
+          geometrie.coord()).toCoordinateArray();
+      for (Coordinate c : coordonnees) {
+        double x = c.x, y = c.y;
+        precision.makePrecise(c);
+        arrondis[i] |= c.x != x || c.y != y;
+      }
+      Coordinate[] sansDoublons = CoordinateArrays
+          .removeRepeatedPoints(coordonnees);
+      arrondis[i] |= sansDoublons.length != coordonnees.length;
+      if (sansDoublons.length >= 2) {
+        lignes.add(new NodedSegmentString(sansDoublons, Integer.valueOf(i)));
+      }
+    }
+    Collection<SegmentString> morceaux = CarteTopo.noeude(lignes, precision);
+    if (morceaux == null) {
+      CarteTopo.logger.warn("Block noding did not converge, " //$NON-NLS-1$
+          + "falling back to incremental planarization"); //$NON-NLS-1$
+      this.rendPlanaire(tolerance);
+      return;
+    }
+    this.fireActionPerformed(new ActionEvent(this, 0,
+        I18N.getString("CarteTopo.PlanarGraphCreation"), //$NON-NLS-1$
+        this.getPopArcs().size()));
+    // les index sont reconstruits à la fin
+    if (this.getPopArcs().hasSpatialIndex()) {
+      this.getPopArcs().removeSpatialIndex();
+    }
+    if (this.getPopNoeuds().hasSpatialIndex()) {
+      this.getPopNoeuds().removeSpatialIndex();
+    }
+    int[] nbMorceaux = new int[arcs.size()];
+    for (SegmentString morceau : morceaux) {
+      nbMorceaux[((Integer) morceau.getData()).intValue()]++;
+    }
+
+    // création des arcs découpés et fusion des arcs de même géométrie
+    Map<CleLigne, CleLigne> dejaTraites = new HashMap<CleLigne, CleLigne>();
+    Set<Arc> arcsEnleves = Collections
+        .newSetFromMap(new IdentityHashMap<Arc, Boolean>());
+    int index = 0;
+    for (SegmentString morceau : morceaux) {
+      Arc arcInitial = arcs.get(((Integer) morceau.getData()).intValue());
+      CleLigne cle = new CleLigne(morceau.getCoordinates());
+      CleLigne existante = dejaTraites.get(cle);
+      if (existante == null) {
+        if (nbMorceaux[((Integer) morceau.getData()).intValue()] == 1) {
+          // arc non découpé : on le garde, avec sa géométrie arrondie
+          cle.arc = arcInitial;
+          if (arrondis[((Integer) morceau.getData()).intValue()]) {
+            arcInitial.setGeometrie(new GM_LineString(AdapterFactory
+                .toDirectPositionList(morceau.getCoordinates())));
+          }
+        } else {
+          cle.arc = this.getPopArcs().nouvelElement(new GM_LineString(
+              AdapterFactory.toDirectPositionList(morceau.getCoordinates())));
+          cle.arc.addAllCorrespondants(arcInitial.getCorrespondants());
+          cle.arc.setOrientation(arcInitial.getOrientation());
+          arcsEnleves.add(arcInitial);
+        }
+        dejaTraites.put(cle, cle);
+      } else {
+        // même géométrie qu'un arc déjà traité, éventuellement à l'envers
+        Arc arcGarde = existante.arc;
+        int orientation = arcInitial.getOrientation();
+        if (existante.inverse != cle.inverse
+            && orientation != OrientationInterface.DOUBLE_SENS) {
+          orientation = -orientation;
+        }
+        if (arcGarde.getOrientation() != orientation) {
+          arcGarde.setOrientation(OrientationInterface.DOUBLE_SENS);
+        }
+        arcGarde.addAllCorrespondants(arcInitial.getCorrespondants());
+        arcsEnleves.add(arcInitial);
+      }
+      this.fireActionPerformed(new ActionEvent(this, 1,
+          I18N.getString("CarteTopo.EdgeHandled"), ++index)); //$NON-NLS-1$
+    }
+
+    // on enlève d'un bloc les arcs découpés ou fusionnés
+    if (CarteTopo.logger.isDebugEnabled()) {
+      CarteTopo.logger.debug("Removing " + arcsEnleves.size() + " edges");
+    }
+    for (Arc arc : arcsEnleves) {
+      arc.setNoeudFin(null);
+      arc.setNoeudIni(null);
+      arc.setFaceDroite(null);
+      arc.setFaceGauche(null);
+      arc.setCorrespondants(new ArrayList<IFeature>(0));
+      arc.getFeatureCollections().remove(this.getPopArcs());
+    }
+    for (Arc arc : this.getPopArcs()) {
+      arc.setFaceDroite(null);
+      arc.setFaceGauche(null);
+    }
+    this.getPopArcs().getElements().removeIf(arc -> arcsEnleves.contains(arc));
+    this.getPopArcs().setEnvelope(null);
+    this.getPopArcs().initSpatialIndex(Tiling.class, true);
+
+    // On construit les nouveaux noeuds et la topologie arcs/noeuds
+    for (Noeud noeud : this.getPopNoeuds()) {
+      noeud.getFeatureCollections().remove(this.getPopNoeuds());
+    }
+    this.getPopNoeuds().getElements().clear();
+    this.getPopNoeuds().setEnvelope(null);
+    for (Arc arc : this.getPopArcs()) {
+      arc.setNoeudIni(null);
+      arc.setNoeudFin(null);
+    }
+    if (CarteTopo.logger.isDebugEnabled()) {
+      CarteTopo.logger.debug("Creating missing nodes");
+    }
+    this.creeNoeudsManquants(tolerance);
+    this.decoupeArcsProchesNoeuds(tolerance);
+  }
+
+  /** Nombre maximal de passes de noeudage de {@link #rendPlanaireEnBloc}. */
+  private static final int NB_PASSES_NOEUDAGE = 5;
+
+  /**
+   * Noeudage des lignes pour {@link #rendPlanaireEnBloc(double)} : arrondi sur
+   * la grille si la précision est fixe, noeudage en précision flottante sinon,
+   * repris sur les morceaux obtenus tant qu'ils ne sont pas planaires.
+   * @param lignes lignes à noeuder, de coordonnées déjà arrondies
+   * @param precision précision du noeudage
+   * @return les morceaux sans points doublés, ou null si le noeudage n'est
+   *         pas planaire après {@link #NB_PASSES_NOEUDAGE} passes
+   */
+  @SuppressWarnings("unchecked")
+  private static Collection<SegmentString> noeude(
+      Collection<SegmentString> lignes, PrecisionModel precision) {
+    Collection<SegmentString> morceaux = lignes;
+    for (int passe = 0; passe < CarteTopo.NB_PASSES_NOEUDAGE; passe++) {
+      Noder noder = precision.isFloating() ? new MCIndexNoder(
+          new IntersectionAdder(new RobustLineIntersector()))
+          : new MCIndexSnapRounder(precision);
+      noder.computeNodes(morceaux);
+      // l'arrondi peut doubler des points, voire réduire un morceau à un point
+      morceaux = new ArrayList<SegmentString>();
+      for (SegmentString morceau : (Collection<SegmentString>) noder
+          .getNodedSubstrings()) {
+        Coordinate[] coordonnees = CoordinateArrays
+            .removeRepeatedPoints(morceau.getCoordinates());
+        if (coordonnees.length >= 2) {
+          morceaux.add(new NodedSegmentString(coordonnees, morceau.getData()));
+        }
+      }
+      if (new FastNodingValidator(morceaux).isValid()) {
+        return morceaux;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Clé de hachage d'une ligne pour {@link #rendPlanaireEnBloc(double)} : ses
+   * coordonnées planes, dans le sens qui donne la plus petite séquence, pour
+   * que deux lignes de mêmes sommets aient la même clé quel que soit leur sens.
+   */
+  private static class CleLigne {
+    private final double[] coords;
+    /** Vrai si les coordonnées sont stockées dans l'ordre inverse. */
+    final boolean inverse;
+    /** L'arc retenu pour cette géométrie. */
+    Arc arc;
+
+    CleLigne(Coordinate[] coordonnees) {
+      int n = coordonnees.length;
+      int comparaison = 0;
+      for (int i = 0; i < n && comparaison == 0; i++) {
+        comparaison = coordonnees[i].compareTo(coordonnees[n - 1 - i]);
+      }
+      this.inverse = comparaison > 0;
+      this.coords = new double[2 * n];
+      for (int i = 0; i < n; i++) {
+        Coordinate c = coordonnees[this.inverse ? n - 1 - i : i];
+        this.coords[2 * i] = c.x;
+        this.coords[2 * i + 1] = c.y;
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(this.coords);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof CleLigne
+          && Arrays.equals(this.coords, ((CleLigne) o).coords);
+    }
+  }
+
+  /**
+   * Vérification des arcs qui s'intersectent presque à moins de tolérance : un
+   * arc passant à moins de tolérance d'un noeud pendant est découpé sur ce
+   * noeud. Utilisé après la reconstruction des noeuds par les méthodes
+   * rendPlanaire.
+   * FIXME ATTENTION : ce bout de code est à nettoyer et à corriger
+   * éventuellement.
+   */
+  private void decoupeArcsProchesNoeuds(double tolerance) {
     if (CarteTopo.logger.isDebugEnabled()) {
       CarteTopo.logger.debug("Checking nodes");
     }
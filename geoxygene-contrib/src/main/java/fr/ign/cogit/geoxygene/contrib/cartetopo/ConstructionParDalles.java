@@ -0,0 +1,400 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.contrib.cartetopo;
+
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
+import fr.ign.cogit.geoxygene.contrib.I18N;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.index.Tiling;
+
+/**
+ * Construction de la topologie arcs/noeuds d'une carte topo par dalles, sur le
+ * pool fork/join commun.
+ * <p>
+ * Les extrémités d'arcs et les noeuds sont rangés dans une grille régulière
+ * dont le pas est au moins égal à la tolérance : chaque recherche ne parcourt
+ * donc que les dalles voisines. Les recherches sont faites en parallèle, en
+ * lecture seule ; les modifications de la carte (création de noeuds, relations
+ * arcs/noeuds, déplacement des extrémités) sont ensuite appliquées dans l'ordre
+ * des arcs, ce qui donne les mêmes noeuds, dans le même ordre et avec les mêmes
+ * identifiants, que la construction séquentielle.
+ * <p>
+ * Quand plusieurs noeuds sont candidats pour une même extrémité, la
+ * construction séquentielle en prend un au hasard (ordre d'un HashSet) ; ici
+ * c'est toujours le premier de la population qui est retenu.
+ */
+final class ConstructionParDalles {
+
+  private ConstructionParDalles() {
+  }
+
+  /**
+   * Version par dalles de {@link CarteTopo#creeTopologieArcsNoeuds(double)}.
+   */
+  static void creeTopologieArcsNoeuds(CarteTopo carte, double tolerance) {
+    if (!carte.getPopNoeuds().hasSpatialIndex()) {
+      carte.getPopNoeuds().initSpatialIndex(Tiling.class, true, 20);
+    }
+    List<Arc> arcs = carte.getListeArcs();
+    List<Noeud> noeuds = carte.getListeNoeuds();
+    IDirectPosition[] positions = positions(noeuds);
+    Grille grille = new Grille(positions, null, tolerance);
+    int nbArcs = arcs.size();
+    int[] choix = new int[2 * nbArcs];
+    IntStream.range(0, nbArcs).parallel().forEach(a -> {
+      Arc arc = arcs.get(a);
+      if (arc.getGeometrie().sizeControlPoint() < 2) {
+        choix[2 * a] = choix[2 * a + 1] = -1;
+        return;
+      }
+      choix[2 * a] = grille.premierADistance(arc.getGeometrie().startPoint(),
+          tolerance, positions);
+      choix[2 * a + 1] = grille.premierADistance(arc.getGeometrie().endPoint(),
+          tolerance, positions);
+    });
+    for (int a = 0; a < nbArcs; a++) {
+      Arc arc = arcs.get(a);
+      if (arc.getGeometrie().sizeControlPoint() < 2) {
+        CarteTopo.logger.warn("Edge has only "
+            + arc.getGeometrie().sizeControlPoint()
+            + " points and was ignored during the construction of the topology between edges and nodes");
+        continue;
+      }
+      if (choix[2 * a] >= 0) {
+        arc.setNoeudIni(noeuds.get(choix[2 * a]));
+      }
+      if (choix[2 * a + 1] >= 0) {
+        arc.setNoeudFin(noeuds.get(choix[2 * a + 1]));
+      }
+    }
+  }
+
+  /**
+   * Version par dalles de {@link CarteTopo#creeNoeudsManquants(double)}.
+   * <p>
+   * Une extrémité qui a un noeud existant dans son voisinage s'y raccroche.
+   * Les autres sont regroupées en amas d'extrémités voisines (union-find sur
+   * les dalles, les amas qui chevauchent une limite de dalle étant recousus
+   * au passage) ; chaque amas est ensuite traité indépendamment, dans l'ordre
+   * des arcs : une extrémité se raccroche au premier noeud créé par une
+   * extrémité précédente de son voisinage, sinon elle crée un noeud.
+   */
+  static void creeNoeudsManquants(CarteTopo carte, double tolerance) {
+    carte.indexeNoeuds();
+    carte.fireActionPerformed(new ActionEvent(carte, 0,
+        I18N.getString("CarteTopo.MissingNodesCreation"), //$NON-NLS-1$
+        carte.getPopArcs().size()));
+    List<Arc> arcs = carte.getListeArcs();
+    List<Noeud> noeuds = carte.getListeNoeuds();
+    int nbArcs = arcs.size();
+    // extrémités : 2a pour le début de l'arc a, 2a+1 pour sa fin (absente si
+    // l'arc n'a qu'un point)
+    IDirectPosition[] extremites = new IDirectPosition[2 * nbArcs];
+    for (int a = 0; a < nbArcs; a++) {
+      int taille = arcs.get(a).getGeometrie().sizeControlPoint();
+      if (taille > 0) {
+        extremites[2 * a] = arcs.get(a).getGeometrie().startPoint();
+      }
+      if (taille > 1) {
+        extremites[2 * a + 1] = arcs.get(a).getGeometrie().endPoint();
+      }
+    }
+    // raccrochement aux noeuds existants
+    IDirectPosition[] positions = positions(noeuds);
+    Grille grilleNoeuds = new Grille(positions, null, tolerance);
+    int[] existant = new int[extremites.length];
+    IntStream.range(0, extremites.length).parallel().forEach(e -> {
+      existant[e] = extremites[e] == null ? -1 : grilleNoeuds.premier(
+          extremites[e], tolerance, positions, null, e);
+    });
+    // amas d'extrémités libres
+    boolean[] libre = new boolean[extremites.length];
+    for (int e = 0; e < extremites.length; e++) {
+      libre[e] = extremites[e] != null && existant[e] < 0;
+    }
+    Grille grille = new Grille(extremites, libre, tolerance);
+    AtomicIntegerArray parents = new AtomicIntegerArray(extremites.length);
+    for (int e = 0; e < extremites.length; e++) {
+      parents.set(e, e);
+    }
+    IntStream.range(0, extremites.length).parallel().filter(e -> libre[e])
+        .forEach(e -> grille.voisins(extremites[e], tolerance, extremites,
+            f -> {
+              if (f > e) {
+                union(parents, e, f);
+              }
+            }));
+    int[] racines = new int[extremites.length];
+    int[] tailles = new int[extremites.length + 1];
+    for (int e = 0; e < extremites.length; e++) {
+      if (libre[e]) {
+        racines[e] = racine(parents, e);
+        tailles[racines[e] + 1]++;
+      }
+    }
+    for (int r = 0; r < extremites.length; r++) {
+      tailles[r + 1] += tailles[r];
+    }
+    int[] debuts = tailles.clone();
+    int[] membres = new int[tailles[extremites.length]];
+    List<Integer> amas = new ArrayList<Integer>();
+    for (int e = 0; e < extremites.length; e++) {
+      if (libre[e]) {
+        if (racines[e] == e) {
+          amas.add(e);
+        }
+        membres[debuts[racines[e]]++] = e;
+      }
+    }
+    // dans chaque amas, les membres sont rangés dans l'ordre des extrémités
+    int[] cible = new int[extremites.length];
+    boolean[] cree = new boolean[extremites.length];
+    amas.parallelStream().forEach(r -> {
+      for (int i = tailles[r]; i < tailles[r + 1]; i++) {
+        int e = membres[i];
+        int f = grille.premier(extremites[e], tolerance, extremites, cree, e);
+        cible[e] = f < 0 ? e : f;
+        cree[e] = f < 0;
+      }
+    });
+    // application dans l'ordre des arcs
+    Noeud[] crees = new Noeud[extremites.length];
+    List<Arc> arcsVides = new ArrayList<Arc>(0);
+    int index = 0;
+    for (int a = 0; a < nbArcs; a++) {
+      Arc arc = arcs.get(a);
+      int taille = arc.getGeometrie().sizeControlPoint();
+      if (taille == 0) {
+        CarteTopo.logger.error(I18N.getString("CarteTopo.EmptyEdge")); //$NON-NLS-1$
+        arcsVides.add(arc);
+        continue;
+      }
+      Noeud noeud = noeud(carte, arc, 2 * a, 0, existant, cree, cible, crees);
+      arc.setNoeudIni(noeud);
+      if (taille > 1) {
+        noeud = noeud(carte, arc, 2 * a + 1, taille - 1, existant, cree,
+            cible, crees);
+      }
+      arc.setNoeudFin(noeud);
+      carte.fireActionPerformed(new ActionEvent(carte, 1,
+          I18N.getString("CarteTopo.EdgeHandled"), ++index)); //$NON-NLS-1$
+    }
+    carte.getPopArcs().removeAll(arcsVides);
+    carte.fireActionPerformed(new ActionEvent(carte, 4,
+        I18N.getString("CarteTopo.MissingNodesCreated"))); //$NON-NLS-1$
+  }
+
+  /**
+   * Noeud de l'extrémité e de l'arc, située au point i de sa géométrie : le
+   * noeud existant ou créé auquel elle se raccroche, dont la position remplace
+   * alors celle de l'extrémité, ou un nouveau noeud.
+   */
+  private static Noeud noeud(CarteTopo carte, Arc arc, int e, int i,
+      int[] existant, boolean[] cree, int[] cible, Noeud[] crees) {
+    if (cree[e]) {
+      crees[e] = carte.getPopNoeuds().nouvelElement(
+          new GM_Point(arc.getGeometrie().coord().get(i)));
+      return crees[e];
+    }
+    Noeud noeud = existant[e] >= 0 ? carte.getListeNoeuds().get(existant[e])
+        : crees[cible[e]];
+    arc.getGeometrie().coord().set(i, noeud.getGeometrie().getPosition());
+    return noeud;
+  }
+
+  private static IDirectPosition[] positions(List<Noeud> noeuds) {
+    IDirectPosition[] positions = new IDirectPosition[noeuds.size()];
+    for (int i = 0; i < positions.length; i++) {
+      IPoint point = noeuds.get(i).getGeometrie();
+      positions[i] = point == null ? null : point.getPosition();
+    }
+    return positions;
+  }
+
+  /** Racine d'un élément, avec compression de chemin par moitiés. */
+  private static int racine(AtomicIntegerArray parents, int e) {
+    int p = parents.get(e);
+    while (p != e) {
+      int gp = parents.get(p);
+      parents.compareAndSet(e, p, gp);
+      e = p;
+      p = gp;
+    }
+    return e;
+  }
+
+  /** Union sans verrou : la plus grande racine est rattachée à la plus petite. */
+  private static void union(AtomicIntegerArray parents, int e, int f) {
+    while (true) {
+      e = racine(parents, e);
+      f = racine(parents, f);
+      if (e == f) {
+        return;
+      }
+      if (e < f) {
+        int t = e;
+        e = f;
+        f = t;
+      }
+      if (parents.compareAndSet(e, e, f)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Grille régulière de points, immuable une fois construite. Les indices
+   * d'une dalle y sont rangés par ordre croissant.
+   */
+  private static final class Grille {
+    private final double xmin, ymin, pas;
+    private final int nx, ny;
+    private final int[] debuts;
+    private final int[] indices;
+
+    interface Visiteur {
+      void visite(int i);
+    }
+
+    /**
+     * @param points points à ranger (les points null sont ignorés)
+     * @param retenus si non null, seuls les points retenus sont rangés
+     * @param tolerance taille des voisinages recherchés
+     */
+    Grille(IDirectPosition[] points, boolean[] retenus, double tolerance) {
+      double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+      double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+      int n = 0;
+      for (int i = 0; i < points.length; i++) {
+        if (points[i] == null || (retenus != null && !retenus[i])) {
+          continue;
+        }
+        x0 = Math.min(x0, points[i].getX());
+        y0 = Math.min(y0, points[i].getY());
+        x1 = Math.max(x1, points[i].getX());
+        y1 = Math.max(y1, points[i].getY());
+        n++;
+      }
+      if (n == 0) {
+        x0 = y0 = x1 = y1 = 0;
+      }
+      double etendue = Math.max(x1 - x0, y1 - y0);
+      double p = Math.max(tolerance, etendue / Math.max(1, Math.sqrt(n)));
+      this.pas = p > 0 ? p : 1;
+      this.xmin = x0;
+      this.ymin = y0;
+      this.nx = (int) ((x1 - x0) / this.pas) + 1;
+      this.ny = (int) ((y1 - y0) / this.pas) + 1;
+      this.debuts = new int[this.nx * this.ny + 1];
+      for (int i = 0; i < points.length; i++) {
+        if (points[i] != null && (retenus == null || retenus[i])) {
+          this.debuts[this.dalle(points[i]) + 1]++;
+        }
+      }
+      for (int d = 0; d < this.nx * this.ny; d++) {
+        this.debuts[d + 1] += this.debuts[d];
+      }
+      this.indices = new int[n];
+      int[] remplissage = this.debuts.clone();
+      for (int i = 0; i < points.length; i++) {
+        if (points[i] != null && (retenus == null || retenus[i])) {
+          this.indices[remplissage[this.dalle(points[i])]++] = i;
+        }
+      }
+    }
+
+    private int colonne(double x) {
+      return Math.max(0, Math.min(this.nx - 1,
+          (int) Math.floor((x - this.xmin) / this.pas)));
+    }
+
+    private int ligne(double y) {
+      return Math.max(0, Math.min(this.ny - 1,
+          (int) Math.floor((y - this.ymin) / this.pas)));
+    }
+
+    private int dalle(IDirectPosition p) {
+      return this.ligne(p.getY()) * this.nx + this.colonne(p.getX());
+    }
+
+    /**
+     * Visite les points situés dans le carré de côté d centré sur p, bords
+     * compris, comme {@link Tiling}.
+     */
+    void voisins(IDirectPosition p, double d, IDirectPosition[] points,
+        Visiteur visiteur) {
+      double c = d / 2;
+      double xmin = p.getX() - c, xmax = p.getX() + c;
+      double ymin = p.getY() - c, ymax = p.getY() + c;
+      int i1 = this.colonne(xmax), j1 = this.ligne(ymax);
+      for (int j = this.ligne(ymin); j <= j1; j++) {
+        for (int i = this.colonne(xmin); i <= i1; i++) {
+          int dalle = j * this.nx + i;
+          for (int k = this.debuts[dalle]; k < this.debuts[dalle + 1]; k++) {
+            int q = this.indices[k];
+            double x = points[q].getX(), y = points[q].getY();
+            if (x >= xmin && x <= xmax && y >= ymin && y <= ymax) {
+              visiteur.visite(q);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Plus petit indice de point dans le carré de côté d centré sur p. Si
+     * marques n'est pas null, seuls les points marqués d'indice inférieur à
+     * limite sont retenus. Renvoie -1 si aucun point ne convient.
+     */
+    int premier(IDirectPosition p, double d, IDirectPosition[] points,
+        boolean[] marques, int limite) {
+      int[] resultat = { -1 };
+      this.voisins(p, d, points, q -> {
+        if ((marques == null || (marques[q] && q < limite))
+            && (resultat[0] < 0 || q < resultat[0])) {
+          resultat[0] = q;
+        }
+      });
+      return resultat[0];
+    }
+
+    /**
+     * Plus petit indice de point dans le carré de côté d centré sur p, à une
+     * distance de p strictement inférieure à d. Renvoie -1 si aucun.
+     */
+    int premierADistance(IDirectPosition p, double d, IDirectPosition[] points) {
+      int[] resultat = { -1 };
+      this.voisins(p, d, points, q -> {
+        if ((resultat[0] < 0 || q < resultat[0])
+            && p.distance(points[q]) < d) {
+          resultat[0] = q;
+        }
+      });
+      return resultat[0];
+    }
+  }
+}
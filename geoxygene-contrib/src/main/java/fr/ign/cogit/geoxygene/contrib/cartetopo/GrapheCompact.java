@@ -0,0 +1,510 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.contrib.cartetopo;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Copie figée du graphe d'une carte topo (ou d'un réseau d'appariement) au
+ * format compact CSR (compressed sparse row) : des tableaux d'entiers et de
+ * réels au lieu des listes d'objets, pour les analyses de graphe sur de gros
+ * réseaux (parcours en largeur, composantes connexes, plus courts chemins,
+ * centralités).
+ * <p>
+ * Chaque arc de la carte donne deux demi-arêtes, une par extrémité. Les
+ * demi-arêtes partant du noeud i sont les indices k de
+ * {@link #getDebut(int) getDebut(i)} (inclus) à {@link #getDebut(int)
+ * getDebut(i + 1)} (exclu) ; pour chacune on a le noeud à l'autre bout, l'arc,
+ * le poids de l'arc et des indicateurs de sens ({@link #CIRCULABLE},
+ * {@link #INVERSE_CIRCULABLE}, {@link #SENS_GEOMETRIE}). Les noeuds et les arcs
+ * sont numérotés dans l'ordre des listes de la carte.
+ * <p>
+ * Comme pour {@link Noeud#plusCourtChemin(Noeud, double)}, les plus courts
+ * chemins et centralités suivent le sens de circulation (attribut orientation
+ * des arcs) et s'appuient sur l'attribut 'poids' des arcs, qui doit être rempli
+ * auparavant. Les modifications ultérieures de la carte ne sont pas vues.
+ * Une fois construit, le graphe n'est plus modifié : toutes les méthodes
+ * peuvent être appelées depuis plusieurs threads.
+ *
+ */
+public class GrapheCompact {
+  /** La demi-arête peut être parcourue de son noeud vers sa cible. */
+  public static final byte CIRCULABLE = 1;
+  /** La demi-arête peut être parcourue de sa cible vers son noeud. */
+  public static final byte INVERSE_CIRCULABLE = 2;
+  /** La demi-arête va du noeud initial vers le noeud final de l'arc. */
+  public static final byte SENS_GEOMETRIE = 4;
+
+  /** Les noeuds de la carte, par indice. */
+  private final Noeud[] noeuds;
+  /** Les arcs de la carte, par indice. */
+  private final Arc[] arcs;
+  private final Map<Noeud, Integer> indicesNoeuds;
+  private final Map<Arc, Integer> indicesArcs;
+  /** Demi-arêtes du noeud i : de debuts[i] (inclus) à debuts[i + 1] (exclu). */
+  private final int[] debuts;
+  /** Noeud à l'autre bout de chaque demi-arête. */
+  private final int[] cibles;
+  /** Arc de chaque demi-arête. */
+  private final int[] arcsDemiAretes;
+  /** Poids de chaque demi-arête (poids de son arc). */
+  private final double[] poids;
+  /** Indicateurs de sens de chaque demi-arête. */
+  private final byte[] sens;
+
+  /**
+   * Fige le graphe d'une carte topo. Les arcs dont une extrémité est nulle ou
+   * hors de la carte sont ignorés.
+   * @param carteTopo une carte topo dont la topologie arcs/noeuds est calculée
+   */
+  public GrapheCompact(CarteTopo carteTopo) {
+    List<Noeud> listeNoeuds = carteTopo.getListeNoeuds();
+    List<Arc> listeArcs = carteTopo.getListeArcs();
+    int n = listeNoeuds.size();
+    int m = listeArcs.size();
+    this.noeuds = listeNoeuds.toArray(new Noeud[n]);
+    this.arcs = listeArcs.toArray(new Arc[m]);
+    this.indicesNoeuds = new IdentityHashMap<Noeud, Integer>(n);
+    for (int i = 0; i < n; i++) {
+      this.indicesNoeuds.put(this.noeuds[i], Integer.valueOf(i));
+    }
+    this.indicesArcs = new IdentityHashMap<Arc, Integer>(m);
+    int[] ini = new int[m];
+    int[] fin = new int[m];
+    // premier passage : degrés
+    this.debuts = new int[n + 1];
+    for (int a = 0; a < m; a++) {
+      this.indicesArcs.put(this.arcs[a], Integer.valueOf(a));
+      Integer i = this.indicesNoeuds.get(this.arcs[a].getNoeudIni());
+      Integer f = this.indicesNoeuds.get(this.arcs[a].getNoeudFin());
+      ini[a] = (i == null || f == null) ? -1 : i.intValue();
+      fin[a] = (i == null || f == null) ? -1 : f.intValue();
+      if (ini[a] >= 0) {
+        this.debuts[ini[a] + 1]++;
+        this.debuts[fin[a] + 1]++;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      this.debuts[i + 1] += this.debuts[i];
+    }
+    // second passage : remplissage
+    int nb = this.debuts[n];
+    this.cibles = new int[nb];
+    this.arcsDemiAretes = new int[nb];
+    this.poids = new double[nb];
+    this.sens = new byte[nb];
+    int[] suivant = Arrays.copyOf(this.debuts, n);
+    for (int a = 0; a < m; a++) {
+      if (ini[a] < 0) {
+        continue;
+      }
+      int orientation = this.arcs[a].getOrientation();
+      boolean direct = orientation == OrientationInterface.SENS_DIRECT
+          || orientation == OrientationInterface.DOUBLE_SENS;
+      boolean inverse = orientation == OrientationInterface.SENS_INVERSE
+          || orientation == OrientationInterface.DOUBLE_SENS;
+      double p = this.arcs[a].getPoids();
+      int k = suivant[ini[a]]++;
+      this.cibles[k] = fin[a];
+      this.arcsDemiAretes[k] = a;
+      this.poids[k] = p;
+      this.sens[k] = (byte) (SENS_GEOMETRIE | (direct ? CIRCULABLE : 0)
+          | (inverse ? INVERSE_CIRCULABLE : 0));
+      k = suivant[fin[a]]++;
+      this.cibles[k] = ini[a];
+      this.arcsDemiAretes[k] = a;
+      this.poids[k] = p;
+      this.sens[k] = (byte) ((inverse ? CIRCULABLE : 0)
+          | (direct ? INVERSE_CIRCULABLE : 0));
+    }
+  }
+
+  // ////////////////////////////////////////////////////////////////////////
+  // accès à la structure
+  // ////////////////////////////////////////////////////////////////////////
+
+  public int getNbNoeuds() {
+    return this.noeuds.length;
+  }
+
+  public int getNbArcs() {
+    return this.arcs.length;
+  }
+
+  public int getNbDemiAretes() {
+    return this.cibles.length;
+  }
+
+  public Noeud getNoeud(int i) {
+    return this.noeuds[i];
+  }
+
+  public Arc getArc(int a) {
+    return this.arcs[a];
+  }
+
+  /** @return l'indice du noeud, -1 s'il ne fait pas partie du graphe */
+  public int indice(Noeud noeud) {
+    Integer i = this.indicesNoeuds.get(noeud);
+    return i == null ? -1 : i.intValue();
+  }
+
+  /** @return l'indice de l'arc, -1 s'il ne fait pas partie du graphe */
+  public int indice(Arc arc) {
+    Integer a = this.indicesArcs.get(arc);
+    return a == null ? -1 : a.intValue();
+  }
+
+  /** @return l'indice de la première demi-arête du noeud i */
+  public int getDebut(int i) {
+    return this.debuts[i];
+  }
+
+  /** @return le nombre de demi-arêtes du noeud i (les boucles comptent 2) */
+  public int getDegre(int i) {
+    return this.debuts[i + 1] - this.debuts[i];
+  }
+
+  /** @return le noeud à l'autre bout de la demi-arête k */
+  public int getCible(int k) {
+    return this.cibles[k];
+  }
+
+  /** @return l'indice de l'arc de la demi-arête k */
+  public int getArcDemiArete(int k) {
+    return this.arcsDemiAretes[k];
+  }
+
+  public double getPoids(int k) {
+    return this.poids[k];
+  }
+
+  /** @return les indicateurs de sens de la demi-arête k */
+  public byte getSens(int k) {
+    return this.sens[k];
+  }
+
+  // ////////////////////////////////////////////////////////////////////////
+  // parcours
+  // ////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Parcours en largeur depuis un noeud.
+   * @param oriente si vrai, suit le sens de circulation ; sinon les arcs sont
+   *          parcourus dans les deux sens
+   * @return pour chaque noeud, le nombre d'arcs du plus court chemin (en
+   *         nombre d'arcs) depuis la source, -1 s'il n'est pas atteint
+   */
+  public int[] parcoursLargeur(int source, boolean oriente) {
+    int[] niveaux = new int[this.noeuds.length];
+    Arrays.fill(niveaux, -1);
+    int[] file = new int[this.noeuds.length];
+    this.parcoursLargeur(source, oriente, niveaux, file);
+    return niveaux;
+  }
+
+  /**
+   * Composantes connexes du graphe, sans tenir compte du sens de circulation.
+   * @return pour chaque noeud, le numéro de sa composante ; les composantes
+   *         sont numérotées à partir de 0 dans l'ordre de leur premier noeud
+   */
+  public int[] composantesConnexes() {
+    int n = this.noeuds.length;
+    int[] composantes = new int[n];
+    Arrays.fill(composantes, -1);
+    int[] file = new int[n];
+    int nb = 0;
+    for (int i = 0; i < n; i++) {
+      if (composantes[i] < 0) {
+        // le parcours marque les noeuds par leur niveau, on les renumérote
+        int nbAtteints = this.parcoursLargeur(i, false, composantes, file);
+        for (int j = 0; j < nbAtteints; j++) {
+          composantes[file[j]] = nb;
+        }
+        nb++;
+      }
+    }
+    return composantes;
+  }
+
+  /**
+   * Parcours en largeur : marque dans niveaux (initialisé à -1) les noeuds
+   * atteints, et les range dans file dans l'ordre de visite.
+   * @return le nombre de noeuds atteints
+   */
+  private int parcoursLargeur(int source, boolean oriente, int[] niveaux,
+      int[] file) {
+    int tete = 0, queue = 0;
+    niveaux[source] = 0;
+    file[queue++] = source;
+    while (tete < queue) {
+      int i = file[tete++];
+      int fin = this.debuts[i + 1];
+      for (int k = this.debuts[i]; k < fin; k++) {
+        int j = this.cibles[k];
+        if (niveaux[j] < 0 && (!oriente || (this.sens[k] & CIRCULABLE) != 0)) {
+          niveaux[j] = niveaux[i] + 1;
+          file[queue++] = j;
+        }
+      }
+    }
+    return queue;
+  }
+
+  // ////////////////////////////////////////////////////////////////////////
+  // plus courts chemins
+  // ////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Plus courts chemins depuis un noeud (Dijkstra), dans le sens de
+   * circulation.
+   * @param precedents si non null, rempli pour chaque noeud atteint avec la
+   *          demi-arête par laquelle on y arrive (-1 pour la source et les
+   *          noeuds non atteints) ; la demi-arête part du noeud précédent
+   * @return pour chaque noeud, la longueur du plus court chemin depuis la
+   *         source, {@link Double#POSITIVE_INFINITY} s'il n'est pas atteint
+   */
+  public double[] dijkstra(int source, int[] precedents) {
+    Parcours parcours = new Parcours(this.noeuds.length);
+    parcours.dijkstra(source);
+    if (precedents != null) {
+      System.arraycopy(parcours.precedent, 0, precedents, 0,
+          this.noeuds.length);
+    }
+    return parcours.distance;
+  }
+
+  // ////////////////////////////////////////////////////////////////////////
+  // centralités
+  // ////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Centralité d'intermédiarité (betweenness) des noeuds, calculée par
+   * l'algorithme de Brandes sur les plus courts chemins pondérés, dans le sens
+   * de circulation. Les sources sont traitées en parallèle.
+   * @param nbSources nombre de sources tirées au hasard pour une estimation
+   *          (le résultat est alors mis à l'échelle du nombre de noeuds) ; 0
+   *          ou plus que le nombre de noeuds pour le calcul exact
+   * @param graine graine du tirage des sources
+   * @return pour chaque noeud, le nombre (éventuellement estimé) de plus
+   *         courts chemins passant par lui, pondéré comme chez Brandes
+   */
+  public double[] intermediarite(int nbSources, long graine) {
+    final int n = this.noeuds.length;
+    final int[] sources = this.sources(nbSources, graine);
+    double[] resultat = this.enParallele(sources, new Calcul() {
+      @Override
+      public void calcule(Parcours parcours, int source, double[] cumul) {
+        int nbTraites = parcours.dijkstra(source);
+        double[] delta = parcours.delta;
+        // les noeuds par distance décroissante
+        for (int r = nbTraites - 1; r > 0; r--) {
+          int w = parcours.ordre[r];
+          double coef = (1 + delta[w]) / parcours.sigma[w];
+          int fin = GrapheCompact.this.debuts[w + 1];
+          for (int k = GrapheCompact.this.debuts[w]; k < fin; k++) {
+            int v = GrapheCompact.this.cibles[k];
+            if (parcours.estPredecesseur(v, w, k)) {
+              delta[v] += parcours.sigma[v] * coef;
+            }
+          }
+          cumul[w] += delta[w];
+        }
+      }
+    });
+    if (sources.length < n) {
+      double echelle = (double) n / sources.length;
+      for (int i = 0; i < n; i++) {
+        resultat[i] *= echelle;
+      }
+    }
+    return resultat;
+  }
+
+  /**
+   * Centralité de proximité harmonique des noeuds : somme des inverses des
+   * longueurs des plus courts chemins vers les autres noeuds atteignables,
+   * dans le sens de circulation. Les noeuds sont traités en parallèle.
+   */
+  public double[] proximite() {
+    return this.enParallele(this.sources(0, 0), new Calcul() {
+      @Override
+      public void calcule(Parcours parcours, int source, double[] cumul) {
+        int nbTraites = parcours.dijkstra(source);
+        double somme = 0;
+        for (int r = 1; r < nbTraites; r++) {
+          double d = parcours.distance[parcours.ordre[r]];
+          if (d > 0) {
+            somme += 1 / d;
+          }
+        }
+        cumul[source] += somme;
+      }
+    });
+  }
+
+  private int[] sources(int nbSources, long graine) {
+    int n = this.noeuds.length;
+    int[] sources = new int[n];
+    for (int i = 0; i < n; i++) {
+      sources[i] = i;
+    }
+    if (nbSources <= 0 || nbSources >= n) {
+      return sources;
+    }
+    // tirage sans remise
+    Random random = new Random(graine);
+    for (int i = 0; i < nbSources; i++) {
+      int j = i + random.nextInt(n - i);
+      int s = sources[i];
+      sources[i] = sources[j];
+      sources[j] = s;
+    }
+    return Arrays.copyOf(sources, nbSources);
+  }
+
+  /** Calcul fait pour chaque source, cumulé dans un tableau par tâche. */
+  private interface Calcul {
+    void calcule(Parcours parcours, int source, double[] cumul);
+  }
+
+  /**
+   * Applique un calcul à chaque source, par paquets de sources traités en
+   * parallèle, chacun avec son propre état de parcours, puis somme les cumuls.
+   */
+  private double[] enParallele(final int[] sources, final Calcul calcul) {
+    final int n = this.noeuds.length;
+    final int nbTaches = Math.max(1, Math.min(sources.length,
+        4 * ForkJoinPool.getCommonPoolParallelism()));
+    return IntStream.range(0, nbTaches).parallel().mapToObj(t -> {
+      Parcours parcours = new Parcours(n);
+      double[] cumul = new double[n];
+      for (int s = t; s < sources.length; s += nbTaches) {
+        calcul.calcule(parcours, sources[s], cumul);
+        parcours.reinitialise();
+      }
+      return cumul;
+    }).reduce((a, b) -> {
+      for (int i = 0; i < n; i++) {
+        a[i] += b[i];
+      }
+      return a;
+    }).orElse(new double[n]);
+  }
+
+  /**
+   * État d'un parcours de Dijkstra. Après un parcours, les noeuds traités sont
+   * rangés par distance croissante dans ordre ; seules leurs cases sont remises
+   * à zéro par {@link #reinitialise()}.
+   */
+  private final class Parcours {
+    final double[] distance;
+    /** Nombre de plus courts chemins depuis la source. */
+    final double[] sigma;
+    /** Dépendance de la source envers chaque noeud (Brandes). */
+    final double[] delta;
+    /** Demi-arête par laquelle on arrive à chaque noeud. */
+    final int[] precedent;
+    /** Rang de traitement de chaque noeud. */
+    final int[] rang;
+    /** Noeuds traités, dans l'ordre. */
+    final int[] ordre;
+    int nbTraites;
+    final TasBinaire tas;
+
+    Parcours(int n) {
+      this.distance = new double[n];
+      this.sigma = new double[n];
+      this.delta = new double[n];
+      this.precedent = new int[n];
+      this.rang = new int[n];
+      this.ordre = new int[n];
+      this.tas = new TasBinaire(n);
+      Arrays.fill(this.distance, Double.POSITIVE_INFINITY);
+      Arrays.fill(this.precedent, -1);
+      Arrays.fill(this.rang, -1);
+    }
+
+    /** @return le nombre de noeuds traités */
+    int dijkstra(int source) {
+      this.distance[source] = 0;
+      this.sigma[source] = 1;
+      this.tas.ajoute(source, 0);
+      while (!this.tas.estVide()) {
+        int v = this.tas.extraitMin();
+        this.rang[v] = this.nbTraites;
+        this.ordre[this.nbTraites++] = v;
+        double dv = this.distance[v];
+        int fin = GrapheCompact.this.debuts[v + 1];
+        for (int k = GrapheCompact.this.debuts[v]; k < fin; k++) {
+          if ((GrapheCompact.this.sens[k] & CIRCULABLE) == 0) {
+            continue;
+          }
+          int w = GrapheCompact.this.cibles[k];
+          if (this.rang[w] >= 0) {
+            continue; // noeud déjà traité
+          }
+          double dw = dv + GrapheCompact.this.poids[k];
+          if (dw < this.distance[w]) {
+            if (this.distance[w] == Double.POSITIVE_INFINITY) {
+              this.tas.ajoute(w, dw);
+            } else {
+              this.tas.diminue(w, dw);
+            }
+            this.distance[w] = dw;
+            this.sigma[w] = this.sigma[v];
+            this.precedent[w] = k;
+          } else if (dw == this.distance[w]) {
+            this.sigma[w] += this.sigma[v];
+          }
+        }
+      }
+      return this.nbTraites;
+    }
+
+    /**
+     * Vrai si v précède w sur un plus court chemin, par la demi-arête k
+     * partant de w.
+     */
+    boolean estPredecesseur(int v, int w, int k) {
+      return (GrapheCompact.this.sens[k] & INVERSE_CIRCULABLE) != 0
+          && this.rang[v] >= 0 && this.rang[v] < this.rang[w]
+          && this.distance[v] + GrapheCompact.this.poids[k] == this.distance[w];
+    }
+
+    void reinitialise() {
+      for (int r = 0; r < this.nbTraites; r++) {
+        int i = this.ordre[r];
+        this.distance[i] = Double.POSITIVE_INFINITY;
+        this.sigma[i] = 0;
+        this.delta[i] = 0;
+        this.precedent[i] = -1;
+        this.rang[i] = -1;
+      }
+      this.nbTraites = 0;
+    }
+  }
+}
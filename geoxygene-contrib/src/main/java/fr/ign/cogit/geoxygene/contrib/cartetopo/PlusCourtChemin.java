@@ -0,0 +1,509 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.contrib.cartetopo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Calcul de plus courts chemins sur une carte topologique (Dijkstra avec un tas
+ * binaire indexé, et variante A* avec une heuristique euclidienne).
+ * <p>
+ * À la construction, le graphe de la carte est figé dans des tableaux
+ * (adjacence compacte au sens de la circulation, poids des arcs et coordonnées
+ * des noeuds) : les modifications ultérieures de la carte ou des poids ne sont
+ * pas vues, il faut alors créer un nouveau calculateur. Les règles de
+ * parcours sont celles de {@link Noeud#plusCourtChemin(Noeud, double)} :
+ * l'attribut orientation des arcs DOIT être renseigné, le poids est
+ * l'attribut 'poids' des arcs et, entre deux arcs parallèles, seul le plus
+ * court est retenu.
+ * <p>
+ * Contrairement à {@link Noeud#plusCourtChemin(Noeud, double)}, l'état d'une
+ * recherche n'est pas stocké sur les noeuds mais dans des tableaux propres à
+ * chaque appel : les méthodes de calcul ({@link #chemin}, {@link #cheminAEtoile},
+ * {@link #distances}) peuvent être appelées simultanément depuis plusieurs
+ * threads. Seule {@link #plusCourtChemin(Noeud, Noeud, double)}, qui crée un
+ * groupe dans la carte, ne l'est pas.
+ * <p>
+ * English: shortest path engine over a topological map, thread-safe once
+ * built.
+ *
+ */
+public class PlusCourtChemin {
+  protected final static Logger logger = LogManager
+      .getLogger(PlusCourtChemin.class.getName());
+
+  /** La carte topo dont le graphe est issu. */
+  private final CarteTopo carteTopo;
+  /** Les noeuds de la carte, par indice. */
+  private final Noeud[] noeuds;
+  /** Indice de chaque noeud dans {@link #noeuds}. */
+  private final Map<Noeud, Integer> indices;
+  /** Voisins du noeud i : de debuts[i] (inclus) à debuts[i + 1] (exclu). */
+  private final int[] debuts;
+  /** Noeud d'arrivée de chaque arc sortant (au sens de la circulation). */
+  private final int[] cibles;
+  /** Poids de chaque arc sortant. */
+  private final double[] poids;
+  /** Arc de la carte correspondant à chaque arc sortant. */
+  private final Arc[] arcs;
+  /** Coordonnées des noeuds, pour l'heuristique de A*. */
+  private final double[] x, y;
+
+  /**
+   * Fige le graphe de la carte topo.
+   * @param carteTopo une carte topo dont la topologie arcs/noeuds est calculée
+   */
+  public PlusCourtChemin(CarteTopo carteTopo) {
+    this.carteTopo = carteTopo;
+    List<Noeud> listeNoeuds = carteTopo.getListeNoeuds();
+    int n = listeNoeuds.size();
+    this.noeuds = listeNoeuds.toArray(new Noeud[n]);
+    this.indices = new IdentityHashMap<Noeud, Integer>(n);
+    this.x = new double[n];
+    this.y = new double[n];
+    for (int i = 0; i < n; i++) {
+      this.indices.put(this.noeuds[i], Integer.valueOf(i));
+      this.x[i] = this.noeuds[i].getCoord().getX();
+      this.y[i] = this.noeuds[i].getCoord().getY();
+    }
+    this.debuts = new int[n + 1];
+    int capacite = 2 * carteTopo.getListeArcs().size();
+    int[] lesCibles = new int[capacite];
+    double[] lesPoids = new double[capacite];
+    Arc[] lesArcs = new Arc[capacite];
+    int nb = 0;
+    List<Arc> sortants = new ArrayList<Arc>();
+    List<Noeud> voisins = new ArrayList<Noeud>();
+    for (int i = 0; i < n; i++) {
+      this.debuts[i] = nb;
+      // transformation du sens géométrique au sens de circulation
+      sortants.clear();
+      voisins.clear();
+      for (Arc arc : this.noeuds[i].getEntrants()) {
+        if ((arc.getOrientation() == -1 || arc.getOrientation() == 2)
+            && arc.getNoeudIni() != null) {
+          sortants.add(arc);
+          voisins.add(arc.getNoeudIni());
+        }
+      }
+      for (Arc arc : this.noeuds[i].getSortants()) {
+        if ((arc.getOrientation() == 1 || arc.getOrientation() == 2)
+            && arc.getNoeudFin() != null) {
+          sortants.add(arc);
+          voisins.add(arc.getNoeudFin());
+        }
+      }
+      // en choisissant l'arc le plus court, si il existe des arcs
+      // parallèles (mêmes noeuds ini et fin)
+      for (int k = 0; k < sortants.size(); k++) {
+        Integer cible = this.indices.get(voisins.get(k));
+        if (cible == null) {
+          continue; // noeud hors de la carte
+        }
+        int j = this.debuts[i];
+        while (j < nb && lesCibles[j] != cible.intValue()) {
+          j++;
+        }
+        double p = sortants.get(k).getPoids();
+        if (j < nb) {
+          if (p < lesPoids[j]) {
+            lesPoids[j] = p;
+            lesArcs[j] = sortants.get(k);
+          }
+          continue;
+        }
+        if (nb == lesCibles.length) {
+          capacite = Math.max(16, 2 * nb);
+          lesCibles = Arrays.copyOf(lesCibles, capacite);
+          lesPoids = Arrays.copyOf(lesPoids, capacite);
+          lesArcs = Arrays.copyOf(lesArcs, capacite);
+        }
+        lesCibles[nb] = cible.intValue();
+        lesPoids[nb] = p;
+        lesArcs[nb] = sortants.get(k);
+        nb++;
+      }
+    }
+    this.debuts[n] = nb;
+    this.cibles = Arrays.copyOf(lesCibles, nb);
+    this.poids = Arrays.copyOf(lesPoids, nb);
+    this.arcs = Arrays.copyOf(lesArcs, nb);
+  }
+
+  /** @return la carte topo dont le graphe est issu */
+  public CarteTopo getCarteTopo() {
+    return this.carteTopo;
+  }
+
+  /**
+   * Plus court chemin de départ vers arrivée (Dijkstra).
+   * @param maxLongueur on arrête de chercher et on renvoie null s'il n'y a pas
+   *          de pcc de longueur inférieure à maxLongueur (inactif si
+   *          maxLongueur = 0)
+   * @return le chemin, ou null si arrivée n'est pas atteignable
+   */
+  public Chemin chemin(Noeud depart, Noeud arrivee, double maxLongueur) {
+    return this.chemin(depart, arrivee, maxLongueur, false);
+  }
+
+  /**
+   * Plus court chemin de départ vers arrivée avec l'algorithme A*, guidé par
+   * la distance euclidienne dans le plan jusqu'à l'arrivée. Le résultat est
+   * celui de {@link #chemin(Noeud, Noeud, double)} à condition que le poids de
+   * chaque arc soit au moins égal à la distance entre ses extrémités (c'est le
+   * cas si le poids est la longueur de l'arc), sinon le chemin renvoyé peut ne
+   * pas être le plus court.
+   * @param maxLongueur on arrête de chercher et on renvoie null s'il n'y a pas
+   *          de pcc de longueur inférieure à maxLongueur (inactif si
+   *          maxLongueur = 0)
+   * @return le chemin, ou null si arrivée n'est pas atteignable
+   */
+  public Chemin cheminAEtoile(Noeud depart, Noeud arrivee, double maxLongueur) {
+    return this.chemin(depart, arrivee, maxLongueur, true);
+  }
+
+  /**
+   * Longueurs des plus courts chemins d'un noeud vers plusieurs noeuds, en une
+   * seule recherche qui s'arrête quand toutes les arrivées sont atteintes.
+   * @param maxLongueur longueur au delà de laquelle on arrête de chercher
+   *          (inactif si maxLongueur = 0)
+   * @return pour chaque arrivée, la longueur du pcc, ou
+   *         {@link Double#POSITIVE_INFINITY} si elle n'est pas atteignable
+   */
+  public double[] distances(Noeud depart, List<Noeud> arrivees,
+      double maxLongueur) {
+    return PlusCourtChemin.distances(new Recherche(this), this.indice(depart),
+        this.indices(arrivees), maxLongueur);
+  }
+
+  private static double[] distances(Recherche recherche, int source,
+      int[] cibles, double maxLongueur) {
+    double[] resultat = new double[cibles.length];
+    Arrays.fill(resultat, Double.POSITIVE_INFINITY);
+    try {
+      recherche.dijkstra(source, cibles, maxLongueur);
+      for (int i = 0; i < cibles.length; i++) {
+        if (recherche.estTraite(cibles[i])) {
+          resultat[i] = recherche.distance[cibles[i]];
+        }
+      }
+    } finally {
+      recherche.reinitialise();
+    }
+    return resultat;
+  }
+
+  /**
+   * Matrice des longueurs des plus courts chemins entre plusieurs départs et
+   * plusieurs arrivées. Les départs sont répartis entre des tâches parallèles
+   * qui réutilisent chacune un même état de recherche.
+   * @param maxLongueur longueur au delà de laquelle on arrête de chercher
+   *          (inactif si maxLongueur = 0)
+   * @return distances[i][j] est la longueur du pcc de departs[i] vers
+   *         arrivees[j], ou {@link Double#POSITIVE_INFINITY}
+   */
+  public double[][] distances(final List<Noeud> departs,
+      final List<Noeud> arrivees, final double maxLongueur) {
+    final double[][] resultat = new double[departs.size()][];
+    final int[] sources = this.indices(departs);
+    final int[] cibles = this.indices(arrivees);
+    final int nbTaches = Math.min(sources.length, 4 * Runtime.getRuntime()
+        .availableProcessors());
+    IntStream.range(0, nbTaches).parallel().forEach(tache -> {
+      Recherche recherche = new Recherche(this);
+      for (int i = tache; i < sources.length; i += nbTaches) {
+        resultat[i] = PlusCourtChemin.distances(recherche, sources[i], cibles,
+            maxLongueur);
+      }
+    });
+    return resultat;
+  }
+
+  /**
+   * Plus court chemin de départ vers arrivée, rendu sous la même forme que
+   * {@link Noeud#plusCourtChemin(Noeud, double)} : un groupe de la carte qui
+   * contient (dans l'ordre) les noeuds et arcs du chemin. Cette méthode
+   * modifie la carte et n'est donc pas thread-safe.
+   * @param maxLongueur on arrête de chercher et on renvoie null s'il n'y a pas
+   *          de pcc de longueur inférieure à maxLongueur (inactif si
+   *          maxLongueur = 0)
+   * @return le groupe, ou null si arrivée n'est pas atteignable
+   */
+  public Groupe plusCourtChemin(Noeud depart, Noeud arrivee, double maxLongueur) {
+    if (this.carteTopo.getPopGroupes() == null) {
+      PlusCourtChemin.logger.error("ATTENTION : la carte topo "
+          + this.carteTopo.getNom() + " n'a pas de population de groupes");
+      PlusCourtChemin.logger
+          .error("            Impossible de calculer un plus court chemin");
+      return null;
+    }
+    Chemin chemin = this.chemin(depart, arrivee, maxLongueur);
+    if (chemin == null) {
+      return null;
+    }
+    Groupe plusCourtChemin = this.carteTopo.getPopGroupes().nouvelElement();
+    plusCourtChemin.setSchema(depart.getSchema());
+    for (Noeud noeud : chemin.getNoeuds()) {
+      noeud.addGroupe(plusCourtChemin);
+    }
+    for (Arc arc : chemin.getArcs()) {
+      arc.addGroupe(plusCourtChemin);
+    }
+    plusCourtChemin.setListeNoeuds(new ArrayList<Noeud>(chemin.getNoeuds()));
+    plusCourtChemin.setListeArcs(new ArrayList<Arc>(chemin.getArcs()));
+    plusCourtChemin.setLength(chemin.getLongueur());
+    return plusCourtChemin;
+  }
+
+  private Chemin chemin(Noeud depart, Noeud arrivee, double maxLongueur,
+      boolean aEtoile) {
+    int source = this.indice(depart);
+    int cible = this.indice(arrivee);
+    if (source == cible) {
+      return new Chemin(Collections.singletonList(depart),
+          Collections.<Arc> emptyList(), 0);
+    }
+    Recherche recherche = new Recherche(this);
+    try {
+      if (aEtoile) {
+        recherche.aEtoile(source, cible, maxLongueur);
+      } else {
+        recherche.dijkstra(source, new int[] { cible }, maxLongueur);
+      }
+      if (!recherche.estTraite(cible)) {
+        return null;
+      }
+      // Phase "arrière"
+      List<Noeud> noeudsChemin = new ArrayList<Noeud>();
+      List<Arc> arcsChemin = new ArrayList<Arc>();
+      for (int i = cible; i != source; i = recherche.noeudPrecedent[i]) {
+        noeudsChemin.add(this.noeuds[i]);
+        arcsChemin.add(this.arcs[recherche.arcPrecedent[i]]);
+      }
+      noeudsChemin.add(depart);
+      Collections.reverse(noeudsChemin);
+      Collections.reverse(arcsChemin);
+      return new Chemin(noeudsChemin, arcsChemin, recherche.distance[cible]);
+    } finally {
+      recherche.reinitialise();
+    }
+  }
+
+  private int indice(Noeud noeud) {
+    Integer i = this.indices.get(noeud);
+    if (i == null) {
+      throw new IllegalArgumentException("Le noeud " + noeud
+          + " ne fait pas partie de la carte topo " + this.carteTopo.getNom());
+    }
+    return i.intValue();
+  }
+
+  private int[] indices(List<Noeud> liste) {
+    int[] resultat = new int[liste.size()];
+    for (int i = 0; i < resultat.length; i++) {
+      resultat[i] = this.indice(liste.get(i));
+    }
+    return resultat;
+  }
+
+  /**
+   * Résultat d'un calcul de plus court chemin : les noeuds (départ et arrivée
+   * compris) et les arcs parcourus, dans l'ordre.
+   */
+  public static class Chemin {
+    private final List<Noeud> noeuds;
+    private final List<Arc> arcs;
+    private final double longueur;
+
+    Chemin(List<Noeud> noeuds, List<Arc> arcs, double longueur) {
+      this.noeuds = noeuds;
+      this.arcs = arcs;
+      this.longueur = longueur;
+    }
+
+    public List<Noeud> getNoeuds() {
+      return this.noeuds;
+    }
+
+    public List<Arc> getArcs() {
+      return this.arcs;
+    }
+
+    /** @return la somme des poids des arcs du chemin */
+    public double getLongueur() {
+      return this.longueur;
+    }
+  }
+
+  /**
+   * État d'une recherche. Il ne garde que les tableaux du graphe, pas le
+   * calculateur ni la carte, et n'est utilisé que le temps d'un appel ; une
+   * matrice de distances le réutilise pour tous les départs d'une tâche, seules
+   * les cases touchées par une recherche étant alors remises à zéro.
+   */
+  private static final class Recherche {
+    /** Tableaux du graphe, partagés avec le calculateur. */
+    final int[] debuts;
+    final int[] cibles;
+    final double[] poids;
+    final double[] x, y;
+    /** Meilleure distance connue depuis le départ. */
+    final double[] distance;
+    /** Indice (dans {@link PlusCourtChemin#arcs}) de l'arc d'arrivée. */
+    final int[] arcPrecedent;
+    final int[] noeudPrecedent;
+    /** 0 : non atteint, 1 : dans le tas, 2 : traité. */
+    final byte[] etat;
+    /** Arrivées de la recherche en cours. */
+    final boolean[] arrivee;
+    /** Noeuds atteints, à réinitialiser. */
+    int[] atteints;
+    int nbAtteints;
+    /**
+     * Noeuds atteints non traités, ordonnés par distance (plus l'heuristique
+     * pour A*).
+     */
+    final TasBinaire tas;
+
+    Recherche(PlusCourtChemin graphe) {
+      this.debuts = graphe.debuts;
+      this.cibles = graphe.cibles;
+      this.poids = graphe.poids;
+      this.x = graphe.x;
+      this.y = graphe.y;
+      int n = graphe.noeuds.length;
+      this.distance = new double[n];
+      this.arcPrecedent = new int[n];
+      this.noeudPrecedent = new int[n];
+      this.etat = new byte[n];
+      this.arrivee = new boolean[n];
+      this.atteints = new int[Math.max(1, Math.min(n, 64))];
+      this.tas = new TasBinaire(n);
+    }
+
+    boolean estTraite(int i) {
+      return this.etat[i] == 2;
+    }
+
+    void dijkstra(int source, int[] cibles, double maxLongueur) {
+      int restantes = 0;
+      for (int cible : cibles) {
+        if (!this.arrivee[cible]) {
+          this.arrivee[cible] = true;
+          restantes++;
+        }
+      }
+      this.atteint(source, -1, -1, 0, 0);
+      while (!this.tas.estVide()) {
+        int courant = this.tas.extraitMin();
+        this.etat[courant] = 2;
+        if (this.arrivee[courant] && --restantes == 0) {
+          break;
+        }
+        if (maxLongueur != 0 && this.distance[courant] > maxLongueur) {
+          break; // heuristique pour stopper la recherche
+        }
+        this.relache(courant, -1);
+      }
+      for (int cible : cibles) {
+        this.arrivee[cible] = false;
+      }
+    }
+
+    void aEtoile(int source, int cible, double maxLongueur) {
+      this.atteint(source, -1, -1, 0, this.heuristique(source, cible));
+      while (!this.tas.estVide()) {
+        int courant = this.tas.extraitMin();
+        this.etat[courant] = 2;
+        if (courant == cible) {
+          break;
+        }
+        if (maxLongueur != 0 && this.tas.cle(courant) > maxLongueur) {
+          break; // aucun chemin restant ne peut être assez court
+        }
+        this.relache(courant, cible);
+      }
+    }
+
+    double heuristique(int i, int cible) {
+      double dx = this.x[i] - this.x[cible];
+      double dy = this.y[i] - this.y[cible];
+      return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /** Relâche les arcs sortants ; cible = -1 pour Dijkstra. */
+    void relache(int courant, int cible) {
+      double d = this.distance[courant];
+      int fin = this.debuts[courant + 1];
+      for (int k = this.debuts[courant]; k < fin; k++) {
+        int voisin = this.cibles[k];
+        byte e = this.etat[voisin];
+        if (e == 2) {
+          continue; // Noeud déjà traité
+        }
+        double dv = d + this.poids[k];
+        if (e == 1) {
+          // Noeud déjà atteint, on voit si on a trouvé un chemin plus court
+          if (dv < this.distance[voisin]) {
+            // l'heuristique ne dépend que du noeud
+            this.tas.diminue(voisin, this.tas.cle(voisin) + dv
+                - this.distance[voisin]);
+            this.distance[voisin] = dv;
+            this.arcPrecedent[voisin] = k;
+            this.noeudPrecedent[voisin] = courant;
+          }
+          continue;
+        }
+        this.atteint(voisin, k, courant, dv,
+            cible < 0 ? dv : dv + this.heuristique(voisin, cible));
+      }
+    }
+
+    /** Nouveau noeud atteint, on l'initialise et on l'ajoute au tas. */
+    void atteint(int i, int arc, int precedent, double d, double p) {
+      if (this.nbAtteints == this.atteints.length) {
+        this.atteints = Arrays.copyOf(this.atteints, 2 * this.nbAtteints);
+      }
+      this.atteints[this.nbAtteints++] = i;
+      this.etat[i] = 1;
+      this.distance[i] = d;
+      this.arcPrecedent[i] = arc;
+      this.noeudPrecedent[i] = precedent;
+      this.tas.ajoute(i, p);
+    }
+
+    void reinitialise() {
+      for (int k = 0; k < this.nbAtteints; k++) {
+        this.etat[this.atteints[k]] = 0;
+      }
+      this.nbAtteints = 0;
+      this.tas.vide();
+    }
+  }
+}
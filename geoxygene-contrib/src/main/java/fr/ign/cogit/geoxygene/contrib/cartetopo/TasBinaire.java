@@ -0,0 +1,124 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.contrib.cartetopo;
+
+/**
+ * Tas binaire indexé des entiers 0..n-1, ordonnés par une clé réelle, avec
+ * diminution de clé en O(log n). Sert aux calculs de plus courts chemins.
+ * <p>
+ * La clé d'un élément reste lisible après son extraction, jusqu'à ce qu'il soit
+ * de nouveau ajouté.
+ */
+final class TasBinaire {
+  /** Les éléments, rangés en tas. */
+  private final int[] tas;
+  /** Position de chaque élément dans le tas. */
+  private final int[] position;
+  /** Clé de chaque élément. */
+  private final double[] cles;
+  private int taille;
+
+  TasBinaire(int n) {
+    this.tas = new int[n];
+    this.position = new int[n];
+    this.cles = new double[n];
+  }
+
+  boolean estVide() {
+    return this.taille == 0;
+  }
+
+  boolean contient(int i) {
+    int pos = this.position[i];
+    return pos < this.taille && this.tas[pos] == i;
+  }
+
+  double cle(int i) {
+    return this.cles[i];
+  }
+
+  /** Ajoute un élément qui n'est pas dans le tas. */
+  void ajoute(int i, double cle) {
+    this.cles[i] = cle;
+    this.tas[this.taille] = i;
+    this.position[i] = this.taille;
+    this.monte(this.taille++);
+  }
+
+  /** Diminue la clé d'un élément du tas. */
+  void diminue(int i, double cle) {
+    this.cles[i] = cle;
+    this.monte(this.position[i]);
+  }
+
+  int extraitMin() {
+    int min = this.tas[0];
+    int dernier = this.tas[--this.taille];
+    if (this.taille > 0) {
+      this.tas[0] = dernier;
+      this.position[dernier] = 0;
+      this.descend(0);
+    }
+    return min;
+  }
+
+  void vide() {
+    this.taille = 0;
+  }
+
+  private void monte(int pos) {
+    int i = this.tas[pos];
+    double p = this.cles[i];
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      int j = this.tas[parent];
+      if (this.cles[j] <= p) {
+        break;
+      }
+      this.tas[pos] = j;
+      this.position[j] = pos;
+      pos = parent;
+    }
+    this.tas[pos] = i;
+    this.position[i] = pos;
+  }
+
+  private void descend(int pos) {
+    int i = this.tas[pos];
+    double p = this.cles[i];
+    int moitie = this.taille >>> 1;
+    while (pos < moitie) {
+      int fils = 2 * pos + 1;
+      int droit = fils + 1;
+      if (droit < this.taille && this.cles[this.tas[droit]] < this.cles[this.tas[fils]]) {
+        fils = droit;
+      }
+      int j = this.tas[fils];
+      if (p <= this.cles[j]) {
+        break;
+      }
+      this.tas[pos] = j;
+      this.position[j] = pos;
+      pos = fils;
+    }
+    this.tas[pos] = i;
+    this.position[i] = pos;
+  }
+}
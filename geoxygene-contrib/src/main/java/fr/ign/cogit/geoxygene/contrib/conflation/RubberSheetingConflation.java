@@ -1,8 +1,11 @@
 package fr.ign.cogit.geoxygene.contrib.conflation;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
 import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
@@ -26,6 +29,22 @@ public class RubberSheetingConflation {
   private Set<ConflationVector> conflationVectors;
   private Map<IFeature, IGeometry> conflatedGeoms;
   private double distanceThreshold = 0.0005;
+  /**
+   * If true, the conflation vectors are stored in a kd-tree and only the
+   * vectors that can pass the distance threshold are visited for each vertex.
+   */
+  private boolean indexed = false;
+  /**
+   * If true, the features are conflated in parallel on the common fork/join
+   * pool.
+   */
+  private boolean parallel = false;
+  /**
+   * In the indexed mode, maximum number of (nearest) vectors aggregated for a
+   * vertex. 0 means all the vectors that pass the distance threshold.
+   */
+  private int nbMaxVectors = 0;
+  private VectorIndex index = null;
 
   public RubberSheetingConflation(
       IFeatureCollection<? extends IFeature> featsToConflate,
@@ -51,6 +70,7 @@ public class RubberSheetingConflation {
 
   public void setConflationVectors(Set<ConflationVector> conflationVectors) {
     this.conflationVectors = conflationVectors;
+    this.index = null;
   }
 
   public Map<IFeature, IGeometry> getConflatedGeoms() {
@@ -67,27 +87,66 @@ public class RubberSheetingConflation {
 
   public void setDistanceThreshold(double distanceThreshold) {
     this.distanceThreshold = distanceThreshold;
+    this.index = null;
+  }
+
+  public boolean isIndexed() {
+    return indexed;
+  }
+
+  public void setIndexed(boolean indexed) {
+    this.indexed = indexed;
+  }
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  public int getNbMaxVectors() {
+    return nbMaxVectors;
+  }
+
+  public void setNbMaxVectors(int nbMaxVectors) {
+    this.nbMaxVectors = nbMaxVectors;
   }
 
   /**
    * Trigger a rubber sheeting conflation on the features to conflate, according
-   * to the conflation vectors.
+   * to the conflation vectors. In the parallel mode, the new geometries are
+   * computed concurrently and then put in the output map.
    */
   public void conflation() {
-    for (IFeature feat : this.featsToConflate) {
-      IGeometry newGeom = null;
-      if (feat.getGeom() instanceof IPoint)
-        newGeom = conflatePoint((IPoint) feat.getGeom());
-      else if (feat.getGeom() instanceof ILineString)
-        newGeom = conflateLineString((ILineString) feat.getGeom());
-      else if (feat.getGeom() instanceof IPolygon)
-        newGeom = conflatePolygon((IPolygon) feat.getGeom());
-      // fill the output map
-      if (newGeom == null)
-        this.conflatedGeoms.put(feat, feat.getGeom());
-      else
-        this.conflatedGeoms.put(feat, newGeom);
+    if (this.indexed)
+      this.getIndex();
+    if (!this.parallel) {
+      for (IFeature feat : this.featsToConflate)
+        this.conflatedGeoms.put(feat, conflateFeature(feat));
+      return;
     }
+    final List<? extends IFeature> feats = this.featsToConflate.getElements();
+    final IGeometry[] newGeoms = new IGeometry[feats.size()];
+    IntStream.range(0, feats.size()).parallel()
+        .forEach(i -> newGeoms[i] = conflateFeature(feats.get(i)));
+    for (int i = 0; i < newGeoms.length; i++)
+      this.conflatedGeoms.put(feats.get(i), newGeoms[i]);
+  }
+
+  private IGeometry conflateFeature(IFeature feat) {
+    IGeometry newGeom = null;
+    if (feat.getGeom() instanceof IPoint)
+      newGeom = conflatePoint((IPoint) feat.getGeom());
+    else if (feat.getGeom() instanceof ILineString)
+      newGeom = conflateLineString((ILineString) feat.getGeom());
+    else if (feat.getGeom() instanceof IPolygon)
+      newGeom = conflatePolygon((IPolygon) feat.getGeom());
+    // fill the output map
+    if (newGeom == null)
+      return feat.getGeom();
+    return newGeom;
   }
 
   private ILineString conflateLineString(ILineString geom) {
@@ -138,6 +197,9 @@ public class RubberSheetingConflation {
    * @return
    */
   public Vector2D computeAggregatedVector(IDirectPosition point) {
+    if (this.indexed)
+      return this.getIndex().aggregate(point.getX(), point.getY(),
+          this.nbMaxVectors);
     Vector2D vectFinal = null;
     double numerateurX = 0.0;
     double denominateur = 0.0;
@@ -165,4 +227,242 @@ public class RubberSheetingConflation {
         / denominateur);
     return vectFinal;
   }
+
+  private synchronized VectorIndex getIndex() {
+    if (this.index == null)
+      this.index = new VectorIndex(this.conflationVectors,
+          this.distanceThreshold);
+    return this.index;
+  }
+
+  /**
+   * Static kd-tree on the initial positions of the conflation vectors. A vector
+   * is only taken into account at distance d if norm / d² >= threshold, i.e.
+   * within its own radius sqrt(norm / threshold): each subtree stores its
+   * bounding box and the greatest radius of its vectors, so that the subtrees
+   * that cannot contain a relevant vector are pruned. The tree is implicit: the
+   * node of the range [lo, hi[ is the vector at (lo + hi) / 2.
+   */
+  private static class VectorIndex {
+
+    private static final int LEAF_SIZE = 8;
+
+    private final int n;
+    private final double threshold;
+    private final double[] x, y, vx, vy, norm;
+    // per node: bounding box of the subtree and greatest squared radius
+    private final double[] minX, minY, maxX, maxY, maxRadius2;
+
+    VectorIndex(Set<ConflationVector> vectors, double threshold) {
+      this.threshold = threshold;
+      this.n = vectors.size();
+      this.x = new double[n];
+      this.y = new double[n];
+      this.vx = new double[n];
+      this.vy = new double[n];
+      this.norm = new double[n];
+      this.minX = new double[n];
+      this.minY = new double[n];
+      this.maxX = new double[n];
+      this.maxY = new double[n];
+      this.maxRadius2 = new double[n];
+      int i = 0;
+      for (ConflationVector vect : vectors) {
+        this.x[i] = vect.getIniPos().getX();
+        this.y[i] = vect.getIniPos().getY();
+        this.vx[i] = vect.getVector().getX();
+        this.vy[i] = vect.getVector().getY();
+        this.norm[i] = vect.getVector().norme();
+        i++;
+      }
+      this.build(0, n);
+    }
+
+    private double radius2(int i) {
+      if (this.threshold <= 0)
+        return Double.POSITIVE_INFINITY;
+      return this.norm[i] / this.threshold;
+    }
+
+    private void build(int lo, int hi) {
+      if (lo >= hi)
+        return;
+      double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+      double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+      double r2 = 0;
+      for (int i = lo; i < hi; i++) {
+        x0 = Math.min(x0, this.x[i]);
+        y0 = Math.min(y0, this.y[i]);
+        x1 = Math.max(x1, this.x[i]);
+        y1 = Math.max(y1, this.y[i]);
+        r2 = Math.max(r2, this.radius2(i));
+      }
+      int mid = (lo + hi) >>> 1;
+      this.minX[mid] = x0;
+      this.minY[mid] = y0;
+      this.maxX[mid] = x1;
+      this.maxY[mid] = y1;
+      // the threshold test is done with the exact formula, the margin only
+      // prevents a rounding error from pruning a vector on the limit
+      this.maxRadius2[mid] = r2 * (1 + 1E-9);
+      if (hi - lo <= LEAF_SIZE)
+        return;
+      this.select(lo, hi, mid, x1 - x0 >= y1 - y0);
+      this.build(lo, mid);
+      this.build(mid + 1, hi);
+    }
+
+    /**
+     * Partial sort of [lo, hi[ so that the k-th vector is at its place along x
+     * (or y).
+     */
+    private void select(int lo, int hi, int k, boolean alongX) {
+      double[] c = alongX ? this.x : this.y;
+      int l = lo, r = hi - 1;
+      while (r > l) {
+        double pivot = c[(l + r) >>> 1];
+        int i = l, j = r;
+        while (i <= j) {
+          while (c[i] < pivot)
+            i++;
+          while (c[j] > pivot)
+            j--;
+          if (i <= j) {
+            this.swap(i, j);
+            i++;
+            j--;
+          }
+        }
+        if (k <= j)
+          r = j;
+        else if (k >= i)
+          l = i;
+        else
+          break;
+      }
+    }
+
+    private void swap(int i, int j) {
+      double t;
+      t = x[i]; x[i] = x[j]; x[j] = t;
+      t = y[i]; y[i] = y[j]; y[j] = t;
+      t = vx[i]; vx[i] = vx[j]; vx[j] = t;
+      t = vy[i]; vy[i] = vy[j]; vy[j] = t;
+      t = norm[i]; norm[i] = norm[j]; norm[j] = t;
+    }
+
+    /**
+     * Same weighting as the brute force version, restricted to the vectors
+     * found in the tree.
+     */
+    Vector2D aggregate(double px, double py, int nbMax) {
+      Neighbours nb = new Neighbours(this, nbMax);
+      this.search(0, this.n, px, py, nb);
+      return nb.aggregate();
+    }
+
+    private void search(int lo, int hi, double px, double py, Neighbours nb) {
+      if (lo >= hi)
+        return;
+      int mid = (lo + hi) >>> 1;
+      double dx = Math.max(0, Math.max(this.minX[mid] - px, px
+          - this.maxX[mid]));
+      double dy = Math.max(0, Math.max(this.minY[mid] - py, py
+          - this.maxY[mid]));
+      if (dx * dx + dy * dy > this.maxRadius2[mid])
+        return;
+      if (hi - lo <= LEAF_SIZE) {
+        for (int i = lo; i < hi; i++)
+          this.test(i, px, py, nb);
+        return;
+      }
+      this.test(mid, px, py, nb);
+      this.search(lo, mid, px, py, nb);
+      this.search(mid + 1, hi, px, py, nb);
+    }
+
+    private void test(int i, double px, double py, Neighbours nb) {
+      double dx = this.x[i] - px;
+      double dy = this.y[i] - py;
+      double dist = Math.sqrt(dx * dx + dy * dy);
+      if (this.norm[i] / (dist * dist) < this.threshold)
+        return;
+      nb.add(i, dist);
+    }
+  }
+
+  /**
+   * Vectors retained for a vertex: either all of them, summed on the fly, or
+   * the nbMax nearest ones kept in a max-heap on the distance.
+   */
+  private static class Neighbours {
+    private final VectorIndex tree;
+    private final int nbMax;
+    private double numX = 0.0, numY = 0.0, den = 0.0;
+    private int[] heapIdx;
+    private double[] heapDist;
+    private int size = 0;
+
+    Neighbours(VectorIndex tree, int nbMax) {
+      this.tree = tree;
+      this.nbMax = nbMax;
+      if (nbMax > 0) {
+        this.heapIdx = new int[nbMax];
+        this.heapDist = new double[nbMax];
+      }
+    }
+
+    void add(int i, double dist) {
+      if (this.nbMax <= 0) {
+        this.sum(i, dist);
+        return;
+      }
+      if (this.size < this.nbMax) {
+        int k = this.size++;
+        while (k > 0 && this.heapDist[(k - 1) / 2] < dist) {
+          this.heapIdx[k] = this.heapIdx[(k - 1) / 2];
+          this.heapDist[k] = this.heapDist[(k - 1) / 2];
+          k = (k - 1) / 2;
+        }
+        this.heapIdx[k] = i;
+        this.heapDist[k] = dist;
+        return;
+      }
+      if (dist >= this.heapDist[0])
+        return;
+      // replace the farthest vector
+      int k = 0;
+      while (true) {
+        int c = 2 * k + 1;
+        if (c >= this.size)
+          break;
+        if (c + 1 < this.size && this.heapDist[c + 1] > this.heapDist[c])
+          c++;
+        if (this.heapDist[c] <= dist)
+          break;
+        this.heapIdx[k] = this.heapIdx[c];
+        this.heapDist[k] = this.heapDist[c];
+        k = c;
+      }
+      this.heapIdx[k] = i;
+      this.heapDist[k] = dist;
+    }
+
+    private void sum(int i, double dist) {
+      if (dist < 1.0)
+        dist = 1.0;
+      double w = 1 / (dist * dist);
+      this.den += w;
+      this.numX += this.tree.vx[i] * w;
+      this.numY += this.tree.vy[i] * w;
+    }
+
+    Vector2D aggregate() {
+      for (int k = 0; k < this.size; k++)
+        this.sum(this.heapIdx[k], this.heapDist[k]);
+      if (this.den == 0.0)
+        return null;
+      return new Vector2D(this.numX / this.den, this.numY / this.den);
+    }
+  }
 }
@@ -1,14 +1,24 @@
 package fr.ign.cogit.geoxygene.contrib.cartetopo;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.noding.FastNodingValidator;
+import org.locationtech.jts.noding.NodedSegmentString;
+import org.locationtech.jts.noding.SegmentString;
 
 import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
 import fr.ign.cogit.geoxygene.contrib.algorithms.SwingingArmNonConvexHull;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 
 public class CarteTopoTest {
@@ -210,4 +220,168 @@ public class CarteTopoTest {
     assert (carte.getListeFaces().size() == 4);
   }
 
+  /**
+   * Grille de 4 lignes horizontales et 4 verticales qui se croisent, une ligne
+   * en T, et une ligne horizontale doublée à l'envers.
+   */
+  private CarteTopo carteACouper() {
+    CarteTopo carte = new CarteTopo("grille"); //$NON-NLS-1$
+    IPopulation<Arc> arcs = carte.getPopArcs();
+    for (int i = 0; i < 4; i++) {
+      arcs.nouvelElement(new GM_LineString(new DirectPosition(-1, i),
+          new DirectPosition(4, i))).setOrientation(1);
+      arcs.nouvelElement(new GM_LineString(new DirectPosition(i, -1),
+          new DirectPosition(i, 4)));
+    }
+    arcs.nouvelElement(new GM_LineString(new DirectPosition(0.5, 0),
+        new DirectPosition(0.5, -2)));
+    arcs.nouvelElement(new GM_LineString(new DirectPosition(4, 3),
+        new DirectPosition(-1, 3))).setOrientation(1);
+    return carte;
+  }
+
+  @Test
+  public void testRendPlanaireEnBloc() {
+    CarteTopo attendu = carteACouper();
+    attendu.rendPlanaire(0.01);
+    CarteTopo carte = carteACouper();
+    Arc arcTouche = carte.getPopArcs().get(1); // x = 0, non découpé
+    carte.rendPlanaireEnBloc(0.01);
+    Assert.assertEquals(attendu.getPopArcs().size(), carte.getPopArcs().size());
+    Assert.assertEquals(attendu.getPopNoeuds().size(),
+        carte.getPopNoeuds().size());
+    // 16 croisements, 16 extrémités de la grille, 2 du T
+    Assert.assertEquals(34, carte.getPopNoeuds().size());
+    // 8 lignes en 5 morceaux, et le T coupe y = 0
+    Assert.assertEquals(8 * 5 + 1 + 1, carte.getPopArcs().size());
+    Assert.assertFalse(carte.getPopArcs().contains(arcTouche));
+    for (Arc arc : carte.getPopArcs()) {
+      Assert.assertNotNull(arc.getNoeudIni());
+      Assert.assertNotNull(arc.getNoeudFin());
+      Assert.assertEquals(2, arc.getGeometrie().sizeControlPoint());
+      // y = 3 est doublée en sens inverse : double sens
+      if (arc.getGeometrie().startPoint().getY() == 3
+          && arc.getGeometrie().endPoint().getY() == 3) {
+        Assert.assertEquals(2, arc.getOrientation());
+      }
+    }
+    // un arc sans intersection est conservé
+    CarteTopo seul = new CarteTopo("seul"); //$NON-NLS-1$
+    Arc arc = seul.getPopArcs().nouvelElement(new GM_LineString(
+        new DirectPosition(0, 0), new DirectPosition(1, 1)));
+    seul.rendPlanaireEnBloc(0);
+    Assert.assertSame(arc, seul.getPopArcs().get(0));
+    Assert.assertEquals(2, seul.getPopNoeuds().size());
+  }
+
+  /**
+   * Lignes qui se croisent au hasard et lignes presque confondues : les
+   * intersections calculées ne sont pas exactement sur les deux lignes.
+   */
+  private CarteTopo carteACroisements() {
+    CarteTopo carte = new CarteTopo("croisements"); //$NON-NLS-1$
+    Random random = new Random(7);
+    for (int i = 0; i < 15; i++) {
+      carte.getPopArcs().nouvelElement(new GM_LineString(
+          new DirectPosition(random.nextDouble() * 10, random.nextDouble() * 10),
+          new DirectPosition(random.nextDouble() * 10,
+              random.nextDouble() * 10)));
+    }
+    for (int k = 0; k < 5; k++) {
+      carte.getPopArcs().nouvelElement(new GM_LineString(
+          new DirectPosition(0, k * 1e-7),
+          new DirectPosition(10, 3.3333333 + k * 1e-9)));
+    }
+    return carte;
+  }
+
+  /** Vrai si les arcs ne se coupent qu'en leurs sommets. */
+  private static boolean estPlanaire(CarteTopo carte) {
+    List<SegmentString> lignes = new ArrayList<SegmentString>();
+    for (Arc arc : carte.getPopArcs()) {
+      IDirectPositionList points = arc.getGeometrie().coord();
+      Coordinate[] coordonnees = new Coordinate[points.size()];
+      for (int i = 0; i < points.size(); i++) {
+        coordonnees[i] = new Coordinate(points.get(i).getX(),
+            points.get(i).getY());
+      }
+      lignes.add(new NodedSegmentString(coordonnees, arc));
+    }
+    return new FastNodingValidator(lignes).isValid();
+  }
+
+  @Test
+  public void testRendPlanaireEnBlocCroisements() {
+    for (double tolerance : new double[] { 0.001, 0 }) {
+      CarteTopo carte = carteACroisements();
+      carte.rendPlanaireEnBloc(tolerance);
+      Assert.assertTrue("tolerance " + tolerance, estPlanaire(carte)); //$NON-NLS-1$
+      Assert.assertTrue(carte.getPopArcs().size() > 20);
+      for (Arc arc : carte.getPopArcs()) {
+        Assert.assertNotNull(arc.getNoeudIni());
+        Assert.assertNotNull(arc.getNoeudFin());
+      }
+    }
+  }
+
+  /**
+   * Segments entre points voisins d'une grille 10x10, aux extrémités
+   * légèrement bruitées, et un noeud existant sur chaque point de la ligne y =
+   * 0.
+   */
+  private CarteTopo carteBruitee() {
+    CarteTopo carte = new CarteTopo("bruit"); //$NON-NLS-1$
+    Random random = new Random(42);
+    for (int x = 0; x < 10; x++) {
+      carte.getPopNoeuds().nouvelElement(new GM_Point(new DirectPosition(x, 0)));
+    }
+    for (int i = 0; i < 500; i++) {
+      int x = random.nextInt(10), y = random.nextInt(10);
+      int dx = random.nextInt(3) - 1, dy = random.nextInt(3) - 1;
+      carte.getPopArcs().nouvelElement(new GM_LineString(
+          new DirectPosition(x + random.nextDouble() / 100,
+              y + random.nextDouble() / 100),
+          new DirectPosition(x + dx + random.nextDouble() / 100,
+              y + dy + random.nextDouble() / 100)));
+    }
+    return carte;
+  }
+
+  private static void compareTopologies(CarteTopo attendu, CarteTopo carte) {
+    Assert.assertEquals(attendu.getPopNoeuds().size(),
+        carte.getPopNoeuds().size());
+    for (int i = 0; i < carte.getPopNoeuds().size(); i++) {
+      Assert.assertEquals(attendu.getPopNoeuds().get(i).getCoord(),
+          carte.getPopNoeuds().get(i).getCoord());
+    }
+    Assert.assertEquals(attendu.getPopArcs().size(), carte.getPopArcs().size());
+    for (int i = 0; i < carte.getPopArcs().size(); i++) {
+      Arc a = attendu.getPopArcs().get(i);
+      Arc b = carte.getPopArcs().get(i);
+      Assert.assertEquals(attendu.getListeNoeuds().indexOf(a.getNoeudIni()),
+          carte.getListeNoeuds().indexOf(b.getNoeudIni()));
+      Assert.assertEquals(attendu.getListeNoeuds().indexOf(a.getNoeudFin()),
+          carte.getListeNoeuds().indexOf(b.getNoeudFin()));
+      Assert.assertEquals(a.getGeometrie().startPoint(),
+          b.getGeometrie().startPoint());
+      Assert.assertEquals(a.getGeometrie().endPoint(),
+          b.getGeometrie().endPoint());
+    }
+  }
+
+  @Test
+  public void testConstructionParDalles() {
+    CarteTopo attendu = carteBruitee();
+    attendu.creeNoeudsManquants(0.1);
+    CarteTopo carte = carteBruitee();
+    carte.creeNoeudsManquantsParDalles(0.1);
+    compareTopologies(attendu, carte);
+    for (Arc arc : carte.getPopArcs()) {
+      arc.setNoeudIni(null);
+      arc.setNoeudFin(null);
+    }
+    carte.creeTopologieArcsNoeudsParDalles(0.1);
+    compareTopologies(attendu, carte);
+  }
+
 }
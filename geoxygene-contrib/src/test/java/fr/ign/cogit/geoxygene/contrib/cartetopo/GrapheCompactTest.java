@@ -0,0 +1,87 @@
+package fr.ign.cogit.geoxygene.contrib.cartetopo;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+
+/**
+ * Tests unitaires de la classe GrapheCompact.
+ */
+public class GrapheCompactTest {
+
+    protected CarteTopo carte;
+
+    /**
+     * Chemin n0 - n1 - n2 en double sens, arc n2 -> n3 en sens direct, et un
+     * noeud isolé n4.
+     */
+    @Before
+    public void setUp() throws Exception {
+        carte = new CarteTopo("Graphe compact");
+        double[][] coords = { { 0, 0 }, { 1, 0 }, { 2, 0 }, { 3, 0 }, { 10, 10 } };
+        for (double[] c : coords) {
+            Noeud n = new Noeud();
+            n.setCoord(new DirectPosition(c[0], c[1]));
+            carte.addNoeud(n);
+        }
+        for (int i = 0; i < 3; i++) {
+            Arc arc = new Arc();
+            DirectPositionList dpl = new DirectPositionList();
+            dpl.add(new DirectPosition(coords[i][0], coords[i][1]));
+            dpl.add(new DirectPosition(coords[i + 1][0], coords[i + 1][1]));
+            arc.setCoord(dpl);
+            arc.setNoeudIni(carte.getListeNoeuds().get(i));
+            arc.setNoeudFin(carte.getListeNoeuds().get(i + 1));
+            arc.setPoids(1);
+            arc.setOrientation(i == 2 ? OrientationInterface.SENS_DIRECT
+                    : OrientationInterface.DOUBLE_SENS);
+            carte.addArc(arc);
+        }
+    }
+
+    @Test
+    public void testStructure() {
+        GrapheCompact graphe = new GrapheCompact(carte);
+        Assert.assertEquals(5, graphe.getNbNoeuds());
+        Assert.assertEquals(3, graphe.getNbArcs());
+        Assert.assertEquals(6, graphe.getNbDemiAretes());
+        Assert.assertEquals(2, graphe.getDegre(1));
+        Assert.assertEquals(0, graphe.getDegre(4));
+        int k = graphe.getDebut(3);
+        Assert.assertEquals(2, graphe.getCible(k));
+        Assert.assertSame(carte.getListeArcs().get(2),
+                graphe.getArc(graphe.getArcDemiArete(k)));
+        // n3 -> n2 est à contresens
+        Assert.assertEquals(GrapheCompact.INVERSE_CIRCULABLE, graphe.getSens(k));
+        Assert.assertEquals(2, graphe.indice(carte.getListeNoeuds().get(2)));
+    }
+
+    @Test
+    public void testParcours() {
+        GrapheCompact graphe = new GrapheCompact(carte);
+        Assert.assertArrayEquals(new int[] { 0, 0, 0, 0, 1 },
+                graphe.composantesConnexes());
+        Assert.assertArrayEquals(new int[] { 3, 2, 1, 0, -1 },
+                graphe.parcoursLargeur(3, false));
+        Assert.assertArrayEquals(new int[] { -1, -1, -1, 0, -1 },
+                graphe.parcoursLargeur(3, true));
+        int[] precedents = new int[5];
+        double[] distances = graphe.dijkstra(0, precedents);
+        Assert.assertEquals(3, distances[3], 0);
+        Assert.assertTrue(Double.isInfinite(distances[4]));
+        Assert.assertEquals(2, graphe.getArcDemiArete(precedents[3]));
+    }
+
+    @Test
+    public void testCentralites() {
+        GrapheCompact graphe = new GrapheCompact(carte);
+        // n1 est sur les chemins n0-n2, n2-n0, n0-n3 ; n2 sur n0-n3, n1-n3
+        Assert.assertArrayEquals(new double[] { 0, 3, 2, 0, 0 },
+                graphe.intermediarite(0, 0), 1e-9);
+        Assert.assertArrayEquals(new double[] { 1 + 1. / 2 + 1. / 3, 2 + 1. / 2,
+                1 + 1. / 2 + 1, 0, 0 }, graphe.proximite(), 1e-9);
+    }
+}
@@ -1,5 +1,9 @@
 package fr.ign.cogit.geoxygene.contrib.cartetopo;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.Assert;
@@ -256,4 +260,62 @@ public class NoeudTest {
         
     }
 
+
+    /**
+     * Test du calcul de plus court chemin par {@link PlusCourtChemin} : mêmes
+     * résultats que {@link Noeud#plusCourtChemin(Noeud, double)}, en Dijkstra
+     * comme en A*.
+     */
+    @Test
+    public void testPlusCourtCheminTas() {
+
+        logger.info("Début du test plus court chemin avec tas binaire");
+
+        initCarteTopo1();
+        for (Arc arc : ct1.getListeArcs()) {
+            arc.setPoids(arc.longueur());
+        }
+        PlusCourtChemin pcc = new PlusCourtChemin(ct1);
+        List<Noeud> noeuds = ct1.getListeNoeuds();
+
+        double[][] distances = pcc.distances(noeuds, noeuds, 0);
+        for (int i = 0; i < noeuds.size(); i++) {
+            for (int j = 0; j < noeuds.size(); j++) {
+                Noeud depart = noeuds.get(i);
+                Noeud arrivee = noeuds.get(j);
+                Groupe attendu = depart.plusCourtChemin(arrivee, 10);
+                PlusCourtChemin.Chemin chemin = pcc.chemin(depart, arrivee, 0);
+                PlusCourtChemin.Chemin aEtoile = pcc.cheminAEtoile(depart, arrivee, 0);
+                Assert.assertEquals(attendu.getListeNoeuds(), chemin.getNoeuds());
+                Assert.assertEquals(attendu.getListeArcs(), chemin.getArcs());
+                Assert.assertEquals(attendu.getLength(), chemin.getLongueur(), 1e-9);
+                Assert.assertEquals(chemin.getLongueur(), aEtoile.getLongueur(), 1e-9);
+                Assert.assertEquals(chemin.getLongueur(), distances[i][j], 1e-9);
+            }
+        }
+
+        // plus de départs que de tâches : chaque tâche réutilise son état
+        List<Noeud> departs = new ArrayList<Noeud>();
+        for (int k = 0; k < 50; k++) {
+            departs.addAll(noeuds);
+        }
+        double[][] matrice = pcc.distances(departs, noeuds, 0);
+        for (int i = 0; i < departs.size(); i++) {
+            Assert.assertArrayEquals(distances[i % noeuds.size()], matrice[i], 0);
+        }
+
+        // longueur maximale : n2-n1 mesure 2 + racine(2)
+        Noeud n1 = noeuds.get(0);
+        Noeud n2 = noeuds.get(1);
+        Assert.assertNull(pcc.chemin(n2, n1, 2));
+        Assert.assertNull(pcc.cheminAEtoile(n2, n1, 2));
+        Assert.assertTrue(Double.isInfinite(pcc.distances(n2,
+                Collections.singletonList(n1), 2)[0]));
+
+        Groupe groupe = pcc.plusCourtChemin(n1, n2, 0);
+        Assert.assertTrue(ct1.getPopGroupes().contains(groupe));
+        Assert.assertTrue(n1.getListeGroupes().contains(groupe));
+        Assert.assertEquals(3, groupe.getListeNoeuds().size());
+    }
+
 }
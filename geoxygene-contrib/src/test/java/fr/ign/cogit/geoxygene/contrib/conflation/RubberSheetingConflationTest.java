@@ -0,0 +1,285 @@
+package fr.ign.cogit.geoxygene.contrib.conflation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.algo.geomstructure.Vector2D;
+
+/**
+ * Compare the indexed and parallel modes of the rubber sheeting to the
+ * brute-force computation.
+ */
+public class RubberSheetingConflationTest {
+
+  private static final double EPSILON = 1E-9;
+
+  Random random;
+  Set<ConflationVector> vectors;
+  IFeatureCollection<IFeature> features;
+
+  @Before
+  public void setUp() {
+    this.random = new Random(42);
+    this.vectors = new HashSet<ConflationVector>();
+    for (int i = 0; i < 2000; i++) {
+      this.vectors.add(new ConflationVector(this.position(),
+          new Vector2D(10 * this.random.nextDouble() - 5,
+              10 * this.random.nextDouble() - 5)));
+    }
+    this.features = new FT_FeatureCollection<IFeature>();
+    for (int i = 0; i < 100; i++) {
+      this.features.add(new DefaultFeature(new GM_Point(this.position())));
+      IDirectPositionList line = new DirectPositionList();
+      for (int j = 0; j < 5; j++) {
+        line.add(this.position());
+      }
+      this.features.add(new DefaultFeature(new GM_LineString(line)));
+      IDirectPosition corner = this.position();
+      this.features.add(new DefaultFeature(new GM_Polygon(new GM_Envelope(
+          corner.getX(), corner.getX() + 30, corner.getY(),
+          corner.getY() + 20))));
+    }
+  }
+
+  /** Random position in [0, 1000]². */
+  private IDirectPosition position() {
+    return new DirectPosition(1000 * this.random.nextDouble(),
+        1000 * this.random.nextDouble());
+  }
+
+  @Test
+  public void testIndexed() {
+    RubberSheetingConflation bruteForce = new RubberSheetingConflation(
+        this.features, this.vectors);
+    RubberSheetingConflation indexed = new RubberSheetingConflation(
+        this.features, this.vectors);
+    indexed.setIndexed(true);
+    indexed.setNbMaxVectors(0);
+    int nbNull = 0;
+    for (int i = 0; i < 2000; i++) {
+      // some points lie out of the vector field
+      IDirectPosition point = new DirectPosition(
+          1200 * this.random.nextDouble() - 100,
+          1200 * this.random.nextDouble() - 100);
+      Vector2D expected = bruteForce.computeAggregatedVector(point);
+      Vector2D actual = indexed.computeAggregatedVector(point);
+      if (expected == null) {
+        Assert.assertNull(actual);
+        nbNull++;
+        continue;
+      }
+      Assert.assertNotNull(actual);
+      Assert.assertEquals(expected.getX(), actual.getX(), EPSILON);
+      Assert.assertEquals(expected.getY(), actual.getY(), EPSILON);
+    }
+    Assert.assertTrue(nbNull < 2000);
+  }
+
+  @Test
+  public void testParallel() {
+    RubberSheetingConflation sequential = new RubberSheetingConflation(
+        this.features, this.vectors);
+    sequential.conflation();
+    for (boolean indexed : new boolean[] { false, true }) {
+      RubberSheetingConflation parallel = new RubberSheetingConflation(
+          this.features, this.vectors);
+      parallel.setIndexed(indexed);
+      parallel.setParallel(true);
+      parallel.conflation();
+      Map<IFeature, IGeometry> expected = sequential.getConflatedGeoms();
+      Map<IFeature, IGeometry> actual = parallel.getConflatedGeoms();
+      Assert.assertEquals(expected.keySet(), actual.keySet());
+      for (IFeature feature : this.features) {
+        IDirectPositionList expectedCoords = expected.get(feature).coord();
+        IDirectPositionList actualCoords = actual.get(feature).coord();
+        Assert.assertEquals(expected.get(feature).getClass(),
+            actual.get(feature).getClass());
+        Assert.assertEquals(expectedCoords.size(), actualCoords.size());
+        for (int i = 0; i < expectedCoords.size(); i++) {
+          Assert.assertEquals(0, expectedCoords.get(i).distance2D(
+              actualCoords.get(i)), EPSILON);
+        }
+      }
+    }
+  }
+
+  /**
+   * With a maximum number of vectors, the indexed mode aggregates the k
+   * nearest vectors that pass the threshold, as a brute force search does.
+   */
+  @Test
+  public void testNbMaxVectors() {
+    RubberSheetingConflation indexed = new RubberSheetingConflation(
+        this.features, this.vectors);
+    indexed.setIndexed(true);
+    int nbFewer = 0;
+    for (int k : new int[] { 1, 3, 10 }) {
+      indexed.setNbMaxVectors(k);
+      for (int i = 0; i < 1000; i++) {
+        IDirectPosition point = new DirectPosition(
+            1200 * this.random.nextDouble() - 100,
+            1200 * this.random.nextDouble() - 100);
+        List<ConflationVector> inRange = this.inRange(this.vectors, point,
+            indexed.getDistanceThreshold());
+        if (inRange.size() < k)
+          nbFewer++;
+        assertOneOf(nearest(inRange, point, k),
+            indexed.computeAggregatedVector(point));
+      }
+    }
+    // points out of the vector field have fewer than k vectors in range
+    Assert.assertTrue(nbFewer > 0);
+  }
+
+  /**
+   * Vectors at the same distance as the k-th nearest one: any of them can be
+   * kept, but exactly k vectors are aggregated.
+   */
+  @Test
+  public void testNbMaxVectorsTies() {
+    Set<ConflationVector> tied = new HashSet<ConflationVector>();
+    // two vectors at distance 3 and six at distance 5 from the origin
+    double[][] positions = { { 3, 0 }, { 0, -3 }, { 5, 0 }, { 0, 5 },
+        { -5, 0 }, { 3, 4 }, { -4, 3 }, { 0, -5 } };
+    for (int i = 0; i < positions.length; i++) {
+      tied.add(new ConflationVector(new DirectPosition(positions[i][0],
+          positions[i][1]), new Vector2D(i + 1, -2 * i)));
+    }
+    // out of range of the origin
+    tied.add(new ConflationVector(new DirectPosition(900, 900),
+        new Vector2D(1, 1)));
+    RubberSheetingConflation indexed = new RubberSheetingConflation(
+        this.features, tied);
+    indexed.setIndexed(true);
+    IDirectPosition origin = new DirectPosition(0, 0);
+    List<ConflationVector> inRange = this.inRange(tied, origin,
+        indexed.getDistanceThreshold());
+    Assert.assertEquals(positions.length, inRange.size());
+    for (int k = 1; k <= positions.length + 2; k++) {
+      indexed.setNbMaxVectors(k);
+      List<Vector2D> expected = nearest(inRange, origin, k);
+      if (k > 2 && k < positions.length)
+        Assert.assertTrue(expected.size() > 1);
+      assertOneOf(expected, indexed.computeAggregatedVector(origin));
+    }
+    // a single vector in range
+    indexed.setNbMaxVectors(3);
+    IDirectPosition far = new DirectPosition(905, 905);
+    Vector2D actual = indexed.computeAggregatedVector(far);
+    Assert.assertNotNull(actual);
+    Assert.assertEquals(1, actual.getX(), EPSILON);
+    Assert.assertEquals(1, actual.getY(), EPSILON);
+    // no vector in range
+    Assert.assertNull(indexed.computeAggregatedVector(new DirectPosition(
+        -500, 500)));
+  }
+
+  /** Vectors that pass the distance threshold at a point, nearest first. */
+  private List<ConflationVector> inRange(Set<ConflationVector> vectors,
+      final IDirectPosition point, double threshold) {
+    List<ConflationVector> inRange = new ArrayList<ConflationVector>();
+    for (ConflationVector vect : vectors) {
+      double dist = vect.getIniPos().distance2D(point);
+      if (vect.getVector().norme() / (dist * dist) >= threshold)
+        inRange.add(vect);
+    }
+    Collections.sort(inRange, new Comparator<ConflationVector>() {
+      @Override
+      public int compare(ConflationVector v1, ConflationVector v2) {
+        return Double.compare(v1.getIniPos().distance2D(point), v2
+            .getIniPos().distance2D(point));
+      }
+    });
+    return inRange;
+  }
+
+  /**
+   * Brute force aggregation of the k nearest vectors in range: one result for
+   * each choice among the vectors tied with the k-th one.
+   */
+  private static List<Vector2D> nearest(List<ConflationVector> inRange,
+      IDirectPosition point, int k) {
+    List<Vector2D> results = new ArrayList<Vector2D>();
+    if (inRange.size() <= k) {
+      results.add(aggregate(inRange, point));
+      return results;
+    }
+    double kthDist = inRange.get(k - 1).getIniPos().distance2D(point);
+    List<ConflationVector> nearer = new ArrayList<ConflationVector>();
+    List<ConflationVector> tied = new ArrayList<ConflationVector>();
+    for (ConflationVector vect : inRange) {
+      double dist = vect.getIniPos().distance2D(point);
+      if (dist < kthDist)
+        nearer.add(vect);
+      else if (dist == kthDist)
+        tied.add(vect);
+    }
+    choose(nearer, tied, 0, k - nearer.size(), point, results);
+    return results;
+  }
+
+  private static void choose(List<ConflationVector> chosen,
+      List<ConflationVector> tied, int from, int nb, IDirectPosition point,
+      List<Vector2D> results) {
+    if (nb == 0) {
+      results.add(aggregate(chosen, point));
+      return;
+    }
+    for (int i = from; i <= tied.size() - nb; i++) {
+      List<ConflationVector> next = new ArrayList<ConflationVector>(chosen);
+      next.add(tied.get(i));
+      choose(next, tied, i + 1, nb - 1, point, results);
+    }
+  }
+
+  /** Same weighting as computeAggregatedVector. */
+  private static Vector2D aggregate(List<ConflationVector> vectors,
+      IDirectPosition point) {
+    double numX = 0.0, numY = 0.0, den = 0.0;
+    for (ConflationVector vect : vectors) {
+      double dist = Math.max(1.0, vect.getIniPos().distance2D(point));
+      den += 1 / (dist * dist);
+      numX += vect.getVector().getX() / (dist * dist);
+      numY += vect.getVector().getY() / (dist * dist);
+    }
+    if (den == 0.0)
+      return null;
+    return new Vector2D(numX / den, numY / den);
+  }
+
+  private static void assertOneOf(List<Vector2D> expected, Vector2D actual) {
+    for (Vector2D vect : expected) {
+      if (vect == null) {
+        if (actual == null)
+          return;
+      } else if (actual != null
+          && Math.abs(vect.getX() - actual.getX()) <= EPSILON
+          && Math.abs(vect.getY() - actual.getY()) <= EPSILON)
+        return;
+    }
+    Assert.fail("expected one of " + expected + " but was " + actual);
+  }
+}
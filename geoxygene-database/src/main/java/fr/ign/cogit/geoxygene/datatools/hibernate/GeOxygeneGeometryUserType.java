@@ -13,7 +13,6 @@ import org.hibernate.HibernateException;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.usertype.UserType;
 import org.locationtech.jts.geom.Geometry;
-import org.postgis.PGgeometry;
 
 import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiCurve;
 import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiPoint;
@@ -21,9 +20,9 @@ import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiSurface;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableCurve;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableSurface;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.datatools.postgis.GeomGeOxygene2Postgis;
 import fr.ign.cogit.geoxygene.util.conversion.AdapterFactory;
 import fr.ign.cogit.geoxygene.util.conversion.ParseException;
-import fr.ign.cogit.geoxygene.util.conversion.WktGeOxygene;
 
 /**
  * 
@@ -57,50 +56,13 @@ public class GeOxygeneGeometryUserType implements UserType {
 			return null;
 		}
 
-		if (object instanceof org.postgresql.util.PGobject) {
-			try {
-				object = new PGgeometry(object.toString());
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
-		}
-
-		// in some cases, Postgis returns not PGgeometry objects
-		// but org.postgis.Geometry instances.
-		// This has been observed when retrieving GeometryCollections
-		// as the result of an SQL-operation such as Union.
-		if (object instanceof org.postgis.Geometry) {
-			object = new PGgeometry((org.postgis.Geometry) object);
-		}
-
-		if (object instanceof PGgeometry) {
-
-			PGgeometry pgGeom = (PGgeometry) object;
-
-			try {
-
-				String geom = pgGeom.toString();
-
-				/*
-				 * In version 1.0.x of PostGIS, SRID is added to the beginning
-				 * of the pgGeom string
-				 */
-				IGeometry geOxyGeom = null;
-				int srid = -1;
-				if (geom.indexOf("=") > -1) {
-
-					String subString = geom.substring(geom.indexOf("=") + 1, geom.indexOf(";")); //$NON-NLS-1$ //$NON-NLS-2$
-					srid = Integer.parseInt(subString);
-					// logger.info("SRID = " + srid);
-
-					geOxyGeom = WktGeOxygene.makeGeOxygene(pgGeom.toString().substring(geom.indexOf(";") + 1));
+		try {
 
-				} else {
-					//
-					geOxyGeom = WktGeOxygene.makeGeOxygene(pgGeom.toString());
-					// FIXME : il faut encore trouver le SRID !!!
-					// srid = N;
-				}
+			// EWKB : tableau d'octets, PGobject brut (EWKB hexadécimal) ou
+			// géométrie déjà décodée par postgis-jdbc
+			IGeometry geOxyGeom = GeomGeOxygene2Postgis.decode(object);
+			if (geOxyGeom != null) {
+				int srid = geOxyGeom.getCRS();
 
 				if (geOxyGeom instanceof IMultiPoint) {
 					IMultiPoint aggr = (IMultiPoint) geOxyGeom;
@@ -131,12 +93,12 @@ public class GeOxygeneGeometryUserType implements UserType {
 
 				geOxyGeom.setCRS(srid);
 				return geOxyGeom;
-
-			} catch (ParseException e) {
-				GeOxygeneGeometryUserType.logger.warn("## WARNING ## Postgis to GeOxygene returns NULL ");
-				e.printStackTrace();
-				return null;
 			}
+
+		} catch (ParseException e) {
+			GeOxygeneGeometryUserType.logger.warn("## WARNING ## Postgis to GeOxygene returns NULL ");
+			e.printStackTrace();
+			return null;
 		}
 		return null;
 	}
@@ -155,13 +117,8 @@ public class GeOxygeneGeometryUserType implements UserType {
 			if (geom == null) {
 				return null;
 			}
-			String srid = "";
-			if (geom.getCRS() != -1) {
-				srid = "SRID=" + geom.getCRS() + ";";
-			}
-			// logger.info("conv2DBGeometry " + srid + geom.toString());
-			PGgeometry pgGeom = new PGgeometry(srid + geom.toString());
-			return pgGeom;
+			// EWKB hexadécimal, avec le SRID s'il est défini
+			return GeomGeOxygene2Postgis.encode(geom, geom.getCRS());
 		} catch (SQLException e) {
 			GeOxygeneGeometryUserType.logger.warn("## WARNING ## GeOxygene to Postgis returns NULL "); //$NON-NLS-1$
 			e.printStackTrace();
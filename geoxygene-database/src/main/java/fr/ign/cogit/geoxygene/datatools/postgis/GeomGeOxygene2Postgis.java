@@ -32,6 +32,8 @@ import java.sql.SQLException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.postgis.PGgeometry;
+import org.postgis.binary.BinaryWriter;
+import org.postgresql.util.PGobject;
 
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
@@ -40,11 +42,16 @@ import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_OrientableCurve;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_OrientableSurface;
 import fr.ign.cogit.geoxygene.util.conversion.ParseException;
+import fr.ign.cogit.geoxygene.util.conversion.WkbGeOxygene;
 import fr.ign.cogit.geoxygene.util.conversion.WktGeOxygene;
 
 /**
  * Conversion des geometries PostGIS dans le format GeOxygene, et
  * reciproquement.
+ * <p>
+ * Les géométries sont échangées au format EWKB (cf. {@link WkbGeOxygene}),
+ * format natif de PostGIS, plutôt qu'en WKT : on évite ainsi l'écriture et
+ * l'analyse d'un texte pour chaque géométrie.
  * 
  * @author Thierry Badard & Arnaud Braun
  * @version 1.1
@@ -57,17 +64,11 @@ public class GeomGeOxygene2Postgis {
 
   @SuppressWarnings("unchecked")
   public static Object sqlToJava(Object geom) {
-    PGgeometry pgGeom = (PGgeometry) geom;
-
     try {
-      /*
-       * In version 1.0.x of PostGIS, SRID is added to the beginning of the
-       * pgGeom string
-       */
-
-      IGeometry geOxyGeom = WktGeOxygene.makeGeOxygene(pgGeom.toString()
-          .substring(pgGeom.toString().indexOf(";") + 1));
-      // GM_Object geOxyGeom = WktGeOxygene.makeGeOxygene(pgGeom.toString());
+      IGeometry geOxyGeom = GeomGeOxygene2Postgis.decode(geom);
+      if (geOxyGeom == null) {
+        return null;
+      }
 
       if (geOxyGeom instanceof GM_MultiPoint) {
         GM_MultiPoint aggr = (GM_MultiPoint) geOxyGeom;
@@ -105,8 +106,7 @@ public class GeomGeOxygene2Postgis {
       if (geom == null) {
         return null;
       }
-      PGgeometry pgGeom = new PGgeometry(((IGeometry) geom).toString());
-      return pgGeom;
+      return GeomGeOxygene2Postgis.encode((IGeometry) geom, -1);
     } catch (SQLException e) {
       GeomGeOxygene2Postgis.logger
           .warn("## WARNING ## GeOxygene to Postgis returns NULL ");
@@ -115,4 +115,65 @@ public class GeomGeOxygene2Postgis {
     }
   }
 
+  /**
+   * Convertit une valeur de colonne geometry lue par JDBC en géométrie
+   * GeOxygene, sans passer par le WKT. Les valeurs acceptées sont l'EWKB
+   * (tableau d'octets, par exemple le résultat de ST_AsEWKB), l'objet
+   * {@link PGobject} brut renvoyé par le pilote (EWKB hexadécimal) et les
+   * géométries déjà décodées par postgis-jdbc ({@link PGgeometry},
+   * {@link org.postgis.Geometry}).
+   * @param dbGeom valeur de la colonne geometry
+   * @return la géométrie GeOxygene, avec le SRID PostGIS comme CRS s'il est
+   *         défini, ou null si la valeur est nulle ou d'un type inconnu
+   * @throws ParseException si la valeur n'est pas une géométrie valide
+   */
+  public static IGeometry decode(Object dbGeom) throws ParseException {
+    if (dbGeom == null) {
+      return null;
+    }
+    if (dbGeom instanceof byte[]) {
+      return WkbGeOxygene.makeGeOxygene((byte[]) dbGeom);
+    }
+    if (dbGeom instanceof PGgeometry) {
+      dbGeom = ((PGgeometry) dbGeom).getGeometry();
+    }
+    if (dbGeom instanceof org.postgis.Geometry) {
+      return WkbGeOxygene.makeGeOxygene(new BinaryWriter()
+          .writeBinary((org.postgis.Geometry) dbGeom));
+    }
+    if (dbGeom instanceof PGobject) {
+      String value = ((PGobject) dbGeom).getValue();
+      if (value == null) {
+        return null;
+      }
+      if (value.startsWith("00") || value.startsWith("01")) { //$NON-NLS-1$ //$NON-NLS-2$
+        return WkbGeOxygene.makeGeOxygeneFromHex(value);
+      }
+      // (E)WKT
+      IGeometry geom = WktGeOxygene.makeGeOxygene(value.substring(value
+          .indexOf(";") + 1)); //$NON-NLS-1$
+      if (value.startsWith("SRID=")) { //$NON-NLS-1$
+        geom.setCRS(Integer.parseInt(value.substring(5, value.indexOf(";")))); //$NON-NLS-1$
+      }
+      return geom;
+    }
+    return null;
+  }
+
+  /**
+   * Convertit une géométrie GeOxygene en valeur de colonne geometry : un
+   * {@link PGobject} de type geometry portant l'EWKB hexadécimal de la
+   * géométrie, que PostGIS lit directement.
+   * @param geom géométrie à convertir
+   * @param srid SRID de la géométrie, -1 si inconnu
+   * @return la valeur à passer à {@link java.sql.PreparedStatement#setObject}
+   * @throws SQLException
+   */
+  public static PGobject encode(IGeometry geom, int srid) throws SQLException {
+    PGobject pgGeom = new PGobject();
+    pgGeom.setType("geometry"); //$NON-NLS-1$
+    pgGeom.setValue(WkbGeOxygene.makeHexWkb(geom, srid));
+    return pgGeom;
+  }
+
 }
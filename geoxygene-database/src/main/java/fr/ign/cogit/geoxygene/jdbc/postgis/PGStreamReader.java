@@ -0,0 +1,568 @@
+package fr.ign.cogit.geoxygene.jdbc.postgis;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.SchemaDefaultFeature;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.AttributeType;
+import fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.spatial.geomroot.GM_Object;
+import fr.ign.cogit.geoxygene.util.conversion.ParseException;
+import fr.ign.cogit.geoxygene.util.conversion.WkbGeOxygene;
+
+/**
+ * Lecture en flux d'une table PostGIS : les features sont créés au fur et à
+ * mesure du parcours, sans charger la table en mémoire.
+ * <p>
+ * La requête est exécutée par un curseur côté serveur (résultat en avant
+ * seulement, hors auto-commit) dont les lignes sont rapatriées par paquets de
+ * {@link #getFetchSize()} lignes. Les géométries sont lues en EWKB et décodées
+ * par {@link WkbGeOxygene}, éventuellement par un groupe de threads pendant
+ * que le paquet suivant est lu. Seuls quelques paquets sont en mémoire à un
+ * instant donné.
+ * <p>
+ * La requête peut être restreinte à un rectangle (opérateur {@code &&} sur
+ * l'index spatial de la table), à une liste de colonnes et à une clause SQL.
+ * Exemple :
+ *
+ * <pre>
+ * PGStreamReader reader = new PGStreamReader(params, &quot;troncon_route&quot;, &quot;geom&quot;);
+ * reader.setEnvelope(new GM_Envelope(650000, 660000, 6860000, 6870000));
+ * reader.setColumns(&quot;nature&quot;, &quot;importance&quot;);
+ * try {
+ *   reader.open();
+ *   while (reader.hasNext()) {
+ *     IFeature feature = reader.next();
+ *     ...
+ *   }
+ * } finally {
+ *   reader.close();
+ * }
+ * </pre>
+ */
+public class PGStreamReader implements Iterator<IFeature>, Closeable {
+
+  /** LOGGER. */
+  private final static Logger LOGGER = LogManager.getLogger(PGStreamReader.class
+      .getName());
+
+  /** Nombre de lignes rapatriées par défaut à chaque aller-retour. */
+  public static final int DEFAULT_FETCH_SIZE = 1000;
+
+  private final Connection connection;
+  /** Vrai si la connexion a été ouverte par le lecteur et doit être fermée. */
+  private final boolean ownConnection;
+  private final String schemaName;
+  private final String tablename;
+  private String geomColumnName;
+
+  private String[] columns;
+  private IEnvelope envelope;
+  private String filter;
+  private int fetchSize = PGStreamReader.DEFAULT_FETCH_SIZE;
+  private int nbThreads = 1;
+
+  private SchemaDefaultFeature schema;
+  private boolean autoCommit;
+  private PreparedStatement statement;
+  private ResultSet resultSet;
+  private ExecutorService executor;
+  /** Paquets lus en cours de décodage, dans l'ordre de la requête. */
+  private final Deque<Future<List<IFeature>>> pending = new ArrayDeque<Future<List<IFeature>>>();
+  private Iterator<IFeature> current = Collections.<IFeature> emptyIterator();
+  private boolean exhausted;
+  private int nbRows;
+
+  /**
+   * Constructeur à partir des paramètres de connexion utilisés par
+   * {@link PostgisReader} (host, port, database, schema, user, passwd). La
+   * connexion est ouverte par le lecteur et fermée par {@link #close()}.
+   * @param params paramètres de connexion
+   * @param tablename nom de la table
+   * @param geomColumnName nom de la colonne géométrique, null pour la première
+   *          colonne géométrique de la table
+   * @throws SQLException
+   */
+  public PGStreamReader(Map<String, String> params, String tablename,
+      String geomColumnName) throws SQLException {
+    this(PGStreamReader.connect(params), true, params.get("schema"), //$NON-NLS-1$
+        tablename, geomColumnName);
+  }
+
+  /**
+   * Constructeur à partir d'une connexion existante, qui n'est pas fermée par
+   * {@link #close()}.
+   * @param connection connexion à la base
+   * @param schemaName schéma de la table, null pour le schéma par défaut
+   * @param tablename nom de la table
+   * @param geomColumnName nom de la colonne géométrique, null pour la première
+   *          colonne géométrique de la table
+   */
+  public PGStreamReader(Connection connection, String schemaName,
+      String tablename, String geomColumnName) {
+    this(connection, false, schemaName, tablename, geomColumnName);
+  }
+
+  private PGStreamReader(Connection connection, boolean ownConnection,
+      String schemaName, String tablename, String geomColumnName) {
+    this.connection = connection;
+    this.ownConnection = ownConnection;
+    this.schemaName = (schemaName == null || schemaName.trim().isEmpty()) ? null
+        : schemaName;
+    this.tablename = tablename;
+    this.geomColumnName = geomColumnName;
+  }
+
+  /**
+   * Ouvre une connexion JDBC à partir des paramètres de connexion utilisés par
+   * {@link PostgisReader}.
+   * @param params paramètres de connexion
+   * @return la connexion
+   * @throws SQLException
+   */
+  public static Connection connect(Map<String, String> params)
+      throws SQLException {
+    String url = "jdbc:postgresql://" + params.get("host") + ":" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        + params.get("port") + "/" + params.get("database"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    return DriverManager.getConnection(url, params.get("user"), //$NON-NLS-1$
+        params.get("passwd")); //$NON-NLS-1$
+  }
+
+  /**
+   * Restreint la lecture à certaines colonnes attributaires. Par défaut, toutes
+   * les colonnes non géométriques sont lues.
+   * @param columns noms des colonnes à lire
+   */
+  public void setColumns(String... columns) {
+    this.columns = columns;
+  }
+
+  /**
+   * Restreint la lecture aux objets dont le rectangle englobant intersecte
+   * l'enveloppe donnée, avec l'opérateur {@code &&} qui utilise l'index
+   * spatial de la table. L'enveloppe est dans le système de coordonnées de la
+   * colonne géométrique.
+   * @param envelope enveloppe de sélection, null pour toute la table
+   */
+  public void setEnvelope(IEnvelope envelope) {
+    this.envelope = envelope;
+  }
+
+  /**
+   * @param filter clause SQL (sans WHERE) restreignant la lecture, null pour
+   *          aucune
+   */
+  public void setFilter(String filter) {
+    this.filter = filter;
+  }
+
+  public int getFetchSize() {
+    return this.fetchSize;
+  }
+
+  /**
+   * @param fetchSize nombre de lignes rapatriées à chaque aller-retour avec le
+   *          serveur, qui est aussi la taille des paquets décodés
+   */
+  public void setFetchSize(int fetchSize) {
+    this.fetchSize = Math.max(1, fetchSize);
+  }
+
+  /**
+   * @param nbThreads nombre de threads de décodage des géométries. Avec 1 (par
+   *          défaut), le décodage est fait par le thread qui parcourt le
+   *          lecteur.
+   */
+  public void setNbThreads(int nbThreads) {
+    this.nbThreads = Math.max(1, nbThreads);
+  }
+
+  /**
+   * @return le schéma des features lus, disponible après {@link #open()}
+   */
+  public SchemaDefaultFeature getSchema() {
+    return this.schema;
+  }
+
+  /**
+   * Exécute la requête et prépare le schéma des features.
+   * @throws SQLException
+   */
+  public void open() throws SQLException {
+    if (this.geomColumnName == null) {
+      this.geomColumnName = this.findGeomColumn();
+    }
+    if (this.columns == null) {
+      this.columns = this.findColumns();
+    }
+    String sql = this.query();
+    LOGGER.log(Level.DEBUG, sql);
+    this.autoCommit = this.connection.getAutoCommit();
+    // le curseur côté serveur n'est utilisé par le pilote qu'en dehors de
+    // l'auto-commit
+    if (this.autoCommit) {
+      this.connection.setAutoCommit(false);
+    }
+    try {
+      this.execute(sql);
+    } catch (SQLException e) {
+      this.abort();
+      throw e;
+    } catch (RuntimeException e) {
+      this.abort();
+      throw e;
+    }
+    if (this.nbThreads > 1) {
+      this.executor = Executors.newFixedThreadPool(this.nbThreads);
+    }
+  }
+
+  /**
+   * Prépare et exécute la requête de lecture, puis crée le schéma.
+   * @param sql la requête
+   * @throws SQLException
+   */
+  private void execute(String sql) throws SQLException {
+    this.statement = this.connection.prepareStatement(sql,
+        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    this.statement.setFetchSize(this.fetchSize);
+    if (this.envelope != null) {
+      this.statement.setDouble(1, this.envelope.minX());
+      this.statement.setDouble(2, this.envelope.minY());
+      this.statement.setDouble(3, this.envelope.maxX());
+      this.statement.setDouble(4, this.envelope.maxY());
+      this.statement.setString(5, (this.schemaName == null) ? "public" //$NON-NLS-1$
+          : this.schemaName);
+      this.statement.setString(6, this.tablename);
+      this.statement.setString(7, this.geomColumnName);
+    }
+    this.resultSet = this.statement.executeQuery();
+    this.schema = this.createSchema(this.resultSet.getMetaData());
+  }
+
+  /**
+   * Ferme la requête dont l'exécution a échoué et rétablit l'auto-commit si
+   * le lecteur l'avait désactivé.
+   */
+  private void abort() {
+    try {
+      if (this.resultSet != null) {
+        this.resultSet.close();
+      }
+      if (this.statement != null) {
+        this.statement.close();
+      }
+      if (this.autoCommit) {
+        this.connection.rollback();
+        this.connection.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      LOGGER.log(Level.ERROR, e.getMessage());
+    } finally {
+      this.resultSet = null;
+      this.statement = null;
+    }
+  }
+
+  /**
+   * @return la requête de lecture. Les paramètres de l'enveloppe éventuelle
+   *         sont ses coordonnées puis le schéma, la table et la colonne dont
+   *         le SRID est lu une fois par le serveur.
+   */
+  String query() {
+    StringBuilder sql = new StringBuilder("SELECT "); //$NON-NLS-1$
+    for (String column : this.columns) {
+      sql.append(PGStreamReader.quote(column)).append(", "); //$NON-NLS-1$
+    }
+    String geom = PGStreamReader.quote(this.geomColumnName);
+    sql.append("ST_AsEWKB(").append(geom).append(") FROM "); //$NON-NLS-1$ //$NON-NLS-2$
+    sql.append(this.qualifiedName());
+    List<String> conditions = new ArrayList<String>(2);
+    if (this.envelope != null) {
+      conditions.add(geom
+          + " && ST_MakeEnvelope(?, ?, ?, ?, Find_SRID(?, ?, ?))"); //$NON-NLS-1$
+    }
+    if (this.filter != null && !this.filter.trim().isEmpty()) {
+      conditions.add("(" + this.filter + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    for (int i = 0; i < conditions.size(); i++) {
+      sql.append((i == 0) ? " WHERE " : " AND ").append(conditions.get(i)); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    return sql.toString();
+  }
+
+  private String qualifiedName() {
+    return ((this.schemaName == null) ? "" : PGStreamReader //$NON-NLS-1$
+        .quote(this.schemaName) + ".") + PGStreamReader.quote(this.tablename); //$NON-NLS-1$
+  }
+
+  private static String quote(String identifier) {
+    return "\"" + identifier.replace("\"", "\"\"") + "\""; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+  }
+
+  /** @return la première colonne géométrique de la table */
+  private String findGeomColumn() throws SQLException {
+    PreparedStatement s = this.connection
+        .prepareStatement("SELECT f_geometry_column FROM geometry_columns " //$NON-NLS-1$
+            + "WHERE f_table_schema = ? AND f_table_name = ?"); //$NON-NLS-1$
+    try {
+      s.setString(1, (this.schemaName == null) ? "public" : this.schemaName); //$NON-NLS-1$
+      s.setString(2, this.tablename);
+      ResultSet r = s.executeQuery();
+      if (!r.next()) {
+        throw new SQLException("No geometry column in table " //$NON-NLS-1$
+            + this.tablename);
+      }
+      return r.getString(1);
+    } finally {
+      s.close();
+    }
+  }
+
+  /** @return les colonnes non géométriques de la table */
+  private String[] findColumns() throws SQLException {
+    PreparedStatement s = this.connection.prepareStatement("SELECT * FROM " //$NON-NLS-1$
+        + this.qualifiedName() + " WHERE false"); //$NON-NLS-1$
+    try {
+      ResultSetMetaData metaData = s.executeQuery().getMetaData();
+      List<String> names = new ArrayList<String>();
+      for (int i = 1; i <= metaData.getColumnCount(); i++) {
+        String type = metaData.getColumnTypeName(i);
+        if (!"geometry".equalsIgnoreCase(type) //$NON-NLS-1$
+            && !"geography".equalsIgnoreCase(type)) { //$NON-NLS-1$
+          names.add(metaData.getColumnName(i));
+        }
+      }
+      return names.toArray(new String[names.size()]);
+    } finally {
+      s.close();
+    }
+  }
+
+  /**
+   * Crée le schéma des features, comme {@link PostgisReader#initSchema}.
+   */
+  private SchemaDefaultFeature createSchema(ResultSetMetaData metaData)
+      throws SQLException {
+    SchemaDefaultFeature schemaDefaultFeature = new SchemaDefaultFeature();
+    schemaDefaultFeature.setNom(this.tablename);
+    schemaDefaultFeature.setNomSchema(this.tablename);
+    FeatureType featureType = new FeatureType();
+    featureType.setTypeName(this.tablename);
+    Map<Integer, String[]> attLookup = new HashMap<Integer, String[]>(0);
+    for (int i = 0; i < this.columns.length; i++) {
+      AttributeType type = new AttributeType();
+      String className = metaData.getColumnClassName(i + 1);
+      type.setValueType((className == null) ? "" //$NON-NLS-1$
+          : className.substring(className.lastIndexOf('.') + 1));
+      type.setNomField(this.columns[i]);
+      type.setMemberName(this.columns[i]);
+      featureType.addFeatureAttribute(type);
+      attLookup.put(Integer.valueOf(i), new String[] { this.columns[i],
+          this.columns[i] });
+    }
+    featureType.setGeometryType(this.geometryType());
+    schemaDefaultFeature.setFeatureType(featureType);
+    featureType.setSchema(schemaDefaultFeature);
+    schemaDefaultFeature.setAttLookup(attLookup);
+    return schemaDefaultFeature;
+  }
+
+  /**
+   * @return la classe des géométries déclarée dans geometry_columns, avec les
+   *         mêmes correspondances que {@link PGReader}
+   */
+  private Class<? extends GM_Object> geometryType() throws SQLException {
+    PreparedStatement s = this.connection
+        .prepareStatement("SELECT type FROM geometry_columns " //$NON-NLS-1$
+            + "WHERE f_table_schema = ? AND f_table_name = ? AND f_geometry_column = ?"); //$NON-NLS-1$
+    try {
+      s.setString(1, (this.schemaName == null) ? "public" : this.schemaName); //$NON-NLS-1$
+      s.setString(2, this.tablename);
+      s.setString(3, this.geomColumnName);
+      ResultSet r = s.executeQuery();
+      String type = r.next() ? r.getString(1) : null;
+      if (type == null) {
+        return GM_Object.class;
+      }
+      type = type.toUpperCase();
+      if (type.startsWith("POINT")) { //$NON-NLS-1$
+        return GM_Point.class;
+      }
+      if (type.startsWith("MULTIPOINT")) { //$NON-NLS-1$
+        return GM_MultiPoint.class;
+      }
+      if (type.startsWith("LINESTRING") || type.startsWith("MULTILINESTRING")) { //$NON-NLS-1$ //$NON-NLS-2$
+        return GM_MultiCurve.class;
+      }
+      if (type.startsWith("POLYGON") || type.startsWith("MULTIPOLYGON")) { //$NON-NLS-1$ //$NON-NLS-2$
+        return GM_MultiSurface.class;
+      }
+      return GM_Object.class;
+    } finally {
+      s.close();
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!this.current.hasNext()) {
+      if (this.resultSet == null) {
+        return false;
+      }
+      this.fill();
+      Future<List<IFeature>> batch = this.pending.poll();
+      if (batch == null) {
+        return false;
+      }
+      try {
+        this.current = batch.get().iterator();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public IFeature next() {
+    if (!this.hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return this.current.next();
+  }
+
+  /**
+   * Lit des paquets de lignes jusqu'à avoir un paquet en cours de décodage par
+   * thread (et un seul paquet sans groupe de threads).
+   */
+  private void fill() {
+    try {
+      while (!this.exhausted && this.pending.size() < this.nbThreads) {
+        final int first = this.nbRows;
+        final List<Object[]> rows = new ArrayList<Object[]>(this.fetchSize);
+        while (rows.size() < this.fetchSize && this.resultSet.next()) {
+          Object[] row = new Object[this.columns.length + 1];
+          for (int i = 0; i < row.length; i++) {
+            row[i] = (i == this.columns.length) ? this.resultSet.getBytes(i + 1)
+                : this.resultSet.getObject(i + 1);
+          }
+          rows.add(row);
+        }
+        this.nbRows += rows.size();
+        if (rows.size() < this.fetchSize) {
+          this.exhausted = true;
+        }
+        if (rows.isEmpty()) {
+          break;
+        }
+        if (this.executor == null) {
+          this.pending.add(CompletableFuture.completedFuture(this.decode(rows,
+              first)));
+        } else {
+          this.pending.add(this.executor.submit(() -> this.decode(rows, first)));
+        }
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Crée les features d'un paquet de lignes. */
+  private List<IFeature> decode(List<Object[]> rows, int first) {
+    List<IFeature> features = new ArrayList<IFeature>(rows.size());
+    for (int n = 0; n < rows.size(); n++) {
+      Object[] row = rows.get(n);
+      byte[] wkb = (byte[]) row[this.columns.length];
+      if (wkb == null) {
+        LOGGER.log(Level.WARN, "null geometry for object " + (first + n));
+        continue;
+      }
+      IGeometry geometry;
+      try {
+        geometry = WkbGeOxygene.makeGeOxygene(wkb);
+      } catch (ParseException e) {
+        LOGGER.log(Level.ERROR, "ProblemWhileConvertingGeometry " + (first + n));
+        continue;
+      }
+      DefaultFeature feature = new DefaultFeature();
+      feature.setFeatureType(this.schema.getFeatureType());
+      feature.setSchema(this.schema);
+      Object[] attributes = new Object[this.columns.length];
+      System.arraycopy(row, 0, attributes, 0, attributes.length);
+      feature.setAttributes(attributes);
+      feature.setGeom(geometry);
+      feature.setId(first + n);
+      features.add(feature);
+    }
+    return features;
+  }
+
+  /**
+   * Ferme le curseur. Si le lecteur a désactivé l'auto-commit, termine la
+   * transaction et le rétablit ; une transaction ouverte par l'appelant lui
+   * est laissée. Ferme la connexion si elle a été ouverte par le lecteur.
+   */
+  @Override
+  public void close() {
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+    this.pending.clear();
+    this.current = Collections.<IFeature> emptyIterator();
+    try {
+      if (this.resultSet != null) {
+        this.resultSet.close();
+        this.resultSet = null;
+      }
+      if (this.statement != null) {
+        this.statement.close();
+        this.statement = null;
+        if (this.autoCommit) {
+          this.connection.commit();
+          this.connection.setAutoCommit(true);
+        }
+      }
+      if (this.ownConnection) {
+        this.connection.close();
+      }
+    } catch (SQLException e) {
+      LOGGER.log(Level.ERROR, e.getMessage());
+    }
+  }
+}
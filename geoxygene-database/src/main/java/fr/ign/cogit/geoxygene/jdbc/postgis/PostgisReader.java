@@ -12,6 +12,7 @@ import fr.ign.cogit.geoxygene.api.feature.IDataSet;
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
 import fr.ign.cogit.geoxygene.api.feature.IPopulation;
 import fr.ign.cogit.geoxygene.api.feature.type.GF_AttributeType;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.feature.DefaultFeature;
 import fr.ign.cogit.geoxygene.feature.Population;
@@ -104,6 +105,54 @@ public class PostgisReader {
     return population;
   }
 
+  /**
+   * Lit une table en flux avec un {@link PGStreamReader} : les lignes sont lues
+   * par un curseur côté serveur et les géométries décodées depuis l'EWKB, sans
+   * copie intermédiaire de la table en mémoire.
+   * 
+   * @param params paramètres de connexion
+   * @param tablename nom de la table
+   * @param populationName nom de la population créée
+   * @param dataset jeu de données auquel ajouter la population, ou null
+   * @param initSpatialIndex vrai si on souhaite initialiser l'index spatial de
+   *          la population
+   * @param geomColumnName nom de la colonne géométrique, null pour la première
+   *          colonne géométrique de la table
+   * @param envelope enveloppe de sélection des objets, null pour toute la table
+   * @return la population des objets lus
+   */
+  public static IPopulation<IFeature> readStreaming(Map<String, String> params,
+      String tablename, String populationName, IDataSet<?> dataset,
+      boolean initSpatialIndex, String geomColumnName, IEnvelope envelope)
+      throws Exception {
+    Population<IFeature> population = new Population<IFeature>(populationName);
+    if (dataset != null) {
+      dataset.addPopulation(population);
+    }
+    PGStreamReader reader = new PGStreamReader(params, tablename,
+        geomColumnName);
+    try {
+      reader.setEnvelope(envelope);
+      reader.setNbThreads(Runtime.getRuntime().availableProcessors());
+      reader.open();
+      population.setFeatureType(reader.getSchema().getFeatureType());
+      while (reader.hasNext()) {
+        population.add(reader.next());
+      }
+    } catch (Exception e) {
+      LOGGER.log(Level.ERROR, e.toString());
+      throw e;
+    } finally {
+      reader.close();
+    }
+    if (initSpatialIndex) {
+      population.initSpatialIndex(Tiling.class, true);
+    }
+    LOGGER.log(Level.DEBUG, population.size() + " features read from "
+        + tablename);
+    return population;
+  }
+
   /**
    * Initialise le schéma utilisé pour les nouveaux features.
    * 
@@ -0,0 +1,296 @@
+package fr.ign.cogit.geoxygene.jdbc.postgis;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.conversion.WkbGeOxygene;
+
+public class PGStreamReaderTest {
+
+  @Test
+  public void testRequete() {
+    PGStreamReader reader = new PGStreamReader(null, null, "troncon_route",
+        "geom");
+    reader.setColumns("nature", "largeur");
+    Assert.assertEquals("SELECT \"nature\", \"largeur\", ST_AsEWKB(\"geom\") "
+        + "FROM \"troncon_route\"", reader.query());
+    reader = new PGStreamReader(null, "bdtopo", "troncon_route", "geom");
+    reader.setColumns();
+    reader.setEnvelope(new GM_Envelope(0, 10, 0, 10));
+    reader.setFilter("importance < 3");
+    Assert.assertEquals("SELECT ST_AsEWKB(\"geom\") FROM \"bdtopo\".\"troncon_route\""
+        + " WHERE \"geom\" && ST_MakeEnvelope(?, ?, ?, ?, Find_SRID(?, ?, ?))"
+        + " AND (importance < 3)", reader.query());
+  }
+
+  /**
+   * Base de données simulée : une table dont chaque ligne est (nature,
+   * largeur, EWKB), la ligne 5 ayant une géométrie nulle.
+   */
+  private static class Base {
+    final List<Object[]> lignes = new ArrayList<Object[]>();
+    boolean autoCommit = true;
+    boolean autoCommitPendantLecture = true;
+    int nbCommits = 0;
+    int nbRollbacks = 0;
+    boolean echecLecture = false;
+    int fetchSize = 0;
+    int resultSetType = 0;
+    int nbLignesLues = 0;
+    boolean resultSetFerme = false;
+    boolean requeteFermee = false;
+    boolean connexionFermee = false;
+    final List<Object> parametres = new ArrayList<Object>();
+
+    Base(int n) {
+      for (int i = 0; i < n; i++) {
+        this.lignes.add(new Object[] { "nature" + i, Double.valueOf(i / 2.0),
+            i == 5 ? null : WkbGeOxygene.makeWkb(new GM_Point(
+                new DirectPosition(i, 2 * i))) });
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> classe, InvocationHandler handler) {
+      return (T) Proxy.newProxyInstance(classe.getClassLoader(),
+          new Class<?>[] { classe }, handler);
+    }
+
+    Connection connexion() {
+      return Base.proxy(Connection.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "getAutoCommit":
+            return Boolean.valueOf(this.autoCommit);
+          case "setAutoCommit":
+            this.autoCommit = ((Boolean) args[0]).booleanValue();
+            return null;
+          case "commit":
+            this.nbCommits++;
+            return null;
+          case "rollback":
+            this.nbRollbacks++;
+            return null;
+          case "close":
+            this.connexionFermee = true;
+            return null;
+          case "prepareStatement":
+            if (args.length == 1) {
+              return this.requeteType();
+            }
+            this.resultSetType = ((Integer) args[1]).intValue();
+            return this.requete();
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    }
+
+    /** Requête sur geometry_columns. */
+    PreparedStatement requeteType() {
+      final ResultSet resultSet = Base.proxy(ResultSet.class, (proxy, method,
+          args) -> {
+        switch (method.getName()) {
+          case "next":
+            return Boolean.TRUE;
+          case "getString":
+            return "POINT";
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+      return Base.proxy(PreparedStatement.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "setString":
+          case "close":
+            return null;
+          case "executeQuery":
+            return resultSet;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    }
+
+    /** Requête de lecture de la table. */
+    PreparedStatement requete() {
+      return Base.proxy(PreparedStatement.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "setFetchSize":
+            this.fetchSize = ((Integer) args[0]).intValue();
+            return null;
+          case "setDouble":
+          case "setString":
+            this.parametres.add(args[1]);
+            return null;
+          case "executeQuery":
+            this.autoCommitPendantLecture = this.autoCommit;
+            if (this.echecLecture) {
+              throw new SQLException("lecture impossible");
+            }
+            return this.resultSet();
+          case "close":
+            this.requeteFermee = true;
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    }
+
+    ResultSet resultSet() {
+      final ResultSetMetaData metaData = Base.proxy(ResultSetMetaData.class,
+          (proxy, method, args) -> {
+            if (method.getName().equals("getColumnClassName")) {
+              return ((Integer) args[0]).intValue() == 1 ? "java.lang.String"
+                  : "java.lang.Double";
+            }
+            throw new UnsupportedOperationException(method.getName());
+          });
+      return Base.proxy(ResultSet.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "getMetaData":
+            return metaData;
+          case "next":
+            if (this.nbLignesLues == this.lignes.size()) {
+              return Boolean.FALSE;
+            }
+            this.nbLignesLues++;
+            return Boolean.TRUE;
+          case "getObject":
+          case "getBytes":
+            return this.lignes.get(this.nbLignesLues - 1)[((Integer) args[0])
+                .intValue() - 1];
+          case "close":
+            this.resultSetFerme = true;
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+    }
+  }
+
+  private static void parcours(int nbThreads) throws Exception {
+    Base base = new Base(45);
+    PGStreamReader reader = new PGStreamReader(base.connexion(), null,
+        "troncon_route", "geom");
+    reader.setColumns("nature", "largeur");
+    reader.setFetchSize(10);
+    reader.setNbThreads(nbThreads);
+    reader.setEnvelope(new GM_Envelope(0, 100, -1, 50));
+    List<IFeature> features = new ArrayList<IFeature>();
+    try {
+      reader.open();
+      Assert.assertEquals(10, base.fetchSize);
+      Assert.assertEquals(ResultSet.TYPE_FORWARD_ONLY, base.resultSetType);
+      // le curseur n'est utilisé qu'en dehors de l'auto-commit
+      Assert.assertFalse(base.autoCommitPendantLecture);
+      Assert.assertEquals(Double.valueOf(0), base.parametres.get(0));
+      Assert.assertEquals(Double.valueOf(-1), base.parametres.get(1));
+      Assert.assertEquals("public", base.parametres.get(4));
+      Assert.assertEquals(0, base.nbLignesLues);
+      Assert.assertTrue(reader.hasNext());
+      // seuls les premiers paquets sont lus
+      Assert.assertEquals(10 * nbThreads, base.nbLignesLues);
+      while (reader.hasNext()) {
+        features.add(reader.next());
+      }
+      Assert.assertFalse(reader.hasNext());
+    } finally {
+      reader.close();
+    }
+    Assert.assertEquals(GM_Point.class, reader.getSchema().getFeatureType()
+        .getGeometryType());
+    Assert.assertEquals(44, features.size());
+    for (int n = 0; n < features.size(); n++) {
+      DefaultFeature feature = (DefaultFeature) features.get(n);
+      int i = (n < 5) ? n : n + 1;
+      Assert.assertEquals(i, feature.getId());
+      Assert.assertEquals("nature" + i, feature.getAttribute("nature"));
+      Assert.assertEquals(Double.valueOf(i / 2.0), feature
+          .getAttribute("largeur"));
+      IDirectPosition position = feature.getGeom().coord().get(0);
+      Assert.assertEquals(i, position.getX(), 0);
+      Assert.assertEquals(2 * i, position.getY(), 0);
+    }
+    Assert.assertTrue(base.resultSetFerme);
+    Assert.assertTrue(base.requeteFermee);
+    Assert.assertEquals(1, base.nbCommits);
+    Assert.assertTrue(base.autoCommit);
+    // la connexion n'a pas été ouverte par le lecteur
+    Assert.assertFalse(base.connexionFermee);
+  }
+
+  @Test
+  public void testParcours() throws Exception {
+    PGStreamReaderTest.parcours(1);
+  }
+
+  @Test
+  public void testParcoursParallele() throws Exception {
+    PGStreamReaderTest.parcours(3);
+  }
+
+  @Test
+  public void testTransactionAppelant() throws Exception {
+    Base base = new Base(12);
+    base.autoCommit = false;
+    PGStreamReader reader = new PGStreamReader(base.connexion(), null,
+        "troncon_route", "geom");
+    reader.setColumns("nature", "largeur");
+    int n = 0;
+    try {
+      reader.open();
+      while (reader.hasNext()) {
+        reader.next();
+        n++;
+      }
+    } finally {
+      reader.close();
+    }
+    Assert.assertEquals(11, n);
+    Assert.assertTrue(base.requeteFermee);
+    // la transaction de l'appelant n'est ni validée ni annulée
+    Assert.assertEquals(0, base.nbCommits);
+    Assert.assertEquals(0, base.nbRollbacks);
+    Assert.assertFalse(base.autoCommit);
+  }
+
+  @Test
+  public void testEchecLecture() {
+    Base base = new Base(12);
+    base.echecLecture = true;
+    PGStreamReader reader = new PGStreamReader(base.connexion(), null,
+        "troncon_route", "geom");
+    reader.setColumns("nature", "largeur");
+    try {
+      reader.open();
+      Assert.fail();
+    } catch (SQLException e) {
+      Assert.assertEquals("lecture impossible", e.getMessage());
+    }
+    Assert.assertFalse(base.autoCommitPendantLecture);
+    Assert.assertTrue(base.requeteFermee);
+    Assert.assertEquals(1, base.nbRollbacks);
+    Assert.assertTrue(base.autoCommit);
+    reader.close();
+    Assert.assertEquals(0, base.nbCommits);
+    Assert.assertTrue(base.autoCommit);
+  }
+}
@@ -0,0 +1,541 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Stockage en colonnes des attributs d'un ensemble de {@link DefaultFeature}
+ * partageant le même schéma.
+ * <p>
+ * Chaque colonne numérique est un tableau de primitifs, chaque colonne de
+ * chaînes est codée par dictionnaire, et la correspondance entre noms
+ * d'attributs et colonnes est calculée une fois pour toutes à partir de la
+ * lookup table du schéma. Les objets compactés ne gardent plus leur propre
+ * tableau d'attributs : ils deviennent des vues sur une ligne du stockage, et
+ * {@link DefaultFeature#getAttribute(String)} se fait en temps constant.
+ * <p>
+ * Une colonne n'est typée que si toutes ses valeurs sont du même type (Double,
+ * Integer, Long, Boolean ou String), les valeurs nulles étant admises ; sinon
+ * elle reste une colonne d'objets. Affecter à une colonne typée une valeur
+ * d'un autre type la convertit en colonne d'objets.
+ * <p>
+ * La correspondance entre noms et colonnes est celle du schéma au moment du
+ * compactage. Un objet dont on demande le tableau d'attributs
+ * ({@link DefaultFeature#getAttributes()}) ou dont on change les attributs ou
+ * le schéma retrouve son propre tableau et quitte le stockage.
+ * <p>
+ * Tous les objets compactés partagent les mêmes colonnes : les affectations
+ * ({@link #set(int, int, Object)}) sont donc synchronisées sur le stockage,
+ * afin que des threads modifiant des objets différents ne perdent pas leurs
+ * mises à jour. Les lectures ne prennent pas de verrou, mais tout ce qu'une
+ * affectation partage avec les autres lignes est publié sûrement : les
+ * colonnes sont dans un {@link AtomicReferenceArray}, les dictionnaires de
+ * chaînes ne font que grandir et sont publiés par un champ volatile, et les
+ * valeurs nulles et booléennes sont des bits d'un {@link AtomicLongArray}.
+ * Lire un objet pendant qu'un autre thread en modifie un autre est donc sûr ;
+ * comme pour un tableau d'attributs, lire un objet pendant qu'un autre thread
+ * modifie ce même objet demande une synchronisation de l'appelant.
+ *
+ * @see #compacte(Collection)
+ */
+public final class ColumnarAttributeStore {
+
+  /** Type de stockage d'une colonne. */
+  public enum ColumnType {
+    DOUBLE, INTEGER, LONG, BOOLEAN, STRING, OBJECT
+  }
+
+  private final SchemaDefaultFeature schema;
+  private final Map<String, Integer> index = new HashMap<String, Integer>();
+  private final AtomicReferenceArray<Column> columns;
+  private final int nbRows;
+
+  private ColumnarAttributeStore(SchemaDefaultFeature schema, int nbColumns,
+      int nbRows) {
+    this.schema = schema;
+    this.columns = new AtomicReferenceArray<Column>(nbColumns);
+    this.nbRows = nbRows;
+    if (schema != null) {
+      // les noms d'attributeType sont prioritaires sur les noms de colonnes,
+      // comme dans DefaultFeature.getAttribute(String)
+      for (int niveau = 1; niveau >= 0; niveau--) {
+        for (Integer key : schema.getAttLookup().keySet()) {
+          String[] tabNoms = schema.getAttLookup().get(key);
+          if (tabNoms != null && tabNoms[niveau] != null
+              && key.intValue() >= 0 && key.intValue() < nbColumns
+              && !this.index.containsKey(tabNoms[niveau])) {
+            this.index.put(tabNoms[niveau], key);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Compacte les attributs d'objets dans un nouveau stockage en colonnes.
+   * Seuls les objets qui ont le même schéma et le même nombre d'attributs que
+   * le premier objet qui a des attributs sont compactés, les autres sont
+   * laissés tels quels.
+   * @param features objets à compacter
+   * @return le stockage créé, ou null si aucun objet n'a d'attributs
+   */
+  public static ColumnarAttributeStore compacte(
+      Collection<? extends DefaultFeature> features) {
+    DefaultFeature modele = null;
+    for (DefaultFeature feature : features) {
+      if (feature.getStore() == null && feature.getAttributes() != null) {
+        modele = feature;
+        break;
+      }
+    }
+    if (modele == null) {
+      return null;
+    }
+    SchemaDefaultFeature schema = modele.getSchema();
+    int nbColumns = modele.getAttributes().length;
+    List<DefaultFeature> rows = new ArrayList<DefaultFeature>(features.size());
+    for (DefaultFeature feature : features) {
+      if (feature.getStore() == null && feature.getSchema() == schema
+          && feature.getAttributes() != null
+          && feature.getAttributes().length == nbColumns) {
+        rows.add(feature);
+      }
+    }
+    ColumnarAttributeStore store = new ColumnarAttributeStore(schema,
+        nbColumns, rows.size());
+    for (int col = 0; col < nbColumns; col++) {
+      store.columns.set(col, ColumnarAttributeStore.column(rows, col));
+    }
+    for (int row = 0; row < rows.size(); row++) {
+      rows.get(row).attache(store, row);
+    }
+    return store;
+  }
+
+  /** Colonne du type le plus compact qui convient à toutes les valeurs. */
+  private static Column column(List<DefaultFeature> rows, int col) {
+    Class<?> classe = null;
+    for (DefaultFeature feature : rows) {
+      Object value = feature.getAttributes()[col];
+      if (value == null) {
+        continue;
+      }
+      if (classe == null) {
+        classe = value.getClass();
+      } else if (classe != value.getClass()) {
+        classe = Object.class;
+        break;
+      }
+    }
+    Column column;
+    int n = rows.size();
+    if (classe == Double.class) {
+      column = new DoubleColumn(n);
+    } else if (classe == Integer.class) {
+      column = new IntegerColumn(n);
+    } else if (classe == Long.class) {
+      column = new LongColumn(n);
+    } else if (classe == Boolean.class) {
+      column = new BooleanColumn(n);
+    } else if (classe == String.class) {
+      column = new StringColumn(n);
+    } else {
+      column = new ObjectColumn(n);
+    }
+    for (int row = 0; row < n; row++) {
+      column.set(row, rows.get(row).getAttributes()[col]);
+    }
+    return column;
+  }
+
+  /**
+   * @return le schéma des objets compactés
+   */
+  public SchemaDefaultFeature getSchema() {
+    return this.schema;
+  }
+
+  /**
+   * @return le nombre de lignes, c'est-à-dire d'objets compactés
+   */
+  public int getNbRows() {
+    return this.nbRows;
+  }
+
+  /**
+   * @return le nombre de colonnes, c'est-à-dire d'attributs par objet
+   */
+  public int getNbColumns() {
+    return this.columns.length();
+  }
+
+  /**
+   * @param col rang de la colonne
+   * @return le type de stockage de la colonne
+   */
+  public ColumnType getColumnType(int col) {
+    return this.columns.get(col).type();
+  }
+
+  /**
+   * Rang de la colonne d'un attribut, désigné par son nom d'attributeType ou
+   * à défaut par son nom de colonne.
+   * @param nom nom de l'attribut
+   * @return le rang de la colonne, ou -1 si aucune colonne ne porte ce nom
+   */
+  public int indexOf(String nom) {
+    Integer col = this.index.get(nom);
+    return col == null ? -1 : col.intValue();
+  }
+
+  /**
+   * @param row rang de la ligne
+   * @param col rang de la colonne
+   * @return la valeur de l'attribut
+   */
+  public Object get(int row, int col) {
+    return this.columns.get(col).get(row);
+  }
+
+  /**
+   * Valeur numérique d'un attribut, sans créer d'objet pour les colonnes
+   * numériques.
+   * @param row rang de la ligne
+   * @param col rang de la colonne
+   * @return la valeur de l'attribut, ou NaN si elle est nulle ou n'est pas un
+   *         nombre
+   */
+  public double getDouble(int row, int col) {
+    return this.columns.get(col).getDouble(row);
+  }
+
+  /**
+   * @param row rang de la ligne
+   * @param col rang de la colonne
+   * @return vrai si la valeur de l'attribut est nulle
+   */
+  public boolean isNull(int row, int col) {
+    return this.columns.get(col).get(row) == null;
+  }
+
+  /**
+   * Affecte la valeur d'un attribut. Si la colonne est typée et que la valeur
+   * n'est pas de son type, la colonne devient une colonne d'objets. Les
+   * affectations sont synchronisées : les colonnes de booléens, les valeurs
+   * nulles et les dictionnaires de chaînes sont partagés par toutes les
+   * lignes.
+   * @param row rang de la ligne
+   * @param col rang de la colonne
+   * @param value valeur à affecter
+   */
+  public synchronized void set(int row, int col, Object value) {
+    Column column = this.columns.get(col);
+    if (!column.set(row, value)) {
+      // la nouvelle colonne n'est publiée qu'une fois remplie
+      Column objets = new ObjectColumn(this.nbRows);
+      for (int i = 0; i < this.nbRows; i++) {
+        objets.set(i, column.get(i));
+      }
+      objets.set(row, value);
+      this.columns.set(col, objets);
+    }
+  }
+
+  /**
+   * Colonne de valeurs. Les colonnes de primitifs notent à part leurs valeurs
+   * nulles.
+   */
+  private static abstract class Column {
+    abstract ColumnType type();
+
+    abstract Object get(int row);
+
+    /** @return faux si la valeur n'est pas du type de la colonne */
+    abstract boolean set(int row, Object value);
+
+    double getDouble(int row) {
+      Object value = this.get(row);
+      return value instanceof Number ? ((Number) value).doubleValue()
+          : Double.NaN;
+    }
+  }
+
+  /**
+   * Bits de taille fixe, que l'on peut lire sans verrou pendant que d'autres
+   * bits sont écrits. Les écritures sont sérialisées par le stockage.
+   */
+  private static final class Bits {
+    private final AtomicLongArray words;
+
+    Bits(int n) {
+      this.words = new AtomicLongArray((n + 63) >>> 6);
+    }
+
+    boolean get(int i) {
+      return (this.words.get(i >>> 6) & (1L << i)) != 0;
+    }
+
+    void set(int i, boolean value) {
+      long word = this.words.get(i >>> 6);
+      this.words.set(i >>> 6, value ? word | (1L << i) : word & ~(1L << i));
+    }
+  }
+
+  private static abstract class PrimitiveColumn extends Column {
+    private final int n;
+    /** Lignes dont la valeur est nulle, créé au besoin. */
+    private volatile Bits nulls;
+
+    PrimitiveColumn(int n) {
+      this.n = n;
+    }
+
+    boolean isNull(int row) {
+      Bits bits = this.nulls;
+      return bits != null && bits.get(row);
+    }
+
+    void setNull(int row, boolean isNull) {
+      if (isNull) {
+        if (this.nulls == null) {
+          this.nulls = new Bits(this.n);
+        }
+        this.nulls.set(row, true);
+      } else if (this.nulls != null) {
+        this.nulls.set(row, false);
+      }
+    }
+  }
+
+  private static final class DoubleColumn extends PrimitiveColumn {
+    private final double[] values;
+
+    DoubleColumn(int n) {
+      super(n);
+      this.values = new double[n];
+    }
+
+    @Override
+    ColumnType type() {
+      return ColumnType.DOUBLE;
+    }
+
+    @Override
+    Object get(int row) {
+      return this.isNull(row) ? null : Double.valueOf(this.values[row]);
+    }
+
+    @Override
+    double getDouble(int row) {
+      return this.isNull(row) ? Double.NaN : this.values[row];
+    }
+
+    @Override
+    boolean set(int row, Object value) {
+      if (value != null && value.getClass() != Double.class) {
+        return false;
+      }
+      this.setNull(row, value == null);
+      this.values[row] = value == null ? 0 : ((Double) value).doubleValue();
+      return true;
+    }
+  }
+
+  private static final class IntegerColumn extends PrimitiveColumn {
+    private final int[] values;
+
+    IntegerColumn(int n) {
+      super(n);
+      this.values = new int[n];
+    }
+
+    @Override
+    ColumnType type() {
+      return ColumnType.INTEGER;
+    }
+
+    @Override
+    Object get(int row) {
+      return this.isNull(row) ? null : Integer.valueOf(this.values[row]);
+    }
+
+    @Override
+    double getDouble(int row) {
+      return this.isNull(row) ? Double.NaN : this.values[row];
+    }
+
+    @Override
+    boolean set(int row, Object value) {
+      if (value != null && value.getClass() != Integer.class) {
+        return false;
+      }
+      this.setNull(row, value == null);
+      this.values[row] = value == null ? 0 : ((Integer) value).intValue();
+      return true;
+    }
+  }
+
+  private static final class LongColumn extends PrimitiveColumn {
+    private final long[] values;
+
+    LongColumn(int n) {
+      super(n);
+      this.values = new long[n];
+    }
+
+    @Override
+    ColumnType type() {
+      return ColumnType.LONG;
+    }
+
+    @Override
+    Object get(int row) {
+      return this.isNull(row) ? null : Long.valueOf(this.values[row]);
+    }
+
+    @Override
+    double getDouble(int row) {
+      return this.isNull(row) ? Double.NaN : this.values[row];
+    }
+
+    @Override
+    boolean set(int row, Object value) {
+      if (value != null && value.getClass() != Long.class) {
+        return false;
+      }
+      this.setNull(row, value == null);
+      this.values[row] = value == null ? 0 : ((Long) value).longValue();
+      return true;
+    }
+  }
+
+  private static final class BooleanColumn extends PrimitiveColumn {
+    private final Bits values;
+
+    BooleanColumn(int n) {
+      super(n);
+      this.values = new Bits(n);
+    }
+
+    @Override
+    ColumnType type() {
+      return ColumnType.BOOLEAN;
+    }
+
+    @Override
+    Object get(int row) {
+      return this.isNull(row) ? null : Boolean.valueOf(this.values.get(row));
+    }
+
+    @Override
+    boolean set(int row, Object value) {
+      if (value != null && value.getClass() != Boolean.class) {
+        return false;
+      }
+      this.setNull(row, value == null);
+      this.values.set(row, value != null && ((Boolean) value).booleanValue());
+      return true;
+    }
+  }
+
+  /**
+   * Colonne de chaînes codées par dictionnaire ; le code -1 vaut null. Le
+   * dictionnaire ne fait que grandir et est republié par un champ volatile à
+   * chaque ajout ; la table inverse n'est lue que sous le verrou du stockage.
+   */
+  private static final class StringColumn extends Column {
+    private final int[] codes;
+    private volatile String[] dictionary = new String[8];
+    private int dictionarySize = 0;
+    private final Map<String, Integer> codesByValue = new HashMap<String, Integer>();
+
+    StringColumn(int n) {
+      this.codes = new int[n];
+    }
+
+    @Override
+    ColumnType type() {
+      return ColumnType.STRING;
+    }
+
+    @Override
+    Object get(int row) {
+      int code = this.codes[row];
+      return code < 0 ? null : this.dictionary[code];
+    }
+
+    @Override
+    boolean set(int row, Object value) {
+      if (value == null) {
+        this.codes[row] = -1;
+        return true;
+      }
+      if (value.getClass() != String.class) {
+        return false;
+      }
+      Integer code = this.codesByValue.get(value);
+      if (code == null) {
+        code = Integer.valueOf(this.dictionarySize);
+        String[] entries = this.dictionary;
+        if (this.dictionarySize == entries.length) {
+          entries = Arrays.copyOf(entries, 2 * entries.length);
+        }
+        entries[this.dictionarySize++] = (String) value;
+        // publie la nouvelle entrée avant que son code soit lisible
+        this.dictionary = entries;
+        this.codesByValue.put((String) value, code);
+      }
+      this.codes[row] = code.intValue();
+      return true;
+    }
+  }
+
+  private static final class ObjectColumn extends Column {
+    private final Object[] values;
+
+    ObjectColumn(int n) {
+      this.values = new Object[n];
+    }
+
+    @Override
+    ColumnType type() {
+      return ColumnType.OBJECT;
+    }
+
+    @Override
+    Object get(int row) {
+      return this.values[row];
+    }
+
+    @Override
+    boolean set(int row, Object value) {
+      this.values[row] = value;
+      return true;
+    }
+  }
+}
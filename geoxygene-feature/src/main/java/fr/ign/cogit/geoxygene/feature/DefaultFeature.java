@@ -31,6 +31,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IRankedAttributes;
 import fr.ign.cogit.geoxygene.api.feature.type.GF_AttributeType;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.api.spatial.toporoot.ITopology;
@@ -60,7 +61,8 @@ import fr.ign.cogit.geoxygene.api.spatial.toporoot.ITopology;
  * @author Julien Perret
  */
 
-public class DefaultFeature extends AbstractFeature {
+public class DefaultFeature extends AbstractFeature implements
+    IRankedAttributes {
 
   /** Logger. */
   protected static final Logger LOGGER = LogManager
@@ -98,8 +100,8 @@ public class DefaultFeature extends AbstractFeature {
     super();
     this.setId(original.getId());
     this.setGeom((IGeometry) original.getGeom().clone());
-    this.setAttributes(new Object[original.getAttributes().length]);
-    for (int i = 0; i < original.getAttributes().length; i++) {
+    this.setAttributes(new Object[original.getNbAttributes()]);
+    for (int i = 0; i < this.attributes.length; i++) {
       Object attribute = original.getAttribute(i);
       if (Double.class.isAssignableFrom(attribute.getClass())) {
         Double n = (Double) attribute;
@@ -124,34 +126,141 @@ public class DefaultFeature extends AbstractFeature {
    */
   private SchemaDefaultFeature schema;
   private Object[] attributes;
+  /**
+   * Stockage en colonnes qui porte les attributs de l'objet à la place du
+   * tableau attributes, et ligne de l'objet dans ce stockage.
+   */
+  private ColumnarAttributeStore store;
+  private int row;
 
   /**
-   * Renvoie un tableau contenant les valeurs des attributs de l'objet
+   * Renvoie un tableau contenant les valeurs des attributs de l'objet. Si les
+   * attributs sont dans un stockage en colonnes, c'est une copie de la ligne
+   * de l'objet, qui reste dans le stockage : modifier ce tableau ne modifie pas
+   * l'objet. Pour modifier les attributs, utiliser
+   * {@link #setAttribute(int, Object)} ou sortir l'objet du stockage avec
+   * {@link #detache()}.
    * @return un tableau contenant les valeurs des attributs de l'objet
    */
   public Object[] getAttributes() {
+    if (this.store != null) {
+      return this.copieLigne();
+    }
     return this.attributes;
   }
 
+  /**
+   * @return le nombre d'attributs de l'objet
+   */
+  public int getNbAttributes() {
+    if (this.store != null) {
+      return this.store.getNbColumns();
+    }
+    return this.attributes == null ? 0 : this.attributes.length;
+  }
+
+  /**
+   * @return le stockage en colonnes qui porte les attributs de l'objet, ou
+   *         null s'il a son propre tableau d'attributs
+   * @see ColumnarAttributeStore#compacte(java.util.Collection)
+   */
+  public ColumnarAttributeStore getStore() {
+    return this.store;
+  }
+
+  /**
+   * Fait de l'objet une vue sur une ligne d'un stockage en colonnes.
+   */
+  void attache(ColumnarAttributeStore store, int row) {
+    this.store = store;
+    this.row = row;
+    this.attributes = null;
+  }
+
+  /**
+   * Fait sortir l'objet du stockage en colonnes : ses attributs sont recopiés
+   * dans un tableau propre à l'objet, que {@link #getAttributes()} renvoie
+   * ensuite directement. Sans effet si l'objet n'est pas dans un stockage.
+   */
+  public void detache() {
+    if (this.store == null) {
+      return;
+    }
+    Object[] values = this.copieLigne();
+    this.store = null;
+    this.attributes = values;
+  }
+
+  /** Copie de la ligne de l'objet dans le stockage en colonnes. */
+  private Object[] copieLigne() {
+    Object[] values = new Object[this.store.getNbColumns()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = this.store.get(this.row, i);
+    }
+    return values;
+  }
+
   /**
    * Renvoie l'attribut de position <code>n</code> dans le tableau d'attributs
    * @param rang le rang de l'attribut
    * @return l'attribut de position <code>n</code> dans le tableau d'attributs
    */
+  @Override
   public Object getAttribute(int rang) {
+    if (this.store != null) {
+      return this.store.get(this.row, rang);
+    }
     return this.attributes[rang];
   }
 
+  /**
+   * Les rangs sont fixés par le stockage en colonnes quand l'objet en a un,
+   * par la lookup table du schéma sinon.
+   */
   @Override
-  public Object getAttribute(String nom) {
-    if (nom.equals("geom")) { //$NON-NLS-1$
-      return this.getGeom();
+  public Object getAttributeRanking() {
+    if (this.store != null) {
+      return this.store;
     }
-    if (nom.equals("topo")) { //$NON-NLS-1$
-      return this.getTopo();
+    return this.getSchema() == null ? null : this.getSchema().getAttLookup();
+  }
+
+  @Override
+  public boolean isAttributeRank(String nom, int rang) {
+    if (this.store != null) {
+      int rangStockage = this.store.indexOf(nom);
+      if (rangStockage >= 0) {
+        return rangStockage == rang;
+      }
     }
-    if (nom.equals("id")) { //$NON-NLS-1$
-      return this.getId();
+    if (this.getSchema() == null) {
+      return false;
+    }
+    String[] tabNoms = this.getSchema().getAttLookup().get(
+        Integer.valueOf(rang));
+    return tabNoms != null
+        && (nom.equals(tabNoms[1]) || nom.equals(tabNoms[0]));
+  }
+
+  /**
+   * Rang de l'attribut dans la table d'attributs. Comme pour
+   * {@link #getAttribute(String)}, le nom est cherché en priorité parmi les
+   * noms d'attributeType, puis parmi les noms de colonnes. Geom, topo et id ne
+   * sont pas dans la table d'attributs et n'ont pas de rang.
+   * @param nom nom de l'attribut
+   * @return le rang de l'attribut, ou -1 s'il n'est pas dans la table
+   */
+  @Override
+  public int getAttributeRank(String nom) {
+    if (nom.equals("geom") || nom.equals("topo") //$NON-NLS-1$ //$NON-NLS-2$
+        || nom.equals("id")) { //$NON-NLS-1$
+      return -1;
+    }
+    if (this.store != null) {
+      int rang = this.store.indexOf(nom);
+      if (rang >= 0) {
+        return rang;
+      }
     }
 
     /**
@@ -164,7 +273,7 @@ public class DefaultFeature extends AbstractFeature {
         tabNoms = this.getSchema().getAttLookup().get(key);
         if ((tabNoms != null) && (tabNoms[1] != null)
             && (tabNoms[1].equals(nom))) {
-          return this.getAttribute(key.intValue());
+          return key.intValue();
         }
       }
       /**
@@ -175,10 +284,28 @@ public class DefaultFeature extends AbstractFeature {
         tabNoms = this.getSchema().getAttLookup().get(key);
         if ((tabNoms != null) && (tabNoms[0] != null)
             && (tabNoms[0].equals(nom))) {
-          return this.getAttribute(key.intValue());
+          return key.intValue();
         }
       }
     }
+    return -1;
+  }
+
+  @Override
+  public Object getAttribute(String nom) {
+    if (nom.equals("geom")) { //$NON-NLS-1$
+      return this.getGeom();
+    }
+    if (nom.equals("topo")) { //$NON-NLS-1$
+      return this.getTopo();
+    }
+    if (nom.equals("id")) { //$NON-NLS-1$
+      return this.getId();
+    }
+    int rang = this.getAttributeRank(nom);
+    if (rang >= 0) {
+      return this.getAttribute(rang);
+    }
     if (LOGGER.isDebugEnabled()) {
       LOGGER.warn("!!! le nom '" + nom //$NON-NLS-1$
           + "' ne correspond pas à un attribut de ce feature !!!"); //$NON-NLS-1$
@@ -195,6 +322,7 @@ public class DefaultFeature extends AbstractFeature {
    * @param attributes the attributes to set
    */
   public void setAttributes(Object[] attributes) {
+    this.store = null;
     this.attributes = attributes;
   }
 
@@ -206,6 +334,10 @@ public class DefaultFeature extends AbstractFeature {
    * @param value
    */
   public void setAttribute(int rang, Object value) {
+    if (this.store != null) {
+      this.store.set(this.row, rang, value);
+      return;
+    }
     this.attributes[rang] = value;
   }
 
@@ -220,6 +352,13 @@ public class DefaultFeature extends AbstractFeature {
      * on regarde en priorité si le nom correspond à un nom d'attributeType
      * (métadonnées de niveau conceptuel)
      */
+    if (this.store != null) {
+      int rang = this.store.indexOf(nom);
+      if (rang >= 0) {
+        this.store.set(this.row, rang, value);
+        return;
+      }
+    }
     String[] tabNoms;
     for (Integer key : this.getSchema().getAttLookup().keySet()) {
       tabNoms = this.getSchema().getAttLookup().get(key);
@@ -273,6 +412,9 @@ public class DefaultFeature extends AbstractFeature {
    * @param schema
    */
   public void setSchema(SchemaDefaultFeature schema) {
+    if (this.store != null && schema != this.store.getSchema()) {
+      this.detache();
+    }
     this.schema = schema;
   }
 
@@ -316,7 +458,11 @@ public class DefaultFeature extends AbstractFeature {
     DefaultFeature clone = new DefaultFeature(
         (IGeometry) this.getGeom().clone());
     clone.setSchema(this.getSchema());
-    clone.setAttributes(this.getAttributes());
+    if (this.store != null) {
+      clone.attache(this.store, this.row);
+    } else {
+      clone.setAttributes(this.attributes);
+    }
     clone.setFeatureType(this.getFeatureType());
 
     return clone;
@@ -326,11 +472,10 @@ public class DefaultFeature extends AbstractFeature {
   public String toString() {
 
     StringBuffer sAttBuffer = new StringBuffer();
-    Object[] tabAtt = this.getAttributes();
-    if (tabAtt != null) {
-      int length = tabAtt.length;
+    if (this.store != null || this.attributes != null) {
+      int length = this.getNbAttributes();
       for (int i = 0; i < length; i++) {
-        Object o = tabAtt[i];
+        Object o = this.getAttribute(i);
         if (o != null) {
           sAttBuffer.append(o.toString()).append(" - ");
         }
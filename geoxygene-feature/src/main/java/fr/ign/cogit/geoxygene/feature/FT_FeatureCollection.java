@@ -30,6 +30,8 @@ import javax.persistence.Transient;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
 import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
@@ -50,6 +52,7 @@ import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.conversion.JtsGeOxygene;
 
 /**
  * Collection (liste) de IFeature. Peut porter un index spatial.
@@ -70,14 +73,25 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
 
   @Override
   public void addFeatureCollectionListener(FeatureCollectionListener l) {
-    this.listenerList.add(l);
+    synchronized (this.listenerList) {
+      this.listenerList.add(l);
+    }
+  }
+
+  @Override
+  public void removeFeatureCollectionListener(FeatureCollectionListener l) {
+    synchronized (this.listenerList) {
+      this.listenerList.remove(l);
+    }
   }
 
   @Override
   public void fireActionPerformed(FeatureCollectionEvent event) {
     // Guaranteed to return a non-null array
-    FeatureCollectionListener[] listeners = this.listenerList
-        .toArray(new FeatureCollectionListener[0]);
+    FeatureCollectionListener[] listeners;
+    synchronized (this.listenerList) {
+      listeners = this.listenerList.toArray(new FeatureCollectionListener[0]);
+    }
     // Process the listeners last to first, notifying
     // those that are interested in this event
     for (int i = listeners.length - 1; i >= 0; i -= 1) {
@@ -221,6 +235,36 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
     return result;
   }
 
+  /**
+   * Ajoute des éléments en une seule fois : la liste est étendue d'un bloc,
+   * l'index spatial est mis à jour une seule fois
+   * ({@link SpatialIndex#update(Collection, int)}), l'enveloppe n'est
+   * invalidée qu'une fois et un seul événement est émis pour l'ensemble des
+   * éléments ajoutés.
+   * @param values les éléments à ajouter
+   */
+  @SuppressWarnings("unchecked")
+  protected void ajouteEnBloc(Collection<? extends Feat> values) {
+    if (values == null || values.isEmpty()) {
+      return;
+    }
+    synchronized (this.elements) {
+      this.elements.addAll(values);
+    }
+    for (Feat value : values) {
+      if (value.getFeatureCollections() != null) {
+        value.getFeatureCollections().add((IFeatureCollection<IFeature>) this);
+      }
+    }
+    if (this.isIndexed && this.spatialindex.hasAutomaticUpdate()) {
+      this.spatialindex.update(values, +1);
+    }
+    this.envelope = null; // invalidate envelope computation
+
+    this.fireActionPerformed(new FeatureCollectionEvent(this, null,
+        FeatureCollectionEvent.Type.ADDED, null));
+  }
+
   @Override
   public void addCollection(Collection<Feat> value) {
     if (value == null) {
@@ -580,9 +624,17 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
   public Collection<Feat> select(IGeometry geometry) {
     if (!this.isIndexed) {
       Collection<Feat> selectedFeatures = new HashSet<Feat>(0);
+      PreparedGeometry prepared = null;
+      try {
+        prepared = JtsGeOxygene.getPreparedGeom(geometry);
+      } catch (Exception e) {
+        FT_FeatureCollection.logger
+            .error("Echec de la préparation de la géométrie " + geometry); //$NON-NLS-1$
+      }
       synchronized (this.elements) {
         for (Feat feature : this) {
-          if (feature.getGeom().intersects(geometry)) {
+          if (prepared == null ? feature.getGeom().intersects(geometry)
+              : FT_FeatureCollection.intersects(prepared, feature.getGeom())) {
             selectedFeatures.add(feature);
           }
         }
@@ -612,9 +664,19 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
   public Collection<Feat> select(IGeometry geometry, double distance) {
     if (!this.isIndexed) {
       Collection<Feat> selectedFeatures = new HashSet<Feat>(0);
+      Geometry jtsGeometry = null;
+      try {
+        jtsGeometry = JtsGeOxygene.getJtsGeom(geometry);
+      } catch (Exception e) {
+        FT_FeatureCollection.logger
+            .error("Echec de la conversion de la géométrie " + geometry); //$NON-NLS-1$
+      }
       synchronized (this.elements) {
         for (Feat feature : this) {
-          if (feature.getGeom().distance(geometry) <= distance) {
+          boolean proche = (jtsGeometry == null) ? feature.getGeom()
+              .distance(geometry) <= distance : FT_FeatureCollection
+              .isWithinDistance(jtsGeometry, feature.getGeom(), distance);
+          if (proche) {
             selectedFeatures.add(feature);
           }
         }
@@ -624,6 +686,44 @@ public class FT_FeatureCollection<Feat extends IFeature> implements
     return this.spatialindex.select(geometry, distance);
   }
 
+  /**
+   * Test d'intersection entre une géométrie de requête préparée et la
+   * géométrie d'un élément de la collection.
+   * @param prepared géométrie de requête préparée
+   * @param geom géométrie d'un élément
+   * @return vrai si les deux géométries s'intersectent
+   */
+  private static boolean intersects(PreparedGeometry prepared, IGeometry geom) {
+    try {
+      return prepared.intersects(JtsGeOxygene.getJtsGeom(geom));
+    } catch (Exception e) {
+      FT_FeatureCollection.logger
+          .error("Echec de la conversion de la géométrie " + geom); //$NON-NLS-1$
+      return false;
+    }
+  }
+
+  /**
+   * Test de proximité entre une géométrie de requête déjà convertie et la
+   * géométrie d'un élément de la collection.
+   * @param jtsGeometry géométrie de requête convertie en JTS
+   * @param geom géométrie d'un élément
+   * @param distance distance maximale
+   * @return vrai si les deux géométries sont à moins de distance l'une de
+   *         l'autre
+   */
+  private static boolean isWithinDistance(Geometry jtsGeometry,
+      IGeometry geom, double distance) {
+    try {
+      return jtsGeometry.isWithinDistance(JtsGeOxygene.getJtsGeom(geom),
+          distance);
+    } catch (Exception e) {
+      FT_FeatureCollection.logger
+          .error("Echec de la conversion de la géométrie " + geom); //$NON-NLS-1$
+      return false;
+    }
+  }
+
   // ---------------------------------------
   // --- méthodes nécessaire pour implémenter l'interface Collection
   // ---------------------------------------
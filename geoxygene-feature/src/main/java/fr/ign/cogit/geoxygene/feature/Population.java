@@ -19,12 +19,19 @@
 
 package fr.ign.cogit.geoxygene.feature;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.sql.Time;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
@@ -516,14 +523,58 @@ public class Population<Feat extends IFeature> extends
     }
   }
 
-  private static int idNouvelElement = 0;
+  /**
+   * Compteur des identifiants des nouveaux éléments, commun à toutes les
+   * populations.
+   */
+  private static final AtomicInteger idNouvelElement = new AtomicInteger();
 
   public static void setIdNouvelElement(int idNouvelElement) {
-    Population.idNouvelElement = idNouvelElement;
+    Population.idNouvelElement.set(idNouvelElement);
   }
 
   public static int getIdNouvelElement() {
-    return Population.idNouvelElement;
+    return Population.idNouvelElement.get();
+  }
+
+  /**
+   * Constructeur sans paramètre de chaque classe d'éléments, recherché une
+   * seule fois par classe. Vaut null si la classe n'en a pas d'accessible.
+   */
+  private static final ClassValue<MethodHandle> CONSTRUCTEURS = new ClassValue<MethodHandle>() {
+    @Override
+    protected MethodHandle computeValue(Class<?> classe) {
+      try {
+        return MethodHandles.publicLookup()
+            .findConstructor(classe, MethodType.methodType(void.class))
+            .asType(MethodType.methodType(Object.class));
+      } catch (ReflectiveOperationException e) {
+        return null;
+      }
+    }
+  };
+
+  /**
+   * Instancie un élément de la classe de la population avec son constructeur
+   * sans paramètre.
+   */
+  @SuppressWarnings("unchecked")
+  private Feat instancie() throws Exception {
+    MethodHandle constructeur = Population.CONSTRUCTEURS.get(this.getClasse());
+    if (constructeur == null) {
+      // lève l'exception adéquate
+      return this.getClasse().getConstructor().newInstance();
+    }
+    try {
+      Object elem = constructeur.invokeExact();
+      return (Feat) elem;
+    } catch (Exception e) {
+      throw e;
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new InvocationTargetException(e);
+    }
   }
 
   @Override
@@ -534,8 +585,8 @@ public class Population<Feat extends IFeature> extends
   @Override
   public Feat nouvelElement(IGeometry geom) {
     try {
-      Feat elem = this.getClasse().getConstructor().newInstance();
-      elem.setId(++Population.idNouvelElement);
+      Feat elem = this.instancie();
+      elem.setId(Population.idNouvelElement.incrementAndGet());
       elem.setGeom(geom);
       elem.setPopulation(this);
       super.add(elem);
@@ -559,11 +610,48 @@ public class Population<Feat extends IFeature> extends
     }
   }
 
+  @Override
+  public List<Feat> nouveauxElements(List<? extends IGeometry> geometries) {
+    return this.nouveauxElements(geometries, null);
+  }
+
+  @Override
+  public List<Feat> nouveauxElements(List<? extends IGeometry> geometries,
+      Supplier<? extends Feat> fabrique) {
+    int n = geometries.size();
+    // un seul bloc d'identifiants pour tous les éléments
+    int premier = Population.idNouvelElement.getAndAdd(n) + 1;
+    List<Feat> elems = new ArrayList<Feat>(n);
+    try {
+      for (int i = 0; i < n; i++) {
+        Feat elem = (fabrique == null) ? this.instancie() : fabrique.get();
+        elem.setId(premier + i);
+        elem.setGeom(geometries.get(i));
+        elem.setPopulation(this);
+        elems.add(elem);
+      }
+    } catch (Exception e) {
+      FT_FeatureCollection.logger
+          .error("ATTENTION : problème à la création d'un élément de la population " + this.getNom()); //$NON-NLS-1$
+      FT_FeatureCollection.logger
+          .error("            Classe des éléments non valide : " + this.getNomClasse()); //$NON-NLS-1$
+      e.printStackTrace();
+      return null;
+    }
+    this.ajouteEnBloc(elems);
+    if (this.getPersistant()) {
+      for (Feat elem : elems) {
+        DataSet.db.makePersistent(elem);
+      }
+    }
+    return elems;
+  }
+
   @Override
   public Feat nouvelElement(Class<?>[] signature, Object[] param) {
     try {
       Feat elem = this.getClasse().getConstructor(signature).newInstance(param);
-      elem.setId(++Population.idNouvelElement);
+      elem.setId(Population.idNouvelElement.incrementAndGet());
       super.add(elem);
       if (this.getPersistant()) {
         DataSet.db.makePersistent(elem);
@@ -591,6 +679,24 @@ public class Population<Feat extends IFeature> extends
     this.setNomClasse(populationACopier.getNomClasse());
   }
 
+  // ////////////////////////////////////////////////
+  // Stockage des attributs
+  /**
+   * Range les attributs des DefaultFeature de la population dans un stockage
+   * en colonnes.
+   * @return le stockage créé, ou null si aucun objet n'a été compacté
+   * @see ColumnarAttributeStore#compacte(Collection)
+   */
+  public ColumnarAttributeStore compacteAttributs() {
+    List<DefaultFeature> features = new ArrayList<DefaultFeature>();
+    for (Feat feature : this.getElements()) {
+      if (feature instanceof DefaultFeature) {
+        features.add((DefaultFeature) feature);
+      }
+    }
+    return ColumnarAttributeStore.compacte(features);
+  }
+
   // //////////////////////////////////////////////////////////////////////////////
   @Override
   public void chargeElementsAvecMetadonnees() {
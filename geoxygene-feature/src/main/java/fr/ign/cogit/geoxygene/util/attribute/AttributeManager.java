@@ -123,16 +123,15 @@ public class AttributeManager {
           new ArrayList<GF_AttributeType>());
     }
 
-    if (feat.getAttributes() == null) {
+    if (feat.getStore() == null && feat.getAttributes() == null) {
       feat.setAttributes(new Object[0]);
     }
 
     if (feat.getFeatureType().getFeatureAttributes().size() != feat
-        .getAttributes().length) {
-      Object[] attributes = new Object[feat.getAttributes().length + 1];
-
-      attributes = Arrays.copyOf(feat.getAttributes(),
-          feat.getAttributes().length + 1);
+        .getNbAttributes()) {
+      // getAttributes() est une copie si l'objet est compacté
+      Object[] attributes = Arrays.copyOf(feat.getAttributes(),
+          feat.getNbAttributes() + 1);
 
       feat.setAttributes(attributes);
 
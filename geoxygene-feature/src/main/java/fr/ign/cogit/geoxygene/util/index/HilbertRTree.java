@@ -0,0 +1,703 @@
+/*******************************************************************************
+ * This software is released under the licence CeCILL
+ *
+ * see Licence_CeCILL-C_fr.html see Licence_CeCILL-C_en.html
+ *
+ * see <a href="http://www.cecill.info/">http://www.cecill.info/a>
+ *
+ * @copyright IGN
+ ******************************************************************************/
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+
+/**
+ * Index spatial par R-tree compacté selon la courbe de Hilbert (packed Hilbert
+ * R-tree). Les rectangles englobants de tous les noeuds sont stockés dans un
+ * unique tableau de doubles et l'arbre n'est plus modifié une fois construit.
+ * <p>
+ * Les mises à jour ne modifient pas la structure de l'arbre : les objets
+ * ajoutés sont écrits à la fin d'un journal par blocs, jamais recopié, et les
+ * suppressions sont datées par un numéro de version. Chaque mise à jour publie
+ * un nouvel état (arbre, taille du journal, version), en temps constant amorti.
+ * Les sélections lisent un état cohérent sans aucun verrou, elles peuvent donc
+ * être faites par plusieurs threads en parallèle. Lorsque ces modifications
+ * deviennent trop nombreuses, l'arbre est reconstruit.
+ * <p>
+ * Utilisation :
+ * <code>collection.initSpatialIndex(HilbertRTree.class, true)</code> ou
+ * <code>collection.initSpatialIndex(HilbertRTree.class, true, 16)</code> pour
+ * préciser le nombre de fils par noeud.
+ *
+ * @param <Feat> type des objets indexés
+ */
+public class HilbertRTree<Feat extends IFeature> extends IndexTree<Feat> {
+  static Logger logger = LogManager.getLogger(HilbertRTree.class.getName());
+
+  /** Nombre de fils par noeud utilisé par défaut. */
+  public static final int CAPACITE_PAR_DEFAUT = 16;
+
+  /**
+   * Nombre minimal de modifications avant reconstruction de l'arbre. Au-delà,
+   * l'arbre est reconstruit dès que les modifications représentent plus d'un
+   * huitième des objets indexés.
+   */
+  private static final int MODIFICATIONS_MIN = 256;
+
+  /** Nombre de fils par noeud. */
+  private int capacite;
+
+  /** Indique si l'on a demande une mise a jour automatique. */
+  private boolean automaticUpdate;
+
+  /** Etat courant de l'index, remplacé (jamais modifié) à chaque MAJ. */
+  private volatile Etat<Feat> etat;
+
+  /** Modifications faites depuis la construction de l'arbre courant. */
+  private Journal<Feat> journal;
+
+  // ===============================================
+  // CONSTRUCTEURS
+  // ===============================================
+
+  /**
+   * Crée un R-tree compacté sur une collection de features.
+   * @param fc La liste de Features à indexer
+   * @param automaticUpd Spécifie si l'index doit être mis à jour
+   *          automatiquement quand on modifie les objets de fc
+   * @param capacite nombre de fils par noeud
+   */
+  public HilbertRTree(IFeatureCollection<Feat> fc, Boolean automaticUpd,
+      Integer capacite) {
+    this.collection = fc;
+    this.automaticUpdate = automaticUpd.booleanValue();
+    this.capacite = Math.max(2, capacite.intValue());
+    List<Feat> features = new ArrayList<Feat>(fc.size());
+    for (Feat feature : fc) {
+      features.add(feature);
+    }
+    this.construire(features);
+  }
+
+  /**
+   * Crée un R-tree compacté sur une collection de features. Signature commune
+   * aux index dallés (cf.
+   * {@link IFeatureCollection#initSpatialIndex(Class, boolean, IEnvelope, int)}
+   * ) : l'emprise de l'arbre est calculée à partir des objets, l'enveloppe
+   * donnée est donc ignorée.
+   * @param fc La liste de Features à indexer
+   * @param automaticUpd Spécifie si l'index doit être mis à jour
+   *          automatiquement quand on modifie les objets de fc
+   * @param envelope emprise demandée, ignorée
+   * @param capacite nombre de fils par noeud
+   */
+  public HilbertRTree(IFeatureCollection<Feat> fc, Boolean automaticUpd,
+      IEnvelope envelope, Integer capacite) {
+    this(fc, automaticUpd, capacite);
+  }
+
+  /**
+   * Crée un R-tree compacté sur une collection de features, avec le nombre de
+   * fils par noeud par défaut.
+   * @param fc La liste de Features à indexer
+   * @param automaticUpd Spécifie si l'index doit être mis à jour
+   *          automatiquement quand on modifie les objets de fc
+   */
+  public HilbertRTree(IFeatureCollection<Feat> fc, Boolean automaticUpd) {
+    this(fc, automaticUpd, HilbertRTree.CAPACITE_PAR_DEFAUT);
+  }
+
+  /**
+   * Crée un R-tree compacté en reprenant les paramètres d'un autre index.
+   */
+  public HilbertRTree(IFeatureCollection<Feat> fc, HilbertRTree<Feat> spIdx) {
+    this(fc, spIdx.automaticUpdate, spIdx.capacite);
+  }
+
+  // ===============================================
+  // PARAMETRES
+  // ===============================================
+
+  /**
+   * Renvoie une liste de 3 éléments : HilbertRTree.class, un Boolean
+   * indiquant si l'index est en mode MAJ automatique et un Integer donnant le
+   * nombre de fils par noeud.
+   */
+  @Override
+  public List<Object> getParametres() {
+    List<Object> param = new ArrayList<Object>(3);
+    param.add(HilbertRTree.class);
+    param.add(this.automaticUpdate);
+    param.add(this.capacite);
+    return param;
+  }
+
+  @Override
+  public boolean hasAutomaticUpdate() {
+    return this.automaticUpdate;
+  }
+
+  @Override
+  public void setAutomaticUpdate(boolean auto) {
+    this.automaticUpdate = auto;
+  }
+
+  /** Nombre de fils par noeud. */
+  public int getCapacite() {
+    return this.capacite;
+  }
+
+  // ===============================================
+  // MISE A JOUR
+  // ===============================================
+
+  @Override
+  public synchronized void update(Feat value, int cas) {
+    if (value == null || this.etat == null) {
+      return;
+    }
+    if (cas == 1) {// ajout
+      this.journal.ajout(value);
+    } else if (cas == -1) {// suppression
+      this.journal.suppression(value);
+    } else if (cas == 0) {// modification : suppression puis ajout
+      this.journal.suppression(value);
+      this.journal.ajout(value);
+    } else {
+      return;
+    }
+    this.publier();
+  }
+
+  /**
+   * Les modifications sont toutes portées au journal, puis l'état de l'index
+   * n'est publié (ou l'arbre reconstruit) qu'une seule fois.
+   */
+  @Override
+  public synchronized void update(Collection<? extends Feat> values, int cas) {
+    if (this.etat == null || (cas != 1 && cas != -1 && cas != 0)) {
+      return;
+    }
+    for (Feat value : values) {
+      if (value == null) {
+        continue;
+      }
+      if (cas != 1) {
+        this.journal.suppression(value);
+      }
+      if (cas != -1) {
+        this.journal.ajout(value);
+      }
+    }
+    this.publier();
+  }
+
+  /**
+   * Publie l'état courant du journal, ou reconstruit l'arbre si les
+   * modifications sont trop nombreuses.
+   */
+  private void publier() {
+    if (this.journal.nbModifications() > Math.max(
+        HilbertRTree.MODIFICATIONS_MIN, this.journal.arbre.nbObjets / 8)) {
+      this.construire(this.journal.objets());
+    } else {
+      this.etat = this.journal.etat();
+    }
+  }
+
+  /** (Re)construit l'arbre sur les objets donnés et vide le journal. */
+  private void construire(List<Feat> features) {
+    this.journal = new Journal<Feat>(new Arbre<Feat>(features, this.capacite));
+    this.etat = this.journal.etat();
+  }
+
+  @Override
+  public synchronized void clear() {
+    super.clear();
+    this.etat = null;
+    this.journal = null;
+  }
+
+  // ===============================================
+  // SELECTIONS
+  // ===============================================
+
+  /**
+   * Objets dont le rectangle englobant intersecte le rectangle donné, sans test
+   * sur les géométries elles-mêmes.
+   */
+  public Collection<Feat> selectCandidats(IEnvelope env) {
+    Collection<Feat> result = new HashSet<Feat>();
+    Etat<Feat> e = this.etat;
+    if (e == null || env == null) {
+      return result;
+    }
+    e.candidats(env.minX(), env.minY(), env.maxX(), env.maxY(), result);
+    return result;
+  }
+
+  @Override
+  public Collection<Feat> select(IDirectPosition P, double D) {
+    return this.select(new GM_Envelope(P, D));
+  }
+
+  @Override
+  public Collection<Feat> select(IEnvelope env) {
+    if (env == null) {
+      return new HashSet<Feat>();
+    }
+    IGeometry geometry = new GM_Polygon(env);
+    if (env.getUpperCorner().getX() == env.getLowerCorner().getX()
+        && env.getUpperCorner().getY() == env.getLowerCorner().getY()) {
+      geometry = new GM_Point(env.getUpperCorner());
+    }
+    return this.select(geometry, env, false);
+  }
+
+  @Override
+  public Collection<Feat> select(IGeometry geometry) {
+    return this.select(geometry, geometry.envelope(), false);
+  }
+
+  @Override
+  public Collection<Feat> select(IGeometry geometry, boolean strictlyCrosses) {
+    return this.select(geometry, geometry.envelope(), strictlyCrosses);
+  }
+
+  /**
+   * Sélection des candidats par rectangle englobant, puis test sur les
+   * géométries avec la géométrie de requête préparée.
+   */
+  private Collection<Feat> select(IGeometry geometry, IEnvelope env,
+      boolean strictlyCrosses) {
+    Collection<Feat> candidats = this.selectCandidats(env);
+    if (candidats.isEmpty()) {
+      return candidats;
+    }
+    PreparedGeometry prepared = strictlyCrosses ? null : Tiling
+        .prepare(geometry);
+    Collection<Feat> result = new HashSet<Feat>();
+    for (Feat feature : candidats) {
+      IGeometry geom = feature.getGeom();
+      if (geom == null) {
+        continue;
+      }
+      if (strictlyCrosses ? geometry.crosses(geom) : Tiling.intersects(
+          prepared, geometry, geom)) {
+        result.add(feature);
+      }
+    }
+    return result;
+  }
+
+  // ===============================================
+  // STRUCTURES INTERNES
+  // ===============================================
+
+  /**
+   * Etat immuable de l'index, tel que vu par les sélections : un arbre
+   * compacté, les objets ajoutés depuis sa construction (début du journal) et
+   * la version des suppressions à prendre en compte.
+   */
+  private static final class Etat<Feat extends IFeature> {
+    final Arbre<Feat> arbre;
+    /** Blocs du journal des ajouts. */
+    final Ajout<Feat>[][] blocs;
+    /** Nombre d'ajouts visibles dans cet état. */
+    final int nbAjouts;
+    /** Seules les suppressions de version inférieure ou égale sont vues. */
+    final int version;
+
+    Etat(Arbre<Feat> arbre, Ajout<Feat>[][] blocs, int nbAjouts, int version) {
+      this.arbre = arbre;
+      this.blocs = blocs;
+      this.nbAjouts = nbAjouts;
+      this.version = version;
+    }
+
+    void candidats(double minX, double minY, double maxX, double maxY,
+        Collection<Feat> result) {
+      this.arbre.candidats(minX, minY, maxX, maxY, this.version, result);
+      for (int i = 0; i < this.nbAjouts; i++) {
+        Ajout<Feat> ajout = this.blocs[i >>> Journal.BITS_BLOC][i
+            & Journal.MASQUE_BLOC];
+        if (ajout.suppression > this.version
+            && Arbre.intersecte(ajout.enveloppe, 0, minX, minY, maxX, maxY)) {
+          result.add(ajout.feature);
+        }
+      }
+    }
+  }
+
+  /** Objet ajouté depuis la construction de l'arbre. */
+  private static final class Ajout<Feat extends IFeature> {
+    final Feat feature;
+    /** Rectangle englobant (minX, minY, maxX, maxY). */
+    final double[] enveloppe;
+    /**
+     * Version de la suppression de l'objet, {@link Integer#MAX_VALUE} tant
+     * qu'il est indexé. Modifiée après publication : un état plus ancien peut
+     * lire l'une ou l'autre valeur, toutes deux supérieures à sa version.
+     */
+    int suppression = Integer.MAX_VALUE;
+
+    Ajout(Feat feature, IEnvelope env) {
+      this.feature = feature;
+      this.enveloppe = new double[] { env.minX(), env.minY(), env.maxX(),
+          env.maxY() };
+    }
+  }
+
+  /**
+   * Modifications faites depuis la construction d'un arbre, manipulées par
+   * un seul thread à la fois (sous le verrou de l'index). Les ajouts sont
+   * écrits à la suite dans des blocs de taille fixe qui ne sont jamais
+   * recopiés ; les suppressions sont datées par un numéro de version, dans
+   * l'arbre ({@link Arbre#suppressions}) ou sur les ajouts.
+   */
+  private static final class Journal<Feat extends IFeature> {
+    static final int BITS_BLOC = 8;
+    static final int TAILLE_BLOC = 1 << Journal.BITS_BLOC;
+    static final int MASQUE_BLOC = Journal.TAILLE_BLOC - 1;
+
+    final Arbre<Feat> arbre;
+    Ajout<Feat>[][] blocs;
+    int nbAjouts = 0;
+    int version = 0;
+    /** Nombre d'objets de l'arbre supprimés. */
+    int nbSupprimes = 0;
+    /** Ajouts encore indexés. */
+    final Map<Feat, Ajout<Feat>> vivants;
+
+    @SuppressWarnings("unchecked")
+    Journal(Arbre<Feat> arbre) {
+      this.arbre = arbre;
+      this.blocs = new Ajout[1][];
+      this.vivants = new IdentityHashMap<Feat, Ajout<Feat>>();
+    }
+
+    Etat<Feat> etat() {
+      return new Etat<Feat>(this.arbre, this.blocs, this.nbAjouts,
+          this.version);
+    }
+
+    int nbModifications() {
+      return this.nbAjouts + this.nbSupprimes;
+    }
+
+    /**
+     * Ajoute un objet ; un objet déjà indexé est d'abord supprimé, sa géométrie
+     * ayant pu changer. Les objets sans géométrie ne sont pas indexés.
+     */
+    @SuppressWarnings("unchecked")
+    void ajout(Feat feature) {
+      IGeometry geom = feature.getGeom();
+      IEnvelope env = (geom == null) ? null : geom.envelope();
+      if (env == null) {
+        return;
+      }
+      this.suppression(feature);
+      int bloc = this.nbAjouts >>> Journal.BITS_BLOC;
+      if (bloc == this.blocs.length) {
+        this.blocs = Arrays.copyOf(this.blocs, 2 * bloc);
+      }
+      if (this.blocs[bloc] == null) {
+        this.blocs[bloc] = new Ajout[Journal.TAILLE_BLOC];
+      }
+      Ajout<Feat> ajout = new Ajout<Feat>(feature, env);
+      this.blocs[bloc][this.nbAjouts & Journal.MASQUE_BLOC] = ajout;
+      this.nbAjouts++;
+      this.vivants.put(feature, ajout);
+    }
+
+    void suppression(Feat feature) {
+      Ajout<Feat> ajout = this.vivants.remove(feature);
+      if (ajout != null) {
+        ajout.suppression = ++this.version;
+        return;
+      }
+      Integer i = this.arbre.positions.get(feature);
+      if (i != null && this.arbre.suppressions[i] == Integer.MAX_VALUE) {
+        this.arbre.suppressions[i] = ++this.version;
+        this.nbSupprimes++;
+      }
+    }
+
+    /** Objets actuellement indexés, utilisés pour reconstruire l'arbre. */
+    List<Feat> objets() {
+      List<Feat> objets = new ArrayList<Feat>(this.arbre.nbObjets
+          - this.nbSupprimes + this.vivants.size());
+      for (int i = 0; i < this.arbre.nbObjets; i++) {
+        if (this.arbre.suppressions[i] == Integer.MAX_VALUE) {
+          objets.add(this.arbre.objets[i]);
+        }
+      }
+      for (int i = 0; i < this.nbAjouts; i++) {
+        Ajout<Feat> ajout = this.blocs[i >>> Journal.BITS_BLOC][i
+            & Journal.MASQUE_BLOC];
+        if (ajout.suppression == Integer.MAX_VALUE) {
+          objets.add(ajout.feature);
+        }
+      }
+      return objets;
+    }
+  }
+
+  /**
+   * R-tree compacté, de structure immuable. Les noeuds sont rangés niveau par
+   * niveau, en commençant par les feuilles triées selon la valeur de Hilbert du
+   * centre de leur rectangle englobant ; chaque noeud a au plus
+   * {@link #capacite} fils consécutifs.
+   */
+  private static final class Arbre<Feat extends IFeature> {
+    /** Ordre de la courbe de Hilbert : coordonnées sur 16 bits. */
+    private static final int HILBERT_MAX = 0xFFFF;
+
+    final int capacite;
+    final int nbObjets;
+    /** Objets indexés, dans leur ordre d'insertion. */
+    final Feat[] objets;
+    /** Rectangles englobants des noeuds (minX, minY, maxX, maxY). */
+    final double[] enveloppes;
+    /**
+     * Pour une feuille, indice de l'objet dans {@link #objets} ; pour un noeud
+     * interne, position de son premier fils.
+     */
+    final int[] indices;
+    /** Position de fin (exclue) de chaque niveau, des feuilles à la racine. */
+    final int[] finsNiveaux;
+    /** Position des objets indexés dans {@link #objets}. */
+    final Map<Feat, Integer> positions;
+    /**
+     * Version de la suppression de chaque objet de {@link #objets},
+     * {@link Integer#MAX_VALUE} tant qu'il est indexé (cf. {@link Ajout}).
+     */
+    final int[] suppressions;
+
+    @SuppressWarnings("unchecked")
+    Arbre(List<Feat> features, int capacite) {
+      this.capacite = capacite;
+      List<Feat> retenus = new ArrayList<Feat>(features.size());
+      List<IEnvelope> envs = new ArrayList<IEnvelope>(features.size());
+      for (Feat feature : features) {
+        IGeometry geom = feature.getGeom();
+        IEnvelope env = (geom == null) ? null : geom.envelope();
+        if (env == null) {
+          continue;
+        }
+        retenus.add(feature);
+        envs.add(env);
+      }
+      int n = retenus.size();
+      this.nbObjets = n;
+      this.objets = retenus.toArray((Feat[]) new IFeature[n]);
+      this.positions = new IdentityHashMap<Feat, Integer>(n);
+      for (int i = 0; i < n; i++) {
+        this.positions.put(this.objets[i], i);
+      }
+      this.suppressions = new int[n];
+      Arrays.fill(this.suppressions, Integer.MAX_VALUE);
+      // nombre de noeuds par niveau
+      List<Integer> fins = new ArrayList<Integer>();
+      int nbNoeuds = n;
+      int nbNiveau = n;
+      fins.add(nbNoeuds);
+      while (nbNiveau > 1) {
+        nbNiveau = (nbNiveau + capacite - 1) / capacite;
+        nbNoeuds += nbNiveau;
+        fins.add(nbNoeuds);
+      }
+      this.finsNiveaux = new int[fins.size()];
+      for (int i = 0; i < fins.size(); i++) {
+        this.finsNiveaux[i] = fins.get(i);
+      }
+      this.enveloppes = new double[4 * nbNoeuds];
+      this.indices = new int[nbNoeuds];
+      if (n == 0) {
+        return;
+      }
+      // étendue globale pour la normalisation des centres
+      double minX = Double.POSITIVE_INFINITY;
+      double minY = Double.POSITIVE_INFINITY;
+      double maxX = Double.NEGATIVE_INFINITY;
+      double maxY = Double.NEGATIVE_INFINITY;
+      for (IEnvelope env : envs) {
+        minX = Math.min(minX, env.minX());
+        minY = Math.min(minY, env.minY());
+        maxX = Math.max(maxX, env.maxX());
+        maxY = Math.max(maxY, env.maxY());
+      }
+      double largeur = (maxX > minX) ? maxX - minX : 1;
+      double hauteur = (maxY > minY) ? maxY - minY : 1;
+      // tri des objets par valeur de Hilbert, l'indice dans les bits de poids
+      // faible
+      long[] cles = new long[n];
+      for (int i = 0; i < n; i++) {
+        IEnvelope env = envs.get(i);
+        int x = (int) (Arbre.HILBERT_MAX
+            * ((env.minX() + env.maxX()) / 2 - minX) / largeur);
+        int y = (int) (Arbre.HILBERT_MAX
+            * ((env.minY() + env.maxY()) / 2 - minY) / hauteur);
+        cles[i] = (((long) Arbre.hilbert(x, y)) << 31) | i;
+      }
+      Arrays.sort(cles);
+      for (int pos = 0; pos < n; pos++) {
+        int i = (int) (cles[pos] & 0x7FFFFFFFL);
+        IEnvelope env = envs.get(i);
+        this.enveloppes[4 * pos] = env.minX();
+        this.enveloppes[4 * pos + 1] = env.minY();
+        this.enveloppes[4 * pos + 2] = env.maxX();
+        this.enveloppes[4 * pos + 3] = env.maxY();
+        this.indices[pos] = i;
+      }
+      // construction des niveaux supérieurs
+      int debut = 0;
+      int pos = n;
+      for (int niveau = 0; niveau < this.finsNiveaux.length - 1; niveau++) {
+        int fin = this.finsNiveaux[niveau];
+        for (int fils = debut; fils < fin; fils += capacite) {
+          double nMinX = Double.POSITIVE_INFINITY;
+          double nMinY = Double.POSITIVE_INFINITY;
+          double nMaxX = Double.NEGATIVE_INFINITY;
+          double nMaxY = Double.NEGATIVE_INFINITY;
+          int finFils = Math.min(fils + capacite, fin);
+          for (int k = fils; k < finFils; k++) {
+            nMinX = Math.min(nMinX, this.enveloppes[4 * k]);
+            nMinY = Math.min(nMinY, this.enveloppes[4 * k + 1]);
+            nMaxX = Math.max(nMaxX, this.enveloppes[4 * k + 2]);
+            nMaxY = Math.max(nMaxY, this.enveloppes[4 * k + 3]);
+          }
+          this.enveloppes[4 * pos] = nMinX;
+          this.enveloppes[4 * pos + 1] = nMinY;
+          this.enveloppes[4 * pos + 2] = nMaxX;
+          this.enveloppes[4 * pos + 3] = nMaxY;
+          this.indices[pos] = fils;
+          pos++;
+        }
+        debut = fin;
+      }
+    }
+
+    /**
+     * Parcours en profondeur des noeuds dont le rectangle intersecte le
+     * rectangle de requête, en ignorant les objets supprimés à la version
+     * donnée ou avant.
+     */
+    void candidats(double minX, double minY, double maxX, double maxY,
+        int version, Collection<Feat> result) {
+      if (this.nbObjets == 0) {
+        return;
+      }
+      int[] pile = new int[16];
+      int taillePile = 0;
+      int noeud = this.indices.length - 1;
+      int niveau = this.finsNiveaux.length - 1;
+      int[] niveaux = new int[16];
+      while (true) {
+        int fin = Math.min(noeud + this.capacite, this.finsNiveaux[niveau]);
+        for (int pos = noeud; pos < fin; pos++) {
+          if (!Arbre.intersecte(this.enveloppes, 4 * pos, minX, minY, maxX,
+              maxY)) {
+            continue;
+          }
+          if (pos < this.nbObjets) {
+            int i = this.indices[pos];
+            if (this.suppressions[i] > version) {
+              result.add(this.objets[i]);
+            }
+          } else {
+            if (taillePile == pile.length) {
+              pile = Arrays.copyOf(pile, 2 * taillePile);
+              niveaux = Arrays.copyOf(niveaux, 2 * taillePile);
+            }
+            pile[taillePile] = this.indices[pos];
+            niveaux[taillePile] = niveau - 1;
+            taillePile++;
+          }
+        }
+        if (taillePile == 0) {
+          return;
+        }
+        taillePile--;
+        noeud = pile[taillePile];
+        niveau = niveaux[taillePile];
+      }
+    }
+
+    static boolean intersecte(double[] enveloppes, int i, double minX,
+        double minY, double maxX, double maxY) {
+      return !(enveloppes[i] > maxX || enveloppes[i + 1] > maxY
+          || enveloppes[i + 2] < minX || enveloppes[i + 3] < minY);
+    }
+
+    /**
+     * Valeur de Hilbert d'un point de coordonnées entières sur 16 bits
+     * (algorithme sans branchement de Rawrunprotected).
+     */
+    static long hilbert(int x, int y) {
+      int a = x ^ y;
+      int b = 0xFFFF ^ a;
+      int c = 0xFFFF ^ (x | y);
+      int d = x & (y ^ 0xFFFF);
+      int A = a | (b >> 1);
+      int B = (a >> 1) ^ a;
+      int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+      int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+      a = A;
+      b = B;
+      c = C;
+      d = D;
+      A = ((a & (a >> 2)) ^ (b & (b >> 2)));
+      B = ((a & (b >> 2)) ^ (b & ((a ^ b) >> 2)));
+      C ^= ((a & (c >> 2)) ^ (b & (d >> 2)));
+      D ^= ((b & (c >> 2)) ^ ((a ^ b) & (d >> 2)));
+      a = A;
+      b = B;
+      c = C;
+      d = D;
+      A = ((a & (a >> 4)) ^ (b & (b >> 4)));
+      B = ((a & (b >> 4)) ^ (b & ((a ^ b) >> 4)));
+      C ^= ((a & (c >> 4)) ^ (b & (d >> 4)));
+      D ^= ((b & (c >> 4)) ^ ((a ^ b) & (d >> 4)));
+      a = A;
+      b = B;
+      c = C;
+      d = D;
+      C ^= ((a & (c >> 8)) ^ (b & (d >> 8)));
+      D ^= ((b & (c >> 8)) ^ ((a ^ b) & (d >> 8)));
+      a = C ^ (C >> 1);
+      b = D ^ (D >> 1);
+      int i0 = x ^ y;
+      int i1 = b | (0xFFFF ^ (i0 | a));
+      i0 = Arbre.entrelace(i0);
+      i1 = Arbre.entrelace(i1);
+      return (((long) i1 << 1) | i0) & 0xFFFFFFFFL;
+    }
+
+    private static int entrelace(int v) {
+      v = (v | (v << 8)) & 0x00FF00FF;
+      v = (v | (v << 4)) & 0x0F0F0F0F;
+      v = (v | (v << 2)) & 0x33333333;
+      return (v | (v << 1)) & 0x55555555;
+    }
+  }
+}
@@ -33,9 +33,12 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
 import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
@@ -48,6 +51,7 @@ import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.conversion.JtsGeOxygene;
 
 /**
  * Index spatial par simple dallage.
@@ -59,6 +63,8 @@ import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
  * @author Julien Perret
  * @version 1.3 Gestion d'erreur de calcul des buffers dans la fonction
  *          {@link Tiling#select(IGeometry, double)}
+ * @version 1.4 Géométrie de requête préparée une seule fois par sélection,
+ *          dalles protégées par un verrou en lecture/écriture
  */
 
 public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
@@ -79,10 +85,17 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
   // ===============================================
   /**
    * Tableau de collections de features appartenant a chaque dalle. Un feature
-   * peut appartenir a plusieurs dalles.
+   * peut appartenir a plusieurs dalles. Les dalles sont lues sous le verrou en
+   * lecture et modifiées sous le verrou en écriture.
    */
   private List<Feat>[][] index;
 
+  /**
+   * Verrou des dalles : les sélections peuvent être faites en parallèle, les
+   * mises à jour sont exclusives.
+   */
+  private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+
   // ===============================================
   /** Taille du dallage (nombre de rectangles par cote). */
   private int size;
@@ -148,12 +161,17 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
   /** Tableau des dalles contenant le feature. */
   public IEnvelope[] getDallage(IFeature feat) {
     List<IEnvelope> result = new ArrayList<IEnvelope>(0);
-    for (int i = 0; i < this.size; i++) {
-      for (int j = 0; j < this.size; j++) {
-        if (this.index[i][j].contains(feat)) {
-          result.add(this.dallage[i][j]);
+    this.verrou.readLock().lock();
+    try {
+      for (int i = 0; i < this.size; i++) {
+        for (int j = 0; j < this.size; j++) {
+          if (this.index[i][j].contains(feat)) {
+            result.add(this.dallage[i][j]);
+          }
         }
       }
+    } finally {
+      this.verrou.readLock().unlock();
     }
     IEnvelope[] array = new GM_Envelope[result.size()];
     for (int k = 0; k < result.size(); k++) {
@@ -165,15 +183,20 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
   /** Tableau des numéros des dalles contenant le feature. */
   public List<List<Integer>> getNumDallage(Feat feat) {
     List<List<Integer>> result = new ArrayList<List<Integer>>(0);
-    for (int i = 0; i < this.size; i++) {
-      for (int j = 0; j < this.size; j++) {
-        if (this.index[i][j].contains(feat)) {
-          List<Integer> couple = new ArrayList<Integer>(0);
-          couple.add(i);
-          couple.add(j);
-          result.add(couple);
+    this.verrou.readLock().lock();
+    try {
+      for (int i = 0; i < this.size; i++) {
+        for (int j = 0; j < this.size; j++) {
+          if (this.index[i][j].contains(feat)) {
+            List<Integer> couple = new ArrayList<Integer>(0);
+            couple.add(i);
+            couple.add(j);
+            result.add(couple);
+          }
         }
       }
+    } finally {
+      this.verrou.readLock().unlock();
     }
     return result;
   }
@@ -254,7 +277,12 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
 
   /** Features appartenant a la dalle d'indice i,j. */
   public Collection<Feat> select(int i, int j) {
-    return new HashSet<Feat>(this.index[i][j]);
+    this.verrou.readLock().lock();
+    try {
+      return new HashSet<Feat>(this.index[i][j]);
+    } finally {
+      this.verrou.readLock().unlock();
+    }
   }
 
   @Override
@@ -268,24 +296,27 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
         && env.getUpperCorner().getY() == env.getLowerCorner().getY()) {
       geometry = new GM_Point(env.getUpperCorner());
     }
+    PreparedGeometry prepared = Tiling.prepare(geometry);
     int tab[] = this.dallesIntersectees(env);
-    for (int i = tab[0]; i <= tab[1]; i++) {
-      for (int j = tab[2]; j <= tab[3]; j++) {
-        synchronized (this.index) {
-          int tileSize = this.index[i][j].size();
-          for (int ind = 0; ind < tileSize; ind++) {
-            Feat feature = this.index[i][j].get(ind);
+    this.verrou.readLock().lock();
+    try {
+      for (int i = tab[0]; i <= tab[1]; i++) {
+        for (int j = tab[2]; j <= tab[3]; j++) {
+          for (Feat feature : this.index[i][j]) {
             IGeometry geom = feature.getGeom();
-            if (geom == null) {
+            if (geom == null || result.contains(feature)) {
               continue;
             }
             IEnvelope envCourante = geom.envelope();
-            if (env.overlaps(envCourante) && geometry.intersects(geom)) {
+            if (env.overlaps(envCourante)
+                && Tiling.intersects(prepared, geometry, geom)) {
               result.add(feature);
             }
           }
         }
       }
+    } finally {
+      this.verrou.readLock().unlock();
     }
     return result;
   }
@@ -300,22 +331,30 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
     int tab[];
     Collection<Feat> result = new HashSet<Feat>(0);
     IEnvelope envGeometry = geometry.envelope();
+    PreparedGeometry prepared = Tiling.prepare(geometry);
     tab = this.dallesIntersectees(envGeometry);
-    for (int i = tab[0]; i <= tab[1]; i++) {
-      for (int j = tab[2]; j <= tab[3]; j++) {
-        if (geometry.intersects(this.dallesPolygones[i][j])) {
-          synchronized (this.index) {
+    this.verrou.readLock().lock();
+    try {
+      for (int i = tab[0]; i <= tab[1]; i++) {
+        for (int j = tab[2]; j <= tab[3]; j++) {
+          if (Tiling.intersects(prepared, geometry,
+              this.dallesPolygones[i][j])) {
             for (Feat feature : this.index[i][j]) {
+              if (result.contains(feature)) {
+                continue;
+              }
               IGeometry geom = feature.getGeom();
               IEnvelope envCourante = geom.envelope();
               if (envCourante != null && envGeometry.overlaps(envCourante)
-                  && geometry.intersects(geom)) {
+                  && Tiling.intersects(prepared, geometry, geom)) {
                 result.add(feature);
               }
             }
           }
         }
       }
+    } finally {
+      this.verrou.readLock().unlock();
     }
     return result;
   }
@@ -325,23 +364,31 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
     int tab[];
     Collection<Feat> result = new HashSet<Feat>(0);
     IEnvelope envGeometry = geometry.envelope();
+    PreparedGeometry prepared = Tiling.prepare(geometry);
     tab = this.dallesIntersectees(envGeometry);
-    for (int i = tab[0]; i <= tab[1]; i++) {
-      for (int j = tab[2]; j <= tab[3]; j++) {
-        if (geometry.intersects(this.dallesPolygones[i][j])) {
-          synchronized (this.index) {
+    this.verrou.readLock().lock();
+    try {
+      for (int i = tab[0]; i <= tab[1]; i++) {
+        for (int j = tab[2]; j <= tab[3]; j++) {
+          if (Tiling.intersects(prepared, geometry,
+              this.dallesPolygones[i][j])) {
             for (Feat feature : this.index[i][j]) {
+              if (result.contains(feature)) {
+                continue;
+              }
               IGeometry geom = feature.getGeom();
               IEnvelope envCourante = geom.envelope();
               if (envGeometry.overlaps(envCourante)
-                  && (strictlyCrosses ? (geometry.crosses(geom)) : (geometry
-                      .intersects(geom)))) {
+                  && (strictlyCrosses ? (geometry.crosses(geom)) : (Tiling
+                      .intersects(prepared, geometry, geom)))) {
                 result.add(feature);
               }
             }
           }
         }
       }
+    } finally {
+      this.verrou.readLock().unlock();
     }
     return result;
   }
@@ -361,6 +408,42 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
     }
   }
 
+  /**
+   * Prépare la géométrie d'une requête : elle n'est convertie qu'une seule
+   * fois en géométrie JTS, quel que soit le nombre de candidats testés.
+   * @param geometry géométrie de la requête
+   * @return la géométrie JTS préparée, ou null si la conversion a échoué
+   */
+  static PreparedGeometry prepare(IGeometry geometry) {
+    try {
+      return JtsGeOxygene.getPreparedGeom(geometry);
+    } catch (Exception e) {
+      Tiling.logger.error("Echec de la préparation de la géométrie " //$NON-NLS-1$
+          + geometry);
+      return null;
+    }
+  }
+
+  /**
+   * Test d'intersection entre la géométrie d'une requête et un candidat, via la
+   * géométrie préparée si elle existe.
+   * @param prepared géométrie préparée de la requête (éventuellement nulle)
+   * @param geometry géométrie de la requête
+   * @param geom géométrie candidate
+   * @return vrai si les deux géométries s'intersectent
+   */
+  static boolean intersects(PreparedGeometry prepared,
+      IGeometry geometry, IGeometry geom) {
+    if (prepared == null) {
+      return geometry.intersects(geom);
+    }
+    try {
+      return prepared.intersects(JtsGeOxygene.getJtsGeom(geom));
+    } catch (Exception e) {
+      return geometry.intersects(geom);
+    }
+  }
+
   // ===============================================
   // CONSTRUCTEURS
   // ===============================================
@@ -527,25 +610,25 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
       for (int i = tab[0]; i <= tab[1]; i++) {
         for (int j = tab[2]; j <= tab[3]; j++) {
           if (geom.intersects(this.dallesPolygones[i][j])) {
-            synchronized (this.index) {
+            this.verrou.writeLock().lock();
+            try {
               this.index[i][j].add(value);
+            } finally {
+              this.verrou.writeLock().unlock();
             }
           }
         }
       }
     } else if (cas == -1) {// suppression
-      IEnvelope[] envs = this.getDallage(value);
-      for (@SuppressWarnings("unused")
-      IEnvelope env : envs) {
-        Iterator<List<Integer>> itDallesConcernees = this.getNumDallage(value)
-            .iterator();
-        while (itDallesConcernees.hasNext()) {
-          List<Integer> num = itDallesConcernees.next();
-          synchronized (this.index) {
-            this.index[(num.get(0)).intValue()][(num.get(1)).intValue()]
-                .remove(value);
+      this.verrou.writeLock().lock();
+      try {
+        for (int i = 0; i < this.size; i++) {
+          for (int j = 0; j < this.size; j++) {
+            this.index[i][j].remove(value);
           }
         }
+      } finally {
+        this.verrou.writeLock().unlock();
       }
     } else if (cas == 0) {// modification : suppression puis ajout
       this.update(value, -1);
@@ -553,16 +636,78 @@ public class Tiling<Feat extends IFeature> implements SpatialIndex<Feat> {
     }
   }
 
+  /**
+   * Mise à jour d'un ensemble de features : les dalles concernées ne sont
+   * modifiées qu'une fois chacune, sous un seul verrou en écriture.
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  public void update(Collection<? extends Feat> values, int cas) {
+    if (cas == 1) {// ajout
+      // les dalles de chaque feature sont calculées hors du verrou
+      List<Feat>[][] ajouts = new List[this.size][this.size];
+      for (Feat value : values) {
+        IGeometry geom = (value == null) ? null : value.getGeom();
+        if (geom == null) {
+          continue;
+        }
+        int tab[] = this.dallesIntersectees(geom.envelope());
+        for (int i = tab[0]; i <= tab[1]; i++) {
+          for (int j = tab[2]; j <= tab[3]; j++) {
+            if (geom.intersects(this.dallesPolygones[i][j])) {
+              if (ajouts[i][j] == null) {
+                ajouts[i][j] = new ArrayList<Feat>();
+              }
+              ajouts[i][j].add(value);
+            }
+          }
+        }
+      }
+      this.verrou.writeLock().lock();
+      try {
+        for (int i = 0; i < this.size; i++) {
+          for (int j = 0; j < this.size; j++) {
+            if (ajouts[i][j] != null) {
+              this.index[i][j].addAll(ajouts[i][j]);
+            }
+          }
+        }
+      } finally {
+        this.verrou.writeLock().unlock();
+      }
+    } else if (cas == -1) {// suppression
+      Set<Feat> suppressions = new HashSet<Feat>(values);
+      this.verrou.writeLock().lock();
+      try {
+        for (int i = 0; i < this.size; i++) {
+          for (int j = 0; j < this.size; j++) {
+            this.index[i][j].removeAll(suppressions);
+          }
+        }
+      } finally {
+        this.verrou.writeLock().unlock();
+      }
+    } else if (cas == 0) {// modification : suppression puis ajout
+      this.update(values, -1);
+      this.update(values, +1);
+    }
+  }
+
   @Override
   public void clear() {
-    for (int i = 0; i < this.index.length; i++) {
-      for (int j = 0; j < this.index[i].length; j++) {
-        this.index[i][j] = null;
+    this.verrou.writeLock().lock();
+    try {
+      for (int i = 0; i < this.index.length; i++) {
+        for (int j = 0; j < this.index[i].length; j++) {
+          this.index[i][j] = null;
+        }
+        this.index[i] = null;
       }
-      this.index[i] = null;
+      this.index = null;
+      this.dallage = null;
+      this.dallesPolygones = null;
+    } finally {
+      this.verrou.writeLock().unlock();
     }
-    this.index = null;
-    this.dallage = null;
-    this.dallesPolygones = null;
   }
 }
@@ -0,0 +1,341 @@
+package fr.ign.cogit.geoxygene.feature;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.feature.ColumnarAttributeStore.ColumnType;
+
+/**
+ * Tests du stockage en colonnes des attributs : les objets compactés doivent
+ * se comporter comme des objets qui gardent leur tableau d'attributs.
+ */
+public class ColumnarAttributeStoreTest {
+  /** Noms de colonnes et noms d'attributeType, par rang. */
+  private static final String[][] NOMS = { { "NATURE", "nature" },
+      { "LARGEUR", "largeur" }, { "NB_VOIES", "nbVoies" },
+      { "ACTIF", null }, { "DIVERS", "divers" }, { "ID64", "id64" } };
+
+  SchemaDefaultFeature schema;
+  /** Objets compactés. */
+  List<DefaultFeature> features;
+  /** Objets de référence, qui gardent leur tableau d'attributs. */
+  List<DefaultFeature> references;
+
+  @Before
+  public void setUp() {
+    this.schema = new SchemaDefaultFeature();
+    this.schema.setNom("troncons");
+    Map<Integer, String[]> lookup = new HashMap<Integer, String[]>();
+    for (int i = 0; i < NOMS.length; i++) {
+      lookup.put(Integer.valueOf(i), NOMS[i]);
+    }
+    this.schema.setAttLookup(lookup);
+    this.features = new ArrayList<DefaultFeature>();
+    this.references = new ArrayList<DefaultFeature>();
+    String[] natures = { "Route", "Chemin", null, "Route" };
+    for (int i = 0; i < 20; i++) {
+      Object[] valeurs = { natures[i % 4],
+          i % 5 == 0 ? null : Double.valueOf(i * 1.5), Integer.valueOf(i),
+          i % 3 == 0 ? null : Boolean.valueOf(i % 2 == 0),
+          i % 2 == 0 ? (Object) Integer.valueOf(i) : "divers" + i,
+          Long.valueOf(1L << 40 + i % 10) };
+      this.features.add(this.feature(valeurs.clone()));
+      this.references.add(this.feature(valeurs.clone()));
+    }
+  }
+
+  private DefaultFeature feature(Object[] valeurs) {
+    DefaultFeature feature = new DefaultFeature();
+    feature.setSchema(this.schema);
+    feature.setAttributes(valeurs);
+    return feature;
+  }
+
+  /** Compare les attributs des objets compactés à ceux de référence. */
+  private void verifie() {
+    for (int i = 0; i < this.features.size(); i++) {
+      DefaultFeature feature = this.features.get(i);
+      DefaultFeature reference = this.references.get(i);
+      Assert.assertEquals(reference.getNbAttributes(),
+          feature.getNbAttributes());
+      for (int rang = 0; rang < NOMS.length; rang++) {
+        Assert.assertEquals(reference.getAttribute(rang),
+            feature.getAttribute(rang));
+        for (String nom : NOMS[rang]) {
+          if (nom != null) {
+            Assert.assertEquals(nom, reference.getAttribute(nom),
+                feature.getAttribute(nom));
+            Assert.assertEquals(rang, feature.getAttributeRank(nom));
+            Assert.assertTrue(feature.isAttributeRank(nom, rang));
+            Assert.assertFalse(feature.isAttributeRank(nom, (rang + 1)
+                % NOMS.length));
+          }
+        }
+      }
+      Assert.assertNull(feature.getAttribute("inconnu"));
+      Assert.assertEquals(-1, feature.getAttributeRank("inconnu"));
+    }
+  }
+
+  @Test
+  public void testCompactage() {
+    ColumnarAttributeStore store = ColumnarAttributeStore
+        .compacte(this.features);
+    Assert.assertNotNull(store);
+    Assert.assertEquals(this.features.size(), store.getNbRows());
+    Assert.assertEquals(NOMS.length, store.getNbColumns());
+    for (DefaultFeature feature : this.features) {
+      Assert.assertSame(store, feature.getStore());
+      // les rangs sont fixés par le stockage, et non plus par le schéma
+      Assert.assertSame(store, feature.getAttributeRanking());
+    }
+    Assert.assertSame(this.schema.getAttLookup(), this.references.get(0)
+        .getAttributeRanking());
+    Assert.assertEquals(ColumnType.STRING, store.getColumnType(0));
+    Assert.assertEquals(ColumnType.DOUBLE, store.getColumnType(1));
+    Assert.assertEquals(ColumnType.INTEGER, store.getColumnType(2));
+    Assert.assertEquals(ColumnType.BOOLEAN, store.getColumnType(3));
+    Assert.assertEquals(ColumnType.OBJECT, store.getColumnType(4));
+    Assert.assertEquals(ColumnType.LONG, store.getColumnType(5));
+    Assert.assertEquals(1, store.indexOf("largeur"));
+    Assert.assertEquals(1, store.indexOf("LARGEUR"));
+    Assert.assertEquals(3, store.indexOf("ACTIF"));
+    Assert.assertEquals(-1, store.indexOf("inconnu"));
+    Assert.assertTrue(store.isNull(0, 1));
+    Assert.assertTrue(Double.isNaN(store.getDouble(0, 1)));
+    Assert.assertEquals(1.5, store.getDouble(1, 1), 0);
+    Assert.assertEquals(3, store.getDouble(3, 2), 0);
+    this.verifie();
+    // les objets déjà compactés ne le sont pas une deuxième fois
+    Assert.assertNull(ColumnarAttributeStore.compacte(this.features));
+  }
+
+  @Test
+  public void testAffectation() {
+    ColumnarAttributeStore store = ColumnarAttributeStore
+        .compacte(this.features);
+    for (int i = 0; i < this.features.size(); i++) {
+      for (DefaultFeature feature : new DefaultFeature[] {
+          this.features.get(i), this.references.get(i) }) {
+        feature.setAttribute("nature", i % 2 == 0 ? null : "Piste");
+        feature.setAttribute("LARGEUR", Double.valueOf(-i));
+        feature.setAttribute(2, i % 4 == 0 ? null : Integer.valueOf(2 * i));
+        feature.setAttribute("ACTIF", Boolean.valueOf(i % 3 == 0));
+        feature.setAttribute(4, Double.valueOf(i));
+      }
+    }
+    this.verifie();
+    Assert.assertEquals(ColumnType.DOUBLE, store.getColumnType(1));
+    Assert.assertEquals(ColumnType.INTEGER, store.getColumnType(2));
+    Assert.assertEquals(ColumnType.BOOLEAN, store.getColumnType(3));
+    Assert.assertTrue(store.isNull(0, 2));
+    // une valeur d'un autre type convertit la colonne en colonne d'objets
+    this.features.get(3).setAttribute("nbVoies", "deux");
+    this.references.get(3).setAttribute("nbVoies", "deux");
+    Assert.assertEquals(ColumnType.OBJECT, store.getColumnType(2));
+    Assert.assertTrue(Double.isNaN(store.getDouble(3, 2)));
+    Assert.assertEquals(2.0, store.getDouble(1, 2), 0);
+    this.verifie();
+    for (DefaultFeature feature : this.features) {
+      Assert.assertSame(store, feature.getStore());
+    }
+  }
+
+  /**
+   * Des threads modifiant des objets différents ne doivent pas perdre leurs
+   * mises à jour, même quand le dictionnaire d'une colonne de chaînes grandit
+   * ou qu'une colonne typée devient une colonne d'objets.
+   */
+  @Test
+  public void testAffectationConcurrente() throws Exception {
+    ColumnarAttributeStore store = ColumnarAttributeStore
+        .compacte(this.features);
+    final int nbThreads = 4;
+    ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    try {
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int t = 0; t < nbThreads; t++) {
+        final int first = t;
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int i = first; i < ColumnarAttributeStoreTest.this.features
+                .size(); i += nbThreads) {
+              ColumnarAttributeStoreTest.this.affecte(
+                  ColumnarAttributeStoreTest.this.features.get(i), i);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    for (int i = 0; i < this.references.size(); i++) {
+      this.affecte(this.references.get(i), i);
+    }
+    this.verifie();
+    Assert.assertEquals(ColumnType.STRING, store.getColumnType(0));
+    Assert.assertEquals(ColumnType.BOOLEAN, store.getColumnType(3));
+    Assert.assertEquals(ColumnType.OBJECT, store.getColumnType(2));
+  }
+
+  /**
+   * Des threads lisent des objets pendant que d'autres écrivent des chaînes
+   * nouvelles dans d'autres objets, ce qui fait grandir le dictionnaire, puis
+   * un objet d'un autre type, ce qui remplace la colonne.
+   */
+  @Test
+  public void testLectureConcurrente() throws Exception {
+    final int nbRows = 2000;
+    final List<DefaultFeature> lignes = new ArrayList<DefaultFeature>();
+    for (int i = 0; i < nbRows; i++) {
+      lignes.add(this.feature(new Object[] { i % 2 == 0 ? "Pair" : "Impair",
+          Double.valueOf(i), Integer.valueOf(i), Boolean.valueOf(i % 2 == 0),
+          "divers", Long.valueOf(i) }));
+    }
+    ColumnarAttributeStore store = ColumnarAttributeStore.compacte(lignes);
+    final int nbWriters = 2;
+    final int nbReaders = 2;
+    final AtomicBoolean fini = new AtomicBoolean(false);
+    ExecutorService executor = Executors.newFixedThreadPool(nbWriters
+        + nbReaders);
+    try {
+      List<Future<Void>> writers = new ArrayList<Future<Void>>();
+      List<Future<Void>> readers = new ArrayList<Future<Void>>();
+      // les lecteurs ne lisent que les lignes impaires, jamais écrites
+      for (int t = 0; t < nbReaders; t++) {
+        readers.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            do {
+              for (int i = 1; i < nbRows; i += 2) {
+                DefaultFeature feature = lignes.get(i);
+                Assert.assertEquals("Impair", feature.getAttribute("nature"));
+                Assert.assertEquals(Integer.valueOf(i),
+                    feature.getAttribute("nbVoies"));
+                Assert.assertEquals(Boolean.FALSE, feature.getAttribute("ACTIF"));
+                Assert.assertEquals(i, feature.getStore().getDouble(i, 1), 0);
+              }
+            } while (!fini.get());
+            return null;
+          }
+        }));
+      }
+      // les écrivains se partagent les lignes paires
+      for (int t = 0; t < nbWriters; t++) {
+        final int first = 2 * t;
+        writers.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int i = first; i < nbRows; i += 2 * nbWriters) {
+              DefaultFeature feature = lignes.get(i);
+              feature.setAttribute("nature", "Nature" + i);
+              feature.setAttribute("ACTIF", null);
+              feature.setAttribute("LARGEUR", null);
+              if (i == nbRows / 2) {
+                feature.setAttribute("nbVoies", "moitié");
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> writer : writers) {
+        writer.get();
+      }
+      fini.set(true);
+      for (Future<Void> reader : readers) {
+        reader.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    Assert.assertEquals(ColumnType.OBJECT, store.getColumnType(2));
+    for (int i = 0; i < nbRows; i += 2) {
+      DefaultFeature feature = lignes.get(i);
+      Assert.assertEquals("Nature" + i, feature.getAttribute("nature"));
+      Assert.assertNull(feature.getAttribute("ACTIF"));
+      Assert.assertNull(feature.getAttribute("LARGEUR"));
+      Assert.assertEquals(i == nbRows / 2 ? (Object) "moitié" : Integer
+          .valueOf(i), feature.getAttribute("nbVoies"));
+    }
+  }
+
+  private void affecte(DefaultFeature feature, int i) {
+    feature.setAttribute("nature", "Nature" + i);
+    feature.setAttribute("ACTIF", Boolean.valueOf(i % 2 == 1));
+    feature.setAttribute("LARGEUR", i % 3 == 0 ? null : Double.valueOf(i));
+    feature.setAttribute("nbVoies", i == 7 ? (Object) "sept" : Integer
+        .valueOf(-i));
+  }
+
+  @Test
+  public void testDetache() {
+    // un objet d'un autre schéma et un objet d'une autre taille sont ignorés
+    DefaultFeature autreSchema = new DefaultFeature();
+    autreSchema.setSchema(new SchemaDefaultFeature());
+    autreSchema.setAttributes(new Object[NOMS.length]);
+    DefaultFeature autreTaille = this.feature(new Object[1]);
+    List<DefaultFeature> tous = new ArrayList<DefaultFeature>(this.features);
+    tous.add(autreSchema);
+    tous.add(autreTaille);
+    ColumnarAttributeStore store = ColumnarAttributeStore.compacte(tous);
+    Assert.assertEquals(this.features.size(), store.getNbRows());
+    Assert.assertNull(autreSchema.getStore());
+    Assert.assertNull(autreTaille.getStore());
+    // le tableau d'attributs est une copie, l'objet reste dans le stockage
+    DefaultFeature feature = this.features.get(1);
+    Assert.assertArrayEquals(this.references.get(1).getAttributes(),
+        feature.getAttributes());
+    Assert.assertSame(store, feature.getStore());
+    feature.getAttributes()[0] = "Copie";
+    Assert.assertEquals(this.references.get(1).getAttribute(0),
+        feature.getAttribute(0));
+    // il faut le demander pour sortir l'objet du stockage
+    feature.detache();
+    Assert.assertNull(feature.getStore());
+    Assert.assertArrayEquals(this.references.get(1).getAttributes(),
+        feature.getAttributes());
+    feature.setAttribute("nature", "Piste");
+    this.references.get(1).setAttribute("nature", "Piste");
+    // un changement de schéma aussi
+    feature = this.features.get(2);
+    feature.setSchema(new SchemaDefaultFeature(this.schema));
+    Assert.assertNull(feature.getStore());
+    Assert.assertArrayEquals(this.references.get(2).getAttributes(),
+        feature.getAttributes());
+    feature.setSchema(this.schema);
+    this.verifie();
+    Assert.assertNull(ColumnarAttributeStore
+        .compacte(new ArrayList<DefaultFeature>()));
+  }
+
+  @Test
+  public void testPopulation() {
+    Population<DefaultFeature> population = new Population<DefaultFeature>(
+        "test");
+    population.addAll(this.features);
+    ColumnarAttributeStore store = population.compacteAttributs();
+    Assert.assertNotNull(store);
+    Assert.assertEquals(this.features.size(), store.getNbRows());
+    for (DefaultFeature feature : population) {
+      Assert.assertSame(store, feature.getStore());
+    }
+    this.verifie();
+  }
+}
@@ -0,0 +1,173 @@
+package fr.ign.cogit.geoxygene.feature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.feature.event.FeatureCollectionEvent;
+import fr.ign.cogit.geoxygene.api.feature.event.FeatureCollectionListener;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.index.HilbertRTree;
+
+/**
+ * Tests de la création d'éléments d'une population et de l'attribution de
+ * leurs identifiants.
+ */
+public class PopulationTest {
+
+  /** Index qui compte ses mises à jour. */
+  public static class IndexCompteur<Feat extends IFeature> extends
+      HilbertRTree<Feat> {
+    int nbMisesAJour = 0;
+    int nbMisesAJourEnBloc = 0;
+
+    public IndexCompteur(IFeatureCollection<Feat> fc, Boolean automaticUpd,
+        Integer capacite) {
+      super(fc, automaticUpd, capacite);
+    }
+
+    @Override
+    public synchronized void update(Feat value, int cas) {
+      this.nbMisesAJour++;
+      super.update(value, cas);
+    }
+
+    @Override
+    public synchronized void update(Collection<? extends Feat> values,
+        int cas) {
+      this.nbMisesAJourEnBloc++;
+      super.update(values, cas);
+    }
+  }
+
+  private static Population<DefaultFeature> population() {
+    Population<DefaultFeature> population = new Population<DefaultFeature>(
+        "test");
+    population.setClasse(DefaultFeature.class);
+    population.setFlagGeom(true);
+    return population;
+  }
+
+  private static List<IGeometry> points(int n) {
+    List<IGeometry> points = new ArrayList<IGeometry>(n);
+    for (int i = 0; i < n; i++) {
+      points.add(new GM_Point(new DirectPosition(i, i % 10)));
+    }
+    return points;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testNouveauxElements() {
+    Population<DefaultFeature> population = PopulationTest.population();
+    population.nouvelElement(new GM_Point(new DirectPosition(-5, -5)));
+    population.initSpatialIndex(IndexCompteur.class, true, 4);
+    IndexCompteur<DefaultFeature> index = (IndexCompteur<DefaultFeature>) population
+        .getSpatialIndex();
+    final List<FeatureCollectionEvent> evenements = new ArrayList<FeatureCollectionEvent>();
+    population.addFeatureCollectionListener(new FeatureCollectionListener() {
+      @Override
+      public void changed(FeatureCollectionEvent event) {
+        evenements.add(event);
+      }
+    });
+    List<IGeometry> points = PopulationTest.points(1000);
+    List<DefaultFeature> elems = population.nouveauxElements(points);
+    Assert.assertEquals(points.size(), elems.size());
+    Assert.assertEquals(points.size() + 1, population.size());
+    // identifiants consécutifs, dans l'ordre des géométries
+    int premier = elems.get(0).getId();
+    for (int i = 0; i < elems.size(); i++) {
+      DefaultFeature elem = elems.get(i);
+      Assert.assertEquals(premier + i, elem.getId());
+      Assert.assertSame(points.get(i), elem.getGeom());
+      Assert.assertSame(population, elem.getPopulation());
+      Assert.assertTrue(population.contains(elem));
+    }
+    Assert.assertEquals(premier + elems.size() - 1, Population
+        .getIdNouvelElement());
+    // un seul événement et une seule mise à jour de l'index
+    Assert.assertEquals(1, evenements.size());
+    Assert.assertEquals(FeatureCollectionEvent.Type.ADDED, evenements.get(0)
+        .getType());
+    Assert.assertEquals(0, index.nbMisesAJour);
+    Assert.assertEquals(1, index.nbMisesAJourEnBloc);
+    Assert.assertEquals(new HashSet<DefaultFeature>(elems),
+        new HashSet<DefaultFeature>(index.select(new GM_Envelope(-0.5, 1000,
+            -0.5, 10))));
+    Assert.assertEquals(1, index.select(new GM_Envelope(-6, -4, -6, -4))
+        .size());
+    Assert.assertEquals(999, population.envelope().maxX(), 0);
+  }
+
+  @Test
+  public void testNouveauxElementsFabrique() {
+    Population<DefaultFeature> population = PopulationTest.population();
+    final SchemaDefaultFeature schema = new SchemaDefaultFeature();
+    List<DefaultFeature> elems = population.nouveauxElements(PopulationTest
+        .points(10), () -> {
+          DefaultFeature feature = new DefaultFeature();
+          feature.setSchema(schema);
+          return feature;
+        });
+    Assert.assertEquals(10, population.size());
+    for (DefaultFeature elem : elems) {
+      Assert.assertSame(schema, elem.getSchema());
+    }
+    Assert.assertTrue(population.nouveauxElements(
+        new ArrayList<IGeometry>()).isEmpty());
+    Assert.assertEquals(10, population.size());
+  }
+
+  @Test
+  public void testIdentifiantsConcurrents() throws Exception {
+    final int nbThreads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    try {
+      List<Future<List<DefaultFeature>>> resultats = new ArrayList<Future<List<DefaultFeature>>>();
+      for (int t = 0; t < nbThreads; t++) {
+        resultats.add(executor.submit(new Callable<List<DefaultFeature>>() {
+          @Override
+          public List<DefaultFeature> call() {
+            Population<DefaultFeature> population = PopulationTest
+                .population();
+            List<DefaultFeature> elems = new ArrayList<DefaultFeature>();
+            for (int i = 0; i < 50; i++) {
+              elems.add(population.nouvelElement(new GM_Point(
+                  new DirectPosition(i, i))));
+              elems.addAll(population.nouveauxElements(PopulationTest
+                  .points(20)));
+            }
+            return elems;
+          }
+        }));
+      }
+      Set<Integer> ids = new HashSet<Integer>();
+      int nbElements = 0;
+      for (Future<List<DefaultFeature>> resultat : resultats) {
+        for (DefaultFeature elem : resultat.get()) {
+          ids.add(Integer.valueOf(elem.getId()));
+          nbElements++;
+        }
+      }
+      Assert.assertEquals(nbThreads * 50 * 21, nbElements);
+      Assert.assertEquals(nbElements, ids.size());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+
+public class HilbertRTreeTest {
+  Random random;
+  FT_FeatureCollection<DefaultFeature> collection;
+
+  @Before
+  public void setUp() {
+    this.random = new Random(42);
+    this.collection = new FT_FeatureCollection<DefaultFeature>();
+    for (int i = 0; i < 500; i++) {
+      this.collection.add(new DefaultFeature(this.geometrie()));
+    }
+  }
+
+  /** Point ou petit rectangle aléatoire dans [0, 1000]². */
+  private IGeometry geometrie() {
+    double x = 1000 * this.random.nextDouble();
+    double y = 1000 * this.random.nextDouble();
+    if (this.random.nextBoolean()) {
+      return new GM_Point(new DirectPosition(x, y));
+    }
+    return new GM_Polygon(new GM_Envelope(x, x + 20 * this.random.nextDouble(),
+        y, y + 20 * this.random.nextDouble()));
+  }
+
+  /** Sélection par parcours de tous les objets de la collection. */
+  private Set<IFeature> selectionExhaustive(IEnvelope env) {
+    IGeometry requete = new GM_Polygon(env);
+    Set<IFeature> result = new HashSet<IFeature>();
+    for (DefaultFeature feature : this.collection) {
+      if (feature.getGeom() != null && feature.getGeom().intersects(requete)) {
+        result.add(feature);
+      }
+    }
+    return result;
+  }
+
+  /** Compare les sélections de l'index à un parcours exhaustif. */
+  private void verifie(HilbertRTree<DefaultFeature> index) {
+    for (int i = 0; i < 50; i++) {
+      double x = 1000 * this.random.nextDouble();
+      double y = 1000 * this.random.nextDouble();
+      double d = 100 * this.random.nextDouble();
+      IEnvelope env = new GM_Envelope(x, x + d, y, y + d);
+      Assert.assertEquals(this.selectionExhaustive(env), new HashSet<IFeature>(
+          index.select(env)));
+      IDirectPosition p = new DirectPosition(x, y);
+      Assert.assertEquals(this.selectionExhaustive(new GM_Envelope(p, d)),
+          new HashSet<IFeature>(index.select(p, d)));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testMisesAJour() {
+    this.collection.initSpatialIndex(HilbertRTree.class, true, 4);
+    HilbertRTree<DefaultFeature> index;
+    index = (HilbertRTree<DefaultFeature>) this.collection.getSpatialIndex();
+    this.verifie(index);
+    // ajouts, suppressions et modifications, jusqu'à la reconstruction
+    for (int etape = 0; etape < 3; etape++) {
+      for (int i = 0; i < 150; i++) {
+        this.collection.add(new DefaultFeature(this.geometrie()));
+      }
+      List<DefaultFeature> elements = new ArrayList<DefaultFeature>(
+          this.collection.getElements());
+      for (int i = 0; i < 100; i++) {
+        this.collection.remove(elements.get(this.random.nextInt(elements
+            .size())));
+      }
+      elements = new ArrayList<DefaultFeature>(this.collection.getElements());
+      for (int i = 0; i < 50; i++) {
+        DefaultFeature feature = elements.get(this.random.nextInt(elements
+            .size()));
+        feature.setGeom(this.geometrie());
+        index.update(feature, 0);
+      }
+      this.verifie(index);
+    }
+  }
+
+  @Test
+  public void testGeometrieNulle() {
+    HilbertRTree<DefaultFeature> index = new HilbertRTree<DefaultFeature>(
+        this.collection, true);
+    DefaultFeature sansGeometrie = new DefaultFeature();
+    this.collection.add(sansGeometrie);
+    index.update(sansGeometrie, 1);
+    index.update(sansGeometrie, 0);
+    DefaultFeature feature = this.collection.get(0);
+    feature.setGeom(null);
+    index.update(feature, 0);
+    Collection<DefaultFeature> tout = index.select(new GM_Envelope(-10, 1100,
+        -10, 1100));
+    Assert.assertFalse(tout.contains(sansGeometrie));
+    Assert.assertFalse(tout.contains(feature));
+    Assert.assertEquals(this.collection.size() - 2, tout.size());
+  }
+
+  @Test
+  public void testConstructeurAvecEnveloppe() {
+    this.collection.initSpatialIndex(HilbertRTree.class, false,
+        new GM_Envelope(0, 1000, 0, 1000), 8);
+    Object index = this.collection.getSpatialIndex();
+    Assert.assertTrue(index instanceof HilbertRTree);
+    Assert.assertEquals(8, ((HilbertRTree<?>) index).getCapacite());
+  }
+}
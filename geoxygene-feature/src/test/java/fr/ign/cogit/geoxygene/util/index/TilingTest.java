@@ -0,0 +1,175 @@
+package fr.ign.cogit.geoxygene.util.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+
+public class TilingTest {
+  Random random;
+  FT_FeatureCollection<DefaultFeature> collection;
+
+  @Before
+  public void setUp() {
+    this.random = new Random(42);
+    this.collection = new FT_FeatureCollection<DefaultFeature>();
+    for (int i = 0; i < 500; i++) {
+      this.collection.add(new DefaultFeature(this.geometrie()));
+    }
+  }
+
+  /** Point ou petit rectangle aléatoire dans [0, 1000]². */
+  private IGeometry geometrie() {
+    double x = 1000 * this.random.nextDouble();
+    double y = 1000 * this.random.nextDouble();
+    if (this.random.nextBoolean()) {
+      return new GM_Point(new DirectPosition(x, y));
+    }
+    return new GM_Polygon(new GM_Envelope(x, x + 20 * this.random.nextDouble(),
+        y, y + 20 * this.random.nextDouble()));
+  }
+
+  /** Sélection par parcours de tous les objets de la collection. */
+  private Set<IFeature> selectionExhaustive(IEnvelope env) {
+    IGeometry requete = new GM_Polygon(env);
+    Set<IFeature> result = new HashSet<IFeature>();
+    for (DefaultFeature feature : this.collection) {
+      if (feature.getGeom() != null && feature.getGeom().intersects(requete)) {
+        result.add(feature);
+      }
+    }
+    return result;
+  }
+
+  /** Compare les sélections de l'index à un parcours exhaustif. */
+  private void verifie(Tiling<DefaultFeature> index) {
+    for (int i = 0; i < 50; i++) {
+      double x = 1000 * this.random.nextDouble();
+      double y = 1000 * this.random.nextDouble();
+      double d = 100 * this.random.nextDouble();
+      IEnvelope env = new GM_Envelope(x, x + d, y, y + d);
+      Assert.assertEquals(this.selectionExhaustive(env), new HashSet<IFeature>(
+          index.select(env)));
+    }
+  }
+
+  private Tiling<DefaultFeature> dallage() {
+    return new Tiling<DefaultFeature>(this.collection, Boolean.FALSE,
+        new GM_Envelope(0, 1020, 0, 1020), Integer.valueOf(20));
+  }
+
+  @Test
+  public void testMisesAJourGroupees() {
+    Tiling<DefaultFeature> index = this.dallage();
+    this.verifie(index);
+    List<DefaultFeature> ajouts = new ArrayList<DefaultFeature>();
+    for (int i = 0; i < 300; i++) {
+      ajouts.add(new DefaultFeature(this.geometrie()));
+    }
+    this.collection.addAll(ajouts);
+    index.update(ajouts, 1);
+    this.verifie(index);
+    List<DefaultFeature> suppressions = new ArrayList<DefaultFeature>();
+    for (int i = 0; i < 200; i++) {
+      suppressions.add(this.collection.get(this.random.nextInt(this.collection
+          .size())));
+    }
+    this.collection.getElements().removeAll(suppressions);
+    index.update(suppressions, -1);
+    this.verifie(index);
+    List<DefaultFeature> modifications = new ArrayList<DefaultFeature>();
+    for (int i = 0; i < 100; i++) {
+      DefaultFeature feature = this.collection.get(i);
+      feature.setGeom(this.geometrie());
+      modifications.add(feature);
+    }
+    index.update(modifications, 0);
+    this.verifie(index);
+    for (DefaultFeature feature : suppressions) {
+      Assert.assertEquals(0, index.getNumDallage(feature).size());
+    }
+  }
+
+  @Test
+  public void testMisesAJourAutomatiques() {
+    this.collection.initSpatialIndex(Tiling.class, true, 20);
+    @SuppressWarnings("unchecked")
+    Tiling<DefaultFeature> index = (Tiling<DefaultFeature>) this.collection
+        .getSpatialIndex();
+    List<DefaultFeature> ajouts = new ArrayList<DefaultFeature>();
+    for (int i = 0; i < 100; i++) {
+      DefaultFeature feature = new DefaultFeature(this.geometrie());
+      this.collection.add(feature);
+      ajouts.add(feature);
+    }
+    for (int i = 0; i < 50; i++) {
+      this.collection.remove(ajouts.get(i));
+    }
+    this.verifie(index);
+  }
+
+  /**
+   * Des sélections faites pendant des mises à jour ne doivent ni échouer ni
+   * voir un dallage incohérent.
+   */
+  @Test
+  public void testSelectionsConcurrentes() throws InterruptedException {
+    final Tiling<DefaultFeature> index = this.dallage();
+    final IEnvelope tout = new GM_Envelope(-10, 1100, -10, 1100);
+    final int nbInitial = index.select(tout).size();
+    final AtomicBoolean fin = new AtomicBoolean(false);
+    final AtomicReference<Throwable> erreur = new AtomicReference<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 4; t++) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            while (!fin.get()) {
+              // les ajouts et suppressions se font par lots complets
+              int n = index.select(tout).size();
+              if (n != nbInitial && n != nbInitial + 100) {
+                throw new AssertionError(n + " features sélectionnés"); //$NON-NLS-1$
+              }
+            }
+          } catch (Throwable e) {
+            erreur.set(e);
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (int etape = 0; etape < 50; etape++) {
+      List<DefaultFeature> lot = new ArrayList<DefaultFeature>();
+      for (int i = 0; i < 100; i++) {
+        lot.add(new DefaultFeature(this.geometrie()));
+      }
+      index.update(lot, 1);
+      index.update(lot, -1);
+    }
+    fin.set(true);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertNull(erreur.get());
+    Assert.assertEquals(nbInitial, index.select(tout).size());
+  }
+}
@@ -0,0 +1,398 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.filter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IRankedAttributes;
+import fr.ign.cogit.geoxygene.filter.expression.PropertyName;
+
+/**
+ * Version compilée d'un arbre de filtres, à utiliser quand un même filtre est
+ * évalué sur un grand nombre d'objets (rendu d'une règle SLD par exemple).
+ * <p>
+ * La compilation résout une fois pour toutes ce que l'évaluation classique
+ * recalcule pour chaque objet : le getter de chaque {@link PropertyName} est
+ * recherché une seule fois par classe et appelé par un {@link MethodHandle},
+ * les littéraux numériques sont lus une seule fois, les comparaisons
+ * numériques se font sur des double sans passer par des {@link BigDecimal} et
+ * les motifs des {@link PropertyIsLike} sont compilés une seule fois.
+ * <p>
+ * Le résultat est le même que celui de {@link Filter#evaluate(Object)}. Les
+ * filtres que la compilation ne connaît pas (filtres spatiaux, sous-classes)
+ * sont évalués tels quels. Un filtre compilé reflète l'état de l'arbre au
+ * moment de la compilation : il faut le recompiler si l'arbre est modifié.
+ */
+public final class CompiledFilter extends Filter {
+  static Logger logger = LogManager.getLogger(CompiledFilter.class.getName());
+
+  private final Filter filter;
+  private final Predicate<Object> predicate;
+
+  private CompiledFilter(Filter filter) {
+    this.filter = filter;
+    this.predicate = CompiledFilter.compileFilter(filter);
+  }
+
+  /**
+   * Compile un filtre.
+   * @param filter le filtre à compiler
+   * @return le filtre compilé, ou null si le filtre est null
+   */
+  public static Filter compile(Filter filter) {
+    if (filter == null || filter instanceof CompiledFilter) {
+      return filter;
+    }
+    return new CompiledFilter(filter);
+  }
+
+  /**
+   * @return le filtre qui a été compilé
+   */
+  public Filter getFilter() {
+    return this.filter;
+  }
+
+  @Override
+  public boolean evaluate(Object object) {
+    return this.predicate.test(object);
+  }
+
+  @Override
+  public String toString() {
+    return this.filter.toString();
+  }
+
+  private static Predicate<Object> compileFilter(final Filter filter) {
+    Class<?> classe = filter.getClass();
+    if (classe == And.class || classe == Or.class) {
+      List<Predicate<Object>> list = new ArrayList<Predicate<Object>>();
+      for (Filter op : ((BinaryLogicOpsType) filter).getOps()) {
+        list.add(CompiledFilter.compileFilter(op));
+      }
+      @SuppressWarnings("unchecked")
+      final Predicate<Object>[] ops = list.toArray(new Predicate[list.size()]);
+      if (classe == And.class) {
+        return object -> {
+          for (Predicate<Object> op : ops) {
+            if (!op.test(object)) {
+              return false;
+            }
+          }
+          return true;
+        };
+      }
+      return object -> {
+        for (Predicate<Object> op : ops) {
+          if (op.test(object)) {
+            return true;
+          }
+        }
+        return false;
+      };
+    }
+    if (classe == Not.class) {
+      return CompiledFilter.compileFilter(((Not) filter).getOp()).negate();
+    }
+    if (classe == PropertyIsNull.class) {
+      final Property property = new Property(
+          ((PropertyIsNull) filter).getPropertyName());
+      return object -> property.get(object) == null;
+    }
+    if (classe == PropertyIsLike.class) {
+      final PropertyIsLike like = (PropertyIsLike) filter;
+      final Property property = new Property(like.getPropertyName());
+      final Pattern pattern = like.getPattern();
+      return object -> {
+        Object value = property.get(object);
+        if (value instanceof String) {
+          return pattern.matcher((String) value).matches();
+        }
+        if (value instanceof Number) {
+          // même représentation que celle des valeurs renvoyées par
+          // PropertyName
+          return pattern.matcher(
+              new BigDecimal(((Number) value).doubleValue()).toString())
+              .matches();
+        }
+        return false;
+      };
+    }
+    Operator operator = Operator.of(classe);
+    if (operator != null) {
+      return new Comparison(operator, (BinaryComparisonOpsType) filter);
+    }
+    return filter::evaluate;
+  }
+
+  /**
+   * Opérateurs de comparaison binaires.
+   */
+  private enum Operator {
+    EQUAL, NOT_EQUAL, GREATER, GREATER_OR_EQUAL, LESS, LESS_OR_EQUAL;
+
+    static Operator of(Class<?> classe) {
+      if (classe == PropertyIsEqualTo.class) {
+        return EQUAL;
+      }
+      if (classe == PropertyIsNotEqualTo.class) {
+        return NOT_EQUAL;
+      }
+      if (classe == PropertyIsGreaterThan.class) {
+        return GREATER;
+      }
+      if (classe == PropertyIsGreaterThanOrEqualTo.class) {
+        return GREATER_OR_EQUAL;
+      }
+      if (classe == PropertyIsLessThan.class) {
+        return LESS;
+      }
+      if (classe == PropertyIsLessThanOrEqualTo.class) {
+        return LESS_OR_EQUAL;
+      }
+      return null;
+    }
+
+    boolean test(int comparison) {
+      switch (this) {
+        case EQUAL:
+          return comparison == 0;
+        case NOT_EQUAL:
+          return comparison != 0;
+        case GREATER:
+          return comparison > 0;
+        case GREATER_OR_EQUAL:
+          return comparison >= 0;
+        case LESS:
+          return comparison < 0;
+        default:
+          return comparison <= 0;
+      }
+    }
+
+    boolean test(double value, double literal) {
+      switch (this) {
+        case EQUAL:
+          return value == literal;
+        case NOT_EQUAL:
+          return value != literal;
+        case GREATER:
+          return value > literal;
+        case GREATER_OR_EQUAL:
+          return value >= literal;
+        case LESS:
+          return value < literal;
+        default:
+          return value <= literal;
+      }
+    }
+  }
+
+  /**
+   * Comparaison compilée d'une propriété et d'un littéral, avec la même
+   * sémantique que les méthodes evaluate des classes PropertyIs*.
+   */
+  private static final class Comparison implements Predicate<Object> {
+    private final Operator operator;
+    private final BinaryComparisonOpsType filter;
+    private final Property property;
+    private final String literal;
+    private final boolean matchCase;
+    /** Valeur numérique du littéral, si elle a pu être lue. */
+    private final boolean numeric;
+    private final double value;
+
+    Comparison(Operator operator, BinaryComparisonOpsType filter) {
+      this.operator = operator;
+      this.filter = filter;
+      this.property = new Property(filter.getPropertyName());
+      this.literal = filter.getLiteral().getValue();
+      this.matchCase = filter.isMatchCase();
+      double v = Double.NaN;
+      boolean n = false;
+      try {
+        v = Double.parseDouble(this.literal);
+        n = true;
+      } catch (RuntimeException e) {
+        // l'erreur sera levée à l'évaluation, comme dans evaluate
+      }
+      this.numeric = n;
+      this.value = v;
+    }
+
+    @Override
+    public boolean test(Object object) {
+      Object value = this.property.get(object);
+      if (value == null) {
+        return this.operator == Operator.NOT_EQUAL;
+      }
+      if (value instanceof String) {
+        if (!this.matchCase) {
+          return this.operator.test(String.CASE_INSENSITIVE_ORDER.compare(
+              (String) value, this.literal));
+        }
+        if (this.operator == Operator.EQUAL) {
+          return ((String) value).compareTo(this.literal) == 0;
+        }
+      }
+      if (value instanceof Number) {
+        double literalValue = this.numeric ? this.value : Double
+            .parseDouble(this.literal);
+        return this.operator.test(((Number) value).doubleValue(), literalValue);
+      }
+      if (value instanceof Boolean && this.operator == Operator.EQUAL) {
+        return value.equals(Boolean.valueOf(this.literal));
+      }
+      return value.equals(this.filter.getLiteral());
+    }
+  }
+
+  /** Rang d'un attribut et objet qui le fixe. */
+  private static final class Rang {
+    final Object ranking;
+    final int rang;
+
+    Rang(Object ranking, int rang) {
+      this.ranking = ranking;
+      this.rang = rang;
+    }
+  }
+
+  /**
+   * Accès compilé à une propriété. Pour un {@link IFeature}, la valeur est
+   * celle de {@link IFeature#getAttribute(String)}. S'il implémente
+   * {@link IRankedAttributes}, le dernier rang trouvé est conservé avec
+   * l'objet qui fixe les rangs et la valeur est lue par son rang, après avoir
+   * vérifié que les rangs n'ont pas été modifiés. Pour un autre objet, le
+   * getter est recherché une seule fois par classe.
+   */
+  private static final class Property {
+    private static final MethodType TYPE = MethodType.methodType(Object.class,
+        Object.class);
+    private final PropertyName propertyName;
+    private final String name;
+    private final String getterName;
+    private final ConcurrentHashMap<Class<?>, MethodHandle> getters = new ConcurrentHashMap<Class<?>, MethodHandle>();
+    /** Dernier rang trouvé, avec l'objet qui le fixe. */
+    private volatile Rang dernierRang = null;
+
+    Property(PropertyName propertyName) {
+      this.propertyName = propertyName;
+      this.name = propertyName.getPropertyName();
+      this.getterName = "get" //$NON-NLS-1$
+          + this.name.substring(0, 1).toUpperCase() + this.name.substring(1);
+    }
+
+    Object get(Object object) {
+      if (this.propertyName.getClass() != PropertyName.class) {
+        return this.propertyName.evaluate(object);
+      }
+      if (object instanceof IFeature) {
+        return this.get((IFeature) object);
+      }
+      MethodHandle getter = this.getters.get(object.getClass());
+      if (getter == null) {
+        getter = this.resolve(object.getClass());
+        this.getters.put(object.getClass(), getter);
+      }
+      try {
+        return getter.invokeExact(object);
+      } catch (Throwable e) {
+        CompiledFilter.logger.error("problème pendant l'invocation de la méthode "
+            + this.getterName + " sur la classe " + object.getClass());
+        return null;
+      }
+    }
+
+    /**
+     * Valeur de l'attribut, lue par son rang si l'objet en donne un, par son
+     * nom sinon.
+     */
+    private Object get(IFeature feature) {
+      if (feature instanceof IRankedAttributes) {
+        IRankedAttributes attributs = (IRankedAttributes) feature;
+        int rang = this.rang(attributs);
+        if (rang >= 0) {
+          return attributs.getAttribute(rang);
+        }
+      }
+      return feature.getAttribute(this.name);
+    }
+
+    /**
+     * Rang de l'attribut : celui qui a été conservé s'il a été trouvé pour le
+     * même objet fixant les rangs et qu'il est toujours valide, sinon il est
+     * recherché à nouveau.
+     */
+    private int rang(IRankedAttributes attributs) {
+      Object ranking = attributs.getAttributeRanking();
+      if (ranking == null) {
+        return -1;
+      }
+      Rang dernier = this.dernierRang;
+      // un attribut sans rang est lu par son nom : inutile de vérifier
+      if (dernier != null && dernier.ranking == ranking && (dernier.rang < 0
+          || attributs.isAttributeRank(this.name, dernier.rang))) {
+        return dernier.rang;
+      }
+      int rang = attributs.getAttributeRank(this.name);
+      this.dernierRang = new Rang(ranking, rang);
+      return rang;
+    }
+
+    /**
+     * Getter public de la classe, ou à défaut l'évaluation classique de la
+     * propriété, qui journalise l'erreur.
+     */
+    private MethodHandle resolve(Class<?> classe) {
+      try {
+        Method method = classe.getMethod(this.getterName);
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method).asType(
+            Property.TYPE);
+      } catch (Exception e) {
+        return this.fallback();
+      }
+    }
+
+    private MethodHandle fallback() {
+      try {
+        return MethodHandles.publicLookup().findVirtual(PropertyName.class,
+            "evaluate", MethodType.methodType(Object.class, Object.class)) //$NON-NLS-1$
+            .bindTo(this.propertyName);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
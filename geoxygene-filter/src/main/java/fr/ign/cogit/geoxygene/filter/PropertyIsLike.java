@@ -19,7 +19,10 @@
 
 package fr.ign.cogit.geoxygene.filter;
 
+import java.util.regex.Pattern;
+
 import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlTransient;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -61,22 +64,37 @@ public class PropertyIsLike extends BinaryComparisonOpsType {
     this.escapeChar = escapeChar;
   }
 
+  @XmlTransient
+  private Pattern pattern;
+
+  /**
+   * Motif compilé à partir du littéral, conservé tant que le littéral ne
+   * change pas.
+   * @return le motif du filtre
+   */
+  Pattern getPattern() {
+    String regex = this.getLiteral().getValue();
+    Pattern p = this.pattern;
+    if (p == null || !p.pattern().equals(regex)) {
+      p = Pattern.compile(regex);
+      this.pattern = p;
+    }
+    return p;
+  }
+
   @Override
   public boolean evaluate(Object object) {
     Object property = this.getPropertyName().evaluate(object);
     if (property == null) {
       return false;
     }
-    String regex = this.getLiteral().getValue();
-    regex.replace(this.getSingleChar(), "."); //$NON-NLS-1$
-    regex.replace(this.getWildCard(), ".*"); //$NON-NLS-1$
-    regex.replace(this.getEscapeChar(), "\\"); //$NON-NLS-1$
     if (property instanceof String) {
       // FIXME voir influence sensibilité à la casse
-      return ((String) property).matches(regex);
+      return this.getPattern().matcher((String) property).matches();
     }
     if (property instanceof Number) {
-      return ((Number) property).toString().matches(regex);
+      return this.getPattern().matcher(((Number) property).toString())
+          .matches();
     }
     return false;
   }
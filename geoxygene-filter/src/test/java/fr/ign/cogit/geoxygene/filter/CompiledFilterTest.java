@@ -0,0 +1,233 @@
+package fr.ign.cogit.geoxygene.filter;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IRankedAttributes;
+import fr.ign.cogit.geoxygene.filter.expression.Literal;
+import fr.ign.cogit.geoxygene.filter.expression.PropertyName;
+
+/**
+ * Tests unitaires de la classe CompiledFilter : le filtre compilé doit donner
+ * le même résultat que le filtre d'origine.
+ */
+public class CompiledFilterTest {
+
+  public static class Objet {
+    private final String nature;
+    private final double largeur;
+    private final Boolean actif;
+
+    public Objet(String nature, double largeur, Boolean actif) {
+      this.nature = nature;
+      this.largeur = largeur;
+      this.actif = actif;
+    }
+
+    public String getNature() {
+      return this.nature;
+    }
+
+    public double getLargeur() {
+      return this.largeur;
+    }
+
+    public Boolean getActif() {
+      return this.actif;
+    }
+  }
+
+  private static List<Objet> objets() {
+    List<Objet> objets = new ArrayList<Objet>();
+    String[] natures = { "Route", "route", "Chemin", null };
+    for (int i = 0; i < 12; i++) {
+      objets.add(new Objet(natures[i % 4], i * 2.5,
+          i % 3 == 0 ? null : Boolean.valueOf(i % 3 == 1)));
+    }
+    return objets;
+  }
+
+  private static <F extends BinaryComparisonOpsType> F comparaison(F filter,
+      String propriete, String valeur, boolean matchCase) {
+    filter.setPropertyName(new PropertyName(propriete));
+    filter.setLiteral(new Literal(valeur));
+    filter.setMatchCase(matchCase);
+    return filter;
+  }
+
+  private static void verifie(Filter filter) {
+    Filter compile = CompiledFilter.compile(filter);
+    for (Objet objet : CompiledFilterTest.objets()) {
+      Assert.assertEquals(filter.toString(), filter.evaluate(objet),
+          compile.evaluate(objet));
+    }
+  }
+
+  @Test
+  public void testComparaisons() {
+    for (boolean matchCase : new boolean[] { true, false }) {
+      verifie(comparaison(new PropertyIsEqualTo(), "nature", "route", matchCase));
+      verifie(comparaison(new PropertyIsNotEqualTo(), "nature", "route",
+          matchCase));
+      verifie(comparaison(new PropertyIsGreaterThan(), "nature", "d",
+          matchCase));
+      verifie(comparaison(new PropertyIsLessThanOrEqualTo(), "nature",
+          "route", matchCase));
+      verifie(comparaison(new PropertyIsEqualTo(), "actif", "true", matchCase));
+    }
+    verifie(comparaison(new PropertyIsEqualTo(), "largeur", "5", true));
+    verifie(comparaison(new PropertyIsNotEqualTo(), "largeur", "5", true));
+    verifie(comparaison(new PropertyIsGreaterThan(), "largeur", "10", true));
+    verifie(comparaison(new PropertyIsGreaterThanOrEqualTo(), "largeur",
+        "10", true));
+    verifie(comparaison(new PropertyIsLessThan(), "largeur", "7.5", true));
+    verifie(comparaison(new PropertyIsLessThanOrEqualTo(), "largeur", "7.5",
+        true));
+    verifie(comparaison(new PropertyIsNull(), "actif", "", true));
+    verifie(comparaison(new PropertyIsLike(), "nature", "[Rr]ou.*", true));
+    verifie(comparaison(new PropertyIsLike(), "largeur", "1.*", true));
+  }
+
+  @Test
+  public void testOperateursLogiques() {
+    And and = new And();
+    and.getOps().add(
+        comparaison(new PropertyIsGreaterThan(), "largeur", "5", true));
+    and.getOps().add(
+        comparaison(new PropertyIsEqualTo(), "nature", "ROUTE", false));
+    verifie(and);
+    Or or = new Or();
+    or.getOps().add(and);
+    or.getOps().add(comparaison(new PropertyIsNull(), "nature", "", true));
+    verifie(or);
+    Not not = new Not();
+    not.setOp(or);
+    verifie(not);
+    Assert.assertNull(CompiledFilter.compile(null));
+    Filter compile = CompiledFilter.compile(not);
+    Assert.assertSame(compile, CompiledFilter.compile(compile));
+  }
+
+  /**
+   * Feature dont les attributs sont rangés selon un schéma (tableau de noms),
+   * qui compte les recherches de rang.
+   */
+  private static IFeature feature(final String[] schema,
+      final Object[] valeurs, final AtomicInteger recherches) {
+    return (IFeature) Proxy.newProxyInstance(IFeature.class.getClassLoader(),
+        new Class<?>[] { IFeature.class, IRankedAttributes.class }, (proxy,
+            method, args) -> {
+          switch (method.getName()) {
+            case "getAttributeRanking":
+              return schema;
+            case "getAttributeRank":
+              recherches.incrementAndGet();
+              for (int i = 0; i < schema.length; i++) {
+                if (schema[i].equals(args[0])) {
+                  return Integer.valueOf(i);
+                }
+              }
+              return Integer.valueOf(-1);
+            case "isAttributeRank":
+              return Boolean.valueOf(schema[((Integer) args[1]).intValue()]
+                  .equals(args[0]));
+            case "getAttribute":
+              if (args[0] instanceof Integer) {
+                return valeurs[((Integer) args[0]).intValue()];
+              }
+              for (int i = 0; i < schema.length; i++) {
+                if (schema[i].equals(args[0])) {
+                  return valeurs[i];
+                }
+              }
+              return null;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+
+  private static Filter filtreLargeurNature() {
+    And and = new And();
+    and.getOps().add(
+        comparaison(new PropertyIsGreaterThan(), "largeur", "5", true));
+    and.getOps().add(
+        comparaison(new PropertyIsEqualTo(), "nature", "ROUTE", false));
+    return and;
+  }
+
+  /** Vérifie que le filtre compilé donne le même résultat que le filtre. */
+  private static void verifie(Filter filtre, Filter compile,
+      List<IFeature> features) {
+    int nbSelectionnes = 0;
+    for (IFeature feature : features) {
+      boolean resultat = filtre.evaluate(feature);
+      Assert.assertEquals(resultat, compile.evaluate(feature));
+      if (resultat) {
+        nbSelectionnes++;
+      }
+    }
+    Assert.assertTrue(nbSelectionnes > 0);
+  }
+
+  @Test
+  public void testFeaturesParRang() {
+    AtomicInteger recherches = new AtomicInteger();
+    String[] schema1 = { "nature", "largeur" };
+    String[] schema2 = { "largeur", "nom", "nature" };
+    List<IFeature> features1 = new ArrayList<IFeature>();
+    List<IFeature> features2 = new ArrayList<IFeature>();
+    List<IFeature> melange = new ArrayList<IFeature>();
+    for (Objet objet : CompiledFilterTest.objets()) {
+      Double largeur = Double.valueOf(objet.getLargeur());
+      IFeature feature1 = feature(schema1, new Object[] { objet.getNature(),
+          largeur }, recherches);
+      IFeature feature2 = feature(schema2, new Object[] { largeur, "nom",
+          objet.getNature() }, recherches);
+      features1.add(feature1);
+      features2.add(feature2);
+      melange.add(feature1);
+      melange.add(feature2);
+    }
+    Filter filtre = filtreLargeurNature();
+    Filter compile = CompiledFilter.compile(filtre);
+    verifie(filtre, compile, features1);
+    verifie(filtre, compile, features2);
+    // un rang par propriété et par schéma
+    Assert.assertEquals(4, recherches.get());
+    // des objets dont les rangs diffèrent, dans n'importe quel ordre
+    verifie(filtre, compile, melange);
+  }
+
+  @Test
+  public void testRangsModifies() {
+    AtomicInteger recherches = new AtomicInteger();
+    String[] schema = { "nature", "largeur" };
+    List<Object[]> valeurs = new ArrayList<Object[]>();
+    List<IFeature> features = new ArrayList<IFeature>();
+    for (Objet objet : CompiledFilterTest.objets()) {
+      Object[] v = { objet.getNature(), Double.valueOf(objet.getLargeur()) };
+      valeurs.add(v);
+      features.add(feature(schema, v, recherches));
+    }
+    Filter filtre = filtreLargeurNature();
+    Filter compile = CompiledFilter.compile(filtre);
+    verifie(filtre, compile, features);
+    // le même schéma, modifié : les rangs conservés ne sont plus valides
+    schema[0] = "largeur";
+    schema[1] = "nature";
+    for (Object[] v : valeurs) {
+      Object nature = v[0];
+      v[0] = v[1];
+      v[1] = nature;
+    }
+    verifie(filtre, compile, features);
+    Assert.assertEquals(4, recherches.get());
+  }
+}
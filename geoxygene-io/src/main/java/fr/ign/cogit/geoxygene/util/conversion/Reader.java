@@ -71,6 +71,22 @@ public class Reader {
 	CoordinateReferenceSystem localCRS;
 
 	public Reader(String shapefileName) throws MalformedURLException {
+		this(shapefileName, true);
+	}
+
+	/**
+	 * Lit l'en-tête du shapefile (emprise, attributs, type de géométrie et
+	 * système de coordonnées) et, si demandé, l'ensemble de ses objets.
+	 * 
+	 * @param shapefileName
+	 *            nom du fichier à lire
+	 * @param readFeatures
+	 *            si faux, seul l'en-tête est lu : les objets pourront être
+	 *            parcourus sans être chargés en mémoire avec un
+	 *            {@link ShapefileFeatureIterator}
+	 * @throws MalformedURLException
+	 */
+	public Reader(String shapefileName, boolean readFeatures) throws MalformedURLException {
 
 		this.shapefileName = shapefileName;
 
@@ -131,7 +147,6 @@ public class Reader {
 		LOGGER.log(Level.INFO, "ShapeType = " + shapefileReader.getHeader().getShapeType());
 		this.nbFields = dbaseFileReader.getHeader().getNumFields();
 		this.nbFeatures = dbaseFileReader.getHeader().getNumRecords();
-		this.fieldValues = new Object[this.nbFeatures][this.nbFields];
 		this.fieldNames = new String[this.nbFields];
 		this.fieldClasses = new Class<?>[this.nbFields];
 		for (int i = 0; i < this.nbFields; i++) {
@@ -163,22 +178,9 @@ public class Reader {
 		if (prjFileReader != null) {
 			this.localCRS = prjFileReader.getCoordinateReferenceSystem();
 		}
-		this.geometries = new Geometry[this.nbFeatures];
-		int indexFeatures = 0;
 		try {
-			while (shapefileReader.hasNext() && dbaseFileReader.hasNext()) {
-				Object[] entry = dbaseFileReader.readEntry();
-				Record record = shapefileReader.nextRecord();
-				try {
-					this.geometries[indexFeatures] = (Geometry) record.shape();
-				} catch (Exception e) {
-					// logger.error("Error for geometry of object " + entry[2]);
-					this.geometries[indexFeatures] = null;
-				}
-				for (int index = 0; index < this.nbFields; index++) {
-					this.fieldValues[indexFeatures][index] = entry[index];
-				}
-				indexFeatures++;
+			if (readFeatures) {
+				this.readFeatures(shapefileReader, dbaseFileReader);
 			}
 			shapefileReader.close();
 			dbaseFileReader.close();
@@ -193,6 +195,30 @@ public class Reader {
 		}
 	}
 
+	/**
+	 * Charge en mémoire les géométries et les attributs de tous les objets.
+	 */
+	private void readFeatures(ShapefileReader shapefileReader, DbaseFileReader dbaseFileReader)
+			throws IOException {
+		this.fieldValues = new Object[this.nbFeatures][this.nbFields];
+		this.geometries = new Geometry[this.nbFeatures];
+		int indexFeatures = 0;
+		while (shapefileReader.hasNext() && dbaseFileReader.hasNext()) {
+			Object[] entry = dbaseFileReader.readEntry();
+			Record record = shapefileReader.nextRecord();
+			try {
+				this.geometries[indexFeatures] = (Geometry) record.shape();
+			} catch (Exception e) {
+				// logger.error("Error for geometry of object " + entry[2]);
+				this.geometries[indexFeatures] = null;
+			}
+			for (int index = 0; index < this.nbFields; index++) {
+				this.fieldValues[indexFeatures][index] = entry[index];
+			}
+			indexFeatures++;
+		}
+	}
+
 	/**
 	 * Renvoie la valeur de l'attribut minX.
 	 * 
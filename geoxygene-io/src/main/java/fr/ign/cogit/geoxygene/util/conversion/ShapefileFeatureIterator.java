@@ -0,0 +1,421 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.geotools.data.shapefile.dbf.DbaseFileReader.Row;
+import org.geotools.data.shapefile.dbf.IndexedDbaseFileReader;
+import org.geotools.data.shapefile.files.ShpFileType;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.index.CloseableCollection;
+import org.geotools.data.shapefile.index.Data;
+import org.geotools.data.shapefile.index.quadtree.QuadTree;
+import org.geotools.data.shapefile.index.quadtree.StoreException;
+import org.geotools.data.shapefile.index.quadtree.fs.FileSystemIndexStore;
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.data.shapefile.shp.ShapefileReader;
+import org.geotools.data.shapefile.shp.ShapefileReader.Record;
+import org.geotools.util.URLs;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.SchemaDefaultFeature;
+
+/**
+ * Parcours des objets d'un shapefile sans les charger en mémoire : chaque
+ * objet est décodé lors de l'appel à {@link #next()}, à partir de fichiers
+ * .shp et .dbf projetés en mémoire (memory-mapped).
+ * <p>
+ * Si une emprise de sélection est donnée, les enregistrements dont le
+ * rectangle englobant ne l'intersecte pas sont écartés avant le décodage de
+ * leur géométrie et de leurs attributs. Lorsque le shapefile possède un index
+ * spatial (.qix) et un index des enregistrements (.shx), seuls les
+ * enregistrements candidats de l'index sont lus. Les objets renvoyés ne sont
+ * que des candidats : leur géométrie exacte peut ne pas intersecter l'emprise.
+ * <p>
+ * Seuls les attributs demandés sont décodés, les autres valent null. Les
+ * fichiers sont fermés à la fin du parcours ou par {@link #close()}.
+ * 
+ * @see fr.ign.cogit.geoxygene.util.conversion.ShapefileReader#iterator(String,
+ *      IEnvelope, String...)
+ */
+public class ShapefileFeatureIterator implements Iterator<IFeature>, Closeable {
+
+	/** LOGGER. */
+	private final static Logger LOGGER = LogManager.getLogger(ShapefileFeatureIterator.class.getName());
+
+	private final SchemaDefaultFeature schema;
+	private final Class<? extends IGeometry> geometryType;
+	private final int nbFields;
+	/** Indices des attributs à décoder. */
+	private final int[] columns;
+	/** Emprise de sélection, null pour parcourir tous les objets. */
+	private final Envelope filter;
+	private ShapefileReader shapefileReader;
+	private IndexedDbaseFileReader dbaseFileReader;
+	/**
+	 * Numéros (à partir de 1) et positions dans le .shp des enregistrements
+	 * candidats de l'index spatial, triés par position. Null si on parcourt
+	 * tout le fichier.
+	 */
+	private int[] recordNumbers;
+	private int[] recordOffsets;
+	/** Indice du prochain candidat ou du prochain enregistrement. */
+	private int position = 0;
+	/** Indice de fin (exclu) des enregistrements parcourus. */
+	private int last = Integer.MAX_VALUE;
+	private IFeature next = null;
+	private boolean closed = false;
+
+	/**
+	 * Ouvre le shapefile pour un parcours de tous ses objets et de tous leurs
+	 * attributs.
+	 * 
+	 * @param shapefileName
+	 *            nom du fichier à lire
+	 * @throws IOException
+	 *             en cas d'erreur d'ouverture du fichier
+	 */
+	public ShapefileFeatureIterator(String shapefileName) throws IOException {
+		this(shapefileName, null);
+	}
+
+	/**
+	 * Ouvre le shapefile pour un parcours des objets dont le rectangle
+	 * englobant intersecte l'emprise donnée.
+	 * 
+	 * @param shapefileName
+	 *            nom du fichier à lire
+	 * @param envelope
+	 *            emprise de sélection, null pour parcourir tous les objets
+	 * @param attributes
+	 *            noms des attributs à décoder ; si aucun nom n'est donné, tous
+	 *            les attributs sont décodés
+	 * @throws IOException
+	 *             en cas d'erreur d'ouverture du fichier ou si un attribut
+	 *             n'existe pas
+	 */
+	public ShapefileFeatureIterator(String shapefileName, IEnvelope envelope, String... attributes)
+			throws IOException {
+		Reader header = new Reader(shapefileName, false);
+		String typeName = new File(shapefileName).getName();
+		if (typeName.lastIndexOf('.') > 0) {
+			typeName = typeName.substring(0, typeName.lastIndexOf('.'));
+		}
+		this.schema = new SchemaDefaultFeature();
+		this.schema.setNom(typeName);
+		this.schema.setNomSchema(typeName);
+		fr.ign.cogit.geoxygene.util.conversion.ShapefileReader.initSchema(header, typeName, this.schema);
+		this.geometryType = this.schema.getFeatureType().getGeometryType();
+		this.nbFields = header.getNbFields();
+		this.columns = ShapefileFeatureIterator.columns(header, attributes);
+		this.filter = (envelope == null) ? null
+				: new Envelope(envelope.minX(), envelope.maxX(), envelope.minY(), envelope.maxY());
+		ShpFiles shpFiles = new ShpFiles(shapefileName);
+		if (this.filter != null && shpFiles.exists(ShpFileType.QIX) && shpFiles.exists(ShpFileType.SHX)) {
+			this.selectCandidates(shpFiles);
+		}
+		this.open(shpFiles);
+	}
+
+	/**
+	 * Ouvre le shapefile pour un parcours de tous les attributs des
+	 * enregistrements d'indices compris entre first (inclus) et last (exclu),
+	 * avec un schéma déjà construit. Utilisé pour le chargement par blocs.
+	 * 
+	 * @param shapefileName
+	 *            nom du fichier à lire
+	 * @param schema
+	 *            schéma des objets à créer
+	 * @param nbFields
+	 *            nombre d'attributs du fichier
+	 * @param first
+	 *            indice du premier enregistrement
+	 * @param offset
+	 *            position en octets du premier enregistrement dans le .shp
+	 * @param last
+	 *            indice de fin (exclu)
+	 * @throws IOException
+	 *             en cas d'erreur d'ouverture du fichier
+	 */
+	ShapefileFeatureIterator(String shapefileName, SchemaDefaultFeature schema, int nbFields, int first,
+			int offset, int last) throws IOException {
+		this.schema = schema;
+		this.geometryType = schema.getFeatureType().getGeometryType();
+		this.nbFields = nbFields;
+		this.columns = ShapefileFeatureIterator.allColumns(nbFields);
+		this.filter = null;
+		this.position = first;
+		this.last = last;
+		this.open(new ShpFiles(shapefileName));
+		if (first > 0) {
+			try {
+				this.shapefileReader.goTo(offset);
+				this.dbaseFileReader.goTo(first + 1);
+			} catch (IOException e) {
+				this.close();
+				throw e;
+			}
+		}
+	}
+
+	/** Ouvre les fichiers .shp et .dbf projetés en mémoire. */
+	private void open(ShpFiles shpFiles) throws IOException {
+		try {
+			this.shapefileReader = new ShapefileReader(shpFiles, true, true, new GeometryFactory());
+			this.dbaseFileReader = new IndexedDbaseFileReader(shpFiles, true, Charset.forName("ISO-8859-1")); //$NON-NLS-1$
+		} catch (IOException e) {
+			this.close();
+			throw e;
+		}
+	}
+
+	/** @return les indices de tous les attributs */
+	private static int[] allColumns(int nbFields) {
+		int[] columns = new int[nbFields];
+		for (int i = 0; i < nbFields; i++) {
+			columns[i] = i;
+		}
+		return columns;
+	}
+
+	/**
+	 * @return les indices des attributs de noms donnés, ou de tous les
+	 *         attributs si aucun nom n'est donné
+	 */
+	private static int[] columns(Reader header, String... attributes) throws IOException {
+		if (attributes == null || attributes.length == 0) {
+			return ShapefileFeatureIterator.allColumns(header.getNbFields());
+		}
+		int[] columns = new int[attributes.length];
+		for (int i = 0; i < attributes.length; i++) {
+			columns[i] = -1;
+			for (int field = 0; field < header.getNbFields(); field++) {
+				if (header.getFieldName(field).equals(attributes[i])) {
+					columns[i] = field;
+					break;
+				}
+			}
+			if (columns[i] < 0) {
+				throw new IOException("Unknown attribute " + attributes[i]); //$NON-NLS-1$
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Interroge l'index spatial (.qix) et conserve les candidats, triés par
+	 * position dans le .shp pour lire le fichier séquentiellement.
+	 */
+	private void selectCandidates(ShpFiles shpFiles) throws IOException {
+		String qix = shpFiles.get(ShpFileType.QIX);
+		File qixFile = qix.startsWith("file:") ? URLs.urlToFile(new URL(qix)) : new File(qix); //$NON-NLS-1$
+		IndexFile indexFile = new IndexFile(shpFiles, true);
+		try {
+			QuadTree quadTree = new FileSystemIndexStore(qixFile).load(indexFile, true);
+			try {
+				CloseableCollection<Data> found = quadTree.search(this.filter);
+				int[] candidates = new int[found.size()];
+				int n = 0;
+				Iterator<Data> it = found.iterator();
+				try {
+					while (it.hasNext()) {
+						candidates[n++] = ((Integer) it.next().getValue(0)).intValue();
+					}
+				} finally {
+					found.closeIterator(it);
+				}
+				// les enregistrements du .shp sont rangés dans l'ordre de leurs
+				// numéros : trier les numéros revient à trier les positions
+				Arrays.sort(candidates, 0, n);
+				this.recordNumbers = Arrays.copyOf(candidates, n);
+				this.recordOffsets = new int[n];
+				for (int i = 0; i < n; i++) {
+					this.recordOffsets[i] = indexFile.getOffsetInBytes(this.recordNumbers[i] - 1);
+				}
+			} finally {
+				quadTree.close();
+			}
+		} catch (StoreException e) {
+			LOGGER.log(Level.WARN, "Spatial index of " + shpFiles.get(ShpFileType.SHP) //$NON-NLS-1$
+					+ " could not be read, the whole file is scanned: " + e.getMessage()); //$NON-NLS-1$
+			this.recordNumbers = null;
+			this.recordOffsets = null;
+		} finally {
+			indexFile.close();
+		}
+	}
+
+	/**
+	 * @return le schéma des objets renvoyés
+	 */
+	public SchemaDefaultFeature getSchema() {
+		return this.schema;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (this.next == null && !this.closed) {
+			try {
+				this.next = this.readNext();
+			} catch (IOException e) {
+				this.close();
+				throw new IllegalStateException(e);
+			}
+			if (this.next == null) {
+				this.close();
+			}
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public IFeature next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		IFeature feature = this.next;
+		this.next = null;
+		return feature;
+	}
+
+	/**
+	 * @return le prochain objet retenu, null à la fin du fichier
+	 */
+	private IFeature readNext() throws IOException {
+		if (this.recordNumbers != null) {
+			while (this.position < this.recordNumbers.length) {
+				int i = this.position++;
+				this.shapefileReader.goTo(this.recordOffsets[i]);
+				Record record = this.shapefileReader.nextRecord();
+				if (!this.accept(record)) {
+					continue;
+				}
+				this.dbaseFileReader.goTo(this.recordNumbers[i]);
+				IFeature feature = this.createFeature(record, this.recordNumbers[i] - 1);
+				if (feature != null) {
+					return feature;
+				}
+			}
+			return null;
+		}
+		while (this.position < this.last && this.shapefileReader.hasNext() && this.dbaseFileReader.hasNext()) {
+			int indexFeature = this.position++;
+			Record record = this.shapefileReader.nextRecord();
+			if (!this.accept(record)) {
+				this.dbaseFileReader.skip();
+				continue;
+			}
+			IFeature feature = this.createFeature(record, indexFeature);
+			if (feature != null) {
+				return feature;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return vrai si le rectangle englobant de l'enregistrement intersecte
+	 *         l'emprise de sélection
+	 */
+	private boolean accept(Record record) {
+		return this.filter == null || !(record.minX > this.filter.getMaxX() || record.maxX < this.filter.getMinX()
+				|| record.minY > this.filter.getMaxY() || record.maxY < this.filter.getMinY());
+	}
+
+	/**
+	 * Décode la géométrie de l'enregistrement et les attributs demandés de la
+	 * ligne courante du .dbf.
+	 * 
+	 * @return l'objet créé, null si sa géométrie n'a pas pu être convertie
+	 */
+	private IFeature createFeature(Record record, int indexFeature) throws IOException {
+		Row row = this.dbaseFileReader.readRow();
+		Object[] values = new Object[this.nbFields];
+		for (int column : this.columns) {
+			values[column] = row.read(column);
+		}
+		Geometry jtsGeometry;
+		try {
+			jtsGeometry = (Geometry) record.shape();
+		} catch (Exception e) {
+			jtsGeometry = null;
+		}
+		DefaultFeature feature = new DefaultFeature();
+		feature.setFeatureType(this.schema.getFeatureType());
+		feature.setSchema(this.schema);
+		feature.setAttributes(values);
+		try {
+			feature.setGeom(fr.ign.cogit.geoxygene.util.conversion.ShapefileReader.toGeometry(jtsGeometry,
+					indexFeature, this.geometryType));
+		} catch (Exception e) {
+			LOGGER.log(Level.ERROR, I18N.getString("ShapefileReader.ProblemWhileConvertingGeometry") //$NON-NLS-1$
+					+ I18N.getString("ShapefileReader.ObjectIgnored")); //$NON-NLS-1$
+			return null;
+		}
+		feature.setId(indexFeature);
+		return feature;
+	}
+
+	/**
+	 * Ferme les fichiers du shapefile. Appelée automatiquement à la fin du
+	 * parcours.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		this.next = null;
+		// chaque fichier est fermé même si la fermeture de l'autre échoue
+		if (this.shapefileReader != null) {
+			try {
+				this.shapefileReader.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.ERROR, I18N.getString("ShapefileReader.ErrorReadingFile") + e.getMessage()); //$NON-NLS-1$
+			} finally {
+				this.shapefileReader = null;
+			}
+		}
+		if (this.dbaseFileReader != null) {
+			try {
+				this.dbaseFileReader.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.ERROR, I18N.getString("ShapefileReader.ErrorReadingFile") + e.getMessage()); //$NON-NLS-1$
+			} finally {
+				this.dbaseFileReader = null;
+			}
+		}
+	}
+}
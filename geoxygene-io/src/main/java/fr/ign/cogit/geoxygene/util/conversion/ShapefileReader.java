@@ -23,11 +23,19 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -35,6 +43,10 @@ import javax.swing.event.EventListenerList;
 import javax.swing.filechooser.FileFilter;
 
 import org.geotools.data.FeatureSource;
+import org.geotools.data.shapefile.files.ShpFileType;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.locationtech.jts.geom.Geometry;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -43,6 +55,7 @@ import fr.ign.cogit.geoxygene.api.feature.IDataSet;
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
 import fr.ign.cogit.geoxygene.api.feature.IPopulation;
 import fr.ign.cogit.geoxygene.api.feature.type.GF_AttributeType;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.feature.DefaultFeature;
 import fr.ign.cogit.geoxygene.feature.Population;
@@ -242,6 +255,268 @@ public class ShapefileReader implements Runnable {
     return population;
   }
 
+  /**
+   * Lit les features contenus dans le fichier en paramètre en décodant le
+   * fichier par blocs en parallèle.
+   * 
+   * @see #readParallel(String, String, IDataSet, boolean)
+   * 
+   * @param shapefileName un shapefile
+   * @param initSpatialIndex vrai si on souhaite initialiser l'index spatial de
+   *          la population
+   * @return une population contenant les features contenues dans le fichier.
+   */
+  public static IPopulation<IFeature> readParallel(String shapefileName,
+      boolean initSpatialIndex) {
+    String populationName = new File(shapefileName).getName();
+    int extension = populationName.lastIndexOf('.');
+    if (extension > 0) {
+      populationName = populationName.substring(0, extension);
+    }
+    return ShapefileReader.readParallel(shapefileName, populationName, null,
+        initSpatialIndex);
+  }
+
+  /**
+   * Lit les features contenus dans le fichier en paramètre et ajoute la
+   * population chargée à un dataset. Les enregistrements sont répartis en
+   * blocs à l'aide de l'index du shapefile (.shx) ; chaque bloc (géométries,
+   * attributs et conversion en géométries GeOxygene) est décodé sur le pool
+   * fork/join commun. Les features sont ajoutés à la population dans l'ordre
+   * du fichier, avec les mêmes identifiants que pour
+   * {@link #read(String, String, IDataSet, boolean)}. Si initSpatialIndex est
+   * vrai, les rectangles englobants sont calculés pendant le décodage et
+   * l'index spatial est construit en une fois à la fin du chargement.
+   * <p>
+   * Les attributs des features chargés sont rangés dans un stockage en
+   * colonnes ({@link Population#compacteAttributs()}).
+   * <p>
+   * Sans fichier .shx, le chargement est séquentiel.
+   * 
+   * @param shapefileName un shapefile
+   * @param populationName non de la population
+   * @param dataset jeu de données auquel ajouter la population
+   * @param initSpatialIndex si ce boolean est vrai, alors on initialise
+   *          l'index spatial de la population.
+   * @return une population contenant les features contenues dans le fichier.
+   */
+  public static IPopulation<IFeature> readParallel(String shapefileName,
+      String populationName, IDataSet dataset, boolean initSpatialIndex) {
+    int[] offsets;
+    int nbRecords;
+    int chunkSize;
+    try {
+      ShpFiles shpFiles = new ShpFiles(shapefileName);
+      if (!shpFiles.exists(ShpFileType.SHX)) {
+        return ShapefileReader.read(shapefileName, populationName, dataset,
+            initSpatialIndex);
+      }
+      IndexFile indexFile = new IndexFile(shpFiles, true);
+      try {
+        nbRecords = indexFile.getRecordCount();
+        chunkSize = Math.max(ShapefileReader.MIN_CHUNK_SIZE, nbRecords
+            / (4 * ForkJoinPool.getCommonPoolParallelism()) + 1);
+        offsets = new int[(nbRecords + chunkSize - 1) / chunkSize];
+        for (int i = 0; i < offsets.length; i++) {
+          offsets[i] = indexFile.getOffsetInBytes(i * chunkSize);
+        }
+      } finally {
+        indexFile.close();
+      }
+    } catch (IOException e) {
+      ShapefileReader.logger.log(
+          Level.SEVERE,
+          I18N.getString("ShapefileReader.ProblemReadingFile") //$NON-NLS-1$
+              + shapefileName
+              + I18N.getString("ShapefileReader.FileNotLoaded")); //$NON-NLS-1$
+      return null;
+    }
+    Population<IFeature> population = new Population<IFeature>(populationName);
+    if (dataset != null) {
+      dataset.addPopulation(population);
+    }
+    SchemaDefaultFeature schema = new SchemaDefaultFeature();
+    schema.setNom(populationName);
+    schema.setNomSchema(populationName);
+    Reader reader;
+    try {
+      reader = new Reader(shapefileName, false);
+    } catch (MalformedURLException e) {
+      ShapefileReader.logger.log(Level.SEVERE, "URL " + shapefileName //$NON-NLS-1$
+          + I18N.getString("ShapefileReader.Malformed")); //$NON-NLS-1$
+      return null;
+    }
+    ShapefileReader.initSchema(reader, schema, population, false);
+    IFeature[] features = new IFeature[nbRecords];
+    try {
+      ForkJoinPool.commonPool().invoke(
+          new ChunkReader(shapefileName, schema, reader.getNbFields(),
+              offsets, chunkSize, 0, offsets.length, features,
+              initSpatialIndex));
+    } catch (RuntimeException e) {
+      ShapefileReader.logger.log(
+          Level.SEVERE,
+          I18N.getString("ShapefileReader.ProblemReadingFile") //$NON-NLS-1$
+              + shapefileName
+              + I18N.getString("ShapefileReader.FileNotLoaded")); //$NON-NLS-1$
+      return null;
+    }
+    ShapefileReader.fireActionPerformed(new ActionEvent(population, 0,
+        "Read", nbRecords)); //$NON-NLS-1$
+    for (int indexFeature = 0; indexFeature < nbRecords; indexFeature++) {
+      if (features[indexFeature] != null) {
+        population.add(features[indexFeature]);
+        ShapefileReader.fireActionPerformed(new ActionEvent(population, 1,
+            "Read", indexFeature)); //$NON-NLS-1$
+      }
+    }
+    population.compacteAttributs();
+    if (initSpatialIndex) {
+      population.initSpatialIndex(Tiling.class, true, new GM_Envelope(
+          reader.getMinX(), reader.getMaxX(), reader.getMinY(), reader
+              .getMaxY()), 10);
+    }
+    ShapefileReader.logger.log(Level.FINE, population.size()
+        + " features created for " //$NON-NLS-1$
+        + nbRecords);
+    ShapefileReader.fireActionPerformed(new ActionEvent(population, 2,
+        "Finished", nbRecords)); //$NON-NLS-1$
+    return population;
+  }
+
+  /** Nombre minimal d'enregistrements par bloc pour le chargement parallèle. */
+  private static final int MIN_CHUNK_SIZE = 1024;
+
+  /**
+   * Décodage d'une suite de blocs d'enregistrements : les features décodés
+   * sont rangés dans le tableau partagé à l'indice de leur enregistrement.
+   */
+  private static class ChunkReader extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final String shapefileName;
+    private final SchemaDefaultFeature schema;
+    private final int nbFields;
+    /** Positions en octets dans le .shp du premier enregistrement de chaque bloc. */
+    private final int[] offsets;
+    private final int chunkSize;
+    /** Blocs traités, de firstChunk (inclus) à lastChunk (exclu). */
+    private final int firstChunk;
+    private final int lastChunk;
+    private final IFeature[] features;
+    private final boolean computeEnvelopes;
+
+    ChunkReader(String shapefileName, SchemaDefaultFeature schema,
+        int nbFields, int[] offsets, int chunkSize, int firstChunk,
+        int lastChunk, IFeature[] features, boolean computeEnvelopes) {
+      this.shapefileName = shapefileName;
+      this.schema = schema;
+      this.nbFields = nbFields;
+      this.offsets = offsets;
+      this.chunkSize = chunkSize;
+      this.firstChunk = firstChunk;
+      this.lastChunk = lastChunk;
+      this.features = features;
+      this.computeEnvelopes = computeEnvelopes;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.lastChunk - this.firstChunk > 1) {
+        int middle = (this.firstChunk + this.lastChunk) >>> 1;
+        ForkJoinTask.invokeAll(new ChunkReader(this.shapefileName,
+            this.schema, this.nbFields, this.offsets, this.chunkSize,
+            this.firstChunk, middle, this.features, this.computeEnvelopes),
+            new ChunkReader(this.shapefileName, this.schema, this.nbFields,
+                this.offsets, this.chunkSize, middle, this.lastChunk,
+                this.features, this.computeEnvelopes));
+        return;
+      }
+      int first = this.firstChunk * this.chunkSize;
+      int last = Math.min(first + this.chunkSize, this.features.length);
+      try {
+        ShapefileFeatureIterator iterator = new ShapefileFeatureIterator(
+            this.shapefileName, this.schema, this.nbFields, first,
+            this.offsets[this.firstChunk], last);
+        try {
+          while (iterator.hasNext()) {
+            IFeature feature = iterator.next();
+            if (this.computeEnvelopes && feature.getGeom() != null) {
+              feature.getGeom().getEnvelope();
+            }
+            this.features[feature.getId()] = feature;
+          }
+        } finally {
+          iterator.close();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Parcourt les features du fichier en paramètre sans les charger en mémoire
+   * : chaque feature est décodé lors de son parcours. Les fichiers sont fermés
+   * à la fin du parcours ou par {@link ShapefileFeatureIterator#close()}.
+   * 
+   * @see #iterator(String, IEnvelope, String...)
+   * @see #stream(String, IEnvelope, String...)
+   * 
+   * @param shapefileName un shapefile
+   * @return un itérateur sur les features contenus dans le fichier
+   * @throws IOException en cas d'erreur d'ouverture du fichier
+   */
+  public static ShapefileFeatureIterator iterator(String shapefileName)
+      throws IOException {
+    return new ShapefileFeatureIterator(shapefileName);
+  }
+
+  /**
+   * Parcourt les features du fichier en paramètre dont le rectangle englobant
+   * intersecte l'emprise donnée, sans les charger en mémoire. L'index spatial
+   * du shapefile (.qix) est utilisé s'il existe. Seuls les attributs demandés
+   * sont décodés.
+   * 
+   * @see ShapefileFeatureIterator
+   * 
+   * @param shapefileName un shapefile
+   * @param envelope emprise de sélection, null pour parcourir tous les features
+   * @param attributes noms des attributs à décoder, tous si aucun n'est donné
+   * @return un itérateur sur les features sélectionnés
+   * @throws IOException en cas d'erreur d'ouverture du fichier
+   */
+  public static ShapefileFeatureIterator iterator(String shapefileName,
+      IEnvelope envelope, String... attributes) throws IOException {
+    return new ShapefileFeatureIterator(shapefileName, envelope, attributes);
+  }
+
+  /**
+   * Renvoie un flux séquentiel sur les features du fichier en paramètre dont
+   * le rectangle englobant intersecte l'emprise donnée, décodés à la demande.
+   * Le flux doit être fermé s'il n'est pas parcouru jusqu'au bout.
+   * 
+   * @see #iterator(String, IEnvelope, String...)
+   * 
+   * @param shapefileName un shapefile
+   * @param envelope emprise de sélection, null pour parcourir tous les features
+   * @param attributes noms des attributs à décoder, tous si aucun n'est donné
+   * @return un flux sur les features sélectionnés
+   * @throws IOException en cas d'erreur d'ouverture du fichier
+   */
+  public static Stream<IFeature> stream(String shapefileName,
+      IEnvelope envelope, String... attributes) throws IOException {
+    final ShapefileFeatureIterator iterator = new ShapefileFeatureIterator(
+        shapefileName, envelope, attributes);
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED
+            | Spliterator.NONNULL), false).onClose(new Runnable() {
+      @Override
+      public void run() {
+        iterator.close();
+      }
+    });
+  }
+
   /**
    * Ouvre une fenetre (JFileChooser) afin de choisir le fichier et le charge.
    * Ce chargement est synchrone. Pour utiliser le chargement asynchrone,
@@ -308,6 +583,23 @@ public class ShapefileReader implements Runnable {
           + I18N.getString("ShapefileReader.Malformed")); //$NON-NLS-1$
       return null;
     }
+    ShapefileReader.initSchema(reader, schemaDefaultFeature, population,
+        initSpatialIndex);
+    return reader;
+  }
+
+  /**
+   * Initialise le schéma utilisé pour les nouveaux features à partir d'un
+   * lecteur déjà ouvert (éventuellement limité à l'en-tête du fichier).
+   * @param reader lecteur du shapefile
+   * @param schemaDefaultFeature schéma à initialiser
+   * @param population population à peupler avec les features
+   * @param initSpatialIndex vrai si on souhaite initialiser l'index spatial de
+   *          la population
+   */
+  private static void initSchema(Reader reader,
+      SchemaDefaultFeature schemaDefaultFeature,
+      IPopulation<IFeature> population, boolean initSpatialIndex) {
     double minX = reader.getMinX();
     double maxX = reader.getMaxX();
     double minY = reader.getMinY();
@@ -322,9 +614,23 @@ public class ShapefileReader implements Runnable {
         I18N.getString("ShapefileReader.SpatialIndexInitialised") //$NON-NLS-1$
             + minX + "," + maxX + "," //$NON-NLS-1$ //$NON-NLS-2$
             + minY + "," + maxY); //$NON-NLS-1$
+    population.setFeatureType(ShapefileReader.initSchema(reader,
+        population.getNom(), schemaDefaultFeature));
+  }
+
+  /**
+   * Crée le featureType correspondant aux attributs et au type de géométrie du
+   * shapefile et l'associe au schéma.
+   * @param reader lecteur du shapefile (au moins de son en-tête)
+   * @param typeName nom du featureType
+   * @param schemaDefaultFeature schéma à initialiser
+   * @return le featureType créé
+   */
+  static fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType initSchema(
+      Reader reader, String typeName, SchemaDefaultFeature schemaDefaultFeature) {
     /** Créer un featuretype de jeu correspondant */
     fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType newFeatureType = new fr.ign.cogit.geoxygene.schema.schemaConceptuelISOJeu.FeatureType();
-    newFeatureType.setTypeName(population.getNom());
+    newFeatureType.setTypeName(typeName);
     int nbFields = reader.getNbFields();
     Map<Integer, String[]> attLookup = new HashMap<Integer, String[]>(0);
     for (int i = 0; i < nbFields; i++) {
@@ -352,12 +658,11 @@ public class ShapefileReader implements Runnable {
     schemaDefaultFeature.setFeatureType(newFeatureType);
     newFeatureType.setSchema(schemaDefaultFeature);
     schemaDefaultFeature.setAttLookup(attLookup);
-    population.setFeatureType(newFeatureType);
     for (GF_AttributeType fa : newFeatureType.getFeatureAttributes()) {
       ShapefileReader.logger.log(Level.FINE, "FeatureAttibute = " //$NON-NLS-1$
           + fa.getMemberName() + "-" + fa.getValueType()); //$NON-NLS-1$
     }
-    return reader;
+    return newFeatureType;
   }
 
   protected static EventListenerList listenerList = new EventListenerList();
@@ -409,40 +714,13 @@ public class ShapefileReader implements Runnable {
       Class<? extends IGeometry> geometryType = schema.getFeatureType()
           .getGeometryType();
       try {
-    	  	IGeometry geometry = null ;
-			if (reader.geometries[indexFeature] == null) {
-				// support for empty geometries added
-				logger.log(
-					Level.WARNING, 
-					"null geometry for object "+ indexFeature+ " (considered EMPTY)"
-				);
-				geometry = new GM_Aggregate<IGeometry>();
-			} else {
-				geometry = AdapterFactory.toGM_Object(reader.geometries[indexFeature]);
-			}
-			
-			if (!geometryType.isAssignableFrom(geometry.getClass())) {
-				ShapefileReader.logger.log(Level.FINE,
-						"Geometry of type " //$NON-NLS-1$
-								+ geometry.getClass().getSimpleName() + " instead of " //$NON-NLS-1$
-								+ geometryType.getSimpleName());
-				// TODO make it more robust: a lot of assumptions here
-				if (geometry instanceof GM_MultiSurface<?>) {
-					geometry = ((GM_MultiSurface<?>) geometry).get(0);
-				} else {
-					if (geometry instanceof GM_MultiCurve<?>) {
-						geometry = ((GM_MultiCurve<?>) geometry).get(0);
-					} else {
-						if (geometry instanceof GM_MultiPoint) {
-							geometry = ((GM_MultiPoint) geometry).get(0);
-						}
-					}
-				}
-			}
-			defaultFeature.setGeom(geometry);
-			defaultFeature.setId(indexFeature);
-			population.add(defaultFeature);
-			ShapefileReader.fireActionPerformed(new ActionEvent(population, 1, "Read", indexFeature)); //$NON-NLS-1$
+        IGeometry geometry = ShapefileReader.toGeometry(
+            reader.geometries[indexFeature], indexFeature, geometryType);
+        defaultFeature.setGeom(geometry);
+        defaultFeature.setId(indexFeature);
+        population.add(defaultFeature);
+        ShapefileReader.fireActionPerformed(new ActionEvent(population, 1,
+            "Read", indexFeature)); //$NON-NLS-1$
       } catch (Exception e) {
         ShapefileReader.logger.log(Level.SEVERE, I18N
             .getString("ShapefileReader" + //$NON-NLS-1$
@@ -457,6 +735,46 @@ public class ShapefileReader implements Runnable {
         "Finished", reader.getNbFeatures())); //$NON-NLS-1$
   }
 
+  /**
+   * Convertit la géométrie JTS d'un objet du shapefile en géométrie GeOxygene du
+   * type attendu par le featureType.
+   * @param jtsGeometry géométrie lue dans le shapefile, null si elle est vide
+   * @param indexFeature indice de l'objet dans le fichier
+   * @param geometryType type de géométrie du featureType
+   * @return la géométrie GeOxygene de l'objet
+   * @throws Exception en cas d'erreur de conversion
+   */
+  static IGeometry toGeometry(Geometry jtsGeometry, int indexFeature,
+      Class<? extends IGeometry> geometryType) throws Exception {
+    IGeometry geometry = null;
+    if (jtsGeometry == null) {
+      // support for empty geometries added
+      logger.log(Level.WARNING, "null geometry for object " + indexFeature //$NON-NLS-1$
+          + " (considered EMPTY)"); //$NON-NLS-1$
+      geometry = new GM_Aggregate<IGeometry>();
+    } else {
+      geometry = AdapterFactory.toGM_Object(jtsGeometry);
+    }
+    if (!geometryType.isAssignableFrom(geometry.getClass())) {
+      ShapefileReader.logger.log(Level.FINE, "Geometry of type " //$NON-NLS-1$
+          + geometry.getClass().getSimpleName() + " instead of " //$NON-NLS-1$
+          + geometryType.getSimpleName());
+      // TODO make it more robust: a lot of assumptions here
+      if (geometry instanceof GM_MultiSurface<?>) {
+        geometry = ((GM_MultiSurface<?>) geometry).get(0);
+      } else {
+        if (geometry instanceof GM_MultiCurve<?>) {
+          geometry = ((GM_MultiCurve<?>) geometry).get(0);
+        } else {
+          if (geometry instanceof GM_MultiPoint) {
+            geometry = ((GM_MultiPoint) geometry).get(0);
+          }
+        }
+      }
+    }
+    return geometry;
+  }
+
   @Override
   public void run() {
     try {
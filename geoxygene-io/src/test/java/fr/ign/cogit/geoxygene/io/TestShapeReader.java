@@ -1,12 +1,23 @@
 package fr.ign.cogit.geoxygene.io;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 
 import org.junit.Test;
 
 import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
 import fr.ign.cogit.geoxygene.api.feature.IPopulation;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.attribute.AttributeManager;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileFeatureIterator;
 import fr.ign.cogit.geoxygene.util.conversion.ShapefileReader;
+import fr.ign.cogit.geoxygene.util.conversion.ShapefileWriter;
 import junit.framework.TestCase;
 
 public class TestShapeReader extends TestCase {
@@ -39,6 +50,74 @@ public class TestShapeReader extends TestCase {
     	}
     }
 	
+	@Test
+    public void testIterator() throws Exception {
+    	String shapefileName = getClass().getClassLoader().getResource("shp/shp_point.shp").toString();
+    	ShapefileFeatureIterator iterator = ShapefileReader.iterator(shapefileName);
+    	assertTrue(iterator.hasNext());
+    	IFeature first = iterator.next();
+    	assertEquals( 0, first.getAttribute("id") );
+    	assertEquals( "texte1", first.getAttribute("a_text") );
+    	assertEquals( "POINT (-1.935329 0.269461 0.0)", first.getGeom().toString() ) ;
+    	assertTrue(iterator.hasNext());
+    	assertEquals( 1, iterator.next().getAttribute("id") );
+    	assertFalse(iterator.hasNext());
+
+    	// emprise ne contenant que le second point, seul l'attribut a_text est decode
+    	iterator = ShapefileReader.iterator(shapefileName, new GM_Envelope(-2.1, -2, 0, 0.2), "a_text");
+    	assertTrue(iterator.hasNext());
+    	IFeature second = iterator.next();
+    	assertEquals( "texte2", second.getAttribute("a_text") );
+    	assertNull( second.getAttribute("id") );
+    	assertEquals( 1, second.getId() );
+    	assertFalse(iterator.hasNext());
+
+    	assertEquals(2, ShapefileReader.stream(shapefileName, null).count());
+    }
+
+	@Test
+    public void testReadParallel() {
+    	String shapefileName = getClass().getClassLoader().getResource("shp/shp_point.shp").toString();
+    	IPopulation<IFeature> sequential = ShapefileReader.read(shapefileName);
+    	IPopulation<IFeature> parallel = ShapefileReader.readParallel(shapefileName, true);
+    	assertEquals(sequential.size(), parallel.size());
+    	for (int i = 0; i < sequential.size(); i++) {
+    		assertEquals( sequential.get(i).getId(), parallel.get(i).getId() );
+    		assertEquals( sequential.get(i).getAttribute("a_text"), parallel.get(i).getAttribute("a_text") );
+    		assertEquals( sequential.get(i).getGeom().toString(), parallel.get(i).getGeom().toString() );
+    	}
+    	assertTrue(parallel.hasSpatialIndex());
+    }
+
+	@Test
+    public void testReadParallelChunks() throws Exception {
+    	// 2500 enregistrements : au moins 3 blocs de 1024 pour le chargement parallele
+    	IFeatureCollection<IFeature> featColl = new FT_FeatureCollection<>();
+    	for (int i = 0; i < 2500; i++) {
+    		IFeature feat = new DefaultFeature(new GM_Point(new DirectPosition(i % 50, i / 50)));
+    		AttributeManager.addAttribute(feat, "rang", i, "Integer");
+    		AttributeManager.addAttribute(feat, "nom", "point" + i, "String");
+    		featColl.add(feat);
+    	}
+    	File folder = Files.createTempDirectory("shp").toFile();
+    	String shapefileName = new File(folder, "chunks.shp").getAbsolutePath();
+    	ShapefileWriter.write(featColl, shapefileName);
+    	IPopulation<IFeature> sequential = ShapefileReader.read(shapefileName);
+    	IPopulation<IFeature> parallel = ShapefileReader.readParallel(shapefileName, false);
+    	assertEquals(2500, sequential.size());
+    	assertEquals("chunks", parallel.getNom());
+    	assertEquals(sequential.size(), parallel.size());
+    	for (int i = 0; i < sequential.size(); i++) {
+    		IFeature expected = sequential.get(i);
+    		IFeature actual = parallel.get(i);
+    		assertEquals( i, ((Number) actual.getAttribute("rang")).intValue() );
+    		assertEquals( expected.getId(), actual.getId() );
+    		assertEquals( expected.getAttribute("rang"), actual.getAttribute("rang") );
+    		assertEquals( expected.getAttribute("nom"), actual.getAttribute("nom") );
+    		assertEquals( expected.getGeom().toString(), actual.getGeom().toString() );
+    	}
+    }
+
 	@Test
     public void testNoGeom() {
     	IPopulation<IFeature> population = ShapefileReader.read(getClass().getClassLoader().getResource("shp/DOC_URBA.shp").toString());
@@ -0,0 +1,379 @@
+package fr.ign.cogit.geoxygene.osm.importexport.pbf;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openstreetmap.osmosis.core.OsmosisRuntimeException;
+import org.openstreetmap.osmosis.core.container.v0_6.EntityContainer;
+import org.openstreetmap.osmosis.core.domain.v0_6.Entity;
+import org.openstreetmap.osmosis.core.domain.v0_6.Node;
+import org.openstreetmap.osmosis.core.domain.v0_6.Relation;
+import org.openstreetmap.osmosis.core.domain.v0_6.RelationMember;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+import org.openstreetmap.osmosis.core.domain.v0_6.Way;
+import org.openstreetmap.osmosis.core.domain.v0_6.WayNode;
+import org.openstreetmap.osmosis.core.task.v0_6.Sink;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.conversion.WkbGeOxygene;
+
+/**
+ * Import d'un fichier PBF dans les tables node, way, relation et
+ * relationmember (même schéma que {@link GeoxSink}) par le protocole COPY de
+ * PostgreSQL, sur une seule connexion.
+ * <p>
+ * Les lignes sont mises au format texte de COPY par le thread de lecture du
+ * PBF, géométries comprises (EWKB hexadécimal), et envoyées au serveur par
+ * paquets par un thread d'écriture : le décodage du PBF et l'envoi des lignes
+ * se recouvrent. Les noeuds, chemins et relations arrivant dans cet ordre dans
+ * un PBF, une seule commande COPY est ouverte à la fois ; les membres des
+ * relations sont mis de côté dans un fichier temporaire et copiés en dernier.
+ * L'import est fait dans une seule transaction, validée par
+ * {@link #complete()}.
+ */
+public class GeoxCopySink implements Sink {
+
+	private static Logger LOGGER = Logger.getLogger(GeoxCopySink.class);
+
+	private static final String COPY_NODE = "COPY node (idnode, id, uid, vnode, changeset, username, datemodif, tags, lat, lon, geom) FROM STDIN";
+	private static final String COPY_WAY = "COPY way (idway, id, uid, vway, changeset, username, datemodif, tags, composedof) FROM STDIN";
+	private static final String COPY_RELATION = "COPY relation (idrel, id, uid, vrel, changeset, username, datemodif, tags) FROM STDIN";
+	private static final String COPY_RELATIONMEMBER = "COPY relationmember (idrel, idmb, idrelmb, typemb, rolemb) FROM STDIN";
+
+	/** Taille (en caractères) des paquets de lignes envoyés au serveur. */
+	private static final int LOT_SIZE = 1 << 20;
+
+	/** Paquet de lignes d'une table. */
+	private static class Lot {
+		final String copy;
+		final StringBuilder rows;
+
+		Lot(String copy, StringBuilder rows) {
+			this.copy = copy;
+			this.rows = rows;
+		}
+	}
+
+	/** Marque la fin des paquets. */
+	private static final Lot END = new Lot(null, null);
+
+	private final Connection connection;
+	private final BlockingQueue<Lot> queue = new ArrayBlockingQueue<Lot>(8);
+	private Thread writer;
+	private volatile Throwable error;
+
+	private String currentCopy;
+	private StringBuilder rows;
+	private File membersFile;
+	private Writer members;
+	private long nbEntities;
+
+	/**
+	 * @param connection connexion à la base, utilisée pendant tout l'import et
+	 *          non fermée par le sink
+	 */
+	public GeoxCopySink(Connection connection) {
+		this.connection = connection;
+	}
+
+	@Override
+	public void initialize(Map<String, Object> arg0) {
+		try {
+			this.connection.setAutoCommit(false);
+			this.membersFile = File.createTempFile("relationmember", ".copy");
+			this.membersFile.deleteOnExit();
+			this.members = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(this.membersFile), StandardCharsets.UTF_8));
+		} catch (SQLException | IOException e) {
+			throw new OsmosisRuntimeException("Unable to initialize the COPY import", e);
+		}
+		this.writer = new Thread(this::write, "GeoxCopySink writer");
+		this.writer.start();
+	}
+
+	@Override
+	public void process(EntityContainer arg0) {
+		this.checkError();
+		Entity entity = arg0.getEntity();
+		if (entity instanceof Node) {
+			this.processNode((Node) entity);
+		} else if (entity instanceof Way) {
+			this.processWay((Way) entity);
+		} else if (entity instanceof Relation) {
+			this.processRelation((Relation) entity);
+		}
+		this.nbEntities++;
+	}
+
+	@Override
+	public void complete() {
+		try {
+			this.flush();
+			this.members.close();
+			this.put(END);
+			this.writer.join();
+			this.checkError();
+			this.connection.commit();
+			LOGGER.info(this.nbEntities + " entities imported");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OsmosisRuntimeException("COPY import interrupted", e);
+		} catch (SQLException | IOException e) {
+			throw new OsmosisRuntimeException("Unable to complete the COPY import", e);
+		}
+	}
+
+	@Override
+	public void release() {
+		if (this.writer != null && this.writer.isAlive()) {
+			this.writer.interrupt();
+		}
+		try {
+			if (this.members != null) {
+				this.members.close();
+			}
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+		}
+		if (this.membersFile != null) {
+			this.membersFile.delete();
+		}
+	}
+
+	private void checkError() {
+		if (this.error != null) {
+			throw new OsmosisRuntimeException("COPY import failed", this.error);
+		}
+	}
+
+	/*-----------------------------------------------------*/
+	/*- Mise en forme des lignes --------------------------*/
+	/*-----------------------------------------------------*/
+
+	/**
+	 * @return le tampon de lignes de la table donnée, après avoir envoyé celui
+	 *         de la table précédente
+	 */
+	private StringBuilder rows(String copy) {
+		if (copy != this.currentCopy) {
+			this.flush();
+			this.currentCopy = copy;
+		}
+		if (this.rows == null) {
+			this.rows = new StringBuilder(LOT_SIZE + 1024);
+		}
+		return this.rows;
+	}
+
+	/** Envoie le paquet de lignes courant au thread d'écriture. */
+	private void flush() {
+		if (this.rows == null || this.rows.length() == 0) {
+			return;
+		}
+		this.put(new Lot(this.currentCopy, this.rows));
+		this.rows = null;
+	}
+
+	/** Met un paquet dans la file, tant que le thread d'écriture n'a pas échoué. */
+	private void put(Lot lot) {
+		try {
+			while (!this.queue.offer(lot, 1, TimeUnit.SECONDS)) {
+				this.checkError();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OsmosisRuntimeException("COPY import interrupted", e);
+		}
+	}
+
+	private void endRow(StringBuilder sb) {
+		sb.append('\n');
+		if (sb.length() >= LOT_SIZE) {
+			this.flush();
+		}
+	}
+
+	/** Colonnes communes : clé, id, uid, version, changeset, username, date, tags. */
+	private static void appendEntity(StringBuilder sb, Entity entity) {
+		sb.append(entity.getId()).append(entity.getVersion()).append('\t');
+		sb.append(entity.getId()).append('\t');
+		sb.append(entity.getUser().getId()).append('\t');
+		sb.append(entity.getVersion()).append('\t');
+		sb.append((int) entity.getChangesetId()).append('\t');
+		appendText(sb, entity.getUser().getName());
+		sb.append('\t');
+		appendText(sb, String.valueOf(entity.getTimestamp()));
+		sb.append('\t');
+		appendText(sb, hstore(entity.getTags()));
+	}
+
+	private void processNode(Node myNode) {
+		StringBuilder sb = this.rows(COPY_NODE);
+		appendEntity(sb, myNode);
+		sb.append('\t').append(myNode.getLatitude());
+		sb.append('\t').append(myNode.getLongitude());
+		sb.append('\t').append(WkbGeOxygene.makeHexWkb(
+				new GM_Point(new DirectPosition(myNode.getLongitude(), myNode.getLatitude())), 4326));
+		this.endRow(sb);
+	}
+
+	private void processWay(Way myWay) {
+		StringBuilder sb = this.rows(COPY_WAY);
+		appendEntity(sb, myWay);
+		sb.append('\t');
+		if (myWay.getWayNodes().isEmpty()) {
+			sb.append("\\N");
+		} else {
+			sb.append('{');
+			for (WayNode nd : myWay.getWayNodes()) {
+				sb.append(nd.getNodeId()).append(',');
+			}
+			sb.setCharAt(sb.length() - 1, '}');
+		}
+		this.endRow(sb);
+	}
+
+	private void processRelation(Relation myRelation) {
+		StringBuilder sb = this.rows(COPY_RELATION);
+		appendEntity(sb, myRelation);
+		this.endRow(sb);
+		StringBuilder mb = new StringBuilder();
+		for (RelationMember member : myRelation.getMembers()) {
+			mb.setLength(0);
+			mb.append(myRelation.getId()).append(myRelation.getVersion()).append('\t');
+			mb.append(member.getMemberId()).append('\t');
+			mb.append(myRelation.getId()).append(myRelation.getVersion()).append(member.getMemberId())
+					.append('\t');
+			appendText(mb, member.getMemberType().toString());
+			mb.append('\t');
+			appendText(mb, member.getMemberRole());
+			mb.append('\n');
+			try {
+				this.members.append(mb);
+			} catch (IOException e) {
+				throw new OsmosisRuntimeException("Unable to write relation members", e);
+			}
+		}
+	}
+
+	/** @return les tags au format texte hstore */
+	static String hstore(Collection<Tag> tags) {
+		StringBuilder sb = new StringBuilder();
+		for (Tag tag : tags) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			appendHstoreText(sb.append('"'), tag.getKey());
+			appendHstoreText(sb.append("\"=>\""), tag.getValue());
+			sb.append('"');
+		}
+		return sb.toString();
+	}
+
+	private static void appendHstoreText(StringBuilder sb, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\');
+			}
+			sb.append(c);
+		}
+	}
+
+	/** Ajoute une valeur échappée pour le format texte de COPY. */
+	static void appendText(StringBuilder sb, String s) {
+		if (s == null) {
+			sb.append("\\N");
+			return;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\0':
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+	}
+
+	/*-----------------------------------------------------*/
+	/*- Ecriture ------------------------------------------*/
+	/*-----------------------------------------------------*/
+
+	/** Boucle du thread d'écriture. */
+	private void write() {
+		CopyIn copyIn = null;
+		String copy = null;
+		try {
+			CopyManager copyManager = new CopyManager(this.connection.unwrap(BaseConnection.class));
+			while (true) {
+				Lot lot = this.queue.take();
+				if (lot == END) {
+					break;
+				}
+				if (!lot.copy.equals(copy)) {
+					if (copyIn != null) {
+						LOGGER.info(copyIn.endCopy() + " rows copied by " + copy);
+					}
+					copy = lot.copy;
+					copyIn = copyManager.copyIn(copy);
+				}
+				byte[] bytes = lot.rows.toString().getBytes(StandardCharsets.UTF_8);
+				copyIn.writeToCopy(bytes, 0, bytes.length);
+			}
+			if (copyIn != null) {
+				LOGGER.info(copyIn.endCopy() + " rows copied by " + copy);
+			}
+			InputStream in = new FileInputStream(this.membersFile);
+			try {
+				LOGGER.info(copyManager.copyIn(COPY_RELATIONMEMBER, in) + " rows copied by "
+						+ COPY_RELATIONMEMBER);
+			} finally {
+				in.close();
+			}
+		} catch (Throwable e) {
+			LOGGER.error(e.getMessage());
+			this.error = e;
+			try {
+				if (copyIn != null && copyIn.isActive()) {
+					copyIn.cancelCopy();
+				}
+				this.connection.rollback();
+			} catch (SQLException e1) {
+				LOGGER.error(e1.getMessage());
+			}
+		}
+	}
+}
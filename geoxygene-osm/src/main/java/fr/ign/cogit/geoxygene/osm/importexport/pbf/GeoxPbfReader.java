@@ -22,6 +22,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import fr.ign.cogit.geoxygene.osm.anonymization.db.SQLDBPreAnonymization;
+import fr.ign.cogit.geoxygene.osm.anonymization.db.access.PostgresAccess;
 
 public class GeoxPbfReader {
 
@@ -83,6 +84,43 @@ public class GeoxPbfReader {
 
 	}
 
+	/*******
+	 * Parses a PBF file and fills a PostGIS database with the COPY protocol
+	 * over a single connection (see {@link GeoxCopySink}). The PBF blocks are
+	 * decoded by several workers while the rows are sent to the database.
+	 * 
+	 * @param pbfFilePath:
+	 *            path to PBF file
+	 * @param connection:
+	 *            connection to the database, which is not closed
+	 */
+	public static void pbf2postgisCopy(String pbfFilePath, java.sql.Connection connection) {
+		long tdeb = System.currentTimeMillis();
+		PbfReader reader = new PbfReader(new File(pbfFilePath), Runtime.getRuntime().availableProcessors());
+		reader.setSink(new GeoxCopySink(connection));
+		reader.run();
+		System.out.println("Durée traitement : " + ((System.currentTimeMillis() - tdeb) / 1000 / 60) + " min");
+	}
+
+	/*******
+	 * Parses a PBF file and fills a PostGIS database with the COPY protocol,
+	 * using one connection of the pool.
+	 * 
+	 * @param pbfFilePath:
+	 *            path to PBF file
+	 * @param access:
+	 *            connection pool to the database
+	 * @throws SQLException
+	 */
+	public static void pbf2postgisCopy(String pbfFilePath, PostgresAccess access) throws SQLException {
+		java.sql.Connection connection = access.getConnection();
+		try {
+			pbf2postgisCopy(pbfFilePath, connection);
+		} finally {
+			connection.close();
+		}
+	}
+
 	/*****
 	 * Adds a new column "visible" to a PostgreSQL table
 	 * 
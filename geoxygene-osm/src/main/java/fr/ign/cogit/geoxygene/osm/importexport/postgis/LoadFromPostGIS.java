@@ -95,7 +95,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			Connection conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			String query = "SELECT idrel FROM  relation WHERE tags -> 'boundary' = 'administrative' ANd tags->'admin_level'='8' "
 					+ "AND tags-> 'name'='" + city + "' AND datemodif <= '" + timestamp
 					+ "' ORDER BY vrel DESC LIMIT 1;";
@@ -160,7 +160,7 @@ public class LoadFromPostGIS {
 			Statement s;
 			ResultSet r;
 
-			s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 
 			String query = "SELECT idrel FROM  relation WHERE tags -> 'boundary' = 'administrative' ANd tags->'admin_level'='"
 					+ adminLevel + "' " + "AND tags-> 'name'='" + placeName + "' AND datemodif <= '" + timestamp
@@ -217,7 +217,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			r = s.executeQuery(query);
 		} catch (Exception e) {
 			// throw e;
@@ -238,7 +238,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			s.execute(query);
 		} catch (Exception e) {
 			System.out.println(e);
@@ -285,7 +285,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 
 			String query = "SELECT created_at, closed_at FROM changeset WHERE " + "uid = " + uid
 					+ " AND created_at >= '" + timespan[0] + "' AND closed_at < '" + timespan[1]
@@ -409,7 +409,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 
 			String uniqueWayQuery = "SELECT DISTINCT ON (id) * FROM way WHERE tags ?& ARRAY['building'] "
 					+ "AND lon_min >= " + borders[0] + "AND lat_min>= " + borders[1] + "AND lon_max<= " + borders[2]
@@ -446,7 +446,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			String queryMaxVrel = "SELECT max(vrel) AS max, id FROM relation WHERE datemodif <='" + timestamp
 					+ "' GROUP BY id";
 			String visibleAtT1 = "SELECT * FROM relation, (" + queryMaxVrel + ") AS max_vrel "
@@ -486,7 +486,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			// Get the latest version of the buildings at the snapshot date
 			String queryUniqueRel = "SELECT max(vrel) AS max, id FROM relation WHERE tags ?& ARRAY [ 'building' ] AND datemodif <= '"
 					+ timestamp + "' GROUP BY id";
@@ -535,7 +535,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			String query = "";
 			ResultSet r;
 			// Query the members of the relations that were created within
@@ -599,7 +599,7 @@ public class LoadFromPostGIS {
 		Connection conn;
 		String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 		conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-		Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+		Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 
 		for (int i = 0; i < nodes.size() - 1; i++) {
 			Long id = nodes.get(i);
@@ -727,7 +727,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 
 			String uniqueNodeQuery = "SELECT DISTINCT ON (id) * FROM node WHERE lon >= " + borders[0] + "AND lat>= "
 					+ borders[1] + "AND lon<= " + borders[2] + "AND lat<= " + borders[3]
@@ -769,7 +769,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			// Query the evolution of all nodes which where selected at
 			// timespan[0] until timespan[1]
 			String uniqueNodeQuery = "SELECT DISTINCT ON (id) * FROM node WHERE lon >= " + borders[0] + " AND lat>= "
@@ -814,7 +814,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			// Query the evolution of all buildings which where selected at
 			// timespan[0] until timespan[1]
 			String vmax = "(SELECT max(vway) AS max FROM way WHERE id = " + id + " AND datemodif <= '" + timestamp
@@ -921,7 +921,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			ResultSet r;
 			// Query the evolution of all buildings which where selected at
 			// timespan[0] until timespan[1]
@@ -968,7 +968,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 
 			String uniqueWayQuery = "SELECT DISTINCT ON (id) * FROM way WHERE lon_min >= " + borders[0]
 					+ "AND lat_min>= " + borders[1] + "AND lon_max<= " + borders[2] + "AND lat_max<= " + borders[3]
@@ -1008,7 +1008,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			String query = "";
 			ResultSet r;
 			// Query PostGIS table way : select ways that are created within
@@ -1073,7 +1073,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			ResultSet r = s.executeQuery(query);
 			System.out.println("------- Query Executed -------");
 			while (r.next()) {
@@ -1345,7 +1345,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			System.out.println(dropViewQuery + query);
 			s.executeQuery(dropViewQuery + query);
 			System.out.println("------- Query Executed -------");
@@ -1444,7 +1444,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			System.out.println(dropViewQuery + query);
 			s.executeQuery(dropViewQuery + query);
 			System.out.println("------- Query Executed -------");
@@ -1460,7 +1460,7 @@ public class LoadFromPostGIS {
 		try {
 			String url = "jdbc:postgresql://" + this.host + ":" + this.port + "/" + this.dbName;
 			conn = DriverManager.getConnection(url, this.dbUser, this.dbPwd);
-			Statement s = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+			Statement s = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			ResultSet r = s.executeQuery(query);
 			System.out.println("------- Query Executed -------");
 			writeOSMResource(r, osmDataType);
@@ -0,0 +1,58 @@
+package fr.ign.cogit.geoxygene.osm.importexport.pbf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openstreetmap.osmosis.core.domain.v0_6.Tag;
+
+/**
+ * Tests de l'échappement des valeurs écrites au format texte de COPY.
+ */
+public class GeoxCopySinkTest {
+
+	private static String text(String s) {
+		StringBuilder sb = new StringBuilder();
+		GeoxCopySink.appendText(sb, s);
+		return sb.toString();
+	}
+
+	@Test
+	public void testAppendText() {
+		Assert.assertEquals("\\N", text(null));
+		Assert.assertEquals("", text(""));
+		Assert.assertEquals("rue de l'Église", text("rue de l'Église"));
+		Assert.assertEquals("a\\tb\\nc\\rd", text("a\tb\nc\rd"));
+		Assert.assertEquals("c:\\\\dir\\\\", text("c:\\dir\\"));
+		// une chaîne "\N" n'est pas lue comme la valeur nulle
+		Assert.assertEquals("\\\\N", text("\\N"));
+		// le caractère nul n'est pas accepté par PostgreSQL
+		Assert.assertEquals("ab", text("a\0b"));
+		// un séparateur de lignes suivi d'un point ne termine pas la copie
+		Assert.assertEquals("\\n\\\\.", text("\n\\."));
+	}
+
+	@Test
+	public void testHstore() {
+		Assert.assertEquals("", GeoxCopySink.hstore(new ArrayList<Tag>()));
+		List<Tag> tags = Arrays.asList(new Tag("highway", "residential"),
+				new Tag("name", "Rue \"Pasteur\""), new Tag("k=>v", "a=>b"),
+				new Tag("note", "c:\\dir"), new Tag("a,b", ""));
+		String hstore = GeoxCopySink.hstore(tags);
+		Assert.assertEquals("\"highway\"=>\"residential\","
+				+ "\"name\"=>\"Rue \\\"Pasteur\\\"\",\"k=>v\"=>\"a=>b\","
+				+ "\"note\"=>\"c:\\\\dir\",\"a,b\"=>\"\"", hstore);
+	}
+
+	@Test
+	public void testHstoreText() {
+		// les tags sont échappés pour hstore puis pour COPY
+		List<Tag> tags = Arrays.asList(new Tag("name\t", "l1\nl2"),
+				new Tag("path", "a\\\"b"));
+		Assert.assertEquals("\"name\\t\"=>\"l1\\nl2\","
+				+ "\"path\"=>\"a\\\\\\\\\\\\\"b\"",
+				text(GeoxCopySink.hstore(tags)));
+	}
+}
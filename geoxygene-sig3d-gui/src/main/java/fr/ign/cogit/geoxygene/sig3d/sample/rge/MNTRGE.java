@@ -286,7 +286,7 @@ public class MNTRGE extends DTM {
                 .indexOf(attribut);
 
             hauteur = Double.parseDouble(((DefaultFeature) feat)
-                .getAttributes()[index].toString());
+                .getAttribute(index).toString());
 
             if (hauteur <= 0) {
 
@@ -430,8 +430,8 @@ public class MNTRGE extends DTM {
             // Sinon on le gère comme un toponyme
             String toponyme = "X";
 
-            if (feat.getAttributes() != null) {
-              if (feat.getAttributes().length > 1) {
+            if (feat.getNbAttributes() > 0) {
+              if (feat.getNbAttributes() > 1) {
 
                 if ((String) feat.getAttribute("NOM") != null) {
 
@@ -169,6 +169,23 @@ public abstract class AbstractDTM {
 
   }
 
+  /**
+   * Calcule l'altitude d'une série de points. Les implémentations peuvent
+   * surcharger cette méthode pour éviter les recherches répétées d'une maille
+   * à l'autre.
+   * 
+   * @param xy les coordonnées x0, y0, x1, y1, ...
+   * @return les altitudes des xy.length / 2 points
+   */
+  public double[] castCoordinates(double[] xy) {
+    int nbPoints = xy.length / 2;
+    double[] z = new double[nbPoints];
+    for (int i = 0; i < nbPoints; i++) {
+      z[i] = this.castCoordinate(xy[2 * i], xy[2 * i + 1]).z;
+    }
+    return z;
+  }
+
   /**
    * Permet de plaquer un shapefile sur le MNT sans extrusion.
    * 
@@ -810,15 +827,24 @@ public abstract class AbstractDTM {
 
     int nbPoints = lDPFinal.length;
     Coordinate[] coords = new Coordinate[nbPoints];
+
+    double[] xy = new double[2 * nbPoints];
+    for (int i = 0; i < nbPoints; i++) {
+      xy[2 * i] = lDPFinal[i].x;
+      xy[2 * i + 1] = lDPFinal[i].y;
+    }
+    double[] zs = this.castCoordinates(xy);
+
     // On extrude ou plaque les différents points de la polyligne finale en
     // fonction des cas
     for (int i = 0; i < nbPoints; i++) {
       if (isHeigth) {
 
-        coords[i] = this.castCoordinate(lDPFinal[i].x, lDPFinal[i].y, altMax);
+        coords[i] = new Coordinate(lDPFinal[i].x, lDPFinal[i].y, zs[i]
+            + altMax);
       } else {
-        coords[i] = this.castCoordinate(lDPFinal[i].x, lDPFinal[i].y, altMax
-            - lDPFinal[i].z);
+        coords[i] = new Coordinate(lDPFinal[i].x, lDPFinal[i].y, zs[i]
+            + altMax - lDPFinal[i].z);
 
       }
 
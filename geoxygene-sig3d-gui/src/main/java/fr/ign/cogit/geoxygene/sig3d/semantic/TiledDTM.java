@@ -0,0 +1,733 @@
+package fr.ign.cogit.geoxygene.sig3d.semantic;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.sig3d.geometry.Box3D;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.util.conversion.GeoTiffReader;
+
+/**
+ *
+ * This software is released under the licence CeCILL
+ *
+ * see LICENSE.TXT
+ *
+ * see <http://www.cecill.info/ http://www.cecill.info/
+ *
+ *
+ *
+ * @copyright IGN
+ *
+ * @version 1.7
+ *
+ *          MNT stocké dans un fichier binaire découpé en dalles. Le fichier est
+ *          produit une seule fois à partir d'un ASC ou d'un GeoTIFF
+ *          ({@link #convertASC}, {@link #convertGeoTiff}), puis les dalles
+ *          sont projetées en mémoire (FileChannel.map) à la demande : le MNT
+ *          n'est jamais chargé entièrement dans le tas et n'est plus
+ *          réinterprété au démarrage. Les dernières dalles utilisées sont
+ *          conservées dans un cache LRU.
+ *
+ *          Format : un en-tête de {@link #TAILLE_ENTETE} octets (little endian)
+ *          suivi des dalles de tailleDalle x tailleDalle float32, rangées
+ *          ligne par ligne du nord au sud. Les dalles du bord sont complétées
+ *          par la valeur nodata. Comme pour {@link DTM}, la valeur de la
+ *          colonne c et de la ligne r est placée en (xIni + c * pas, yIni +
+ *          (nY - 1 - r) * pas).
+ *
+ *          L'altitude est interpolée de manière bilinéaire entre les 4 noeuds
+ *          de la maille.
+ */
+public class TiledDTM extends AbstractDTM implements Closeable {
+
+  private final static Logger logger = LogManager.getLogger(TiledDTM.class);
+
+  /** "GXDT" */
+  public static final int MAGIC = 0x54445847;
+
+  public static final int VERSION = 1;
+
+  public static final int TAILLE_ENTETE = 128;
+
+  /** Taille des dalles par défaut */
+  public static int TAILLE_DALLE = 256;
+
+  /** Nombre de dalles conservées par défaut dans le cache */
+  public static int NB_DALLES_CACHE = 64;
+
+  private static GeometryFactory fac = new GeometryFactory();
+
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+
+  private final int nX;
+  private final int nY;
+  private final int tailleDalle;
+  private final int nbDallesX;
+  private final double xIni;
+  private final double yIni;
+  private final double pas;
+  private final double noDataValue;
+  private final double zMin;
+  private final double zMax;
+
+  // Cache LRU des dalles projetées en mémoire
+  private final Map<Integer, FloatBuffer> cache;
+
+  /**
+   * Ouvre un MNT dallé
+   *
+   * @param path le fichier produit par convertASC ou convertGeoTiff
+   * @throws IOException
+   */
+  public TiledDTM(String path) throws IOException {
+    this(path, 1, TiledDTM.NB_DALLES_CACHE);
+  }
+
+  /**
+   * Ouvre un MNT dallé
+   *
+   * @param path le fichier produit par convertASC ou convertGeoTiff
+   * @param exageration coefficient multiplicateur des altitudes
+   * @param nbDallesCache nombre de dalles conservées dans le cache
+   * @throws IOException
+   */
+  public TiledDTM(String path, int exageration, final int nbDallesCache)
+      throws IOException {
+    super();
+    this.path = path;
+    this.exageration = exageration;
+
+    this.raf = new RandomAccessFile(path, "r");
+    this.channel = this.raf.getChannel();
+
+    ByteBuffer entete = ByteBuffer.allocate(TAILLE_ENTETE).order(
+        ByteOrder.LITTLE_ENDIAN);
+    while (entete.hasRemaining()) {
+      if (this.channel.read(entete, entete.position()) < 0) {
+        // le cache n'existe pas encore : on ferme directement le fichier
+        this.raf.close();
+        throw new IOException("En-tête incomplet : " + path);
+      }
+    }
+    entete.flip();
+
+    if (entete.getInt() != MAGIC || entete.getInt() != VERSION) {
+      this.raf.close();
+      throw new IOException("Format de MNT dallé non reconnu : " + path);
+    }
+
+    this.nX = entete.getInt();
+    this.nY = entete.getInt();
+    this.tailleDalle = entete.getInt();
+    this.xIni = entete.getDouble();
+    this.yIni = entete.getDouble();
+    this.pas = entete.getDouble();
+    this.noDataValue = entete.getDouble();
+    this.zMin = entete.getDouble();
+    this.zMax = entete.getDouble();
+    if (this.nX <= 0 || this.nY <= 0 || this.tailleDalle <= 0) {
+      this.raf.close();
+      throw new IOException("En-tête de MNT dallé invalide : " + path);
+    }
+    this.nbDallesX = (this.nX + this.tailleDalle - 1) / this.tailleDalle;
+    long nbDallesY = (this.nY + this.tailleDalle - 1) / this.tailleDalle;
+    if (this.channel.size() < TAILLE_ENTETE + 4L * this.tailleDalle
+        * this.tailleDalle * this.nbDallesX * nbDallesY) {
+      this.raf.close();
+      throw new IOException("MNT dallé tronqué : " + path);
+    }
+
+    this.cache = new LinkedHashMap<Integer, FloatBuffer>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, FloatBuffer> e) {
+        return this.size() > nbDallesCache;
+      }
+    };
+
+    logger.info("MNT dallé " + path + " : " + this.nX + " x " + this.nY
+        + ", pas " + this.pas);
+  }
+
+  /**
+   * Renvoie la dalle d'indice donné, en la projetant en mémoire si elle n'est
+   * pas dans le cache
+   */
+  private FloatBuffer dalle(int indice) {
+    synchronized (this.cache) {
+      FloatBuffer fb = this.cache.get(indice);
+      if (fb != null) {
+        return fb;
+      }
+      long taille = 4L * this.tailleDalle * this.tailleDalle;
+      try {
+        fb = this.channel
+            .map(FileChannel.MapMode.READ_ONLY,
+                TAILLE_ENTETE + indice * taille, taille)
+            .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      this.cache.put(indice, fb);
+      return fb;
+    }
+  }
+
+  /**
+   * Accès aux noeuds qui évite de consulter le cache tant que l'on reste dans
+   * la même dalle
+   */
+  private class Curseur {
+    private int indiceCourant = -1;
+    private FloatBuffer dalleCourante = null;
+
+    double valeur(int col, int lig) {
+      int ts = TiledDTM.this.tailleDalle;
+      int indice = (lig / ts) * TiledDTM.this.nbDallesX + col / ts;
+      if (indice != this.indiceCourant) {
+        this.dalleCourante = TiledDTM.this.dalle(indice);
+        this.indiceCourant = indice;
+      }
+      return this.dalleCourante.get((lig % ts) * ts + col % ts);
+    }
+  }
+
+  /**
+   * Interpolation bilinéaire (sans exagération). Les noeuds sans donnée sont
+   * ignorés ; renvoie 0 hors du MNT ou si aucun noeud n'a de valeur, comme
+   * {@link DTM#castCoordinate(double, double)}.
+   */
+  private double interpole(double x, double y, Curseur curseur) {
+    double fc = (x - this.xIni) / this.pas;
+    double fr = (this.yIni + (this.nY - 1) * this.pas - y) / this.pas;
+
+    if (!(fc >= 0 && fr >= 0 && fc <= this.nX - 1 && fr <= this.nY - 1)) {
+      return 0;
+    }
+
+    int c0 = Math.min((int) fc, Math.max(this.nX - 2, 0));
+    int r0 = Math.min((int) fr, Math.max(this.nY - 2, 0));
+    int c1 = Math.min(c0 + 1, this.nX - 1);
+    int r1 = Math.min(r0 + 1, this.nY - 1);
+    double u = fc - c0;
+    double v = fr - r0;
+
+    double z00 = curseur.valeur(c0, r0);
+    double z10 = curseur.valeur(c1, r0);
+    double z01 = curseur.valeur(c0, r1);
+    double z11 = curseur.valeur(c1, r1);
+
+    double w00 = (1 - u) * (1 - v);
+    double w10 = u * (1 - v);
+    double w01 = (1 - u) * v;
+    double w11 = u * v;
+
+    double nd = this.noDataValue;
+    if (z00 != nd && z10 != nd && z01 != nd && z11 != nd) {
+      return w00 * z00 + w10 * z10 + w01 * z01 + w11 * z11;
+    }
+
+    // On renormalise avec les noeuds valides
+    double somme = 0;
+    double poids = 0;
+    if (z00 != nd) {
+      somme += w00 * z00;
+      poids += w00;
+    }
+    if (z10 != nd) {
+      somme += w10 * z10;
+      poids += w10;
+    }
+    if (z01 != nd) {
+      somme += w01 * z01;
+      poids += w01;
+    }
+    if (z11 != nd) {
+      somme += w11 * z11;
+      poids += w11;
+    }
+    return poids == 0 ? 0 : somme / poids;
+  }
+
+  @Override
+  public Coordinate castCoordinate(double x, double y) {
+    return new Coordinate(x, y, this.exageration
+        * this.interpole(x, y, new Curseur()));
+  }
+
+  /**
+   * Version par lot de castCoordinate : les points consécutifs qui tombent
+   * dans la même dalle ne consultent pas le cache
+   */
+  @Override
+  public double[] castCoordinates(double[] xy) {
+    int nbPoints = xy.length / 2;
+    double[] z = new double[nbPoints];
+    Curseur curseur = new Curseur();
+    for (int i = 0; i < nbPoints; i++) {
+      z[i] = this.exageration
+          * this.interpole(xy[2 * i], xy[2 * i + 1], curseur);
+    }
+    return z;
+  }
+
+  /**
+   * Renvoie les mailles (carrées, 2D) du MNT qui couvrent l'emprise
+   */
+  @Override
+  public MultiPolygon processSurfacicGrid(double xmin, double xmax,
+      double ymin, double ymax) {
+
+    int cMin = Math.max(0, (int) Math.floor((xmin - this.xIni) / this.pas));
+    int cMax = Math.min(this.nX - 1,
+        (int) Math.ceil((xmax - this.xIni) / this.pas));
+    int lMin = Math.max(0, (int) Math.floor((ymin - this.yIni) / this.pas));
+    int lMax = Math.min(this.nY - 1,
+        (int) Math.ceil((ymax - this.yIni) / this.pas));
+
+    List<Polygon> lPolys = new ArrayList<Polygon>();
+
+    for (int i = cMin; i < cMax; i++) {
+      for (int j = lMin; j < lMax; j++) {
+
+        double x0 = this.xIni + i * this.pas;
+        double y0 = this.yIni + j * this.pas;
+        double x1 = x0 + this.pas;
+        double y1 = y0 + this.pas;
+
+        Coordinate[] coord = new Coordinate[] { new Coordinate(x0, y0),
+            new Coordinate(x1, y0), new Coordinate(x1, y1),
+            new Coordinate(x0, y1), new Coordinate(x0, y0) };
+
+        lPolys.add(fac.createPolygon(fac.createLinearRing(coord), null));
+      }
+    }
+
+    return fac.createMultiPolygon(lPolys.toArray(new Polygon[0]));
+  }
+
+  /**
+   * Renvoie les lignes des mailles qui couvrent l'emprise (sans passer par
+   * les polygones de processSurfacicGrid)
+   */
+  @Override
+  public MultiLineString processLinearGrid(double xmin, double ymin,
+      double xmax, double ymax) {
+
+    int cMin = Math.max(0, (int) Math.floor((xmin - this.xIni) / this.pas));
+    int cMax = Math.min(this.nX - 1,
+        (int) Math.ceil((xmax - this.xIni) / this.pas));
+    int lMin = Math.max(0, (int) Math.floor((ymin - this.yIni) / this.pas));
+    int lMax = Math.min(this.nY - 1,
+        (int) Math.ceil((ymax - this.yIni) / this.pas));
+
+    List<LineString> lS = new ArrayList<LineString>();
+
+    double xa = this.xIni + cMin * this.pas;
+    double xb = this.xIni + cMax * this.pas;
+    double ya = this.yIni + lMin * this.pas;
+    double yb = this.yIni + lMax * this.pas;
+
+    for (int i = cMin; i <= cMax && ya < yb; i++) {
+      double x = this.xIni + i * this.pas;
+      lS.add(fac.createLineString(new Coordinate[] { new Coordinate(x, ya),
+          new Coordinate(x, yb) }));
+    }
+    for (int j = lMin; j <= lMax && xa < xb; j++) {
+      double y = this.yIni + j * this.pas;
+      lS.add(fac.createLineString(new Coordinate[] { new Coordinate(xa, y),
+          new Coordinate(xb, y) }));
+    }
+
+    return fac.createMultiLineString(lS.toArray(new LineString[0]));
+  }
+
+  /**
+   * Renvoie la maille 3D contenant le point x,y
+   */
+  @Override
+  public IGeometry getGeometryAt(double x, double y) {
+    int i = (int) Math.floor((x - this.xIni) / this.pas);
+    int j = (int) Math.floor((y - this.yIni) / this.pas);
+
+    if (i < 0 || j < 0 || i >= this.nX - 1 || j >= this.nY - 1) {
+      return null;
+    }
+
+    double x0 = this.xIni + i * this.pas;
+    double y0 = this.yIni + j * this.pas;
+    double x1 = x0 + this.pas;
+    double y1 = y0 + this.pas;
+
+    double[] z = this.castCoordinates(new double[] { x0, y0, x1, y0, x1, y1,
+        x0, y1 });
+
+    DirectPositionList dpl = new DirectPositionList();
+    dpl.add(new DirectPosition(x0, y0, z[0]));
+    dpl.add(new DirectPosition(x1, y0, z[1]));
+    dpl.add(new DirectPosition(x1, y1, z[2]));
+    dpl.add(new DirectPosition(x0, y1, z[3]));
+    dpl.add(new DirectPosition(x0, y0, z[0]));
+
+    return new GM_Polygon(new GM_LineString(dpl));
+  }
+
+  public Box3D get3DEnvelope() {
+    if (this.emprise == null) {
+      this.emprise = new Box3D(this.xIni, this.yIni, this.zMin
+          * this.exageration, this.xIni + (this.nX - 1) * this.pas, this.yIni
+          + (this.nY - 1) * this.pas, this.zMax * this.exageration);
+    }
+    return this.emprise;
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (this.cache) {
+      this.cache.clear();
+    }
+    this.raf.close();
+  }
+
+  public int getNX() {
+    return this.nX;
+  }
+
+  public int getNY() {
+    return this.nY;
+  }
+
+  public double getXIni() {
+    return this.xIni;
+  }
+
+  public double getYIni() {
+    return this.yIni;
+  }
+
+  public double getStep() {
+    return this.pas;
+  }
+
+  public double getNoDataValue() {
+    return this.noDataValue;
+  }
+
+  public int getTileSize() {
+    return this.tailleDalle;
+  }
+
+  // ------------------------------------------------------------------------
+  // Conversion
+  // ------------------------------------------------------------------------
+
+  /**
+   * Source des lignes d'un raster lors de la conversion
+   */
+  private interface SourceLignes {
+    /** Remplit ligne avec les nX valeurs de la ligne suivante */
+    void lit(float[] ligne, int offset) throws IOException;
+  }
+
+  /**
+   * Convertit un MNT ESRI ASCII Grid en MNT dallé. Le fichier est lu en
+   * continu : seule une bande de tailleDalle lignes est gardée en mémoire.
+   *
+   * @param ascFile le fichier .asc
+   * @param outFile le fichier binaire produit
+   * @param tailleDalle la taille des dalles (en nombre de mailles)
+   * @throws IOException
+   */
+  public static void convertASC(String ascFile, String outFile,
+      int tailleDalle) throws IOException {
+
+    final BufferedReader br = new BufferedReader(new InputStreamReader(
+        new FileInputStream(ascFile)), 1 << 16);
+
+    try {
+      final Lecteur lecteur = new Lecteur(br);
+
+      int ncols = -1;
+      int nrows = -1;
+      double xll = Double.NaN;
+      double yll = Double.NaN;
+      double cellsize = Double.NaN;
+      double noData = -9999;
+
+      String premier = null;
+
+      // En-tête : couples mot-clef / valeur
+      while (true) {
+        String cle = lecteur.suivant();
+        if (cle == null) {
+          throw new IOException("Fichier ASC vide : " + ascFile);
+        }
+        char c = cle.charAt(0);
+        if (Character.isDigit(c) || c == '-' || c == '+' || c == '.') {
+          premier = cle;
+          break;
+        }
+        String valeur = lecteur.suivant();
+        String cleMin = cle.toLowerCase(Locale.ROOT);
+        if (cleMin.equals("ncols")) {
+          ncols = Integer.parseInt(valeur);
+        } else if (cleMin.equals("nrows")) {
+          nrows = Integer.parseInt(valeur);
+        } else if (cleMin.startsWith("xll")) {
+          xll = Double.parseDouble(valeur);
+        } else if (cleMin.startsWith("yll")) {
+          yll = Double.parseDouble(valeur);
+        } else if (cleMin.equals("cellsize")) {
+          cellsize = Double.parseDouble(valeur);
+        } else if (cleMin.equals("nodata_value")) {
+          noData = Double.parseDouble(valeur);
+        }
+      }
+
+      if (ncols <= 0 || nrows <= 0 || Double.isNaN(cellsize)) {
+        throw new IOException("En-tête ASC incomplet : " + ascFile);
+      }
+
+      final String[] enAttente = { premier };
+      final double noDataFinal = noData;
+      final String fichier = ascFile;
+      SourceLignes source = new SourceLignes() {
+        @Override
+        public void lit(float[] ligne, int offset) throws IOException {
+          for (int i = 0; i < ligne.length - offset; i++) {
+            String s;
+            if (enAttente[0] != null) {
+              s = enAttente[0];
+              enAttente[0] = null;
+            } else {
+              s = lecteur.suivant();
+            }
+            if (s == null) {
+              logger.warn("Fichier ASC tronqué : " + fichier);
+              Arrays.fill(ligne, offset + i, ligne.length, (float) noDataFinal);
+              return;
+            }
+            ligne[offset + i] = Float.parseFloat(s);
+          }
+        }
+      };
+
+      TiledDTM.ecrit(outFile, source, ncols, nrows, xll, yll, cellsize,
+          noData, tailleDalle);
+
+    } finally {
+      br.close();
+    }
+  }
+
+  /**
+   * Convertit la première bande d'un GeoTIFF en MNT dallé. L'image est lue par
+   * {@link GeoTiffReader} ; les noeuds sont placés au centre des pixels.
+   *
+   * @param tifFile le fichier GeoTIFF
+   * @param outFile le fichier binaire produit
+   * @param tailleDalle la taille des dalles (en nombre de mailles)
+   * @param noData la valeur signifiant l'absence de donnée
+   * @throws IOException
+   */
+  public static void convertGeoTiff(String tifFile, String outFile,
+      int tailleDalle, double noData) throws IOException {
+
+    double[][] range = new double[2][2];
+    CoordinateReferenceSystem[] crs = new CoordinateReferenceSystem[1];
+    BufferedImage image = GeoTiffReader.loadGeoTiffImage(tifFile, range, crs);
+    if (image == null) {
+      throw new IOException("Lecture impossible : " + tifFile);
+    }
+
+    final Raster raster = image.getRaster();
+    final int ncols = raster.getWidth();
+    int nrows = raster.getHeight();
+    double cellsize = (range[0][1] - range[0][0]) / ncols;
+
+    SourceLignes source = new SourceLignes() {
+      private int ligneCourante = 0;
+
+      @Override
+      public void lit(float[] ligne, int offset) throws IOException {
+        float[] valeurs = raster.getSamples(raster.getMinX(),
+            raster.getMinY() + this.ligneCourante, ncols, 1, 0, (float[]) null);
+        System.arraycopy(valeurs, 0, ligne, offset, ncols);
+        this.ligneCourante++;
+      }
+    };
+
+    TiledDTM.ecrit(outFile, source, ncols, nrows, range[0][0] + cellsize / 2,
+        range[1][0] + cellsize / 2, cellsize, noData, tailleDalle);
+  }
+
+  /**
+   * Écrit le fichier dallé bande par bande
+   */
+  private static void ecrit(String outFile, SourceLignes source, int ncols,
+      int nrows, double xll, double yll, double cellsize, double noData,
+      int ts) throws IOException {
+
+    int nbDallesX = (ncols + ts - 1) / ts;
+    int nbDallesY = (nrows + ts - 1) / ts;
+    long tailleDalle = 4L * ts * ts;
+
+    double zMin = Double.POSITIVE_INFINITY;
+    double zMax = Double.NEGATIVE_INFINITY;
+
+    float nd = (float) noData;
+    float[] bande = new float[ts * ncols];
+    ByteBuffer buffer = ByteBuffer.allocateDirect((int) tailleDalle).order(
+        ByteOrder.LITTLE_ENDIAN);
+
+    RandomAccessFile raf = new RandomAccessFile(outFile, "rw");
+    try {
+      raf.setLength(0);
+      FileChannel fc = raf.getChannel();
+
+      float[] ligne = new float[ncols];
+
+      for (int ty = 0; ty < nbDallesY; ty++) {
+
+        Arrays.fill(bande, nd);
+        int nbLignes = Math.min(ts, nrows - ty * ts);
+        for (int l = 0; l < nbLignes; l++) {
+          source.lit(ligne, 0);
+          System.arraycopy(ligne, 0, bande, l * ncols, ncols);
+          for (int c = 0; c < ncols; c++) {
+            float z = ligne[c];
+            if (z != nd) {
+              zMin = Math.min(zMin, z);
+              zMax = Math.max(zMax, z);
+            }
+          }
+        }
+
+        for (int tx = 0; tx < nbDallesX; tx++) {
+          buffer.clear();
+          FloatBuffer fb = buffer.asFloatBuffer();
+          int c0 = tx * ts;
+          int nbCols = Math.min(ts, ncols - c0);
+          for (int l = 0; l < ts; l++) {
+            if (l < nbLignes) {
+              fb.put(bande, l * ncols + c0, nbCols);
+            }
+            for (int c = (l < nbLignes ? nbCols : 0); c < ts; c++) {
+              fb.put(nd);
+            }
+          }
+          long position = TAILLE_ENTETE + (ty * (long) nbDallesX + tx)
+              * tailleDalle;
+          while (buffer.hasRemaining()) {
+            position += fc.write(buffer, position);
+          }
+        }
+      }
+
+      if (zMin > zMax) {
+        zMin = zMax = 0;
+      }
+
+      ByteBuffer entete = ByteBuffer.allocate(TAILLE_ENTETE).order(
+          ByteOrder.LITTLE_ENDIAN);
+      entete.putInt(MAGIC);
+      entete.putInt(VERSION);
+      entete.putInt(ncols);
+      entete.putInt(nrows);
+      entete.putInt(ts);
+      entete.putDouble(xll);
+      entete.putDouble(yll);
+      entete.putDouble(cellsize);
+      entete.putDouble(noData);
+      entete.putDouble(zMin);
+      entete.putDouble(zMax);
+      entete.clear();
+      long position = 0;
+      while (entete.hasRemaining()) {
+        position += fc.write(entete, position);
+      }
+
+    } finally {
+      raf.close();
+    }
+
+    logger.info("MNT dallé écrit : " + outFile + " (" + nbDallesX + " x "
+        + nbDallesY + " dalles de " + ts + ")");
+  }
+
+  /**
+   * Découpage en mots d'un flux texte, sans passer par readLine / split
+   */
+  private static class Lecteur {
+    private final BufferedReader br;
+    private final char[] tampon = new char[1 << 16];
+    private int pos = 0;
+    private int fin = 0;
+    private final StringBuilder sb = new StringBuilder(32);
+
+    Lecteur(BufferedReader br) {
+      this.br = br;
+    }
+
+    private int lit() throws IOException {
+      if (this.pos == this.fin) {
+        this.fin = this.br.read(this.tampon, 0, this.tampon.length);
+        this.pos = 0;
+        if (this.fin <= 0) {
+          this.fin = 0;
+          return -1;
+        }
+      }
+      return this.tampon[this.pos++];
+    }
+
+    String suivant() throws IOException {
+      int c = this.lit();
+      while (c != -1 && Character.isWhitespace(c)) {
+        c = this.lit();
+      }
+      if (c == -1) {
+        return null;
+      }
+      this.sb.setLength(0);
+      while (c != -1 && !Character.isWhitespace(c)) {
+        this.sb.append((char) c);
+        c = this.lit();
+      }
+      return this.sb.toString();
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package fr.ign.cogit.semantic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.sig3d.semantic.TiledDTM;
+import junit.framework.TestCase;
+
+
+public class TestTiledDTM extends TestCase {
+
+
+	// ---------------------------------- ATTRIBUTES ----------------------------------
+
+	private double epsilon = Math.pow(10, -4);    // Scale error
+
+	private static Logger log = LogManager.getLogger(TestTiledDTM.class);
+
+	// ------------------------------------ TESTS -------------------------------------
+
+
+	@Test
+	// --------------------------------------------------------------------------------
+	// Test for ASC conversion and bilinear interpolation across tiles
+	// --------------------------------------------------------------------------------
+	public void testConvertASC() throws Exception {
+
+		log.info("Test for ASC conversion and bilinear interpolation across tiles");
+
+		// Plane z = 2x + 3y + 1 sampled on a 7 x 5 grid of step 10
+		int ncols = 7;
+		int nrows = 5;
+		double xll = 100;
+		double yll = 200;
+		double pas = 10;
+
+		File asc = File.createTempFile("dtm", ".asc");
+		File out = File.createTempFile("dtm", ".gxdt");
+		asc.deleteOnExit();
+		out.deleteOnExit();
+
+		PrintWriter pw = new PrintWriter(asc);
+		pw.println("ncols " + ncols);
+		pw.println("nrows " + nrows);
+		pw.println("xllcorner " + xll);
+		pw.println("yllcorner " + yll);
+		pw.println("cellsize " + pas);
+		pw.println("NODATA_value -9999");
+		for (int r = 0; r < nrows; r++) {
+			for (int c = 0; c < ncols; c++) {
+				double x = xll + c * pas;
+				double y = yll + (nrows - 1 - r) * pas;
+				pw.print(plane(x, y) + " ");
+			}
+			pw.println();
+		}
+		pw.close();
+
+		// Tiles of 3 x 3 : the grid spans 3 x 2 tiles with padding
+		TiledDTM.convertASC(asc.getAbsolutePath(), out.getAbsolutePath(), 3);
+
+		TiledDTM dtm = new TiledDTM(out.getAbsolutePath(), 1, 2);
+
+		assertEquals(ncols, dtm.getNX());
+		assertEquals(nrows, dtm.getNY());
+		assertEquals(3, dtm.getTileSize());
+
+		// Bilinear interpolation is exact on a plane
+		assertEquals(plane(100, 200), dtm.castCoordinate(100, 200).z, epsilon);
+		assertEquals(plane(160, 240), dtm.castCoordinate(160, 240).z, epsilon);
+		assertEquals(plane(127.5, 213.3), dtm.castCoordinate(127.5, 213.3).z, epsilon);
+
+		double[] xy = new double[200];
+		for (int i = 0; i < 100; i++) {
+			xy[2 * i] = 100 + 0.6 * i;
+			xy[2 * i + 1] = 200 + 0.4 * i;
+		}
+		double[] z = dtm.castCoordinates(xy);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(plane(xy[2 * i], xy[2 * i + 1]), z[i], epsilon);
+			assertEquals(dtm.castCoordinate(xy[2 * i], xy[2 * i + 1]).z, z[i], epsilon);
+		}
+
+		// Outside the grid
+		assertEquals(0, dtm.castCoordinate(50, 50).z, epsilon);
+
+		assertEquals(plane(100, 200), dtm.get3DEnvelope().getLLDP().getZ(), epsilon);
+		assertEquals(plane(160, 240), dtm.get3DEnvelope().getURDP().getZ(), epsilon);
+
+		assertEquals(6 * 4, dtm.processSurfacicGrid(0, 1000, 0, 1000).getNumGeometries());
+
+		dtm.close();
+
+	}
+
+
+	@Test
+	// --------------------------------------------------------------------------------
+	// Test for opening corrupt tiled DTM files
+	// --------------------------------------------------------------------------------
+	public void testCorruptFile() throws Exception {
+
+		log.info("Test for opening corrupt tiled DTM files");
+
+		File asc = File.createTempFile("dtm", ".asc");
+		File out = File.createTempFile("dtm", ".gxdt");
+		asc.deleteOnExit();
+		out.deleteOnExit();
+
+		PrintWriter pw = new PrintWriter(asc);
+		pw.println("ncols 4");
+		pw.println("nrows 4");
+		pw.println("xllcorner 0");
+		pw.println("yllcorner 0");
+		pw.println("cellsize 1");
+		pw.println("NODATA_value -9999");
+		for (int r = 0; r < 4; r++) {
+			pw.println("1 2 3 4");
+		}
+		pw.close();
+
+		TiledDTM.convertASC(asc.getAbsolutePath(), out.getAbsolutePath(), 2);
+		long taille = out.length();
+
+		// Tiles cut off
+		RandomAccessFile raf = new RandomAccessFile(out, "rw");
+		raf.setLength(taille - 4);
+		raf.close();
+		assertOpenFails(out);
+
+		// Header cut off
+		raf = new RandomAccessFile(out, "rw");
+		raf.setLength(TiledDTM.TAILLE_ENTETE / 2);
+		raf.close();
+		assertOpenFails(out);
+
+		// Wrong magic number
+		raf = new RandomAccessFile(out, "rw");
+		raf.setLength(taille);
+		raf.seek(0);
+		raf.writeInt(0);
+		raf.close();
+		assertOpenFails(out);
+
+		// The file has been released and can be deleted
+		assertTrue(out.delete());
+
+	}
+
+
+	private static void assertOpenFails(File file) {
+		try {
+			new TiledDTM(file.getAbsolutePath()).close();
+			fail("A corrupt file should not be opened");
+		} catch (IOException e) {
+			log.info(e.getMessage());
+		}
+	}
+
+
+	private static double plane(double x, double y) {
+		return 2 * (x - 100) + 3 * (y - 200) + 1;
+	}
+
+}
@@ -0,0 +1,330 @@
+package fr.ign.cogit.geoxygene.sig3d.calculation.raycasting;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.contrib.geometrie.Operateurs;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.util.attribute.AttributeManager;
+
+/**
+ * This software is released under the licence CeCILL
+ *
+ * see LICENSE.TXT
+ *
+ * see <http://www.cecill.info/ http://www.cecill.info/
+ *
+ *
+ *
+ * @copyright IGN
+ *
+ * @version 1.7
+ *
+ *          Lancers de rayons sur un grand nombre de points d'observation (par
+ *          exemple les points échantillonnés le long d'une rue). La scène est
+ *          représentée par une unique {@link TriangleBVH} partagée par tous
+ *          les points, et les points sont répartis sur un pool fork/join.
+ *
+ *          Les directions sont les mêmes que celles de {@link RayCasting}
+ *          (demi-sphère ou sphère, nbPointsCouronnes directions par
+ *          couronne). Pour chaque point on calcule :
+ *          <ul>
+ *          <li>le ratio de rayons sans obstacle (attribut "ratioSph", même
+ *          définition que {@link IndicatorVisu#getRatioSphere()})</li>
+ *          <li>l'ouverture, ratio pondéré par l'angle solide de chaque
+ *          rayon ("openess")</li>
+ *          <li>le facteur de vue du ciel, ratio pondéré par cos(beta)
+ *          sin(beta) sur la demi-sphère supérieure ("skyView")</li>
+ *          <li>le nombre de rayons interceptés, la distance minimale et la
+ *          distance moyenne d'interception ("nbHit", "miniRadDis",
+ *          "avgRadDis")</li>
+ *          </ul>
+ */
+public class BatchRayCasting {
+
+  private final static Logger logger = LogManager
+      .getLogger(BatchRayCasting.class);
+
+  /** Nombre de points traités par une tâche élémentaire */
+  public static int NB_POINTS_TACHE = 8;
+
+  public static final int RATIO_SPHERE = 0;
+  public static final int OUVERTURE = 1;
+  public static final int SKY_VIEW = 2;
+  public static final int NB_HIT = 3;
+  public static final int DISTANCE_MIN = 4;
+  public static final int DISTANCE_MOY = 5;
+
+  /** Noms des attributs des entités produites, dans l'ordre des indicateurs */
+  public static final String[] ATTRIBUTS = { "ratioSph", "openess", "skyView",
+      "nbHit", "miniRadDis", "avgRadDis" };
+
+  private static final int NB_INDICATEURS = ATTRIBUTS.length;
+
+  private final TriangleBVH bvh;
+  private final double rayon;
+  private final boolean isSphere;
+
+  // Directions unitaires des rayons (x, y, z) et poids associés, communs à
+  // tous les points d'observation
+  private final double[] directions;
+  private final double[] poidsAngle;
+  private final double[] poidsCiel;
+  private final int nbRayons;
+
+  private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+  /**
+   * @param bvh la scène (construite une seule fois)
+   * @param nbPointsCouronnes le nombre de point sur une couronne
+   * @param rayon le rayon dans lequel on effectue les lancers
+   * @param isSphere indique si le lancer se fait sur une sphère ou une
+   *          demi-sphère
+   */
+  public BatchRayCasting(TriangleBVH bvh, int nbPointsCouronnes, double rayon,
+      boolean isSphere) {
+    this.bvh = bvh;
+    this.rayon = rayon;
+    this.isSphere = isSphere;
+
+    double pasAlpha = 2 * Math.PI / nbPointsCouronnes;
+    double pasBeta = 2 * Math.PI / nbPointsCouronnes;
+
+    int nbPCouronnesP = nbPointsCouronnes;
+    int nbPCouronnesA = nbPointsCouronnes / 4;
+
+    if (isSphere) {
+      nbPCouronnesA = nbPCouronnesA * 2;
+    }
+
+    this.nbRayons = nbPCouronnesP * nbPCouronnesA;
+    this.directions = new double[3 * this.nbRayons];
+    this.poidsAngle = new double[this.nbRayons];
+    this.poidsCiel = new double[this.nbRayons];
+
+    int r = 0;
+    for (int i = 0; i < nbPCouronnesP; i++) {
+      double alpha = i * pasAlpha;
+      for (int j = 0; j < nbPCouronnesA; j++) {
+        double beta = isSphere ? j * pasBeta - Math.PI / 2 : j * pasBeta;
+        double cosJ = Math.cos(beta);
+        double sinJ = Math.sin(beta);
+        this.directions[3 * r] = Math.sin(alpha) * cosJ;
+        this.directions[3 * r + 1] = Math.cos(alpha) * cosJ;
+        this.directions[3 * r + 2] = sinJ;
+        // Angle solide couvert par le rayon
+        this.poidsAngle[r] = cosJ;
+        // Contribution à l'éclairement d'une surface horizontale
+        this.poidsCiel[r] = sinJ > 0 ? cosJ * sinJ : 0;
+        r++;
+      }
+    }
+  }
+
+  /**
+   * Fixe le pool fork/join utilisé (par défaut le pool commun)
+   */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Calcule les indicateurs pour tous les points et les renvoie sous forme
+   * d'une table : ligne i, colonne {@link #RATIO_SPHERE}, {@link #OUVERTURE}
+   * ...
+   *
+   * @param points les points d'observation
+   * @return un tableau [points.size()][ATTRIBUTS.length]
+   */
+  public double[][] process(IDirectPositionList points) {
+    double[][] table = new double[points.size()][];
+    this.pool.invoke(new Tache(points, 0, points.size(), table, null));
+    return table;
+  }
+
+  /**
+   * Calcule les indicateurs pour tous les points et transmet au consommateur
+   * une entité ponctuelle par point dès qu'elle est calculée. Le consommateur
+   * est appelé depuis les threads du pool : il doit donc être thread-safe et
+   * l'ordre d'appel ne suit pas celui des points.
+   *
+   * @param points les points d'observation
+   * @param consommateur reçoit les entités produites
+   */
+  public void process(IDirectPositionList points,
+      Consumer<IFeature> consommateur) {
+    this.pool.invoke(new Tache(points, 0, points.size(), null, consommateur));
+  }
+
+  /**
+   * Calcule les indicateurs pour tous les points et les renvoie sous forme
+   * d'une collection d'entités ponctuelles (dans l'ordre des points)
+   */
+  public IFeatureCollection<IFeature> processFeatures(
+      IDirectPositionList points) {
+    double[][] table = this.process(points);
+    IFeatureCollection<IFeature> featCOut = new FT_FeatureCollection<IFeature>();
+    for (int i = 0; i < table.length; i++) {
+      featCOut.add(this.creeEntite(points.get(i), table[i]));
+    }
+    return featCOut;
+  }
+
+  /**
+   * Calcule les indicateurs pour un point d'observation
+   *
+   * @return les indicateurs dans l'ordre de {@link #ATTRIBUTS}
+   */
+  public double[] process(IDirectPosition centre) {
+    double x = centre.getX();
+    double y = centre.getY();
+    double z = centre.getZ();
+
+    double[] distance = new double[1];
+
+    int nbHit = 0;
+    double distMin = Double.POSITIVE_INFINITY;
+    double distCumul = 0;
+    double angleLibre = 0, angleTotal = 0;
+    double cielLibre = 0, cielTotal = 0;
+
+    for (int r = 0; r < this.nbRayons; r++) {
+      angleTotal += this.poidsAngle[r];
+      cielTotal += this.poidsCiel[r];
+
+      if (this.bvh.firstHit(x, y, z, this.directions[3 * r],
+          this.directions[3 * r + 1], this.directions[3 * r + 2],
+          this.rayon, distance) != -1) {
+        nbHit++;
+        distMin = Math.min(distMin, distance[0]);
+        distCumul += distance[0];
+      } else {
+        angleLibre += this.poidsAngle[r];
+        cielLibre += this.poidsCiel[r];
+      }
+    }
+
+    double[] indicateurs = new double[NB_INDICATEURS];
+    indicateurs[RATIO_SPHERE] = 1 - (double) nbHit / this.nbRayons;
+    indicateurs[OUVERTURE] = angleTotal == 0 ? Double.NaN : angleLibre
+        / angleTotal;
+    indicateurs[SKY_VIEW] = cielTotal == 0 ? Double.NaN : cielLibre
+        / cielTotal;
+    indicateurs[NB_HIT] = nbHit;
+    indicateurs[DISTANCE_MIN] = nbHit == 0 ? Double.NaN : distMin;
+    indicateurs[DISTANCE_MOY] = nbHit == 0 ? Double.NaN : distCumul / nbHit;
+    return indicateurs;
+  }
+
+  private IFeature creeEntite(IDirectPosition centre, double[] indicateurs) {
+    IFeature feat = new DefaultFeature(new GM_Point(centre));
+    AttributeManager.addAttribute(feat, "Rayon", this.rayon, "Double");
+    for (int k = 0; k < NB_INDICATEURS; k++) {
+      if (k == NB_HIT) {
+        AttributeManager.addAttribute(feat, ATTRIBUTS[k],
+            (int) indicateurs[k], "Integer");
+      } else {
+        AttributeManager.addAttribute(feat, ATTRIBUTS[k], indicateurs[k],
+            "Double");
+      }
+    }
+    return feat;
+  }
+
+  /**
+   * Tâche fork/join traitant les points [debut, fin[
+   */
+  private class Tache extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final IDirectPositionList points;
+    private final int debut;
+    private final int fin;
+    private final double[][] table;
+    private final Consumer<IFeature> consommateur;
+
+    Tache(IDirectPositionList points, int debut, int fin, double[][] table,
+        Consumer<IFeature> consommateur) {
+      this.points = points;
+      this.debut = debut;
+      this.fin = fin;
+      this.table = table;
+      this.consommateur = consommateur;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.fin - this.debut > NB_POINTS_TACHE) {
+        int milieu = (this.debut + this.fin) >>> 1;
+        RecursiveAction.invokeAll(new Tache(this.points, this.debut, milieu,
+            this.table, this.consommateur), new Tache(this.points, milieu,
+            this.fin, this.table, this.consommateur));
+        return;
+      }
+      for (int i = this.debut; i < this.fin; i++) {
+        IDirectPosition centre = this.points.get(i);
+        double[] indicateurs = BatchRayCasting.this.process(centre);
+        if (this.table != null) {
+          this.table[i] = indicateurs;
+        }
+        if (this.consommateur != null) {
+          this.consommateur.accept(BatchRayCasting.this.creeEntite(centre,
+              indicateurs));
+        }
+      }
+    }
+  }
+
+  /**
+   * Échantillonne une ligne (par exemple l'axe d'une rue utilisé par
+   * {@link fr.ign.cogit.geoxygene.sig3d.analysis.streetprofile.Profile}) pour
+   * obtenir des points d'observation.
+   *
+   * @param ligne la ligne à échantillonner
+   * @param pas la distance entre deux points
+   * @param hauteur hauteur des points au-dessus de la ligne (ou altitude si la
+   *          ligne est en 2D)
+   * @return les points d'observation
+   */
+  public static IDirectPositionList echantillonne(ILineString ligne,
+      double pas, double hauteur) {
+    IDirectPositionList dpl = Operateurs.echantillone(ligne, pas).coord();
+    IDirectPositionList dplOut = new DirectPositionList();
+    for (IDirectPosition dp : dpl) {
+      double z = Double.isNaN(dp.getZ()) ? 0 : dp.getZ();
+      dplOut.add(new DirectPosition(dp.getX(), dp.getY(), z + hauteur));
+    }
+    logger.debug(dplOut.size() + " points d'observation");
+    return dplOut;
+  }
+
+  public TriangleBVH getBVH() {
+    return this.bvh;
+  }
+
+  public double getRayon() {
+    return this.rayon;
+  }
+
+  public boolean isSphere() {
+    return this.isSphere;
+  }
+
+  public int getNbRayons() {
+    return this.nbRayons;
+  }
+}
@@ -85,6 +85,7 @@ public class RayCasting {
 	private int lastTypeResult;
 	private boolean isSphere;
 	private int resultType;
+	private TriangleBVH bvh = null;
 
 	/**
 	 * 
@@ -124,10 +125,39 @@ public class RayCasting {
 
 	}
 
+	/**
+	 * Instancie un lancer de rayon qui utilise une hiérarchie de volumes
+	 * englobants déjà construite. La même hiérarchie peut être réutilisée pour
+	 * de nombreux centres, ce qui évite de refaire la projection sphérique à
+	 * chaque lancer.
+	 * 
+	 * @param centre
+	 *            le centre du lancer de rayon
+	 * @param bvh
+	 *            la hiérarchie construite sur les entités
+	 * @param nbPointsCouronnes
+	 *            le nombre de point sur une couronne
+	 * @param rayon
+	 *            le rayon dans lequel on effectule lancer
+	 * @param resultType
+	 *            le type de résultat que l'on souhaite
+	 * @param isSphere
+	 *            indique si le lancer de rayon se fait sur une sphère ou une
+	 *            demi-sphère
+	 */
+	public RayCasting(IDirectPosition centre, TriangleBVH bvh, int nbPointsCouronnes, double rayon, int resultType,
+			boolean isSphere) {
+		this(centre, bvh.getlFeat(), nbPointsCouronnes, rayon, resultType, isSphere);
+		this.bvh = bvh;
+	}
+
 	public void cast() {
 		if (resultType == RayCasting.TYPE_CAST_SOLID_POINT) {
 
 			this.dpGenerated = this.castOnSolidPosition(centre, lFeat, nbPointsCouronnes, rayon, resultType);
+		} else if (this.bvh != null && resultType != RayCasting.TYPE_FIRST_AND_SPHERE_OPTIMIZED) {
+
+			this.dpGenerated = this.castBVH(centre, nbPointsCouronnes, rayon, resultType, isSphere);
 		} else if (resultType == RayCasting.TYPE_FIRST_AND_SPHERE_OPTIMIZED) {
 
 			this.dpGenerated = this.castOptimized(centre, lFeat, nbPointsCouronnes, rayon, isSphere);
@@ -358,6 +388,84 @@ public class RayCasting {
 
 	}
 
+	/**
+	 * Lancer de rayon utilisant la hiérarchie de volumes englobants. Les
+	 * directions et l'ordre des points produits sont les mêmes que pour
+	 * {@link #cast(IDirectPosition, IFeatureCollection, int, double, int, boolean)}
+	 * ; le type TYPE_FIRST_POINT_INTERSECTED_OPTIMIZED donne ici le résultat
+	 * exact de TYPE_FIRST_POINT_INTERSECTED.
+	 * 
+	 * @return une liste de point correspondant aux intersections entre les
+	 *         rayons et les faces des géométries
+	 */
+	private IDirectPositionList castBVH(IDirectPosition centre, int nbPointsCouronnes, double rayon, int resultType,
+			boolean isSphere) {
+
+		double pasAlpha = 2 * Math.PI / nbPointsCouronnes;
+		double pasBeta = 2 * Math.PI / (nbPointsCouronnes);
+
+		DirectPositionList dplOut = new DirectPositionList();
+
+		int nbPCouronnesP = nbPointsCouronnes;
+		int nbPCouronnesA = nbPointsCouronnes / 4;
+
+		if (isSphere) {
+			nbPCouronnesA = nbPCouronnesA * 2;
+		}
+
+		double x = centre.getX();
+		double y = centre.getY();
+		double z = centre.getZ();
+
+		double[] distance = new double[1];
+
+		for (int i = 0; i < nbPCouronnesP; i++) {
+
+			double alpha = i * pasAlpha;
+			double cosI = Math.cos(alpha);
+			double sinI = Math.sin(alpha);
+
+			for (int j = 0; j < nbPCouronnesA; j++) {
+
+				double beta;
+
+				if (isSphere) {
+					beta = j * pasBeta - Math.PI / 2;
+				} else {
+					beta = j * pasBeta;
+				}
+
+				double cosJ = Math.cos(beta);
+				double sinJ = Math.sin(beta);
+
+				// Direction unitaire du rayon
+				double dx = sinI * cosJ;
+				double dy = cosI * cosJ;
+				double dz = sinJ;
+
+				if (resultType == RayCasting.TYPE_POINT_ALL_INTERSECTION) {
+
+					for (double d : this.bvh.allHits(x, y, z, dx, dy, dz, rayon)) {
+						dplOut.add(new DirectPosition(x + d * dx, y + d * dy, z + d * dz));
+					}
+					continue;
+				}
+
+				if (this.bvh.firstHit(x, y, z, dx, dy, dz, rayon, distance) != -1) {
+
+					double d = distance[0];
+					dplOut.add(new DirectPosition(x + d * dx, y + d * dy, z + d * dz));
+
+				} else if (resultType == RayCasting.TYPE_FIRST_POINT_AND_SPHERE) {
+
+					dplOut.add(new DirectPosition(x + rayon * dx, y + rayon * dy, z + rayon * dz));
+				}
+			}
+		}
+
+		return dplOut;
+	}
+
 	/**
 	 * Methode permettant de créer un lancer de rayon positive
 	 * 
@@ -554,6 +662,12 @@ public class RayCasting {
 			// IDirectPosition centreBis = centre;
 			IDirectPosition centreBis = SensibilitePosition.generateCoordinate(centre, ecartTypeP, ecartTypeA);
 
+			if (this.bvh != null) {
+				// La hiérarchie est partagée entre tous les lancers
+				featCOut.add(this.ouvertureBVH(centreBis, pasAlpha, pasBeta));
+				continue;
+			}
+
 			// On créer une projection sphérique
 			// Elle permettra de trouver les entités potentiellement
 			// intersectées
@@ -727,42 +841,18 @@ public class RayCasting {
 	public IDirectPositionList castOnSolidPosition(IDirectPosition centre, IFeatureCollection<IFeature> lFeat,
 			int nbPointsCouronnes, double rayon, int resultType) {
 
-		// Les points intersectés
-		DirectPositionList dplOut = new DirectPositionList();
-
-		// On créer une projection sphérique
-		// Elle permettra de trouver les entités potentiellement intersectées
-		// par le
-		// lancer grâce aux coordonnées angulaires
-		SphericalProjection sp = new SphericalProjection(lFeat, centre, rayon, true);
-		this.sphericalProjection = sp;
-
-		IFeatureCollection<IFeature> featC = sp.getLFeatMapped();
-
-		IFeatureCollection<IFeature> featCut = sp.getFeatToProject();
-
-		int nbElemT = featC.size();
-
-		for (int i = 0; i < nbElemT; i++) {
-
-			if (!featC.get(i).getGeom().isValid()) {
-				featC.remove(i);
-				featCut.remove(i);
-				i--;
-				nbElemT--;
-
-			}
+		DirectPositionList aims = this.aimsOnSolid(centre, lFeat, rayon);
 
+		if (this.bvh != null) {
+			return this.castOnSolidPositionBVH(centre, aims, rayon);
 		}
 
-		DirectPositionList aims = new DirectPositionList();
-
-		for (int i = 0; i < nbElemT; i++) {
-			GM_Polygon polyTemp = (GM_Polygon) featCut.get(i).getGeom();
+		// Les points intersectés
+		DirectPositionList dplOut = new DirectPositionList();
 
-			aims.addAll(polyTemp.coord());
+		IFeatureCollection<IFeature> featC = this.sphericalProjection.getLFeatMapped();
 
-		}
+		IFeatureCollection<IFeature> featCut = this.sphericalProjection.getFeatToProject();
 
 		// L'index spatiale permettra de retrouver en coordonnées angulaires
 		// les faces concernées par l'intersection
@@ -844,6 +934,128 @@ public class RayCasting {
 
 	}
 
+	/**
+	 * Calcul de l'ouverture d'un lancer de castOnSolidPositionGauss à l'aide
+	 * de la hiérarchie de volumes englobants
+	 */
+	private IFeature ouvertureBVH(IDirectPosition centreBis, double pasAlpha, double pasBeta) {
+
+		int nbPCouronnesP = nbPointsCouronnes;
+		int nbPCouronnesA = nbPointsCouronnes / 4;
+
+		if (isSphere) {
+			nbPCouronnesA = nbPCouronnesA * 2;
+		}
+
+		double x = centreBis.getX();
+		double y = centreBis.getY();
+		double z = centreBis.getZ();
+
+		int nbInter = 0;
+
+		for (int i = 0; i < nbPCouronnesP; i++) {
+
+			double alpha = i * pasAlpha;
+			double cosI = Math.cos(alpha);
+			double sinI = Math.sin(alpha);
+
+			for (int j = 0; j < nbPCouronnesA; j++) {
+
+				double beta;
+
+				if (isSphere) {
+					beta = j * pasBeta - Math.PI / 2;
+				} else {
+					beta = j * pasBeta;
+				}
+
+				double cosJ = Math.cos(beta);
+
+				if (this.bvh.anyHit(x, y, z, sinI * cosJ, cosI * cosJ, Math.sin(beta), rayon)) {
+					nbInter++;
+				}
+			}
+		}
+
+		IFeature feat = new DefaultFeature(new GM_Point(centreBis));
+		AttributeManager.addAttribute(feat, "Rayon", rayon, "Double");
+		AttributeManager.addAttribute(feat, "PasA", pasAlpha, "Double");
+		AttributeManager.addAttribute(feat, "PasB", pasBeta, "Double");
+
+		double ouverture = 1 - (double) nbInter / (double) (nbPCouronnesP * nbPCouronnesA);
+		AttributeManager.addAttribute(feat, "Ouverture", ouverture, "Double");
+
+		return feat;
+	}
+
+	/**
+	 * Calcule les points visés par castOnSolidPosition : les sommets des faces
+	 * découpées par une projection sphérique centrée sur centre. Les faces
+	 * invalides sont retirées de la projection, qui est conservée dans
+	 * sphericalProjection.
+	 */
+	private DirectPositionList aimsOnSolid(IDirectPosition centre, IFeatureCollection<IFeature> lFeat, double rayon) {
+
+		// On créer une projection sphérique
+		// Elle permettra de trouver les entités potentiellement intersectées
+		// par le
+		// lancer grâce aux coordonnées angulaires
+		SphericalProjection sp = new SphericalProjection(lFeat, centre, rayon, true);
+		this.sphericalProjection = sp;
+
+		IFeatureCollection<IFeature> featC = sp.getLFeatMapped();
+
+		IFeatureCollection<IFeature> featCut = sp.getFeatToProject();
+
+		int nbElemT = featC.size();
+
+		for (int i = 0; i < nbElemT; i++) {
+
+			if (!featC.get(i).getGeom().isValid()) {
+				featC.remove(i);
+				featCut.remove(i);
+				i--;
+				nbElemT--;
+
+			}
+
+		}
+
+		DirectPositionList aims = new DirectPositionList();
+
+		for (int i = 0; i < nbElemT; i++) {
+			GM_Polygon polyTemp = (GM_Polygon) featCut.get(i).getGeom();
+
+			aims.addAll(polyTemp.coord());
+
+		}
+
+		return aims;
+	}
+
+	/**
+	 * Lancer de rayon vers les points visés, à l'aide de la hiérarchie de
+	 * volumes englobants pour la recherche des intersections
+	 */
+	private IDirectPositionList castOnSolidPositionBVH(IDirectPosition centre, DirectPositionList aims,
+			double rayon) {
+
+		DirectPositionList dplOut = new DirectPositionList();
+
+		int nbAims = aims.size();
+
+		for (int i = 0; i < nbAims; i++) {
+
+			IDirectPosition dpTemp = this.bvh.firstHit(centre, aims.get(i), rayon);
+
+			if (dpTemp != null) {
+				dplOut.add(dpTemp);
+			}
+		}
+
+		return dplOut;
+	}
+
 	private IFeature getOptimized(Iterator<IFeature> itFeat) {
 
 		double dMin = Double.POSITIVE_INFINITY;
@@ -1408,6 +1620,21 @@ public class RayCasting {
 
 	}
 
+	/**
+	 * @return la hiérarchie de volumes englobants utilisée (ou null)
+	 */
+	public TriangleBVH getBVH() {
+		return this.bvh;
+	}
+
+	/**
+	 * Fixe la hiérarchie de volumes englobants à utiliser pour les lancers.
+	 * Elle doit avoir été construite sur les mêmes entités que lFeat.
+	 */
+	public void setBVH(TriangleBVH bvh) {
+		this.bvh = bvh;
+	}
+
 	SphericalProjection sphericalProjection;
 
 	public SphericalProjection getSphericalProjection() {
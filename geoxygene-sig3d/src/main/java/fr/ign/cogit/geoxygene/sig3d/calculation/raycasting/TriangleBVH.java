@@ -0,0 +1,806 @@
+package fr.ign.cogit.geoxygene.sig3d.calculation.raycasting;
+
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ITriangle;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableSurface;
+import fr.ign.cogit.geoxygene.convert.FromGeomToSurface;
+import fr.ign.cogit.geoxygene.sig3d.convert.geom.Triangulation2D5;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+
+/**
+ * This software is released under the licence CeCILL
+ *
+ * see LICENSE.TXT
+ *
+ * see <http://www.cecill.info/ http://www.cecill.info/
+ *
+ *
+ *
+ * @copyright IGN
+ *
+ * @version 1.7
+ *
+ *          Hiérarchie de volumes englobants (BVH) sur les faces triangulées
+ *          d'une collection d'entités 3D. L'arbre est construit une seule fois
+ *          selon l'heuristique des aires (SAH) puis aplati dans des tableaux
+ *          de primitives : il est immuable et peut donc être partagé entre
+ *          plusieurs lancers de rayons (différents centres, différents
+ *          threads).
+ *
+ *          Les rayons sont décrits par une origine, une direction unitaire et
+ *          une distance maximale ; les distances renvoyées sont donc des
+ *          distances euclidiennes depuis l'origine.
+ */
+public class TriangleBVH {
+
+  private final static Logger logger = LogManager.getLogger(TriangleBVH.class);
+
+  /**
+   * Distance minimale d'une intersection (évite que le rayon ne touche sa
+   * propre origine)
+   */
+  public static double EPSILON_T = 1E-9;
+
+  /**
+   * Tolérance sur les coordonnées barycentriques : permet de considérer comme
+   * intersection les rayons qui touchent presque les arêtes
+   */
+  public static double EPSILON_BARY = 1E-7;
+
+  /** Nombre de triangles maximum par feuille */
+  private static final int NB_MAX_FEUILLE = 4;
+
+  /** Nombre d'intervalles utilisés pour évaluer la SAH */
+  private static final int NB_BINS = 16;
+
+  /** Coût relatif d'un parcours de noeud par rapport à un test de triangle */
+  private static final double COUT_PARCOURS = 1.0;
+
+  private final IFeatureCollection<IFeature> lFeat;
+
+  // Triangles (réordonnés selon les feuilles) : sommet 0, arête 1, arête 2
+  private final double[] triangles;
+  // Indice dans lFeat de l'entité dont est issu chaque triangle
+  private final int[] triFeature;
+  private final int nbTriangles;
+
+  // Noeuds aplatis en profondeur d'abord : le fils gauche d'un noeud interne
+  // est le noeud suivant, noeudOffset désigne le fils droit. Pour une feuille,
+  // noeudOffset désigne le premier triangle et noeudNb le nombre de triangles.
+  private double[] noeudBornes;
+  private int[] noeudOffset;
+  private int[] noeudNb;
+  private int nbNoeuds;
+  private int profondeur;
+
+  /**
+   * Construit la hiérarchie sur les faces des entités. Les géométries sont
+   * décomposées en surfaces (solides, multi-surfaces, polygones) puis
+   * triangulées : les triangles sont repris tels quels, les polygones sans
+   * trou sont triangulés par oreilles dans leur plan et les polygones à trous
+   * passent par {@link Triangulation2D5}.
+   *
+   * @param lFeat les entités sur lesquelles on lancera les rayons
+   */
+  public TriangleBVH(IFeatureCollection<IFeature> lFeat) {
+    this.lFeat = lFeat;
+
+    Triangles tri = new Triangles();
+    int nbFeat = lFeat.size();
+    for (int i = 0; i < nbFeat; i++) {
+      IFeature feat = lFeat.get(i);
+      if (feat.getGeom() == null) {
+        continue;
+      }
+      for (IOrientableSurface surf : FromGeomToSurface.convertGeom(feat
+          .getGeom())) {
+        TriangleBVH.triangule(surf, i, tri);
+      }
+    }
+
+    this.nbTriangles = tri.nb;
+    this.triangles = new double[9 * this.nbTriangles];
+    this.triFeature = new int[this.nbTriangles];
+
+    // Boîtes et centres des triangles pour la construction
+    double[] boites = new double[6 * this.nbTriangles];
+    double[] centres = new double[3 * this.nbTriangles];
+    for (int t = 0; t < this.nbTriangles; t++) {
+      for (int k = 0; k < 3; k++) {
+        double a = tri.coord[9 * t + k];
+        double b = tri.coord[9 * t + 3 + k];
+        double c = tri.coord[9 * t + 6 + k];
+        boites[6 * t + k] = Math.min(a, Math.min(b, c));
+        boites[6 * t + 3 + k] = Math.max(a, Math.max(b, c));
+        centres[3 * t + k] = (a + b + c) / 3;
+      }
+    }
+
+    int[] ordre = new int[this.nbTriangles];
+    for (int t = 0; t < this.nbTriangles; t++) {
+      ordre[t] = t;
+    }
+
+    int nbMaxNoeuds = Math.max(1, 2 * this.nbTriangles - 1);
+    this.noeudBornes = new double[6 * nbMaxNoeuds];
+    this.noeudOffset = new int[nbMaxNoeuds];
+    this.noeudNb = new int[nbMaxNoeuds];
+    this.nbNoeuds = 0;
+    this.profondeur = 1;
+
+    if (this.nbTriangles == 0) {
+      this.creeNoeud(boites, ordre, 0, 0);
+    } else {
+      this.construit(boites, centres, ordre, 0, this.nbTriangles, 1);
+    }
+
+    // Copie des triangles dans l'ordre des feuilles sous la forme
+    // (v0, v1 - v0, v2 - v0) attendue par le test d'intersection
+    for (int t = 0; t < this.nbTriangles; t++) {
+      int src = 9 * ordre[t];
+      int dst = 9 * t;
+      for (int k = 0; k < 3; k++) {
+        double v0 = tri.coord[src + k];
+        this.triangles[dst + k] = v0;
+        this.triangles[dst + 3 + k] = tri.coord[src + 3 + k] - v0;
+        this.triangles[dst + 6 + k] = tri.coord[src + 6 + k] - v0;
+      }
+      this.triFeature[t] = tri.feature[ordre[t]];
+    }
+
+    this.noeudBornes = Arrays.copyOf(this.noeudBornes, 6 * this.nbNoeuds);
+    this.noeudOffset = Arrays.copyOf(this.noeudOffset, this.nbNoeuds);
+    this.noeudNb = Arrays.copyOf(this.noeudNb, this.nbNoeuds);
+
+    logger.debug("BVH : " + this.nbTriangles + " triangles, " + this.nbNoeuds
+        + " noeuds, profondeur " + this.profondeur);
+  }
+
+  /**
+   * Construction récursive du sous-arbre couvrant ordre[debut, fin[
+   *
+   * @return l'indice du noeud créé
+   */
+  private int construit(double[] boites, double[] centres, int[] ordre,
+      int debut, int fin, int niveau) {
+
+    this.profondeur = Math.max(this.profondeur, niveau);
+    int noeud = this.creeNoeud(boites, ordre, debut, fin);
+    int nb = fin - debut;
+
+    if (nb <= 2) {
+      return noeud;
+    }
+
+    // Boîte des centres : c'est elle que l'on découpe en intervalles
+    double[] cMin = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+        Double.POSITIVE_INFINITY };
+    double[] cMax = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+        Double.NEGATIVE_INFINITY };
+    for (int i = debut; i < fin; i++) {
+      for (int k = 0; k < 3; k++) {
+        double c = centres[3 * ordre[i] + k];
+        cMin[k] = Math.min(cMin[k], c);
+        cMax[k] = Math.max(cMax[k], c);
+      }
+    }
+
+    double aireNoeud = TriangleBVH.demiAire(this.noeudBornes, 6 * noeud);
+    double meilleurCout = Double.POSITIVE_INFINITY;
+    int meilleurAxe = -1;
+    int meilleurBin = -1;
+
+    int[] binNb = new int[NB_BINS];
+    double[] binBoite = new double[6 * NB_BINS];
+    double[] droiteAire = new double[NB_BINS];
+    int[] droiteNb = new int[NB_BINS];
+    double[] acc = new double[6];
+
+    for (int axe = 0; axe < 3; axe++) {
+      double etendue = cMax[axe] - cMin[axe];
+      if (etendue <= 0) {
+        continue;
+      }
+      double echelle = NB_BINS / etendue;
+
+      Arrays.fill(binNb, 0);
+      for (int b = 0; b < NB_BINS; b++) {
+        TriangleBVH.videBoite(binBoite, 6 * b);
+      }
+      for (int i = debut; i < fin; i++) {
+        int t = ordre[i];
+        int b = TriangleBVH.bin(centres[3 * t + axe], cMin[axe], echelle);
+        binNb[b]++;
+        TriangleBVH.etendBoite(binBoite, 6 * b, boites, 6 * t);
+      }
+
+      // Balayage de droite à gauche puis de gauche à droite
+      TriangleBVH.videBoite(acc, 0);
+      int nbAcc = 0;
+      for (int b = NB_BINS - 1; b > 0; b--) {
+        TriangleBVH.etendBoite(acc, 0, binBoite, 6 * b);
+        nbAcc += binNb[b];
+        droiteAire[b] = nbAcc == 0 ? 0 : TriangleBVH.demiAire(acc, 0);
+        droiteNb[b] = nbAcc;
+      }
+      TriangleBVH.videBoite(acc, 0);
+      nbAcc = 0;
+      for (int b = 0; b < NB_BINS - 1; b++) {
+        TriangleBVH.etendBoite(acc, 0, binBoite, 6 * b);
+        nbAcc += binNb[b];
+        if (nbAcc == 0 || droiteNb[b + 1] == 0) {
+          continue;
+        }
+        double cout = COUT_PARCOURS
+            + (nbAcc * TriangleBVH.demiAire(acc, 0) + droiteNb[b + 1]
+                * droiteAire[b + 1]) / aireNoeud;
+        if (cout < meilleurCout) {
+          meilleurCout = cout;
+          meilleurAxe = axe;
+          meilleurBin = b;
+        }
+      }
+    }
+
+    int milieu;
+    if (meilleurAxe == -1) {
+      // Tous les centres sont confondus : la SAH ne sait pas séparer
+      if (nb <= NB_MAX_FEUILLE) {
+        return noeud;
+      }
+      milieu = (debut + fin) >>> 1;
+    } else {
+      if (meilleurCout >= nb && nb <= NB_MAX_FEUILLE) {
+        return noeud;
+      }
+      // Partition des triangles selon l'intervalle choisi
+      double echelle = NB_BINS / (cMax[meilleurAxe] - cMin[meilleurAxe]);
+      int i = debut;
+      int j = fin - 1;
+      while (i <= j) {
+        if (TriangleBVH.bin(centres[3 * ordre[i] + meilleurAxe],
+            cMin[meilleurAxe], echelle) <= meilleurBin) {
+          i++;
+        } else {
+          int tmp = ordre[i];
+          ordre[i] = ordre[j];
+          ordre[j] = tmp;
+          j--;
+        }
+      }
+      milieu = i;
+    }
+
+    this.construit(boites, centres, ordre, debut, milieu, niveau + 1);
+    this.noeudOffset[noeud] = this.construit(boites, centres, ordre, milieu,
+        fin, niveau + 1);
+    this.noeudNb[noeud] = 0;
+    return noeud;
+  }
+
+  /**
+   * Ajoute un noeud (feuille par défaut) couvrant ordre[debut, fin[
+   */
+  private int creeNoeud(double[] boites, int[] ordre, int debut, int fin) {
+    int noeud = this.nbNoeuds++;
+    TriangleBVH.videBoite(this.noeudBornes, 6 * noeud);
+    for (int i = debut; i < fin; i++) {
+      TriangleBVH.etendBoite(this.noeudBornes, 6 * noeud, boites,
+          6 * ordre[i]);
+    }
+    this.noeudOffset[noeud] = debut;
+    this.noeudNb[noeud] = fin - debut;
+    return noeud;
+  }
+
+  private static int bin(double c, double min, double echelle) {
+    int b = (int) ((c - min) * echelle);
+    return b < 0 ? 0 : (b >= NB_BINS ? NB_BINS - 1 : b);
+  }
+
+  private static void videBoite(double[] b, int o) {
+    b[o] = b[o + 1] = b[o + 2] = Double.POSITIVE_INFINITY;
+    b[o + 3] = b[o + 4] = b[o + 5] = Double.NEGATIVE_INFINITY;
+  }
+
+  private static void etendBoite(double[] b, int o, double[] src, int s) {
+    for (int k = 0; k < 3; k++) {
+      b[o + k] = Math.min(b[o + k], src[s + k]);
+      b[o + 3 + k] = Math.max(b[o + 3 + k], src[s + 3 + k]);
+    }
+  }
+
+  private static double demiAire(double[] b, int o) {
+    double dx = b[o + 3] - b[o];
+    double dy = b[o + 4] - b[o + 1];
+    double dz = b[o + 5] - b[o + 2];
+    return dx * dy + dy * dz + dz * dx;
+  }
+
+  /**
+   * Renvoie le premier triangle intersecté par le rayon
+   *
+   * @param ox origine du rayon
+   * @param oy
+   * @param oz
+   * @param dx direction unitaire du rayon
+   * @param dy
+   * @param dz
+   * @param distMax distance au-delà de laquelle les intersections sont
+   *          ignorées
+   * @param distance si non null, reçoit en première case la distance de
+   *          l'intersection
+   * @return l'indice du triangle intersecté le plus proche ou -1
+   */
+  public int firstHit(double ox, double oy, double oz, double dx, double dy,
+      double dz, double distMax, double[] distance) {
+    return this.parcours(ox, oy, oz, dx, dy, dz, distMax, distance, false);
+  }
+
+  /**
+   * Indique si le rayon rencontre au moins un triangle avant distMax. Plus
+   * rapide que {@link #firstHit} car le parcours s'arrête à la première
+   * intersection trouvée.
+   */
+  public boolean anyHit(double ox, double oy, double oz, double dx,
+      double dy, double dz, double distMax) {
+    return this.parcours(ox, oy, oz, dx, dy, dz, distMax, null, true) != -1;
+  }
+
+  /**
+   * Renvoie le premier point intersecté sur le segment [centre, cible]
+   * prolongé jusqu'à distMax
+   *
+   * @return le point intersecté ou null
+   */
+  public IDirectPosition firstHit(IDirectPosition centre,
+      IDirectPosition cible, double distMax) {
+    double dx = cible.getX() - centre.getX();
+    double dy = cible.getY() - centre.getY();
+    double dz = cible.getZ() - centre.getZ();
+    double norme = Math.sqrt(dx * dx + dy * dy + dz * dz);
+    if (norme == 0) {
+      return null;
+    }
+    dx /= norme;
+    dy /= norme;
+    dz /= norme;
+    double[] d = new double[1];
+    if (this.firstHit(centre.getX(), centre.getY(), centre.getZ(), dx, dy, dz,
+        distMax, d) == -1) {
+      return null;
+    }
+    return new DirectPosition(centre.getX() + d[0] * dx, centre.getY() + d[0]
+        * dy, centre.getZ() + d[0] * dz);
+  }
+
+  /**
+   * Renvoie les distances (triées) de toutes les intersections entre le rayon
+   * et les triangles avant distMax. Lorsque le rayon passe par une arête
+   * commune à deux triangles d'une même entité, l'intersection n'est comptée
+   * qu'une fois.
+   */
+  public double[] allHits(double ox, double oy, double oz, double dx,
+      double dy, double dz, double distMax) {
+    if (this.nbTriangles == 0) {
+      return new double[0];
+    }
+    double[] hits = new double[8];
+    int[] feats = new int[8];
+    int nbHits = 0;
+    double idx = TriangleBVH.inverse(dx);
+    double idy = TriangleBVH.inverse(dy);
+    double idz = TriangleBVH.inverse(dz);
+    int[] pile = new int[this.profondeur + 1];
+    int sommet = 0;
+    pile[sommet++] = 0;
+    while (sommet > 0) {
+      int noeud = pile[--sommet];
+      if (!this.traverseBoite(noeud, ox, oy, oz, idx, idy, idz, distMax)) {
+        continue;
+      }
+      int nb = this.noeudNb[noeud];
+      if (nb == 0) {
+        pile[sommet++] = noeud + 1;
+        pile[sommet++] = this.noeudOffset[noeud];
+        continue;
+      }
+      int premier = this.noeudOffset[noeud];
+      for (int t = premier; t < premier + nb; t++) {
+        double d = this.intersecte(t, ox, oy, oz, dx, dy, dz, distMax);
+        if (d >= 0) {
+          if (nbHits == hits.length) {
+            hits = Arrays.copyOf(hits, 2 * nbHits);
+            feats = Arrays.copyOf(feats, 2 * nbHits);
+          }
+          // Tri par insertion : les intersections sont peu nombreuses
+          int k = nbHits++;
+          while (k > 0 && hits[k - 1] > d) {
+            hits[k] = hits[k - 1];
+            feats[k] = feats[k - 1];
+            k--;
+          }
+          hits[k] = d;
+          feats[k] = this.triFeature[t];
+        }
+      }
+    }
+    // Suppression des doublons (même entité, même distance)
+    int nbOut = 0;
+    for (int k = 0; k < nbHits; k++) {
+      boolean doublon = false;
+      for (int m = nbOut - 1; m >= 0 && hits[k] - hits[m] <= EPSILON_T; m--) {
+        if (feats[m] == feats[k]) {
+          doublon = true;
+          break;
+        }
+      }
+      if (!doublon) {
+        hits[nbOut] = hits[k];
+        feats[nbOut] = feats[k];
+        nbOut++;
+      }
+    }
+    return Arrays.copyOf(hits, nbOut);
+  }
+
+  private int parcours(double ox, double oy, double oz, double dx, double dy,
+      double dz, double distMax, double[] distance, boolean premierTrouve) {
+    if (this.nbTriangles == 0) {
+      return -1;
+    }
+    double idx = TriangleBVH.inverse(dx);
+    double idy = TriangleBVH.inverse(dy);
+    double idz = TriangleBVH.inverse(dz);
+    int[] pile = new int[this.profondeur + 1];
+    int sommet = 0;
+    pile[sommet++] = 0;
+    int triOut = -1;
+    double dMin = distMax;
+    while (sommet > 0) {
+      int noeud = pile[--sommet];
+      if (!this.traverseBoite(noeud, ox, oy, oz, idx, idy, idz, dMin)) {
+        continue;
+      }
+      int nb = this.noeudNb[noeud];
+      if (nb == 0) {
+        // On visite d'abord le fils dont le centre est le plus proche
+        int gauche = noeud + 1;
+        int droite = this.noeudOffset[noeud];
+        if (this.distanceCentre(gauche, ox, oy, oz, dx, dy, dz) <= this
+            .distanceCentre(droite, ox, oy, oz, dx, dy, dz)) {
+          pile[sommet++] = droite;
+          pile[sommet++] = gauche;
+        } else {
+          pile[sommet++] = gauche;
+          pile[sommet++] = droite;
+        }
+        continue;
+      }
+      int premier = this.noeudOffset[noeud];
+      for (int t = premier; t < premier + nb; t++) {
+        double d = this.intersecte(t, ox, oy, oz, dx, dy, dz, dMin);
+        if (d >= 0) {
+          dMin = d;
+          triOut = t;
+          if (premierTrouve) {
+            return t;
+          }
+        }
+      }
+    }
+    if (distance != null && triOut != -1) {
+      distance[0] = dMin;
+    }
+    return triOut;
+  }
+
+  private double distanceCentre(int noeud, double ox, double oy, double oz,
+      double dx, double dy, double dz) {
+    int o = 6 * noeud;
+    double[] b = this.noeudBornes;
+    return ((b[o] + b[o + 3]) * 0.5 - ox) * dx
+        + ((b[o + 1] + b[o + 4]) * 0.5 - oy) * dy
+        + ((b[o + 2] + b[o + 5]) * 0.5 - oz) * dz;
+  }
+
+  /**
+   * Inverse d'une composante de direction. Une composante nulle donne une
+   * valeur finie très grande plutôt que l'infini, ce qui évite un NaN lorsque
+   * l'origine est exactement sur un plan de la boîte.
+   */
+  private static double inverse(double d) {
+    return d == 0 ? Double.MAX_VALUE : 1 / d;
+  }
+
+  /**
+   * Test des plans (slabs) entre le rayon et la boîte d'un noeud
+   */
+  private boolean traverseBoite(int noeud, double ox, double oy, double oz,
+      double idx, double idy, double idz, double distMax) {
+    int o = 6 * noeud;
+    double[] b = this.noeudBornes;
+    double t1 = (b[o] - ox) * idx;
+    double t2 = (b[o + 3] - ox) * idx;
+    double tMin = Math.min(t1, t2);
+    double tMax = Math.max(t1, t2);
+    t1 = (b[o + 1] - oy) * idy;
+    t2 = (b[o + 4] - oy) * idy;
+    tMin = Math.max(tMin, Math.min(t1, t2));
+    tMax = Math.min(tMax, Math.max(t1, t2));
+    t1 = (b[o + 2] - oz) * idz;
+    t2 = (b[o + 5] - oz) * idz;
+    tMin = Math.max(tMin, Math.min(t1, t2));
+    tMax = Math.min(tMax, Math.max(t1, t2));
+    // les arrondis peuvent faire manquer un rayon qui passe par un coin ou une
+    // arête de la boîte : on élargit légèrement l'intervalle
+    double marge = EPSILON_T * Math.max(1, Math.abs(tMax));
+    return tMax + marge >= Math.max(tMin, 0) && tMin <= distMax + marge;
+  }
+
+  /**
+   * Intersection rayon / triangle (Möller - Trumbore)
+   *
+   * @return la distance de l'intersection ou -1
+   */
+  private double intersecte(int t, double ox, double oy, double oz,
+      double dx, double dy, double dz, double distMax) {
+    double[] tr = this.triangles;
+    int o = 9 * t;
+    double e1x = tr[o + 3], e1y = tr[o + 4], e1z = tr[o + 5];
+    double e2x = tr[o + 6], e2y = tr[o + 7], e2z = tr[o + 8];
+
+    double px = dy * e2z - dz * e2y;
+    double py = dz * e2x - dx * e2z;
+    double pz = dx * e2y - dy * e2x;
+    double det = e1x * px + e1y * py + e1z * pz;
+    if (det == 0) {
+      return -1;
+    }
+    double invDet = 1 / det;
+
+    double sx = ox - tr[o], sy = oy - tr[o + 1], sz = oz - tr[o + 2];
+    double u = (sx * px + sy * py + sz * pz) * invDet;
+    if (u < -EPSILON_BARY || u > 1 + EPSILON_BARY) {
+      return -1;
+    }
+
+    double qx = sy * e1z - sz * e1y;
+    double qy = sz * e1x - sx * e1z;
+    double qz = sx * e1y - sy * e1x;
+    double v = (dx * qx + dy * qy + dz * qz) * invDet;
+    if (v < -EPSILON_BARY || u + v > 1 + EPSILON_BARY) {
+      return -1;
+    }
+
+    double d = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+    if (d <= EPSILON_T || d > distMax) {
+      return -1;
+    }
+    return d;
+  }
+
+  /**
+   * @return les entités sur lesquelles la hiérarchie a été construite
+   */
+  public IFeatureCollection<IFeature> getlFeat() {
+    return this.lFeat;
+  }
+
+  /**
+   * @return l'entité dont est issu le triangle d'indice tri
+   */
+  public IFeature getFeature(int tri) {
+    return this.lFeat.get(this.triFeature[tri]);
+  }
+
+  public int getNbTriangles() {
+    return this.nbTriangles;
+  }
+
+  public int getNbNoeuds() {
+    return this.nbNoeuds;
+  }
+
+  /**
+   * Renvoie le sommet k (0, 1 ou 2) du triangle tri
+   */
+  public IDirectPosition getSommet(int tri, int k) {
+    int o = 9 * tri;
+    double[] tr = this.triangles;
+    if (k == 0) {
+      return new DirectPosition(tr[o], tr[o + 1], tr[o + 2]);
+    }
+    int e = o + 3 * k;
+    return new DirectPosition(tr[o] + tr[e], tr[o + 1] + tr[e + 1], tr[o + 2]
+        + tr[e + 2]);
+  }
+
+  /**
+   * Accumulateur de triangles utilisé pendant la construction
+   */
+  private static class Triangles {
+    double[] coord = new double[9 * 64];
+    int[] feature = new int[64];
+    int nb = 0;
+
+    void ajoute(IDirectPosition a, IDirectPosition b, IDirectPosition c,
+        int feat) {
+      double ax = a.getX(), ay = a.getY(), az = TriangleBVH.z(a);
+      double bx = b.getX(), by = b.getY(), bz = TriangleBVH.z(b);
+      double cx = c.getX(), cy = c.getY(), cz = TriangleBVH.z(c);
+      // On ignore les triangles dégénérés
+      double nx = (by - ay) * (cz - az) - (bz - az) * (cy - ay);
+      double ny = (bz - az) * (cx - ax) - (bx - ax) * (cz - az);
+      double nz = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+      if (nx == 0 && ny == 0 && nz == 0) {
+        return;
+      }
+      if (this.nb == this.feature.length) {
+        this.feature = Arrays.copyOf(this.feature, 2 * this.nb);
+        this.coord = Arrays.copyOf(this.coord, 18 * this.nb);
+      }
+      int o = 9 * this.nb;
+      this.coord[o] = ax;
+      this.coord[o + 1] = ay;
+      this.coord[o + 2] = az;
+      this.coord[o + 3] = bx;
+      this.coord[o + 4] = by;
+      this.coord[o + 5] = bz;
+      this.coord[o + 6] = cx;
+      this.coord[o + 7] = cy;
+      this.coord[o + 8] = cz;
+      this.feature[this.nb++] = feat;
+    }
+  }
+
+  private static double z(IDirectPosition dp) {
+    double z = dp.getZ();
+    return Double.isNaN(z) ? 0 : z;
+  }
+
+  /**
+   * Triangule une surface et ajoute les triangles à l'accumulateur
+   */
+  private static void triangule(IOrientableSurface surf, int feat,
+      Triangles tri) {
+    if (surf instanceof ITriangle) {
+      IDirectPositionList dpl = surf.coord();
+      tri.ajoute(dpl.get(0), dpl.get(1), dpl.get(2), feat);
+      return;
+    }
+
+    IDirectPositionList dpl;
+    if (surf instanceof IPolygon) {
+      IPolygon poly = (IPolygon) surf;
+      if (!poly.getInterior().isEmpty()) {
+        for (ITriangle t : Triangulation2D5.triangulateFromSurface(poly)) {
+          IDirectPositionList dplT = t.coord();
+          tri.ajoute(dplT.get(0), dplT.get(1), dplT.get(2), feat);
+        }
+        return;
+      }
+      dpl = poly.getExterior().coord();
+    } else {
+      dpl = surf.coord();
+    }
+
+    int nbP = dpl.size();
+    if (nbP > 1 && dpl.get(0).equals(dpl.get(nbP - 1))) {
+      nbP--;
+    }
+    if (nbP < 3) {
+      return;
+    }
+    if (nbP == 3) {
+      tri.ajoute(dpl.get(0), dpl.get(1), dpl.get(2), feat);
+      return;
+    }
+    TriangleBVH.trianguleOreilles(dpl, nbP, feat, tri);
+  }
+
+  /**
+   * Triangulation par oreilles d'un anneau plan sans trou, dans le plan de
+   * projection qui correspond à la composante dominante de sa normale
+   */
+  private static void trianguleOreilles(IDirectPositionList dpl, int nbP,
+      int feat, Triangles tri) {
+    // Normale de Newell
+    double nx = 0, ny = 0, nz = 0;
+    for (int i = 0; i < nbP; i++) {
+      IDirectPosition a = dpl.get(i);
+      IDirectPosition b = dpl.get((i + 1) % nbP);
+      nx += (a.getY() - b.getY()) * (TriangleBVH.z(a) + TriangleBVH.z(b));
+      ny += (TriangleBVH.z(a) - TriangleBVH.z(b)) * (a.getX() + b.getX());
+      nz += (a.getX() - b.getX()) * (a.getY() + b.getY());
+    }
+    double anx = Math.abs(nx), any = Math.abs(ny), anz = Math.abs(nz);
+    if (anx == 0 && any == 0 && anz == 0) {
+      return;
+    }
+
+    // Coordonnées 2D dans le plan de projection, orientées positivement
+    double[] u = new double[nbP];
+    double[] v = new double[nbP];
+    for (int i = 0; i < nbP; i++) {
+      IDirectPosition p = dpl.get(i);
+      if (anz >= anx && anz >= any) {
+        u[i] = p.getX();
+        v[i] = nz > 0 ? p.getY() : -p.getY();
+      } else if (anx >= any) {
+        u[i] = p.getY();
+        v[i] = nx > 0 ? TriangleBVH.z(p) : -TriangleBVH.z(p);
+      } else {
+        u[i] = TriangleBVH.z(p);
+        v[i] = ny > 0 ? p.getX() : -p.getX();
+      }
+    }
+
+    int[] restants = new int[nbP];
+    for (int i = 0; i < nbP; i++) {
+      restants[i] = i;
+    }
+    int nb = nbP;
+    int i = 0;
+    int sansOreille = 0;
+    while (nb > 3) {
+      int a = restants[(i + nb - 1) % nb];
+      int b = restants[i % nb];
+      int c = restants[(i + 1) % nb];
+      if (TriangleBVH.estOreille(u, v, restants, nb, a, b, c)) {
+        tri.ajoute(dpl.get(a), dpl.get(b), dpl.get(c), feat);
+        int pos = i % nb;
+        System.arraycopy(restants, pos + 1, restants, pos, nb - pos - 1);
+        nb--;
+        sansOreille = 0;
+      } else {
+        i++;
+        if (++sansOreille > nb) {
+          // Anneau dégénéré : on termine en éventail
+          logger.debug("Triangulation par oreilles impossible, éventail");
+          for (int k = 1; k < nb - 1; k++) {
+            tri.ajoute(dpl.get(restants[0]), dpl.get(restants[k]),
+                dpl.get(restants[k + 1]), feat);
+          }
+          return;
+        }
+      }
+    }
+    tri.ajoute(dpl.get(restants[0]), dpl.get(restants[1]),
+        dpl.get(restants[2]), feat);
+  }
+
+  private static boolean estOreille(double[] u, double[] v, int[] restants,
+      int nb, int a, int b, int c) {
+    double cross = (u[b] - u[a]) * (v[c] - v[a]) - (v[b] - v[a])
+        * (u[c] - u[a]);
+    if (cross <= 0) {
+      return false;
+    }
+    for (int k = 0; k < nb; k++) {
+      int p = restants[k];
+      if (p == a || p == b || p == c) {
+        continue;
+      }
+      if (TriangleBVH.cote(u, v, a, b, p) >= 0
+          && TriangleBVH.cote(u, v, b, c, p) >= 0
+          && TriangleBVH.cote(u, v, c, a, p) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static double cote(double[] u, double[] v, int a, int b, int p) {
+    return (u[b] - u[a]) * (v[p] - v[a]) - (v[b] - v[a]) * (u[p] - u[a]);
+  }
+}
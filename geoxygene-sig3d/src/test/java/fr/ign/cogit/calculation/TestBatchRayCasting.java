@@ -0,0 +1,107 @@
+package fr.ign.cogit.calculation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
+import fr.ign.cogit.geoxygene.sig3d.calculation.raycasting.BatchRayCasting;
+import fr.ign.cogit.geoxygene.sig3d.calculation.raycasting.IndicatorVisu;
+import fr.ign.cogit.geoxygene.sig3d.calculation.raycasting.RayCasting;
+import fr.ign.cogit.geoxygene.sig3d.calculation.raycasting.TriangleBVH;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.tools.Utils;
+import junit.framework.TestCase;
+
+
+public class TestBatchRayCasting extends TestCase {
+
+
+	// ---------------------------------- ATTRIBUTES ----------------------------------
+
+	private double epsilon = Math.pow(10, -9);    // Scale error
+
+	private static Logger log = LogManager.getLogger(TestBatchRayCasting.class);
+
+	// ------------------------------------ TESTS -------------------------------------
+
+
+	@Test
+	// --------------------------------------------------------------------------------
+	// Test for batch indicators compared to single point ray casting
+	// --------------------------------------------------------------------------------
+	public void testBatch() {
+
+		log.info("Test for batch indicators compared to single point ray casting");
+
+		IFeatureCollection<IFeature> featC = new FT_FeatureCollection<IFeature>();
+		featC.add(new DefaultFeature(Utils.createCube(0, 0, 0, 10)));
+		featC.add(new DefaultFeature(Utils.createCube(20, 0, 0, 10)));
+
+		TriangleBVH bvh = new TriangleBVH(featC);
+
+		int nbPointsCouronnes = 40;
+		double rayon = 100;
+
+		BatchRayCasting batch = new BatchRayCasting(bvh, nbPointsCouronnes, rayon, false);
+
+		DirectPositionList points = new DirectPositionList();
+		for (int i = 0; i < 50; i++) {
+			points.add(new DirectPosition(15, -5 + i * 0.4, 1.5));
+		}
+		// Inside a building and far from the buildings
+		points.add(new DirectPosition(5, 5, 5));
+		points.add(new DirectPosition(500, 500, 5));
+
+		double[][] table = batch.process(points);
+
+		assertEquals(points.size(), table.length);
+
+		for (int i = 0; i < 50; i++) {
+
+			RayCasting rC = new RayCasting(points.get(i), bvh, nbPointsCouronnes, rayon,
+					RayCasting.TYPE_FIRST_POINT_AND_SPHERE, false);
+			rC.cast();
+			IndicatorVisu iV = new IndicatorVisu(rC);
+
+			assertEquals(iV.getRatioSphere(), table[i][BatchRayCasting.RATIO_SPHERE], epsilon);
+			// DirectPosition rounds coordinates to 10^-6
+			assertEquals(iV.getMinimalRadialDistance(), table[i][BatchRayCasting.DISTANCE_MIN], 1E-5);
+			assertEquals(iV.getNbHit(), (int) table[i][BatchRayCasting.NB_HIT]);
+
+		}
+
+		int dedans = points.size() - 2;
+		assertEquals(0, table[dedans][BatchRayCasting.RATIO_SPHERE], epsilon);
+		assertEquals(0, table[dedans][BatchRayCasting.SKY_VIEW], epsilon);
+		assertEquals(batch.getNbRayons(), (int) table[dedans][BatchRayCasting.NB_HIT]);
+
+		int loin = points.size() - 1;
+		assertEquals(1, table[loin][BatchRayCasting.RATIO_SPHERE], epsilon);
+		assertEquals(1, table[loin][BatchRayCasting.OUVERTURE], epsilon);
+		assertEquals(1, table[loin][BatchRayCasting.SKY_VIEW], epsilon);
+		assertTrue(Double.isNaN(table[loin][BatchRayCasting.DISTANCE_MIN]));
+
+		// Between the two buildings the sky is partly hidden
+		assertTrue(table[10][BatchRayCasting.SKY_VIEW] < 1);
+		assertTrue(table[10][BatchRayCasting.SKY_VIEW] > 0);
+
+		// Streaming into features
+		AtomicInteger count = new AtomicInteger();
+		batch.process(points, f -> count.incrementAndGet());
+		assertEquals(points.size(), count.get());
+
+		IFeatureCollection<IFeature> featOut = batch.processFeatures(points);
+		assertEquals(points.size(), featOut.size());
+		assertEquals(table[3][BatchRayCasting.OUVERTURE],
+				Double.parseDouble(featOut.get(3).getAttribute("openess").toString()), epsilon);
+
+	}
+
+}
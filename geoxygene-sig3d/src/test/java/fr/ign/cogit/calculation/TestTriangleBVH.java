@@ -0,0 +1,257 @@
+package fr.ign.cogit.calculation;
+
+import java.util.Random;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.feature.IFeature;
+import fr.ign.cogit.geoxygene.api.feature.IFeatureCollection;
+import fr.ign.cogit.geoxygene.feature.DefaultFeature;
+import fr.ign.cogit.geoxygene.feature.FT_FeatureCollection;
+import fr.ign.cogit.geoxygene.sig3d.calculation.raycasting.RayCasting;
+import fr.ign.cogit.geoxygene.sig3d.calculation.raycasting.TriangleBVH;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Triangle;
+import fr.ign.cogit.tools.Utils;
+import junit.framework.TestCase;
+
+
+public class TestTriangleBVH extends TestCase {
+
+
+	// ---------------------------------- ATTRIBUTES ----------------------------------
+
+	private double epsilon = Math.pow(10, -9);    // Scale error
+
+	private static Logger log = LogManager.getLogger(TestTriangleBVH.class);
+
+	// ------------------------------------ TESTS -------------------------------------
+
+
+	@Test
+	// --------------------------------------------------------------------------------
+	// Test for first hit and all hits on a cube made of quads
+	// --------------------------------------------------------------------------------
+	public void testCube() {
+
+		log.info("Test for first hit and all hits on a cube made of quads");
+
+		IFeatureCollection<IFeature> featC = new FT_FeatureCollection<IFeature>();
+		featC.add(new DefaultFeature(Utils.createCube(0, 0, 0, 10)));
+
+		TriangleBVH bvh = new TriangleBVH(featC);
+
+		// 6 faces, 2 triangles per face
+		assertEquals(12, bvh.getNbTriangles());
+
+		// From the inside, each axis hits a face at distance 4 or 6
+		double[] d = new double[1];
+		assertTrue(bvh.firstHit(4, 5, 5, -1, 0, 0, 100, d) != -1);
+		assertEquals(4, d[0], epsilon);
+		assertTrue(bvh.firstHit(4, 5, 5, 1, 0, 0, 100, d) != -1);
+		assertEquals(6, d[0], epsilon);
+		assertTrue(bvh.firstHit(5, 5, 4, 0, 0, 1, 100, d) != -1);
+		assertEquals(6, d[0], epsilon);
+
+		// Out of range
+		assertEquals(-1, bvh.firstHit(4, 5, 5, 1, 0, 0, 5.9, d));
+		assertFalse(bvh.anyHit(4, 5, 5, 1, 0, 0, 5.9));
+
+		// From the outside, through two faces
+		double[] hits = bvh.allHits(-2, 5, 5, 1, 0, 0, 100);
+		assertEquals(2, hits.length);
+		assertEquals(2, hits[0], epsilon);
+		assertEquals(12, hits[1], epsilon);
+
+		// Missing ray
+		assertEquals(-1, bvh.firstHit(-2, 15, 5, 1, 0, 0, 100, d));
+
+		assertSame(featC.get(0), bvh.getFeature(0));
+
+	}
+
+
+	@Test
+	// --------------------------------------------------------------------------------
+	// Test for triangulation of a non convex polygon
+	// --------------------------------------------------------------------------------
+	public void testNonConvexPolygon() {
+
+		log.info("Test for triangulation of a non convex polygon");
+
+		// L shaped vertical polygon in plane y = 0
+		DirectPositionList dpl = new DirectPositionList();
+		dpl.add(new DirectPosition(0, 0, 0));
+		dpl.add(new DirectPosition(10, 0, 0));
+		dpl.add(new DirectPosition(10, 0, 5));
+		dpl.add(new DirectPosition(5, 0, 5));
+		dpl.add(new DirectPosition(5, 0, 10));
+		dpl.add(new DirectPosition(0, 0, 10));
+		dpl.add(new DirectPosition(0, 0, 0));
+
+		IFeatureCollection<IFeature> featC = new FT_FeatureCollection<IFeature>();
+		featC.add(new DefaultFeature(new GM_Polygon(new GM_LineString(dpl))));
+
+		TriangleBVH bvh = new TriangleBVH(featC);
+
+		assertEquals(4, bvh.getNbTriangles());
+
+		// Inside the L
+		assertTrue(bvh.anyHit(2, -5, 8, 0, 1, 0, 100));
+		assertTrue(bvh.anyHit(8, -5, 2, 0, 1, 0, 100));
+
+		// In the notch of the L
+		assertFalse(bvh.anyHit(8, -5, 8, 0, 1, 0, 100));
+
+	}
+
+
+	@Test
+	// --------------------------------------------------------------------------------
+	// Test for comparison between BVH traversal and brute force
+	// --------------------------------------------------------------------------------
+	public void testBruteForce() {
+
+		log.info("Test for comparison between BVH traversal and brute force");
+
+		Random random = new Random(42);
+
+		IFeatureCollection<IFeature> featC = new FT_FeatureCollection<IFeature>();
+
+		for (int i = 0; i < 500; i++) {
+			double x = random.nextDouble() * 100;
+			double y = random.nextDouble() * 100;
+			double z = random.nextDouble() * 30;
+			featC.add(new DefaultFeature(new GM_Triangle(new DirectPosition(x, y, z),
+					new DirectPosition(x + random.nextDouble() * 10, y + random.nextDouble() * 10, z),
+					new DirectPosition(x, y + random.nextDouble() * 10, z + random.nextDouble() * 10))));
+		}
+
+		TriangleBVH bvh = new TriangleBVH(featC);
+		TriangleBVH bvhUnique;
+
+		double[] d = new double[1];
+
+		for (int i = 0; i < 1000; i++) {
+
+			double ox = random.nextDouble() * 100;
+			double oy = random.nextDouble() * 100;
+			double oz = random.nextDouble() * 30;
+
+			double dx = random.nextGaussian();
+			double dy = random.nextGaussian();
+			double dz = random.nextGaussian();
+			double n = Math.sqrt(dx * dx + dy * dy + dz * dz);
+			dx /= n;
+			dy /= n;
+			dz /= n;
+
+			double[] hits = bvh.allHits(ox, oy, oz, dx, dy, dz, 50);
+
+			// Brute force : one structure per triangle
+			double dMin = Double.POSITIVE_INFINITY;
+			int nbHits = 0;
+			for (int j = 0; j < featC.size(); j++) {
+				IFeatureCollection<IFeature> featUnique = new FT_FeatureCollection<IFeature>();
+				featUnique.add(featC.get(j));
+				bvhUnique = new TriangleBVH(featUnique);
+				if (bvhUnique.firstHit(ox, oy, oz, dx, dy, dz, 50, d) != -1) {
+					nbHits++;
+					dMin = Math.min(dMin, d[0]);
+				}
+			}
+
+			assertEquals(nbHits, hits.length);
+
+			int tri = bvh.firstHit(ox, oy, oz, dx, dy, dz, 50, d);
+			if (nbHits == 0) {
+				assertEquals(-1, tri);
+			} else {
+				assertEquals(dMin, d[0], epsilon);
+				assertEquals(dMin, hits[0], epsilon);
+			}
+		}
+
+	}
+
+
+	@Test
+	// --------------------------------------------------------------------------------
+	// Test for ray casting using a shared BVH
+	// --------------------------------------------------------------------------------
+	public void testRayCasting() {
+
+		log.info("Test for ray casting using a shared BVH");
+
+		IFeatureCollection<IFeature> featC = new FT_FeatureCollection<IFeature>();
+		featC.add(new DefaultFeature(Utils.createCube(0, 0, 0, 10)));
+
+		TriangleBVH bvh = new TriangleBVH(featC);
+
+		int nbPointsCouronnes = 40;
+		double rayon = 100;
+
+		RayCasting rC = new RayCasting(new DirectPosition(5, 5, 5), bvh, nbPointsCouronnes, rayon,
+				RayCasting.TYPE_FIRST_POINT_AND_SPHERE, false);
+		rC.cast();
+
+		// Every ray hits the cube
+		assertEquals(nbPointsCouronnes * nbPointsCouronnes / 4, rC.getDpGenerated().size());
+
+		for (int i = 0; i < rC.getDpGenerated().size(); i++) {
+			double dist = rC.getCentre().distance(rC.getDpGenerated().get(i));
+			assertTrue(dist >= 5 - epsilon);
+			assertTrue(dist <= 5 * Math.sqrt(3) + epsilon);
+		}
+
+	}
+
+	@Test
+	// --------------------------------------------------------------------------------
+	// Test for ray casting on solid positions, with and without BVH
+	// --------------------------------------------------------------------------------
+	public void testRayCastingSolidPosition() {
+
+		log.info("Test for ray casting on solid positions, with and without BVH");
+
+		IFeatureCollection<IFeature> featC = new FT_FeatureCollection<IFeature>();
+		featC.add(new DefaultFeature(Utils.createCube(0, 0, 0, 10)));
+
+		// Wall hiding a part of the cube
+		DirectPositionList dpl = new DirectPositionList();
+		dpl.add(new DirectPosition(-5, 2, 0));
+		dpl.add(new DirectPosition(-5, 8, 0));
+		dpl.add(new DirectPosition(-5, 8, 4));
+		dpl.add(new DirectPosition(-5, 2, 4));
+		dpl.add(new DirectPosition(-5, 2, 0));
+		featC.add(new DefaultFeature(new GM_Polygon(new GM_LineString(dpl))));
+
+		TriangleBVH bvh = new TriangleBVH(featC);
+
+		DirectPosition centre = new DirectPosition(-15, 4.5, 6.5);
+		double rayon = 30;
+
+		RayCasting rCLegacy = new RayCasting(centre, featC, 20, rayon, RayCasting.TYPE_CAST_SOLID_POINT, false);
+		rCLegacy.cast();
+
+		RayCasting rCBVH = new RayCasting(centre, bvh, 20, rayon, RayCasting.TYPE_CAST_SOLID_POINT, false);
+		rCBVH.cast();
+
+		int nbPoints = rCLegacy.getDpGenerated().size();
+		assertTrue(nbPoints > 0);
+		assertEquals(nbPoints, rCBVH.getDpGenerated().size());
+
+		// Legacy intersections are computed on the projected faces and are only
+		// accurate to a few 1E-5
+		for (int i = 0; i < nbPoints; i++) {
+			assertTrue(rCLegacy.getDpGenerated().get(i).distance(rCBVH.getDpGenerated().get(i)) < 1E-3);
+		}
+
+	}
+
+}
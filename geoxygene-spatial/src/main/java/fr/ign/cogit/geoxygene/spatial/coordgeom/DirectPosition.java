@@ -60,8 +60,11 @@ public class DirectPosition implements IDirectPosition {
     this.CRS = crs;
   }
 
-  /** Tableau des coordonnées du point. */
-  protected double[] coordinate = new double[3];
+  /**
+   * Tableau des coordonnées du point. Vaut null pour les vues sur une liste
+   * compacte ({@link PackedDirectPosition}).
+   */
+  protected double[] coordinate;
   /** Dimension des coordonnées (2D ou 3D) - dimension = coordinate.length. */
   protected int dimension = 3;
 
@@ -73,6 +76,7 @@ public class DirectPosition implements IDirectPosition {
    * vide.
    */
   public DirectPosition() {
+    this.coordinate = new double[3];
     this.coordinate[0] = Double.NaN;
     this.coordinate[1] = Double.NaN;
     this.coordinate[2] = Double.NaN;
@@ -92,23 +96,35 @@ public class DirectPosition implements IDirectPosition {
    * tableau est recopie et non passe en reference.
    */
   public DirectPosition(final double[] coord) {
+    this.coordinate = new double[3];
     this.setCoordinate(coord);
   }
 
   /** Constructeur à partir de 2 coordonnées. */
   public DirectPosition(final double X, final double Y) {
+    this.coordinate = new double[3];
     this.setCoordinate(X, Y);
   }
 
   /** Constructeur à partir de 3 coordonnées. */
   public DirectPosition(final double X, final double Y, final double Z) {
+    this.coordinate = new double[3];
     this.setCoordinate(X, Y, Z);
   }
 
   public DirectPosition(DirectPosition p) {
+    this.coordinate = new double[3];
     this.setCoordinate(p.getCoordinate());
   }
 
+  /**
+   * Constructeur des vues sur une liste compacte : aucun tableau de
+   * coordonnées n'est alloué, les accesseurs sont redéfinis.
+   * @param liste liste compacte portant les coordonnées
+   */
+  DirectPosition(final PackedDirectPositionList liste) {
+  }
+
   // ////////////////////////////////////////////////////////////////////////////////////////
   // Methodes get
   // ////////////////////////////////////////////////////////////////////////////////////////
@@ -50,8 +50,27 @@ public class DirectPositionList implements IDirectPositionList {
   /** La liste des DirectPosition. */
   protected List<IDirectPosition> list = new ArrayList<IDirectPosition>(0);
 
+  /**
+   * Nombre de modifications de la liste, incrémenté par ses méthodes de
+   * modification (cf. {@link #getModCount()}).
+   */
+  protected transient int modCount = 0;
+
+  /**
+   * Renvoie le nombre de modifications apportées à la liste par ses méthodes.
+   * Permet aux géométries qui utilisent cette liste de savoir si leurs données
+   * calculées (géométrie JTS équivalente par exemple) sont encore valides. Sauf
+   * pour {@link PackedDirectPositionList}, les modifications faites directement
+   * sur les positions ou via {@link #getList()} ne sont pas comptées.
+   * @return le nombre de modifications de la liste
+   */
+  public int getModCount() {
+    return this.modCount;
+  }
+
   @Override
   public void setList(List<IDirectPosition> theList) {
+    this.modCount++;
     this.list = theList;
   }
 
@@ -67,41 +86,49 @@ public class DirectPositionList implements IDirectPositionList {
 
   @Override
   public void set(int i, IDirectPosition value) {
+    this.modCount++;
     this.list.set(i, value);
   }
 
   @Override
   public boolean add(IDirectPosition value) {
+    this.modCount++;
     return this.list.add(value);
   }
 
   @Override
   public void add(int i, IDirectPosition value) {
+    this.modCount++;
     this.list.add(i, value);
   }
 
   @Override
   public boolean addAll(IDirectPositionList theList) {
+    this.modCount++;
     return this.list.addAll(theList.getList());
   }
 
   @Override
   public void remove(IDirectPosition value) {
+    this.modCount++;
     this.list.remove(value);
   }
 
   @Override
   public void remove(int i) {
+    this.modCount++;
     this.list.remove(i);
   }
 
   @Override
   public void removeAll(IDirectPositionList theList) {
+    this.modCount++;
     this.list.removeAll(theList.getList());
   }
 
   @Override
   public void clear() {
+    this.modCount++;
     this.list.clear();
   }
 
@@ -214,7 +241,11 @@ public class DirectPositionList implements IDirectPositionList {
 
   @Override
   public boolean addAll(Collection<? extends IDirectPosition> c) {
-    return this.addAll((DirectPositionList) c);
+    this.modCount++;
+    if (c instanceof IDirectPositionList) {
+      return this.addAll((IDirectPositionList) c);
+    }
+    return this.list.addAll(c);
   }
 
   @Override
@@ -234,16 +265,19 @@ public class DirectPositionList implements IDirectPositionList {
 
   @Override
   public boolean remove(Object o) {
+    this.modCount++;
     return this.list.remove(o);
   }
 
   @Override
   public boolean removeAll(Collection<?> c) {
+    this.modCount++;
     return this.list.removeAll(c);
   }
 
   @Override
   public boolean retainAll(Collection<?> c) {
+    this.modCount++;
     return this.list.retainAll(c);
   }
 
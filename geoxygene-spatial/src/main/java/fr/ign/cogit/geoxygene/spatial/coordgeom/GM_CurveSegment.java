@@ -89,4 +89,9 @@ abstract public class GM_CurveSegment extends GM_Curve implements ICurveSegment
 
   @Override
   public abstract ICurveSegment reverse();
+
+  @Override
+  protected boolean isCacheable() {
+    return false;
+  }
 }
@@ -40,6 +40,7 @@ import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineSegment;
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
 import fr.ign.cogit.geoxygene.contrib.geometrie.Operateurs;
+import fr.ign.cogit.geoxygene.spatial.geomroot.ModificationStamp;
 
 /**
  * Polyligne. L'attribut "interpolation" est egal à "linear".
@@ -74,11 +75,13 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
   @Override
   public void setControlPoint(int i, IDirectPosition value) {
     this.controlPoint.set(i, value);
+    this.invalidateCache();
   }
 
   @Override
   public void addControlPoint(IDirectPosition value) {
     this.controlPoint.add(value);
+    this.invalidateCache();
   }
 
   /**
@@ -93,21 +96,25 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
       }
     }
     this.controlPoint.add(value);
+    this.invalidateCache();
   }
 
   @Override
   public void addControlPoint(int i, IDirectPosition value) {
     this.controlPoint.add(i, value);
+    this.invalidateCache();
   }
 
   @Override
   public void removeControlPoint(IDirectPosition value) {
     this.controlPoint.remove(value);
+    this.invalidateCache();
   }
 
   @Override
   public void removeControlPoint(int i) {
     this.controlPoint.remove(i);
+    this.invalidateCache();
   }
 
   @Override
@@ -128,10 +135,18 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
     this(Arrays.asList(list));
   }
 
-  /** Constructeur à partir d'une liste de DirectPosition. */
+  /**
+   * Constructeur à partir d'une liste de DirectPosition. Une liste compacte (
+   * {@link PackedDirectPositionList}) est recopiée en conservant son stockage
+   * compact.
+   */
   public GM_LineString(IDirectPositionList points) {
     super();
     this.segment.add(this);
+    if (points instanceof PackedDirectPositionList) {
+      this.controlPoint = ((PackedDirectPositionList) points).clone();
+      return;
+    }
     this.controlPoint = new DirectPositionList();
     this.controlPoint.addAll(points);
     // if (this.controlPoint.size() == 1) {
@@ -146,7 +161,10 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
   public GM_LineString(IDirectPositionList points, boolean allowRepeated) {
     super();
     this.segment.add(this);
-    this.controlPoint = new DirectPositionList();
+    this.controlPoint = (points instanceof PackedDirectPositionList)
+        ? new PackedDirectPositionList(points.size(),
+            ((PackedDirectPositionList) points).getDimension())
+        : new DirectPositionList();
     for (IDirectPosition p : points) {
       this.addControlPoint(p, allowRepeated);
     }
@@ -171,6 +189,9 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
 
   @Override
   public ILineString reverse() {
+    if (this.controlPoint instanceof PackedDirectPositionList) {
+      return new GM_LineString(this.controlPoint.reverse());
+    }
     List<IDirectPosition> points = new ArrayList<IDirectPosition>();
     int n = this.controlPoint.size();
     for (int i = 0; i < n; i++) {
@@ -203,6 +224,9 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
 
   @Override
   public GM_LineString getNegative() {
+    if (this.controlPoint instanceof PackedDirectPositionList) {
+      return new GM_LineString(this.controlPoint.reverse());
+    }
     List<IDirectPosition> list = new ArrayList<IDirectPosition>(
         this.controlPoint.getList());
     Collections.reverse(list);
@@ -255,4 +279,14 @@ public class GM_LineString extends GM_CurveSegment implements ILineString {
     }
     return new double[] { minParam };
   }
+
+  @Override
+  protected boolean isCacheable() {
+    return true;
+  }
+
+  @Override
+  protected void stampComponents(ModificationStamp stamp) {
+    stamp.add(this.controlPoint);
+  }
 }
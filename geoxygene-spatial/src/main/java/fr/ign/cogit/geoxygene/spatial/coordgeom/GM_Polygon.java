@@ -35,6 +35,7 @@ import fr.ign.cogit.geoxygene.api.spatial.geomprim.ISurface;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.ISurfaceBoundary;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_SurfaceBoundary;
+import fr.ign.cogit.geoxygene.spatial.geomroot.ModificationStamp;
 
 /**
  * Polygone : morceau de surface plan (les arêtes constituant la frontière sont
@@ -80,6 +81,7 @@ public class GM_Polygon extends GM_SurfacePatch implements IPolygon {
   @Override
   public void setExterior(IRing value) {
     this.exterior = value;
+    this.invalidateCache();
   }
 
   @Override
@@ -106,26 +108,31 @@ public class GM_Polygon extends GM_SurfacePatch implements IPolygon {
   @Override
   public void setInterior(int i, IRing value) {
     this.interior.set(i, value);
+    this.invalidateCache();
   }
 
   @Override
   public void addInterior(IRing value) {
     this.interior.add(value);
+    this.invalidateCache();
   }
 
   @Override
   public void addInterior(int i, IRing value) {
     this.interior.add(i, value);
+    this.invalidateCache();
   }
 
   @Override
   public void removeInterior(IRing value) {
     this.interior.remove(value);
+    this.invalidateCache();
   }
 
   @Override
   public void removeInterior(int i) {
     this.interior.remove(i);
+    this.invalidateCache();
   }
 
   @Override
@@ -347,4 +354,17 @@ public class GM_Polygon extends GM_SurfacePatch implements IPolygon {
     }
     return signedArea > 0;
   }
+
+  @Override
+  protected boolean isCacheable() {
+    return true;
+  }
+
+  @Override
+  protected void stampComponents(ModificationStamp stamp) {
+    stamp.add(this.exterior);
+    for (IRing ring : this.interior) {
+      stamp.add(ring);
+    }
+  }
 }
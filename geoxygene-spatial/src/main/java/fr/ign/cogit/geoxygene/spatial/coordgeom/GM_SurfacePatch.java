@@ -116,4 +116,9 @@ abstract public class GM_SurfacePatch extends GM_Surface
     System.out
         .println("Méthode inapplicable sur un GM_SurfacePatch. La méthode ne fait rien."); //$NON-NLS-1$
   }
+
+  @Override
+  protected boolean isCacheable() {
+    return false;
+  }
 }
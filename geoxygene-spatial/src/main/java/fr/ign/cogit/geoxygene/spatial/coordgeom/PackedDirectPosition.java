@@ -0,0 +1,248 @@
+/*
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ */
+
+
+package fr.ign.cogit.geoxygene.spatial.coordgeom;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
+
+/**
+ * Vue sur une position d'une {@link PackedDirectPositionList} : la vue ne
+ * porte pas de coordonnées, elle lit et écrit directement dans le tableau de la
+ * liste. Les règles d'arrondi des modifications sont celles de
+ * {@link DirectPosition}.
+ * <p>
+ * {@link #getCoordinate()} renvoie une copie des coordonnées : la modification
+ * de ce tableau n'est pas reportée dans la liste.
+ */
+public class PackedDirectPosition extends DirectPosition {
+  /** Liste portant les coordonnées. */
+  private final PackedDirectPositionList liste;
+  /** Indice de la position dans la liste. */
+  private final int index;
+
+  PackedDirectPosition(PackedDirectPositionList liste, int index) {
+    super(liste);
+    this.liste = liste;
+    this.index = index;
+  }
+
+  /** @return la liste portant les coordonnées de la vue */
+  public PackedDirectPositionList getList() {
+    return this.liste;
+  }
+
+  /** @return l'indice de la position dans la liste */
+  public int getIndex() {
+    return this.index;
+  }
+
+  private static double round(double x) {
+    return Math.round(x * Math.pow(10, DirectPosition.PRECISION))
+        / Math.pow(10, DirectPosition.PRECISION);
+  }
+
+  @Override
+  public double[] getCoordinate() {
+    return new double[] { this.getX(), this.getY(), this.getZ() };
+  }
+
+  @Override
+  public double getCoordinate(final int i) {
+    switch (i) {
+      case 0:
+        return this.getX();
+      case 1:
+        return this.getY();
+      case 2:
+        return this.getZ();
+      default:
+        throw new ArrayIndexOutOfBoundsException(i);
+    }
+  }
+
+  @Override
+  public double getX() {
+    return this.liste.getX(this.index);
+  }
+
+  @Override
+  public double getY() {
+    return this.liste.getY(this.index);
+  }
+
+  @Override
+  public double getZ() {
+    return this.liste.getZ(this.index);
+  }
+
+  @Override
+  public void setCoordinate(final double[] coord) {
+    this.setCoordinate(coord[0], coord[1]);
+    if (coord.length == 3) {
+      this.setZ(coord[2]);
+    }
+  }
+
+  @Override
+  public void setCoordinate(final IPoint thePoint) {
+    this.setCoordinate(thePoint.getPosition().getCoordinate());
+  }
+
+  @Override
+  public void setCoordinate(final int i, final double x) {
+    switch (i) {
+      case 0:
+        this.setX(x);
+        break;
+      case 1:
+        this.setY(x);
+        break;
+      case 2:
+        this.setZ(x);
+        break;
+      default:
+        throw new ArrayIndexOutOfBoundsException(i);
+    }
+  }
+
+  @Override
+  public void setCoordinate(final double x, final double y) {
+    this.setX(x);
+    this.setY(y);
+    this.liste.setZ(this.index, Double.NaN);
+  }
+
+  @Override
+  public void setCoordinate(final double x, final double y, final double z) {
+    this.setX(x);
+    this.setY(y);
+    this.setZ(z);
+  }
+
+  @Override
+  public void setX(final double x) {
+    this.liste.setX(this.index, round(x));
+  }
+
+  @Override
+  public void setY(final double y) {
+    this.liste.setY(this.index, round(y));
+  }
+
+  @Override
+  public void setZ(final double z) {
+    this.liste.setZ(this.index, round(z));
+  }
+
+  @Override
+  public void move(final IDirectPosition offsetPoint) {
+    if (this.dimension == offsetPoint.getDimension()) {
+      this.move(offsetPoint.getX(), offsetPoint.getY(), offsetPoint.getZ());
+    }
+  }
+
+  @Override
+  public void move(final double offsetX, final double offsetY) {
+    this.liste.setX(this.index, this.getX() + offsetX);
+    this.liste.setY(this.index, this.getY() + offsetY);
+  }
+
+  @Override
+  public void move(final double offsetX, final double offsetY,
+      final double offsetZ) {
+    this.move(offsetX, offsetY);
+    this.liste.setZ(this.index, this.getZ() + offsetZ);
+  }
+
+  @Override
+  public void move(double[] v, double factor) {
+    if (v.length > 0) {
+      this.liste.setX(this.index, this.getX() + factor * v[0]);
+    }
+    if (v.length > 1) {
+      this.liste.setY(this.index, this.getY() + factor * v[1]);
+    }
+    if (v.length > 2) {
+      this.liste.setZ(this.index, this.getZ() + factor * v[2]);
+    }
+  }
+
+  @Override
+  public boolean equals(final IDirectPosition pt, final double tolerance) {
+    double x1 = this.getX(), x2 = pt.getX();
+    if ((x2 > x1 + tolerance) || (x2 < x1 - tolerance)) {
+      return false;
+    }
+    x1 = this.getY();
+    x2 = pt.getY();
+    if ((x2 > x1 + tolerance) || (x2 < x1 - tolerance)) {
+      return false;
+    }
+    x1 = this.getZ();
+    x2 = pt.getZ();
+    if (!Double.isNaN(x1) && !Double.isNaN(x2)) {
+      if ((x2 > x1 + tolerance) || (x2 < x1 - tolerance)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean equals2D(final IDirectPosition pt, final double tolerance) {
+    double x1 = this.getX(), x2 = pt.getX();
+    if ((x2 > x1 + tolerance) || (x2 < x1 - tolerance)) {
+      return false;
+    }
+    x1 = this.getY();
+    x2 = pt.getY();
+    return !((x2 > x1 + tolerance) || (x2 < x1 - tolerance));
+  }
+
+  @Override
+  public Object clone() {
+    return new DirectPosition(this.getX(), this.getY(), this.getZ());
+  }
+
+  @Override
+  public double[] minus(IDirectPosition p2, double factor) {
+    double[] difference = new double[Math.min(3, p2.getCoordinate().length)];
+    for (int i = 0; i < difference.length; i++) {
+      difference[i] = (this.getCoordinate(i) - p2.getCoordinate(i)) * factor;
+    }
+    return difference;
+  }
+
+  @Override
+  public int hashCode() {
+    return Double.valueOf(this.getX()).hashCode()
+        ^ Double.valueOf(this.getY()).hashCode()
+        ^ Double.valueOf(this.getZ()).hashCode();
+  }
+}
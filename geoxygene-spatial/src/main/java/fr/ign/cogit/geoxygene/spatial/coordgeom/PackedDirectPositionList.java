@@ -0,0 +1,584 @@
+/*
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.spatial.coordgeom;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+
+/**
+ * Liste de DirectPosition compacte : les coordonnées sont stockées dans un
+ * unique tableau de doubles (x,y ou x,y,z entrelacés) au lieu d'un objet
+ * {@link DirectPosition} et de son tableau par sommet.
+ * <p>
+ * La liste est en 2D tant qu'aucune position avec un Z défini (différent de
+ * NaN) n'y est écrite ; elle passe alors en 3D. Les positions renvoyées par
+ * {@link #get(int)} ou par les itérateurs sont des vues (
+ * {@link PackedDirectPosition}) : leurs modifications sont reportées dans la
+ * liste, et elles désignent un indice et non un sommet. Une vue ne doit donc
+ * pas être conservée après une insertion ou une suppression dans la liste ; il
+ * faut la cloner pour obtenir une position indépendante. Pour la même raison,
+ * deux appels à {@link #get(int)} ne renvoient pas le même objet et les tests
+ * d'identité entre positions n'ont pas de sens.
+ * <p>
+ * Les boucles sur les sommets peuvent éviter toute création d'objet en
+ * utilisant {@link #getX(int)}, {@link #getY(int)} et {@link #getZ(int)}.
+ */
+public class PackedDirectPositionList extends DirectPositionList {
+  /** Coordonnées entrelacées des positions. */
+  double[] coords;
+  /** Nombre de positions. */
+  int size;
+  /** Nombre de coordonnées stockées par position (2 ou 3). */
+  int dimension;
+
+  /** Constructeur par défaut : liste 2D vide. */
+  public PackedDirectPositionList() {
+    this(10, 2);
+  }
+
+  /**
+   * Constructeur d'une liste vide.
+   * @param capacite nombre de positions prévu
+   * @param dimension nombre de coordonnées stockées par position (2 ou 3)
+   */
+  public PackedDirectPositionList(int capacite, int dimension) {
+    this(new double[Math.max(capacite, 0) * checkDimension(dimension)], 0,
+        dimension);
+  }
+
+  /**
+   * Constructeur à partir d'un tableau de coordonnées entrelacées. Le tableau
+   * n'est pas recopié mais référencé.
+   * @param coords coordonnées entrelacées
+   * @param dimension nombre de coordonnées par position (2 ou 3)
+   */
+  public PackedDirectPositionList(double[] coords, int dimension) {
+    this(coords, coords.length / checkDimension(dimension), dimension);
+  }
+
+  /**
+   * Constructeur à partir d'un tableau de coordonnées entrelacées dont seules
+   * les premières positions sont utilisées. Le tableau n'est pas recopié mais
+   * référencé.
+   * @param coords coordonnées entrelacées
+   * @param size nombre de positions utilisées
+   * @param dimension nombre de coordonnées par position (2 ou 3)
+   */
+  public PackedDirectPositionList(double[] coords, int size, int dimension) {
+    checkDimension(dimension);
+    if (size < 0 || size * dimension > coords.length) {
+      throw new IllegalArgumentException("Taille " + size //$NON-NLS-1$
+          + " incompatible avec un tableau de longueur " + coords.length); //$NON-NLS-1$
+    }
+    this.coords = coords;
+    this.size = size;
+    this.dimension = dimension;
+    this.list = new Vue();
+  }
+
+  /**
+   * Constructeur par recopie des positions d'une liste quelconque.
+   * @param positions positions à recopier
+   */
+  public PackedDirectPositionList(Collection<? extends IDirectPosition> positions) {
+    this(positions.size(), 2);
+    this.addAll(positions);
+  }
+
+  private static int checkDimension(int dimension) {
+    if (dimension != 2 && dimension != 3) {
+      throw new IllegalArgumentException("Dimension " + dimension //$NON-NLS-1$
+          + " non gérée (2 ou 3 attendue)"); //$NON-NLS-1$
+    }
+    return dimension;
+  }
+
+  /** @return nombre de coordonnées stockées par position (2 ou 3) */
+  public int getDimension() {
+    return this.dimension;
+  }
+
+  /**
+   * Renvoie le tableau de coordonnées entrelacées. Le tableau est partagé avec
+   * la liste et peut être plus long que {@code size() * getDimension()}.
+   * @return le tableau de coordonnées de la liste
+   */
+  public double[] getCoordinates() {
+    return this.coords;
+  }
+
+  /** Réduit le tableau de coordonnées au nombre de positions utilisées. */
+  public void trimToSize() {
+    if (this.coords.length != this.size * this.dimension) {
+      this.coords = Arrays.copyOf(this.coords, this.size * this.dimension);
+    }
+  }
+
+  public double getX(int i) {
+    this.checkIndex(i);
+    return this.coords[i * this.dimension];
+  }
+
+  public double getY(int i) {
+    this.checkIndex(i);
+    return this.coords[i * this.dimension + 1];
+  }
+
+  public double getZ(int i) {
+    this.checkIndex(i);
+    return (this.dimension == 3) ? this.coords[i * 3 + 2] : Double.NaN;
+  }
+
+  void setX(int i, double x) {
+    this.checkIndex(i);
+    this.modCount++;
+    this.coords[i * this.dimension] = x;
+  }
+
+  void setY(int i, double y) {
+    this.checkIndex(i);
+    this.modCount++;
+    this.coords[i * this.dimension + 1] = y;
+  }
+
+  void setZ(int i, double z) {
+    this.checkIndex(i);
+    if (this.dimension == 2) {
+      if (Double.isNaN(z)) {
+        return;
+      }
+      this.to3D();
+    }
+    this.coords[i * 3 + 2] = z;
+    this.modCount++;
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= this.size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " //$NON-NLS-1$ //$NON-NLS-2$
+          + this.size);
+    }
+  }
+
+  /** Passe le stockage en 3D, les Z existants valant NaN. */
+  private void to3D() {
+    double[] c = new double[Math.max(this.coords.length / 2, this.size) * 3];
+    for (int i = 0, j = 0, k = 0; i < this.size; i++) {
+      c[k++] = this.coords[j++];
+      c[k++] = this.coords[j++];
+      c[k++] = Double.NaN;
+    }
+    this.coords = c;
+    this.dimension = 3;
+  }
+
+  private void ensureCapacity(int n) {
+    if (n * this.dimension > this.coords.length) {
+      int capacite = Math.max(n, (this.coords.length / this.dimension) * 3 / 2 + 1);
+      this.coords = Arrays.copyOf(this.coords, capacite * this.dimension);
+    }
+  }
+
+  /** Écrit les coordonnées de la position à l'indice i (sans contrôle). */
+  private void write(int i, IDirectPosition value) {
+    this.write(i, value.getX(), value.getY(), value.getZ());
+  }
+
+  /** Écrit les coordonnées à l'indice i (sans contrôle). */
+  private void write(int i, double x, double y, double z) {
+    this.modCount++;
+    if (this.dimension == 2 && !Double.isNaN(z)) {
+      this.to3D();
+    }
+    int k = i * this.dimension;
+    this.coords[k] = x;
+    this.coords[k + 1] = y;
+    if (this.dimension == 3) {
+      this.coords[k + 2] = z;
+    }
+  }
+
+  /** @return une position indépendante de la liste, copie de la i-ème */
+  private DirectPosition copy(int i) {
+    return new DirectPosition(this.coords[i * this.dimension],
+        this.coords[i * this.dimension + 1], this.getZ(i));
+  }
+
+  private int indexOf(Object o) {
+    if (!(o instanceof IDirectPosition)) {
+      return -1;
+    }
+    IDirectPosition p = (IDirectPosition) o;
+    for (int i = 0; i < this.size; i++) {
+      if (p.equals(new PackedDirectPosition(this, i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void setList(List<IDirectPosition> theList) {
+    this.modCount++;
+    this.size = 0;
+    this.addAll(theList);
+  }
+
+  /**
+   * Renvoie une vue de la liste sous forme de {@link List}. Les éléments en
+   * sont des vues ; les modifications de la vue sont reportées dans la liste.
+   */
+  @Override
+  public List<IDirectPosition> getList() {
+    return this.list;
+  }
+
+  @Override
+  public IDirectPosition get(int i) {
+    this.checkIndex(i);
+    return new PackedDirectPosition(this, i);
+  }
+
+  @Override
+  public void set(int i, IDirectPosition value) {
+    this.checkIndex(i);
+    this.write(i, value);
+  }
+
+  @Override
+  public boolean add(IDirectPosition value) {
+    this.ensureCapacity(this.size + 1);
+    this.write(this.size++, value);
+    return true;
+  }
+
+  @Override
+  public void add(int i, IDirectPosition value) {
+    if (i < 0 || i > this.size) {
+      throw new IndexOutOfBoundsException("Index: " + i + ", Size: " //$NON-NLS-1$ //$NON-NLS-2$
+          + this.size);
+    }
+    // la valeur peut être une vue sur cette liste : on la lit avant décalage
+    double x = value.getX(), y = value.getY(), z = value.getZ();
+    this.ensureCapacity(this.size + 1);
+    System.arraycopy(this.coords, i * this.dimension, this.coords, (i + 1)
+        * this.dimension, (this.size - i) * this.dimension);
+    this.size++;
+    this.write(i, x, y, z);
+  }
+
+  @Override
+  public boolean addAll(IDirectPositionList theList) {
+    if (theList instanceof PackedDirectPositionList) {
+      PackedDirectPositionList other = (PackedDirectPositionList) theList;
+      if (other.dimension == 3 && this.dimension == 2) {
+        this.to3D();
+      }
+      int n = other.size;
+      this.ensureCapacity(this.size + n);
+      if (other.dimension == this.dimension) {
+        System.arraycopy(other.coords, 0, this.coords, this.size
+            * this.dimension, n * this.dimension);
+      } else {
+        for (int i = 0, j = 0, k = this.size * 3; i < n; i++) {
+          this.coords[k++] = other.coords[j++];
+          this.coords[k++] = other.coords[j++];
+          this.coords[k++] = Double.NaN;
+        }
+      }
+      this.size += n;
+      this.modCount++;
+      return n > 0;
+    }
+    return this.addAll((Collection<? extends IDirectPosition>) theList);
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends IDirectPosition> c) {
+    if (c instanceof PackedDirectPositionList) {
+      return this.addAll((IDirectPositionList) c);
+    }
+    if (c == this.list) {
+      return this.addAll((IDirectPositionList) this);
+    }
+    if (c instanceof IDirectPositionList) {
+      c = ((IDirectPositionList) c).getList();
+    }
+    this.ensureCapacity(this.size + c.size());
+    for (IDirectPosition p : c) {
+      this.add(p);
+    }
+    return !c.isEmpty();
+  }
+
+  @Override
+  public void remove(IDirectPosition value) {
+    this.remove((Object) value);
+  }
+
+  @Override
+  public void remove(int i) {
+    this.checkIndex(i);
+    this.modCount++;
+    System.arraycopy(this.coords, (i + 1) * this.dimension, this.coords, i
+        * this.dimension, (this.size - i - 1) * this.dimension);
+    this.size--;
+  }
+
+  @Override
+  public void removeAll(IDirectPositionList theList) {
+    this.removeAll((Collection<?>) theList);
+  }
+
+  @Override
+  public void clear() {
+    this.modCount++;
+    this.size = 0;
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  public PackedDirectPositionList clone() {
+    return new PackedDirectPositionList(Arrays.copyOf(this.coords, this.size
+        * this.dimension), this.size, this.dimension);
+  }
+
+  /**
+   * Renvoie une copie des coordonnées 2D : ses modifications ne sont pas
+   * reportées dans la liste. Voir {@link #getCoordinates()} pour accéder au
+   * tableau de la liste sans recopie.
+   */
+  @Override
+  public double[] toArray2D() {
+    if (this.dimension == 2) {
+      return Arrays.copyOf(this.coords, this.size * 2);
+    }
+    double[] array = new double[this.size * 2];
+    for (int i = 0, j = 0, k = 0; i < this.size; i++, k++) {
+      array[j++] = this.coords[k++];
+      array[j++] = this.coords[k++];
+    }
+    return array;
+  }
+
+  /**
+   * Renvoie une copie des coordonnées 3D : ses modifications ne sont pas
+   * reportées dans la liste. Voir {@link #getCoordinates()} pour accéder au
+   * tableau de la liste sans recopie.
+   */
+  @Override
+  public double[] toArray3D() {
+    if (this.dimension == 3) {
+      return Arrays.copyOf(this.coords, this.size * 3);
+    }
+    double[] array = new double[this.size * 3];
+    for (int i = 0, j = 0, k = 0; i < this.size; i++) {
+      array[j++] = this.coords[k++];
+      array[j++] = this.coords[k++];
+      array[j++] = Double.NaN;
+    }
+    return array;
+  }
+
+  @Override
+  public double[] toArrayX() {
+    return this.toArray(0);
+  }
+
+  @Override
+  public double[] toArrayY() {
+    return this.toArray(1);
+  }
+
+  @Override
+  public double[] toArrayZ() {
+    if (this.dimension == 2) {
+      double[] array = new double[this.size];
+      Arrays.fill(array, Double.NaN);
+      return array;
+    }
+    return this.toArray(2);
+  }
+
+  /** @return la coordonnée d'indice c de chaque position, en un seul parcours */
+  private double[] toArray(int c) {
+    double[] array = new double[this.size];
+    for (int i = 0, k = c; i < this.size; i++, k += this.dimension) {
+      array[i] = this.coords[k];
+    }
+    return array;
+  }
+
+  @Override
+  public Iterator<IDirectPosition> iterator() {
+    return this.list.iterator();
+  }
+
+  @Override
+  public ListIterator<IDirectPosition> listIterator() {
+    return this.list.listIterator();
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return this.indexOf(o) >= 0;
+  }
+
+  @Override
+  public boolean containsAll(Collection<?> c) {
+    for (Object o : c) {
+      if (!this.contains(o)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    int i = this.indexOf(o);
+    if (i < 0) {
+      return false;
+    }
+    this.remove(i);
+    return true;
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    return this.list.removeAll(c);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    return this.list.retainAll(c);
+  }
+
+  @Override
+  public Object[] toArray() {
+    return this.list.toArray();
+  }
+
+  @Override
+  public <T> T[] toArray(T[] a) {
+    return this.list.toArray(a);
+  }
+
+  @Override
+  public void permuter(int i, int j) {
+    if (i == j) {
+      return;
+    }
+    this.checkIndex(i);
+    this.checkIndex(j);
+    this.modCount++;
+    for (int c = 0; c < this.dimension; c++) {
+      double tmp = this.coords[i * this.dimension + c];
+      this.coords[i * this.dimension + c] = this.coords[j * this.dimension + c];
+      this.coords[j * this.dimension + c] = tmp;
+    }
+  }
+
+  @Override
+  public void inverseOrdre() {
+    int nb = this.size;
+    for (int i = 0; i < nb / 2; i++) {
+      this.permuter(i, nb - 1 - i);
+    }
+  }
+
+  @Override
+  public IDirectPositionList reverse() {
+    PackedDirectPositionList reversed = this.clone();
+    reversed.inverseOrdre();
+    return reversed;
+  }
+
+  /**
+   * Vue de la liste compacte en tant que {@link List}. Les éléments renvoyés
+   * par {@link #set(int, IDirectPosition)} et {@link #remove(int)} sont des
+   * copies indépendantes, la position remplacée ou supprimée n'existant plus
+   * dans la liste.
+   */
+  private class Vue extends AbstractList<IDirectPosition> {
+    @Override
+    public IDirectPosition get(int index) {
+      return PackedDirectPositionList.this.get(index);
+    }
+
+    @Override
+    public int size() {
+      return PackedDirectPositionList.this.size;
+    }
+
+    @Override
+    public IDirectPosition set(int index, IDirectPosition element) {
+      PackedDirectPositionList.this.checkIndex(index);
+      DirectPosition old = PackedDirectPositionList.this.copy(index);
+      PackedDirectPositionList.this.write(index, element);
+      return old;
+    }
+
+    @Override
+    public void add(int index, IDirectPosition element) {
+      PackedDirectPositionList.this.add(index, element);
+      this.modCount++;
+    }
+
+    @Override
+    public IDirectPosition remove(int index) {
+      PackedDirectPositionList.this.checkIndex(index);
+      DirectPosition old = PackedDirectPositionList.this.copy(index);
+      PackedDirectPositionList.this.remove(index);
+      this.modCount++;
+      return old;
+    }
+
+    @Override
+    public void clear() {
+      PackedDirectPositionList.this.clear();
+      this.modCount++;
+    }
+  }
+}
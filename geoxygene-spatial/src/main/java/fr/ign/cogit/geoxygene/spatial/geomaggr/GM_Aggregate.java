@@ -30,6 +30,7 @@ import fr.ign.cogit.geoxygene.api.spatial.geomprim.IBoundary;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
 import fr.ign.cogit.geoxygene.spatial.geomroot.GM_Object;
+import fr.ign.cogit.geoxygene.spatial.geomroot.ModificationStamp;
 
 /**
  * Agrégation quelconque d'objets géométriques. Il n'y a aucune structure
@@ -52,6 +53,7 @@ public class GM_Aggregate<GeomType extends IGeometry> extends GM_Object
   @Override
   public void setList(List<GeomType> L) {
     this.element = L;
+    this.invalidateCache();
   }
 
   @Override
@@ -61,37 +63,44 @@ public class GM_Aggregate<GeomType extends IGeometry> extends GM_Object
 
   @Override
   public GeomType set(int i, GeomType value) {
+    this.invalidateCache();
     return this.element.set(i, value);
   }
 
   @Override
   public boolean add(GeomType value) {
+    this.invalidateCache();
     return this.element.add(value);
   }
 
   @Override
   public boolean addAll(List<GeomType> theList) {
+    this.invalidateCache();
     return this.element.addAll(theList);
   }
 
   @Override
   public void add(int i, GeomType value) {
     this.element.add(i, value);
+    this.invalidateCache();
   }
 
   @Override
   public boolean remove(GeomType value) {
+    this.invalidateCache();
     return this.element.remove(value);
   }
 
   @Override
   public void remove(int i) {
     this.element.remove(i);
+    this.invalidateCache();
   }
 
   @Override
   public void clear() {
     this.element.clear();
+    this.invalidateCache();
   }
 
   @Override
@@ -149,6 +158,7 @@ public class GM_Aggregate<GeomType extends IGeometry> extends GM_Object
 
   @Override
   public boolean addAll(Collection<? extends GeomType> c) {
+    this.invalidateCache();
     return this.element.addAll(c);
   }
 
@@ -175,6 +185,7 @@ public class GM_Aggregate<GeomType extends IGeometry> extends GM_Object
 
   @Override
   public boolean removeAll(Collection<?> c) {
+    this.invalidateCache();
     return this.element.removeAll(c);
   }
 
@@ -198,4 +209,16 @@ public class GM_Aggregate<GeomType extends IGeometry> extends GM_Object
     agg.setCRS(this.getCRS());
     return agg;
   }
+
+  @Override
+  protected boolean isCacheable() {
+    return true;
+  }
+
+  @Override
+  protected void stampComponents(ModificationStamp stamp) {
+    for (GeomType geom : this.element) {
+      stamp.add(geom);
+    }
+  }
 }
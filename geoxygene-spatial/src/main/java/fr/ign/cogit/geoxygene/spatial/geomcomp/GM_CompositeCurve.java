@@ -39,6 +39,7 @@ import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Curve;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_CurveBoundary;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_OrientableCurve;
+import fr.ign.cogit.geoxygene.spatial.geomroot.ModificationStamp;
 
 /**
  * Complexe ayant toutes les propriétés géométriques d'une courbe. C'est une
@@ -365,4 +366,15 @@ public class GM_CompositeCurve extends GM_OrientableCurve implements
   public boolean isMaximal() {
     return (this.sizeSuperComplex() == 0);
   }
+
+  /**
+   * La primitive étant recalculée à partir des générateurs à chaque accès,
+   * seuls les générateurs sont suivis.
+   */
+  @Override
+  protected void stampComponents(ModificationStamp stamp) {
+    for (IOrientableCurve oCurve : this.generator) {
+      stamp.add(oCurve);
+    }
+  }
 }
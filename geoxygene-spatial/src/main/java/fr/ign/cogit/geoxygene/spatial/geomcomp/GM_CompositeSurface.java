@@ -35,6 +35,7 @@ import fr.ign.cogit.geoxygene.api.spatial.geomprim.ISurfaceBoundary;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_OrientableSurface;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Surface;
+import fr.ign.cogit.geoxygene.spatial.geomroot.ModificationStamp;
 
 /**
  * NON UTILISE POUR LE MOMENT. A TERMINER ET TESTER. Complexe ayant toutes les
@@ -306,4 +307,15 @@ public class GM_CompositeSurface extends GM_OrientableSurface implements
   public boolean isMaximal() {
     return (this.sizeSuperComplex() == 0);
   }
+
+  /**
+   * La primitive étant recalculée à partir des générateurs à chaque accès,
+   * seuls les générateurs sont suivis.
+   */
+  @Override
+  protected void stampComponents(ModificationStamp stamp) {
+    for (IOrientableSurface oSurface : this.generator) {
+      stamp.add(oSurface);
+    }
+  }
 }
@@ -40,6 +40,7 @@ import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.ICurve;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.geomroot.ModificationStamp;
 import fr.ign.cogit.geoxygene.spatial.util.Resampler;
 
 /**
@@ -82,6 +83,7 @@ public class GM_Curve extends GM_OrientableCurve implements ICurve {
 
   @Override
   public void setSegment(int i, ICurveSegment value) {
+    this.invalidateCache();
     if ((ICurveSegment.class).isAssignableFrom(this.getClass())) {
       if (i != 0) {
         GM_Curve.logger
@@ -96,6 +98,7 @@ public class GM_Curve extends GM_OrientableCurve implements ICurve {
 
   @Override
   public void addSegment(ICurveSegment value) {
+    this.invalidateCache();
     if ((ICurveSegment.class).isAssignableFrom(this.getClass())) {
       if (this.sizeSegment() > 0) {
         GM_Curve.logger
@@ -111,6 +114,7 @@ public class GM_Curve extends GM_OrientableCurve implements ICurve {
   @Override
   public void addSegment(ICurveSegment value, double tolerance)
       throws Exception {
+    this.invalidateCache();
     if ((ICurveSegment.class).isAssignableFrom(this.getClass())) {
       if (this.sizeSegment() > 0) {
         GM_Curve.logger
@@ -137,6 +141,7 @@ public class GM_Curve extends GM_OrientableCurve implements ICurve {
   @Override
   public void addSegmentTry(ICurveSegment value, double tolerance)
       throws Exception {
+    this.invalidateCache();
     if ((ICurveSegment.class).isAssignableFrom(this.getClass())) {
       if (this.sizeSegment() > 0) {
         GM_Curve.logger
@@ -160,6 +165,7 @@ public class GM_Curve extends GM_OrientableCurve implements ICurve {
 
   @Override
   public void addSegment(int i, ICurveSegment value) {
+    this.invalidateCache();
     if ((ICurveSegment.class).isAssignableFrom(this.getClass())) {
       if (i != 0) {
         GM_Curve.logger
@@ -174,6 +180,7 @@ public class GM_Curve extends GM_OrientableCurve implements ICurve {
 
   @Override
   public void removeSegment(ICurveSegment value) {
+    this.invalidateCache();
     if ((ICurveSegment.class).isAssignableFrom(this.getClass())) {
       GM_Curve.logger
           .error("removeSegment() : Ne fait rien car un GM_CurveSegment ne contient qu'un segment qui est lui-meme."); //$NON-NLS-1$
@@ -184,6 +191,7 @@ public class GM_Curve extends GM_OrientableCurve implements ICurve {
 
   @Override
   public void removeSegment(int i) {
+    this.invalidateCache();
     if ((ICurveSegment.class).isAssignableFrom(this.getClass())) {
       GM_Curve.logger
           .error("removeSegment() : Ne fait rien car un GM_CurveSegment ne contient qu'un segment qui est lui-meme."); //$NON-NLS-1$
@@ -199,6 +207,7 @@ public class GM_Curve extends GM_OrientableCurve implements ICurve {
 
   @Override
   public void clearSegments() {
+    this.invalidateCache();
     this.segment.clear();
   }
 
@@ -394,4 +403,16 @@ public class GM_Curve extends GM_OrientableCurve implements ICurve {
   public double startParam() {
     return 0;
   }
+
+  @Override
+  protected void stampComponents(ModificationStamp stamp) {
+    super.stampComponents(stamp);
+    synchronized (this.segment) {
+      for (ICurveSegment theSegment : this.segment) {
+        if (theSegment != this) {
+          stamp.add(theSegment);
+        }
+      }
+    }
+  }
 }
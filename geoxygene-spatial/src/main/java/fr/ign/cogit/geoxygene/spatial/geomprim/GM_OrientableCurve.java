@@ -31,6 +31,7 @@ import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.ICurve;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.ICurveBoundary;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableCurve;
+import fr.ign.cogit.geoxygene.spatial.geomroot.ModificationStamp;
 
 /**
  * Courbe orientée. L'orientation traduit le sens de paramétrisation. Utilisée
@@ -96,4 +97,15 @@ public class GM_OrientableCurve extends GM_OrientablePrimitive implements
     return this.getPrimitive().coord();
   }
 
+  @Override
+  protected boolean isCacheable() {
+    return true;
+  }
+
+  @Override
+  protected void stampComponents(ModificationStamp stamp) {
+    if (this.getPrimitive() != this) {
+      stamp.add(this.getPrimitive());
+    }
+  }
 }
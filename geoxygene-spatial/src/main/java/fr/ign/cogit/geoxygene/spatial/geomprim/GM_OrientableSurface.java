@@ -32,6 +32,7 @@ import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.IOrientableSurface;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.ISurface;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.ISurfaceBoundary;
+import fr.ign.cogit.geoxygene.spatial.geomroot.ModificationStamp;
 
 /**
  * Surface orientée. A de l'intérêt pour traiter les trous : un trou est une
@@ -122,4 +123,15 @@ public class GM_OrientableSurface extends GM_OrientablePrimitive implements
     return this.getPrimitive().coord();
   }
 
+  @Override
+  protected boolean isCacheable() {
+    return true;
+  }
+
+  @Override
+  protected void stampComponents(ModificationStamp stamp) {
+    if (this.getPrimitive() != this) {
+      stamp.add(this.getPrimitive());
+    }
+  }
 }
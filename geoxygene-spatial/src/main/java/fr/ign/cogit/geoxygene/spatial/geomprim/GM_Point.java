@@ -52,6 +52,7 @@ public class GM_Point extends GM_Primitive implements IPoint {
   @Override
   public void setPosition(IDirectPosition pos) {
     this.position = pos;
+    this.invalidateCache();
   }
 
   /**
@@ -121,4 +122,9 @@ public class GM_Point extends GM_Primitive implements IPoint {
   public IDirectPosition centroid() {
     return this.position;
   }
+
+  @Override
+  protected boolean isCacheable() {
+    return true;
+  }
 }
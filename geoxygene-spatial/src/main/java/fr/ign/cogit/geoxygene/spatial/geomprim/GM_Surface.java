@@ -41,6 +41,7 @@ import fr.ign.cogit.geoxygene.api.spatial.geomprim.ICurve;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.IRing;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.ISurface;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomroot.ModificationStamp;
 
 /**
  * Surface, composée de morceaux de surface. L'orientation vaut nécessairement
@@ -302,4 +303,14 @@ public class GM_Surface extends GM_OrientableSurface implements ISurface
         .error("GM_Surface::coord() : cette méthode ne fonctionne que si la surface est composée d'un seul patch"); //$NON-NLS-1$
     return null;
   }
+
+  @Override
+  protected void stampComponents(ModificationStamp stamp) {
+    super.stampComponents(stamp);
+    for (ISurfacePatch thePatch : this.patch) {
+      if (thePatch != this) {
+        stamp.add(thePatch);
+      }
+    }
+  }
 }
@@ -20,6 +20,10 @@ package fr.ign.cogit.geoxygene.spatial.geomroot;
 
 import java.awt.Color;
 
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
 import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IEnvelope;
@@ -41,6 +45,7 @@ import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
 import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Solid;
 import fr.ign.cogit.geoxygene.util.algo.JtsAlgorithms;
 import fr.ign.cogit.geoxygene.util.conversion.ImgUtil;
+import fr.ign.cogit.geoxygene.util.conversion.JtsGeOxygene;
 import fr.ign.cogit.geoxygene.util.conversion.WktGeOxygene;
 
 /**
@@ -111,6 +116,123 @@ public abstract class GM_Object implements Cloneable, IGeometry {
   @Override
   public void setCRS(int crs) {
     this.CRS = crs;
+    this.invalidateCache();
+  }
+
+  /**
+   * Géométrie JTS équivalente, conservée lorsque le cache est activé (cf.
+   * {@link JtsGeOxygene#setCacheEnabled(boolean)}), avec l'empreinte de la
+   * géométrie au moment de la conversion.
+   */
+  private transient volatile JtsCache jtsCache = null;
+
+  /**
+   * Nombre de modifications de la géométrie, incrémenté par
+   * {@link #invalidateCache()}.
+   */
+  private transient int modCount = 0;
+
+  /** Géométrie JTS conservée et empreinte correspondante. */
+  private static final class JtsCache {
+    final ModificationStamp stamp;
+    final Geometry geom;
+    /** Géométrie JTS préparée, construite à la demande. */
+    volatile PreparedGeometry prepared;
+
+    JtsCache(ModificationStamp stamp, Geometry geom) {
+      this.stamp = stamp;
+      this.geom = geom;
+    }
+  }
+
+  /**
+   * Indique si la géométrie JTS équivalente peut être conservée, c'est-à-dire
+   * si les modifications de tous les composants de la géométrie sont suivies
+   * (cf. {@link #stamp(ModificationStamp)}). Faux par défaut : la géométrie est
+   * alors convertie à chaque appel.
+   * @return vrai si la géométrie JTS équivalente peut être conservée
+   */
+  protected boolean isCacheable() {
+    return false;
+  }
+
+  /**
+   * Ajoute à l'empreinte la géométrie et son nombre de modifications, puis ses
+   * composants (cf. {@link #stampComponents(ModificationStamp)}).
+   * @param stamp l'empreinte à compléter
+   */
+  protected final void stamp(ModificationStamp stamp) {
+    stamp.add(this, this.modCount);
+    this.stampComponents(stamp);
+  }
+
+  /**
+   * Ajoute à l'empreinte les composants de la géométrie (sous-géométries,
+   * listes de positions). À redéfinir par les géométries pour lesquelles
+   * {@link #isCacheable()} est vrai et qui ont des composants.
+   * @param stamp l'empreinte à compléter
+   */
+  protected void stampComponents(ModificationStamp stamp) {
+  }
+
+  /**
+   * @return la géométrie JTS conservée si elle est encore valide, sinon une
+   *         nouvelle conversion, conservée si la géométrie le permet
+   */
+  private JtsCache getJtsCache() throws Exception {
+    ModificationStamp stamp = this.isCacheable() ? ModificationStamp.of(this)
+        : null;
+    JtsCache cache = this.jtsCache;
+    if (stamp != null && cache != null && stamp.equals(cache.stamp)) {
+      return cache;
+    }
+    cache = new JtsCache(stamp, JtsGeOxygene.makeJtsGeom(this));
+    this.jtsCache = (stamp == null) ? null : cache;
+    return cache;
+  }
+
+  /**
+   * Renvoie la géométrie JTS équivalente, convertie au premier appel puis
+   * conservée tant que ni la géométrie ni ses composants (anneaux, éléments,
+   * listes de positions) ne sont modifiés. La géométrie renvoyée est partagée
+   * et ne doit pas être modifiée.
+   * @return la géométrie JTS équivalente
+   * @throws Exception si la conversion échoue
+   * @see JtsGeOxygene#getJtsGeom(IGeometry)
+   */
+  public Geometry getJtsGeom() throws Exception {
+    return this.getJtsCache().geom;
+  }
+
+  /**
+   * Renvoie la géométrie JTS préparée équivalente, construite au premier appel
+   * puis conservée avec la géométrie JTS équivalente.
+   * @return la géométrie JTS préparée équivalente
+   * @throws Exception si la conversion échoue
+   * @see JtsGeOxygene#getPreparedGeom(IGeometry)
+   */
+  public PreparedGeometry getPreparedGeom() throws Exception {
+    JtsCache cache = this.getJtsCache();
+    PreparedGeometry geom = cache.prepared;
+    if (geom == null) {
+      geom = PreparedGeometryFactory.prepare(cache.geom);
+      cache.prepared = geom;
+    }
+    return geom;
+  }
+
+  /**
+   * Invalide les données calculées et conservées sur la géométrie (enveloppe,
+   * géométries JTS équivalentes). Les méthodes de modification des géométries
+   * et des listes de positions l'appellent ou sont suivies automatiquement, y
+   * compris sur les composants (anneaux d'un polygone, éléments d'un agrégat).
+   * Elle doit être appelée explicitement après une modification en place des
+   * positions (par exemple via {@link IDirectPosition#setX(double)}).
+   */
+  public void invalidateCache() {
+    this.envelope = null;
+    this.jtsCache = null;
+    this.modCount++;
   }
 
   @Override
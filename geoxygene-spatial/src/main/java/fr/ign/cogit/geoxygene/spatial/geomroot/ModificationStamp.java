@@ -0,0 +1,135 @@
+/*
+ * This file is part of the GeOxygene project source files. GeOxygene aims at
+ * providing an open framework which implements OGC/ISO specifications for the
+ * development and deployment of geographic (GIS) applications. It is a open
+ * source contribution of the COGIT laboratory at the Institut Géographique
+ * National (the French National Mapping Agency). See:
+ * http://oxygene-project.sourceforge.net Copyright (C) 2005 Institut
+ * Géographique National This library is free software; you can redistribute it
+ * and/or modify it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the License,
+ * or any later version. This library is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser
+ * General Public License for more details. You should have received a copy of
+ * the GNU Lesser General Public License along with this library (see file
+ * LICENSE if present); if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package fr.ign.cogit.geoxygene.spatial.geomroot;
+
+import java.util.Arrays;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+
+/**
+ * Empreinte de l'état d'une géométrie et de ses composants (sous-géométries,
+ * listes de positions) : pour chaque composant, son identité et son nombre de
+ * modifications. Deux empreintes égales de la même géométrie garantissent
+ * qu'aucun composant n'a été remplacé ni modifié par ses méthodes entre les
+ * deux, ce qui permet à {@link GM_Object} de réutiliser la géométrie JTS
+ * équivalente qu'il conserve.
+ * <p>
+ * Une empreinte est incomplète si un composant n'est pas suivi (géométrie
+ * d'une autre implémentation, liste de positions inconnue) : la géométrie
+ * n'est alors pas conservée.
+ *
+ * @author GeOxygene
+ */
+public class ModificationStamp {
+  /** Composants, dans l'ordre de parcours. */
+  private Object[] nodes = new Object[8];
+  /** Nombres de modifications des composants. */
+  private int[] counts = new int[8];
+  /** Nombre de composants. */
+  private int size = 0;
+  /** Faux si un composant n'est pas suivi. */
+  private boolean complete = true;
+
+  ModificationStamp() {
+  }
+
+  /**
+   * @param geom une géométrie
+   * @return l'empreinte de la géométrie, ou null si elle est incomplète
+   */
+  static ModificationStamp of(GM_Object geom) {
+    ModificationStamp stamp = new ModificationStamp();
+    stamp.add(geom);
+    return stamp.complete ? stamp : null;
+  }
+
+  /**
+   * Ajoute un composant et son nombre de modifications.
+   * @param node le composant
+   * @param count son nombre de modifications
+   */
+  public void add(Object node, int count) {
+    if (this.size == this.nodes.length) {
+      this.nodes = Arrays.copyOf(this.nodes, 2 * this.size);
+      this.counts = Arrays.copyOf(this.counts, 2 * this.size);
+    }
+    this.nodes[this.size] = node;
+    this.counts[this.size++] = count;
+  }
+
+  /**
+   * Ajoute une liste de positions. Sa taille est aussi conservée afin de
+   * détecter les ajouts et suppressions faits via
+   * {@link IDirectPositionList#getList()}.
+   * @param list une liste de positions
+   */
+  public void add(IDirectPositionList list) {
+    if (list == null) {
+      this.add(null, 0);
+    } else if (list instanceof DirectPositionList) {
+      this.add(list, ((DirectPositionList) list).getModCount());
+      this.add(list, list.size());
+    } else {
+      this.complete = false;
+    }
+  }
+
+  /**
+   * Ajoute une sous-géométrie et, récursivement, ses composants.
+   * @param geom une sous-géométrie
+   */
+  public void add(IGeometry geom) {
+    if (geom == null) {
+      this.add(null, 0);
+    } else if (geom instanceof GM_Object && ((GM_Object) geom).isCacheable()) {
+      ((GM_Object) geom).stamp(this);
+    } else {
+      this.complete = false;
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = this.size;
+    for (int i = 0; i < this.size; i++) {
+      hash = 31 * hash + this.counts[i];
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof ModificationStamp)) {
+      return false;
+    }
+    ModificationStamp other = (ModificationStamp) obj;
+    if (this.size != other.size || this.complete != other.complete) {
+      return false;
+    }
+    for (int i = 0; i < this.size; i++) {
+      if (this.nodes[i] != other.nodes[i]
+          || this.counts[i] != other.counts[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
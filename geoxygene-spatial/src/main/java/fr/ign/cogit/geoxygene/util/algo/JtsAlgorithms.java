@@ -90,7 +90,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public DirectPosition centroid(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       Point jtsCentroid = jtsGeom.getCentroid();
       return new DirectPosition(jtsCentroid.getX(), jtsCentroid.getY());
     } catch (Exception e) {
@@ -108,7 +108,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public IGeometry convexHull(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       Geometry jtsHull = jtsGeom.convexHull();
       IGeometry result = JtsGeOxygene.makeGeOxygeneGeom(jtsHull);
       return result;
@@ -130,7 +130,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
     }
     Geometry jtsGeom = null;
     try {
-      jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       Geometry jtsBuffer = jtsGeom.buffer(distance);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsBuffer);
     } catch (Exception e) {
@@ -150,7 +150,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public IGeometry buffer(IGeometry geom, double distance, int nSegments) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       Geometry jtsBuffer = jtsGeom.buffer(distance, nSegments);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsBuffer);
     } catch (Exception e) {
@@ -172,7 +172,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   public IGeometry buffer(IGeometry geom, double distance, int nSegments,
       int cap) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       Geometry jtsBuffer = jtsGeom.buffer(distance, nSegments, cap);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsBuffer);
     } catch (Exception e) {
@@ -195,7 +195,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   public IGeometry buffer(IGeometry geom, double distance, int nSegments,
       int cap, int join) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       BufferParameters bufferParam = new BufferParameters(nSegments, cap, join,
           BufferParameters.DEFAULT_MITRE_LIMIT);
       Geometry jtsBuffer = BufferOp.bufferOp(jtsGeom, distance, bufferParam);
@@ -219,7 +219,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public IGeometry boundary(IGeometry geom) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(geom);
       Geometry jtsResult = jtsGeom1.getBoundary();
       return JtsGeOxygene.makeGeOxygeneGeom(jtsResult);
     } catch (Exception e) {
@@ -237,8 +237,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public IGeometry union(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       Geometry jtsUnion = jtsGeom1.union(jtsGeom2);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsUnion);
     } catch (Exception e) {
@@ -258,8 +258,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public IGeometry intersection(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       Geometry jtsInter = jtsGeom1.intersection(jtsGeom2);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsInter);
     } catch (Exception e) {
@@ -281,8 +281,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public IGeometry difference(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       Geometry jtsResult = jtsGeom1.difference(jtsGeom2);
       // if (jtsResult.isEmpty()||jtsResult.getArea()==0.0) return null;
       return JtsGeOxygene.makeGeOxygeneGeom(jtsResult);
@@ -304,8 +304,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public IGeometry symDifference(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       Geometry jtsSymDiff = jtsGeom1.symDifference(jtsGeom2);
       return JtsGeOxygene.makeGeOxygeneGeom(jtsSymDiff);
     } catch (Exception e) {
@@ -326,8 +326,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public boolean equals(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.equals(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.EqualsError")); //$NON-NLS-1$
@@ -345,8 +345,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean equalsExact(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.equalsExact(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N
@@ -365,8 +365,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean equalsExact(IGeometry g1, IGeometry g2, double tol) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.equalsExact(jtsGeom2, tol);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N
@@ -388,8 +388,12 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public boolean contains(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      if (JtsGeOxygene.isCacheEnabled()) {
+        return JtsGeOxygene.getPreparedGeom(g1).contains(
+            JtsGeOxygene.getJtsGeom(g2));
+      }
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.contains(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.ContainsError")); //$NON-NLS-1$
@@ -407,8 +411,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean crosses(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.crosses(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.CrossesError")); //$NON-NLS-1$
@@ -426,8 +430,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean disjoint(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.disjoint(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.DisjointError")); //$NON-NLS-1$
@@ -445,8 +449,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean within(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.within(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.WithinError")); //$NON-NLS-1$
@@ -464,8 +468,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean isWithinDistance(IGeometry g1, IGeometry g2, double dist) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.isWithinDistance(jtsGeom2, dist);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N
@@ -487,8 +491,12 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public boolean intersects(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      if (JtsGeOxygene.isCacheEnabled()) {
+        return JtsGeOxygene.getPreparedGeom(g1).intersects(
+            JtsGeOxygene.getJtsGeom(g2));
+      }
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.intersects(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N
@@ -507,8 +515,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean overlaps(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.overlaps(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.OverlapsError")); //$NON-NLS-1$
@@ -526,8 +534,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean touches(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.touches(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.TouchesError")); //$NON-NLS-1$
@@ -545,7 +553,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean isEmpty(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       return jtsGeom.isEmpty();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.IsEmptyError")); //$NON-NLS-1$
@@ -561,7 +569,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean isSimple(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       return jtsGeom.isSimple();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.IsSimpleError")); //$NON-NLS-1$
@@ -577,7 +585,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public boolean isValid(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       return jtsGeom.isValid();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.IsValidError")); //$NON-NLS-1$
@@ -594,8 +602,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public double distance(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.distance(jtsGeom2);
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.DistanceError")); //$NON-NLS-1$
@@ -614,7 +622,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public double area(IGeometry geom) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(geom);
       return jtsGeom1.getArea();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.AreaError")); //$NON-NLS-1$
@@ -631,7 +639,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
   @Override
   public double length(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       return jtsGeom.getLength();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.LengthError")); //$NON-NLS-1$
@@ -647,7 +655,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public int dimension(IGeometry geom) {
     try {
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       return jtsGeom.getDimension();
     } catch (Exception e) {
       JtsAlgorithms.logger
@@ -667,7 +675,7 @@ public class JtsAlgorithms implements GeomAlgorithms {
       if (geom.isEmpty()) {
         return 0;
       }
-      Geometry jtsGeom = JtsGeOxygene.makeJtsGeom(geom);
+      Geometry jtsGeom = JtsGeOxygene.getJtsGeom(geom);
       return jtsGeom.getNumPoints();
     } catch (Exception e) {
       JtsAlgorithms.logger
@@ -708,8 +716,8 @@ public class JtsAlgorithms implements GeomAlgorithms {
 
   public String relate(IGeometry g1, IGeometry g2) {
     try {
-      Geometry jtsGeom1 = JtsGeOxygene.makeJtsGeom(g1);
-      Geometry jtsGeom2 = JtsGeOxygene.makeJtsGeom(g2);
+      Geometry jtsGeom1 = JtsGeOxygene.getJtsGeom(g1);
+      Geometry jtsGeom2 = JtsGeOxygene.getJtsGeom(g2);
       return jtsGeom1.relate(jtsGeom2).toString();
     } catch (Exception e) {
       JtsAlgorithms.logger.error(I18N.getString("JtsAlgorithms.RelateError")); //$NON-NLS-1$
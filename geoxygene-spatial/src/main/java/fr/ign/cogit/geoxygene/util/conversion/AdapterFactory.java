@@ -58,6 +58,7 @@ import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_Aggregate;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
 import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
@@ -237,6 +238,20 @@ public class AdapterFactory {
     return AdapterFactory.SPACING;
   }
 
+  /**
+   * Si vrai, les listes de positions créées à partir de géométries JTS (et donc
+   * à la lecture des shapefiles) sont des {@link PackedDirectPositionList}.
+   */
+  private static boolean PACKED_COORDINATES = false;
+
+  public static void setPackedCoordinates(boolean packed) {
+    AdapterFactory.PACKED_COORDINATES = packed;
+  }
+
+  public static boolean isPackedCoordinates() {
+    return AdapterFactory.PACKED_COORDINATES;
+  }
+
   public static LineString toLineString(GeometryFactory factory,
       ILineString line) {
     return toLineString(factory, line, false);
@@ -275,6 +290,10 @@ public class AdapterFactory {
     if (list == null) {
       return factory.getCoordinateSequenceFactory().create(to2D ? new CoordinateXY[0]:new Coordinate[0]);
     }
+    if (list instanceof PackedDirectPositionList) {
+      return AdapterFactory.toCoordinateSequence(factory,
+          (PackedDirectPositionList) list, to2D);
+    }
     if (to2D) {
       CoordinateXY[] coords = new CoordinateXY[list.size()];
       for (int i = 0; i < list.size(); i++) {
@@ -289,6 +308,27 @@ public class AdapterFactory {
     return factory.getCoordinateSequenceFactory().create(coords);
   }
 
+  /**
+   * Transforme une liste compacte de positions GeOxygene en coordonnées JTS
+   * sans passer par des vues sur les positions.
+   */
+  private static CoordinateSequence toCoordinateSequence(
+      GeometryFactory factory, PackedDirectPositionList list, boolean to2D) {
+    int n = list.size();
+    if (to2D) {
+      CoordinateXY[] coords = new CoordinateXY[n];
+      for (int i = 0; i < n; i++) {
+        coords[i] = new CoordinateXY(list.getX(i), list.getY(i));
+      }
+      return factory.getCoordinateSequenceFactory().create(coords);
+    }
+    Coordinate[] coords = new Coordinate[n];
+    for (int i = 0; i < n; i++) {
+      coords[i] = new Coordinate(list.getX(i), list.getY(i), list.getZ(i));
+    }
+    return factory.getCoordinateSequenceFactory().create(coords);
+  }
+
   /**
    * Transforme une liste de {@link GM_Ring}s GeOxygene en {@link LinearRing}s
    * JTS
@@ -442,6 +482,9 @@ public class AdapterFactory {
    * @return liste de positions GeOxygene équivalente
    */
   public static IDirectPositionList toDirectPositionList(Coordinate[] coords) {
+    if (AdapterFactory.PACKED_COORDINATES) {
+      return AdapterFactory.toPackedDirectPositionList(coords);
+    }
     DirectPositionList list = new DirectPositionList();
     if (coords.length == 0) {
       return list;
@@ -463,6 +506,49 @@ public class AdapterFactory {
     return list;
   }
 
+  /**
+   * Transforme un tableau de coordonnées JTS ({@link Coordinate}) en liste
+   * compacte de positions GeOxygene ({@link PackedDirectPositionList}). Les
+   * coordonnées sont arrondies comme par {@link #toDirectPosition(Coordinate)}
+   * et la fermeture est traitée comme par
+   * {@link #toDirectPositionList(Coordinate[])}. La liste est en 2D si aucune
+   * coordonnée n'a de Z ; sinon, les Z absents restent à NaN.
+   * 
+   * @param coords tableau de coordonnées JTS
+   * @return liste compacte de positions GeOxygene équivalente
+   */
+  public static PackedDirectPositionList toPackedDirectPositionList(
+      Coordinate[] coords) {
+    int n = coords.length;
+    int dimension = 2;
+    for (Coordinate coord : coords) {
+      if (!Double.isNaN(coord.getZ())) {
+        dimension = 3;
+        break;
+      }
+    }
+    double[] array = new double[n * dimension];
+    if (n == 0) {
+      return new PackedDirectPositionList(array, dimension);
+    }
+    double precision = Math.pow(10, DirectPosition.PRECISION);
+    for (int i = 0, k = 0; i < n; i++) {
+      array[k++] = Math.round(coords[i].x * precision) / precision;
+      array[k++] = Math.round(coords[i].y * precision) / precision;
+      if (dimension == 3) {
+        double z = coords[i].getZ();
+        array[k++] = Double.isNaN(z) ? z : Math.round(z * precision)
+            / precision;
+      }
+    }
+    // si ferme, la derniere position est une copie exacte de la premiere
+    if (n > 1 && coords[0].x == coords[n - 1].x
+        && coords[0].y == coords[n - 1].y) {
+      System.arraycopy(array, 0, array, (n - 1) * dimension, dimension);
+    }
+    return new PackedDirectPositionList(array, dimension);
+  }
+
   /**
    * Transforme la dimension des coordonnées d'un tableau de coordonnées JTS (
    * {@link Coordinate}) en 2D.
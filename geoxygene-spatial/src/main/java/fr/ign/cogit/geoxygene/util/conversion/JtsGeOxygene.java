@@ -27,11 +27,16 @@
 
 package fr.ign.cogit.geoxygene.util.conversion;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
 import org.locationtech.jts.io.WKTReader;
 import org.locationtech.jts.io.WKTWriter;
 
@@ -40,6 +45,7 @@ import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
 import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
 import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
 import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomroot.GM_Object;
 
 /**
  * Conversions entre les GM_Object GeOxygene et les Geometry JTS.
@@ -64,6 +70,55 @@ public class JtsGeOxygene {
   // WKTReader(JtsGeOxygene.jtsGeomFactory);
   // private static WKTWriter jtsWktWriter=new WKTWriter();
 
+  /**
+   * Factories JTS partagées, une par identifiant de système de coordonnées.
+   * Les {@link GeometryFactory} étant immuables, elles peuvent être utilisées
+   * par plusieurs threads.
+   */
+  private static Map<Integer, GeometryFactory> jtsGeomFactories = new ConcurrentHashMap<Integer, GeometryFactory>();
+
+  /**
+   * Vrai si les géométries JTS converties sont conservées sur les géométries
+   * GeOxygene (cf. {@link #getJtsGeom(IGeometry)}). Désactivé par défaut.
+   */
+  private static volatile boolean cacheEnabled = false;
+
+  /**
+   * @return vrai si les géométries JTS converties sont conservées sur les
+   *         géométries GeOxygene
+   */
+  public static boolean isCacheEnabled() {
+    return JtsGeOxygene.cacheEnabled;
+  }
+
+  /**
+   * Active ou désactive la conservation des géométries JTS converties sur les
+   * géométries GeOxygene. La désactivation ne vide pas les caches déjà
+   * remplis, mais ceux-ci ne sont plus consultés.
+   * @param enabled vrai pour activer le cache
+   */
+  public static void setCacheEnabled(boolean enabled) {
+    JtsGeOxygene.cacheEnabled = enabled;
+  }
+
+  /**
+   * Renvoie la factory JTS partagée associée au système de coordonnées donné.
+   * @param srid identifiant du système de coordonnées
+   * @return une factory JTS
+   */
+  public static GeometryFactory getGeometryFactory(int srid) {
+    GeometryFactory factory = JtsGeOxygene.jtsGeomFactories.get(srid);
+    if (factory == null) {
+      factory = new GeometryFactory(JtsGeOxygene.jtsPrecision, srid);
+      GeometryFactory previous = JtsGeOxygene.jtsGeomFactories.putIfAbsent(
+          srid, factory);
+      if (previous != null) {
+        factory = previous;
+      }
+    }
+    return factory;
+  }
+
   /*------------------------------------------------------------*/
   /*-- Conversion beetween JTS and GeOxygene objects -----------*/
   /*------------------------------------------------------------*/
@@ -93,17 +148,56 @@ public class JtsGeOxygene {
   public static Geometry makeJtsGeom(IGeometry geOxyGeom, boolean adapter)
       throws Exception {
     if (adapter) {
-      return AdapterFactory.toGeometry(new GeometryFactory(
-          JtsGeOxygene.jtsPrecision, geOxyGeom.getCRS()), geOxyGeom);
+      return AdapterFactory.toGeometry(
+          JtsGeOxygene.getGeometryFactory(geOxyGeom.getCRS()), geOxyGeom);
     }
 
-    GeometryFactory jtsGeomFactory = new GeometryFactory(
-        JtsGeOxygene.jtsPrecision, geOxyGeom.getCRS());
+    GeometryFactory jtsGeomFactory = JtsGeOxygene.getGeometryFactory(geOxyGeom
+        .getCRS());
     WKTReader jtsWktReader = new WKTReader(jtsGeomFactory);
     String wktGeom = WktGeOxygene.makeWkt(geOxyGeom);
     return jtsWktReader.read(wktGeom);
   }
 
+  /**
+   * Géométrie JTS équivalente à une géométrie GeOxygene, en lecture seule. Si
+   * le cache est activé (cf. {@link #setCacheEnabled(boolean)}), la géométrie
+   * JTS est conservée sur la géométrie GeOxygene et réutilisée lors des appels
+   * suivants, tant que la géométrie et ses composants ne sont pas modifiés
+   * (cf. {@link GM_Object#invalidateCache()}). La géométrie renvoyée ne doit donc
+   * pas être modifiée : utiliser {@link #makeJtsGeom(IGeometry)} pour obtenir
+   * une copie modifiable.
+   * @param geOxyGeom une géométrie GeOxygene
+   * @return une géométrie JTS équivalente, éventuellement partagée
+   * @throws Exception renvoie une exception si la géométrie en entrée n'est pas
+   *           valide
+   */
+  public static Geometry getJtsGeom(IGeometry geOxyGeom) throws Exception {
+    if (JtsGeOxygene.cacheEnabled && geOxyGeom instanceof GM_Object) {
+      return ((GM_Object) geOxyGeom).getJtsGeom();
+    }
+    return JtsGeOxygene.makeJtsGeom(geOxyGeom);
+  }
+
+  /**
+   * Géométrie JTS préparée équivalente à une géométrie GeOxygene, à utiliser
+   * lorsque la même géométrie est testée contre de nombreuses autres (sélection
+   * spatiale par exemple). Si le cache est activé, la géométrie préparée est
+   * conservée sur la géométrie GeOxygene.
+   * @param geOxyGeom une géométrie GeOxygene
+   * @return une géométrie JTS préparée équivalente
+   * @throws Exception renvoie une exception si la géométrie en entrée n'est pas
+   *           valide
+   */
+  public static PreparedGeometry getPreparedGeom(IGeometry geOxyGeom)
+      throws Exception {
+    if (JtsGeOxygene.cacheEnabled && geOxyGeom instanceof GM_Object) {
+      return ((GM_Object) geOxyGeom).getPreparedGeom();
+    }
+    return PreparedGeometryFactory.prepare(JtsGeOxygene
+        .makeJtsGeom(geOxyGeom));
+  }
+
   /**
    * Conversion d'une géométrie JTS {@link Geometry} en géométrie GeOxygene
    * {@link IGeometry}.
@@ -147,8 +241,7 @@ public class JtsGeOxygene {
    */
   public static IDirectPosition makeDirectPosition(CoordinateSequence jtsCoord)
       throws Exception {
-    GeometryFactory jtsGeomFactory = new GeometryFactory(
-        JtsGeOxygene.jtsPrecision, 0);
+    GeometryFactory jtsGeomFactory = JtsGeOxygene.getGeometryFactory(0);
     Geometry jtsPoint = new Point(jtsCoord, jtsGeomFactory);
     IPoint geOxyPoint = (IPoint) JtsGeOxygene.makeGeOxygeneGeom(jtsPoint);
     IDirectPosition geOxyDirectPos = geOxyPoint.getPosition();
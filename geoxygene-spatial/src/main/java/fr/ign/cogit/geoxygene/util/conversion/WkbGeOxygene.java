@@ -0,0 +1,561 @@
+/*
+ * This file is part of the GeOxygene project source files.
+ *
+ * GeOxygene aims at providing an open framework which implements OGC/ISO
+ * specifications for the development and deployment of geographic (GIS)
+ * applications. It is a open source contribution of the COGIT laboratory at the
+ * Institut Géographique National (the French National Mapping Agency).
+ *
+ * See: http://oxygene-project.sourceforge.net
+ *
+ * Copyright (C) 2005 Institut Géographique National
+ *
+ * This library is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this library (see file LICENSE if present); if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA
+ * 02111-1307 USA
+ */
+
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IAggregate;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiCurve;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiPoint;
+import fr.ign.cogit.geoxygene.api.spatial.geomaggr.IMultiSurface;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IPoint;
+import fr.ign.cogit.geoxygene.api.spatial.geomprim.IRing;
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_Aggregate;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiCurve;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiPoint;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
+
+/**
+ * Conversion des géométries GeOxygene depuis et vers le format binaire WKB
+ * (Well Known Binary) et son extension EWKB de PostGIS (SRID et Z portés par
+ * le type de géométrie).
+ * <p>
+ * C'est le format natif des géométries PostGIS : la valeur texte d'une colonne
+ * geometry est son EWKB en hexadécimal. Le décodage lit les coordonnées
+ * directement dans des {@link PackedDirectPositionList}, sans passer par une
+ * représentation textuelle comme {@link WktGeOxygene}. Les types sont ceux du
+ * WKT : Point, LineString, Polygon, leurs versions multiples et les
+ * collections. La mesure M éventuelle est ignorée à la lecture.
+ */
+@SuppressWarnings("unchecked")
+public final class WkbGeOxygene {
+
+  /** Types de géométries WKB. */
+  static final int POINT = 1;
+  static final int LINESTRING = 2;
+  static final int POLYGON = 3;
+  static final int MULTIPOINT = 4;
+  static final int MULTILINESTRING = 5;
+  static final int MULTIPOLYGON = 6;
+  static final int GEOMETRYCOLLECTION = 7;
+
+  /** Drapeaux EWKB du type de géométrie. */
+  static final int EWKB_Z = 0x80000000;
+  static final int EWKB_M = 0x40000000;
+  static final int EWKB_SRID = 0x20000000;
+
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray(); //$NON-NLS-1$
+
+  private WkbGeOxygene() {
+  }
+
+  /*-----------------------------------------------------*/
+  /*- Lecture -------------------------------------------*/
+  /*-----------------------------------------------------*/
+
+  /**
+   * Crée une géométrie GeOxygene à partir de son (E)WKB. Si l'EWKB porte un
+   * SRID, il est affecté au CRS de la géométrie.
+   * @param wkb géométrie au format (E)WKB
+   * @return la géométrie GeOxygene correspondante
+   * @throws ParseException si le tableau n'est pas un (E)WKB valide
+   */
+  public static IGeometry makeGeOxygene(byte[] wkb) throws ParseException {
+    ByteBuffer buffer = ByteBuffer.wrap(wkb);
+    try {
+      IGeometry geometry = WkbGeOxygene.read(buffer, -1);
+      if (buffer.hasRemaining()) {
+        throw new ParseException(buffer.remaining()
+            + " octets inattendus après la géométrie"); //$NON-NLS-1$
+      }
+      return geometry;
+    } catch (BufferUnderflowException e) {
+      throw new ParseException("WKB tronqué"); //$NON-NLS-1$
+    } catch (IllegalArgumentException e) {
+      throw new ParseException(e.getMessage());
+    }
+  }
+
+  /**
+   * Crée une géométrie GeOxygene à partir de son (E)WKB en hexadécimal, forme
+   * sous laquelle PostGIS renvoie les valeurs des colonnes geometry.
+   * @param hex géométrie au format (E)WKB hexadécimal
+   * @return la géométrie GeOxygene correspondante
+   * @throws ParseException si la chaîne n'est pas un (E)WKB valide
+   */
+  public static IGeometry makeGeOxygeneFromHex(String hex)
+      throws ParseException {
+    return WkbGeOxygene.makeGeOxygene(WkbGeOxygene.fromHex(hex));
+  }
+
+  /**
+   * Lit une géométrie à la position courante du tampon.
+   * @param buffer tampon positionné sur l'octet d'ordre de la géométrie
+   * @param parentSrid SRID de la géométrie englobante, -1 sinon
+   */
+  private static IGeometry read(ByteBuffer buffer, int parentSrid)
+      throws ParseException {
+    byte order = buffer.get();
+    if (order == 0) {
+      buffer.order(ByteOrder.BIG_ENDIAN);
+    } else if (order == 1) {
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+    } else {
+      throw new ParseException("Ordre des octets inconnu : " + order); //$NON-NLS-1$
+    }
+    int typeWord = buffer.getInt();
+    int srid = parentSrid;
+    if ((typeWord & WkbGeOxygene.EWKB_SRID) != 0) {
+      srid = buffer.getInt();
+    }
+    boolean hasZ = (typeWord & WkbGeOxygene.EWKB_Z) != 0;
+    boolean hasM = (typeWord & WkbGeOxygene.EWKB_M) != 0;
+    int type = typeWord & 0x0FFFFFFF;
+    // codes ISO : 1000 pour Z, 2000 pour M, 3000 pour ZM
+    if (type > 1000) {
+      int iso = type / 1000;
+      type = type % 1000;
+      hasZ |= iso == 1 || iso == 3;
+      hasM |= iso == 2 || iso == 3;
+    }
+    int nbOrdinates = 2 + (hasZ ? 1 : 0) + (hasM ? 1 : 0);
+    int dimension = hasZ ? 3 : 2;
+    IGeometry geometry;
+    switch (type) {
+      case POINT:
+        geometry = WkbGeOxygene.readPoint(buffer, nbOrdinates, hasZ);
+        break;
+      case LINESTRING:
+        geometry = new GM_LineString(WkbGeOxygene.readPositions(buffer,
+            nbOrdinates, dimension));
+        break;
+      case POLYGON:
+        geometry = WkbGeOxygene.readPolygon(buffer, nbOrdinates, dimension);
+        break;
+      case MULTIPOINT: {
+        int n = buffer.getInt();
+        IMultiPoint multiPoint = new GM_MultiPoint();
+        for (int i = 0; i < n; i++) {
+          multiPoint.add((IPoint) WkbGeOxygene.readElement(buffer, srid,
+              POINT));
+        }
+        geometry = multiPoint;
+        break;
+      }
+      case MULTILINESTRING: {
+        int n = buffer.getInt();
+        IMultiCurve<ILineString> multiCurve = new GM_MultiCurve<ILineString>();
+        for (int i = 0; i < n; i++) {
+          multiCurve.add((ILineString) WkbGeOxygene.readElement(buffer, srid,
+              LINESTRING));
+        }
+        geometry = multiCurve;
+        break;
+      }
+      case MULTIPOLYGON: {
+        int n = buffer.getInt();
+        IMultiSurface<IPolygon> multiSurface = new GM_MultiSurface<IPolygon>();
+        for (int i = 0; i < n; i++) {
+          multiSurface.add((IPolygon) WkbGeOxygene.readElement(buffer, srid,
+              POLYGON));
+        }
+        geometry = multiSurface;
+        break;
+      }
+      case GEOMETRYCOLLECTION: {
+        int n = buffer.getInt();
+        IAggregate<IGeometry> aggregate = new GM_Aggregate<IGeometry>();
+        for (int i = 0; i < n; i++) {
+          aggregate.add(WkbGeOxygene.readElement(buffer, srid, 0));
+        }
+        geometry = aggregate;
+        break;
+      }
+      default:
+        throw new ParseException("Type de géométrie WKB non géré : " + type); //$NON-NLS-1$
+    }
+    if (srid != -1) {
+      geometry.setCRS(srid);
+    }
+    return geometry;
+  }
+
+  /**
+   * Lit un élément d'une géométrie multiple en vérifiant son type.
+   * @param expected classe WKB attendue, 0 pour une collection
+   */
+  private static IGeometry readElement(ByteBuffer buffer, int srid,
+      int expected) throws ParseException {
+    IGeometry element = WkbGeOxygene.read(buffer, srid);
+    boolean ok;
+    switch (expected) {
+      case POINT:
+        ok = element instanceof IPoint;
+        break;
+      case LINESTRING:
+        ok = element instanceof ILineString;
+        break;
+      case POLYGON:
+        ok = element instanceof IPolygon;
+        break;
+      default:
+        ok = true;
+    }
+    if (!ok) {
+      throw new ParseException("Elément de type inattendu : " //$NON-NLS-1$
+          + element.getClass().getSimpleName());
+    }
+    return element;
+  }
+
+  private static IPoint readPoint(ByteBuffer buffer, int nbOrdinates,
+      boolean hasZ) {
+    double x = buffer.getDouble();
+    double y = buffer.getDouble();
+    double z = hasZ ? buffer.getDouble() : Double.NaN;
+    if (nbOrdinates == 4 || (nbOrdinates == 3 && !hasZ)) {
+      buffer.getDouble(); // M
+    }
+    if (Double.isNaN(x) && Double.isNaN(y)) {
+      // POINT EMPTY
+      return new GM_Point();
+    }
+    return new GM_Point(hasZ ? new DirectPosition(x, y, z)
+        : new DirectPosition(x, y));
+  }
+
+  private static IPolygon readPolygon(ByteBuffer buffer, int nbOrdinates,
+      int dimension) {
+    int nbRings = buffer.getInt();
+    if (nbRings == 0) {
+      return new GM_Polygon();
+    }
+    IPolygon polygon = new GM_Polygon(new GM_LineString(
+        WkbGeOxygene.readPositions(buffer, nbOrdinates, dimension)));
+    for (int i = 1; i < nbRings; i++) {
+      polygon.addInterior(new GM_Ring(new GM_LineString(WkbGeOxygene
+          .readPositions(buffer, nbOrdinates, dimension))));
+    }
+    return polygon;
+  }
+
+  /**
+   * Lit une suite de positions dans une liste compacte, en sautant la mesure M
+   * éventuelle.
+   */
+  private static IDirectPositionList readPositions(ByteBuffer buffer,
+      int nbOrdinates, int dimension) {
+    int n = buffer.getInt();
+    if (n < 0 || (long) n * nbOrdinates * 8 > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    double[] coords = new double[n * dimension];
+    if (nbOrdinates == dimension) {
+      // lecture en bloc
+      buffer.asDoubleBuffer().get(coords);
+      buffer.position(buffer.position() + coords.length * 8);
+    } else {
+      for (int i = 0, k = 0; i < n; i++) {
+        for (int d = 0; d < dimension; d++) {
+          coords[k++] = buffer.getDouble();
+        }
+        buffer.getDouble(); // M
+      }
+    }
+    return new PackedDirectPositionList(coords, n, dimension);
+  }
+
+  /*-----------------------------------------------------*/
+  /*- Ecriture ------------------------------------------*/
+  /*-----------------------------------------------------*/
+
+  /**
+   * Ecrit une géométrie GeOxygene en WKB (petit-boutiste), avec le SRID de son
+   * CRS s'il est défini.
+   * @param geometry géométrie à écrire
+   * @return l'EWKB de la géométrie
+   * @see #makeWkb(IGeometry, int)
+   */
+  public static byte[] makeWkb(IGeometry geometry) {
+    return WkbGeOxygene.makeWkb(geometry, geometry.getCRS());
+  }
+
+  /**
+   * Ecrit une géométrie GeOxygene en EWKB petit-boutiste. La géométrie est
+   * écrite en 3D dès qu'une de ses positions a un Z défini ; les Z non définis
+   * sont alors écrits à NaN.
+   * @param geometry géométrie à écrire
+   * @param srid SRID à écrire, -1 pour un WKB sans SRID
+   * @return l'EWKB de la géométrie
+   */
+  public static byte[] makeWkb(IGeometry geometry, int srid) {
+    Writer writer = new Writer(WkbGeOxygene.hasZ(geometry));
+    writer.write(geometry, srid);
+    return writer.toByteArray();
+  }
+
+  /**
+   * Ecrit une géométrie GeOxygene en EWKB hexadécimal, forme acceptée par
+   * PostGIS en entrée des colonnes geometry.
+   * @param geometry géométrie à écrire
+   * @param srid SRID à écrire, -1 pour un WKB sans SRID
+   * @return l'EWKB hexadécimal de la géométrie
+   */
+  public static String makeHexWkb(IGeometry geometry, int srid) {
+    return WkbGeOxygene.toHex(WkbGeOxygene.makeWkb(geometry, srid));
+  }
+
+  /** @return vrai si une des positions de la géométrie a un Z défini */
+  private static boolean hasZ(IGeometry geometry) {
+    IDirectPositionList positions = geometry.coord();
+    if (positions instanceof PackedDirectPositionList
+        && ((PackedDirectPositionList) positions).getDimension() == 2) {
+      return false;
+    }
+    for (IDirectPosition p : positions) {
+      if (!Double.isNaN(p.getZ())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Tampon d'écriture qui s'agrandit à la demande.
+   */
+  private static final class Writer {
+    private final boolean hasZ;
+    private ByteBuffer buffer = ByteBuffer.allocate(256).order(
+        ByteOrder.LITTLE_ENDIAN);
+
+    Writer(boolean hasZ) {
+      this.hasZ = hasZ;
+    }
+
+    byte[] toByteArray() {
+      byte[] result = new byte[this.buffer.position()];
+      System.arraycopy(this.buffer.array(), 0, result, 0, result.length);
+      return result;
+    }
+
+    private void ensure(int n) {
+      if (this.buffer.remaining() < n) {
+        int capacity = Math.max(this.buffer.capacity() * 2,
+            this.buffer.position() + n);
+        ByteBuffer b = ByteBuffer.allocate(capacity).order(
+            ByteOrder.LITTLE_ENDIAN);
+        this.buffer.flip();
+        b.put(this.buffer);
+        this.buffer = b;
+      }
+    }
+
+    private void header(int type, int srid, int n) {
+      this.ensure(13);
+      this.buffer.put((byte) 1);
+      int typeWord = type;
+      if (this.hasZ) {
+        typeWord |= WkbGeOxygene.EWKB_Z;
+      }
+      if (srid != -1) {
+        typeWord |= WkbGeOxygene.EWKB_SRID;
+      }
+      this.buffer.putInt(typeWord);
+      if (srid != -1) {
+        this.buffer.putInt(srid);
+      }
+      if (n >= 0) {
+        this.buffer.putInt(n);
+      }
+    }
+
+    /**
+     * Ecrit une géométrie. Les éléments des géométries multiples sont écrits
+     * sans SRID, comme le fait PostGIS.
+     */
+    void write(IGeometry geometry, int srid) {
+      if (geometry instanceof IPoint) {
+        this.header(POINT, srid, -1);
+        IDirectPosition p = ((IPoint) geometry).getPosition();
+        if (p == null) {
+          this.position(Double.NaN, Double.NaN, Double.NaN);
+        } else {
+          this.position(p.getX(), p.getY(), p.getZ());
+        }
+      } else if (geometry instanceof IMultiSurface) {
+        IMultiSurface<?> multiSurface = (IMultiSurface<?>) geometry;
+        this.header(MULTIPOLYGON, srid, WkbGeOxygene.nbPolygons(multiSurface));
+        this.polygons(multiSurface);
+      } else if (geometry instanceof IMultiCurve) {
+        IMultiCurve<?> multiCurve = (IMultiCurve<?>) geometry;
+        this.header(MULTILINESTRING, srid, multiCurve.size());
+        for (IGeometry curve : multiCurve) {
+          this.header(LINESTRING, -1, -1);
+          this.positions(curve.coord());
+        }
+      } else if (geometry instanceof IMultiPoint) {
+        IMultiPoint multiPoint = (IMultiPoint) geometry;
+        this.header(MULTIPOINT, srid, multiPoint.size());
+        for (IPoint point : multiPoint) {
+          this.write(point, -1);
+        }
+      } else if (geometry instanceof IPolygon) {
+        this.polygon((IPolygon) geometry, srid);
+      } else if (geometry instanceof ILineString || geometry instanceof IRing) {
+        this.header(LINESTRING, srid, -1);
+        this.positions(geometry.coord());
+      } else if (geometry instanceof IAggregate) {
+        IAggregate<?> aggregate = (IAggregate<?>) geometry;
+        this.header(GEOMETRYCOLLECTION, srid, aggregate.size());
+        for (IGeometry element : aggregate) {
+          this.write(element, -1);
+        }
+      } else {
+        throw new IllegalArgumentException(
+            "Type de géométrie non géré en WKB : " //$NON-NLS-1$
+                + geometry.getClass().getSimpleName());
+      }
+    }
+
+    private void polygon(IPolygon polygon, int srid) {
+      if (polygon.getExterior() == null) {
+        this.header(POLYGON, srid, 0);
+        return;
+      }
+      this.header(POLYGON, srid, 1 + polygon.sizeInterior());
+      this.positions(polygon.exteriorLineString().coord());
+      for (int i = 0; i < polygon.sizeInterior(); i++) {
+        this.positions(polygon.interiorLineString(i).coord());
+      }
+    }
+
+    /** Ecrit les polygones d'une surface multiple, à plat. */
+    private void polygons(IMultiSurface<?> multiSurface) {
+      for (IGeometry surface : multiSurface) {
+        if (surface instanceof IPolygon) {
+          this.polygon((IPolygon) surface, -1);
+        } else if (surface instanceof IMultiSurface) {
+          this.polygons((IMultiSurface<?>) surface);
+        }
+      }
+    }
+
+    private void position(double x, double y, double z) {
+      this.ensure(24);
+      this.buffer.putDouble(x);
+      this.buffer.putDouble(y);
+      if (this.hasZ) {
+        this.buffer.putDouble(z);
+      }
+    }
+
+    private void positions(IDirectPositionList positions) {
+      int n = positions.size();
+      int dimension = this.hasZ ? 3 : 2;
+      this.ensure(4 + n * dimension * 8);
+      this.buffer.putInt(n);
+      if (positions instanceof PackedDirectPositionList
+          && ((PackedDirectPositionList) positions).getDimension() == dimension) {
+        // écriture en bloc
+        double[] coords = ((PackedDirectPositionList) positions)
+            .getCoordinates();
+        this.buffer.asDoubleBuffer().put(coords, 0, n * dimension);
+        this.buffer.position(this.buffer.position() + n * dimension * 8);
+        return;
+      }
+      for (IDirectPosition p : positions) {
+        this.position(p.getX(), p.getY(), p.getZ());
+      }
+    }
+  }
+
+  /** @return nombre de polygones d'une surface multiple, mise à plat */
+  private static int nbPolygons(IMultiSurface<?> multiSurface) {
+    int n = 0;
+    for (IGeometry surface : multiSurface) {
+      if (surface instanceof IPolygon) {
+        n++;
+      } else if (surface instanceof IMultiSurface) {
+        n += WkbGeOxygene.nbPolygons((IMultiSurface<?>) surface);
+      }
+    }
+    return n;
+  }
+
+  /*-----------------------------------------------------*/
+  /*- Hexadécimal ---------------------------------------*/
+  /*-----------------------------------------------------*/
+
+  /**
+   * @param bytes octets à encoder
+   * @return les octets en hexadécimal (majuscules, comme PostGIS)
+   */
+  public static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = WkbGeOxygene.HEX[(bytes[i] >> 4) & 0xF];
+      chars[2 * i + 1] = WkbGeOxygene.HEX[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+
+  /**
+   * @param hex chaîne hexadécimale
+   * @return les octets correspondants
+   * @throws ParseException si la chaîne n'est pas hexadécimale
+   */
+  public static byte[] fromHex(String hex) throws ParseException {
+    if (hex.length() % 2 != 0) {
+      throw new ParseException("Chaîne hexadécimale de longueur impaire"); //$NON-NLS-1$
+    }
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      int high = Character.digit(hex.charAt(2 * i), 16);
+      int low = Character.digit(hex.charAt(2 * i + 1), 16);
+      if (high < 0 || low < 0) {
+        throw new ParseException("Caractère non hexadécimal en position " //$NON-NLS-1$
+            + (2 * i));
+      }
+      bytes[i] = (byte) ((high << 4) | low);
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,127 @@
+package fr.ign.cogit.geoxygene.spatial.coordgeom;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKTReader;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPosition;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IDirectPositionList;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.ILineString;
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.util.conversion.AdapterFactory;
+import fr.ign.cogit.geoxygene.util.conversion.JtsGeOxygene;
+
+public class PackedDirectPositionListTest {
+  PackedDirectPositionList list;
+
+  @Before
+  public void setUp() throws Exception {
+    this.list = new PackedDirectPositionList();
+    this.list.add(new DirectPosition(0, 0));
+    this.list.add(new DirectPosition(1, 0));
+    this.list.add(new DirectPosition(1, 1));
+  }
+
+  @Test
+  public void testStorage() {
+    Assert.assertEquals(2, this.list.getDimension());
+    Assert.assertArrayEquals(new double[] { 0, 0, 1, 0, 1, 1 },
+        this.list.toArray2D(), 0);
+    // toArray2D renvoie une copie
+    double[] array = this.list.toArray2D();
+    Assert.assertNotSame(array, this.list.toArray2D());
+    array[0] = 7;
+    Assert.assertEquals(0, this.list.getX(0), 0);
+    Assert.assertArrayEquals(new double[] { 0, 1, 1 }, this.list.toArrayX(), 0);
+    Assert.assertTrue(Double.isNaN(this.list.get(0).getZ()));
+    this.list.add(1, new DirectPosition(0.5, -1, 2));
+    Assert.assertEquals(3, this.list.getDimension());
+    Assert.assertEquals(4, this.list.size());
+    Assert.assertEquals(new DirectPosition(0.5, -1, 2), this.list.get(1));
+    Assert.assertEquals(new DirectPosition(1, 0), this.list.get(2));
+    Assert.assertTrue(Double.isNaN(this.list.getZ(2)));
+    this.list.remove(1);
+    Assert.assertArrayEquals(new double[] { 0, 0, 1, 0, 1, 1 },
+        this.list.toArray2D(), 0);
+  }
+
+  @Test
+  public void testViews() {
+    IDirectPosition p = this.list.get(1);
+    Assert.assertTrue(p instanceof DirectPosition);
+    p.setY(2);
+    p.move(1, 0);
+    Assert.assertEquals(2, this.list.getX(1), 0);
+    Assert.assertEquals(2, this.list.getY(1), 0);
+    IDirectPosition copy = (IDirectPosition) p.clone();
+    p.setX(5);
+    Assert.assertEquals(2, copy.getX(), 0);
+    Assert.assertTrue(this.list.contains(new DirectPosition(5, 2)));
+    // la liste java reste cohérente avec le stockage compact
+    IDirectPosition old = this.list.getList().set(0, new DirectPosition(3, 3));
+    Assert.assertEquals(new DirectPosition(0, 0), old);
+    Assert.assertEquals(new DirectPosition(3, 3), this.list.get(0));
+  }
+
+  @Test
+  public void testReverse() {
+    IDirectPositionList reversed = this.list.reverse();
+    Assert.assertEquals(new DirectPosition(1, 1), reversed.get(0));
+    Assert.assertEquals(new DirectPosition(0, 0), reversed.get(2));
+    Assert.assertEquals(new DirectPosition(0, 0), this.list.get(0));
+    IDirectPositionList copy = this.list.clone();
+    this.list.remove(0);
+    Assert.assertEquals(new DirectPosition(0, 0), copy.get(0));
+    // les positions d'une liste copiée restent des vues sur la liste
+    DirectPositionList views = new DirectPositionList();
+    views.addAll(this.list);
+    views.get(0).setX(4);
+    Assert.assertEquals(4, this.list.getX(0), 0);
+  }
+
+  @Test
+  public void testAdapterFactory() throws Exception {
+    Geometry jts = new WKTReader()
+        .read("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 2 4, 4 4, 2 2))"); //$NON-NLS-1$
+    AdapterFactory.setPackedCoordinates(true);
+    IPolygon packed;
+    try {
+      packed = (IPolygon) AdapterFactory.toGM_Object(jts);
+    } finally {
+      AdapterFactory.setPackedCoordinates(false);
+    }
+    IPolygon polygon = (IPolygon) AdapterFactory.toGM_Object(jts);
+    Assert.assertTrue(packed.getExterior().getPrimitive().getSegment(0).coord() instanceof PackedDirectPositionList);
+    Assert.assertTrue(packed.getInterior(0).getPrimitive().getSegment(0).coord() instanceof PackedDirectPositionList);
+    Assert.assertFalse(polygon.coord() instanceof PackedDirectPositionList);
+    Assert.assertEquals(polygon.coord().size(), packed.coord().size());
+    for (int i = 0; i < polygon.coord().size(); i++) {
+      Assert.assertEquals(polygon.coord().get(i), packed.coord().get(i));
+    }
+    Assert.assertEquals(polygon.area(), packed.area(), 0);
+    Assert.assertTrue(packed.exteriorLineString().isClosed());
+    ILineString line = new GM_LineString(this.list);
+    Assert.assertTrue(line.coord() instanceof PackedDirectPositionList);
+    Assert.assertEquals(2, line.length(), 0);
+    Assert.assertEquals(2, AdapterFactory.toGeometry(
+        JtsGeOxygene.getGeometryFactory(0), line).getLength(), 0);
+  }
+
+  @Test
+  public void testAdapterFactoryZ() {
+    PackedDirectPositionList flat = AdapterFactory
+        .toPackedDirectPositionList(new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(1, 0) });
+    Assert.assertEquals(2, flat.getDimension());
+    Assert.assertTrue(Double.isNaN(flat.getZ(1)));
+    PackedDirectPositionList mixed = AdapterFactory
+        .toPackedDirectPositionList(new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(1, 0, 5) });
+    Assert.assertEquals(3, mixed.getDimension());
+    Assert.assertTrue(Double.isNaN(mixed.getZ(0)));
+    Assert.assertEquals(5, mixed.getZ(1), 0);
+  }
+}
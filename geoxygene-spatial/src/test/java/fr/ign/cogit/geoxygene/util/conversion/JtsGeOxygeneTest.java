@@ -0,0 +1,99 @@
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+
+import fr.ign.cogit.geoxygene.api.spatial.coordgeom.IPolygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
+
+public class JtsGeOxygeneTest {
+  GM_LineString line;
+  GM_Polygon square;
+
+  @Before
+  public void setUp() throws Exception {
+    this.line = new GM_LineString(new DirectPosition(0, 0),
+        new DirectPosition(2, 2));
+    this.square = new GM_Polygon(new GM_Envelope(1, 3, 1, 3));
+    JtsGeOxygene.setCacheEnabled(true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    JtsGeOxygene.setCacheEnabled(false);
+  }
+
+  @Test
+  public void testSharedFactory() {
+    Assert.assertSame(JtsGeOxygene.getGeometryFactory(2154),
+        JtsGeOxygene.getGeometryFactory(2154));
+    Assert.assertEquals(2154, JtsGeOxygene.getGeometryFactory(2154).getSRID());
+  }
+
+  @Test
+  public void testCachedGeometry() throws Exception {
+    Geometry first = JtsGeOxygene.getJtsGeom(this.line);
+    Assert.assertSame(first, JtsGeOxygene.getJtsGeom(this.line));
+    Assert.assertNotSame(first, JtsGeOxygene.makeJtsGeom(this.line));
+    JtsGeOxygene.setCacheEnabled(false);
+    Assert.assertNotSame(first, JtsGeOxygene.getJtsGeom(this.line));
+  }
+
+  @Test
+  public void testInvalidation() throws Exception {
+    Assert.assertTrue(this.line.intersects(this.square));
+    Geometry first = JtsGeOxygene.getJtsGeom(this.line);
+    this.line.setControlPoint(1, new DirectPosition(0, 0.5));
+    Assert.assertNotSame(first, JtsGeOxygene.getJtsGeom(this.line));
+    Assert.assertFalse(this.line.intersects(this.square));
+    this.line.getControlPoint(1).setX(2);
+    this.line.getControlPoint(1).setY(2);
+    this.line.invalidateCache();
+    Assert.assertTrue(this.line.intersects(this.square));
+    Assert.assertTrue(this.square.contains(new GM_LineString(
+        new DirectPosition(1.5, 1.5), new DirectPosition(2.5, 2.5))));
+  }
+
+  @Test
+  public void testPositionListModification() throws Exception {
+    Geometry first = JtsGeOxygene.getJtsGeom(this.line);
+    this.line.coord().set(1, new DirectPosition(0, 0.5));
+    Assert.assertNotSame(first, JtsGeOxygene.getJtsGeom(this.line));
+    Assert.assertFalse(this.line.intersects(this.square));
+  }
+
+  @Test
+  public void testComponentModification() throws Exception {
+    GM_LineString generator = new GM_LineString(new DirectPositionList(
+        new DirectPosition(0, 0), new DirectPosition(4, 0), new DirectPosition(
+            4, 4), new DirectPosition(0, 4), new DirectPosition(0, 0)));
+    GM_Polygon polygon = new GM_Polygon(new GM_Ring(generator));
+    Geometry first = JtsGeOxygene.getJtsGeom(polygon);
+    Assert.assertSame(first, JtsGeOxygene.getJtsGeom(polygon));
+    Assert.assertEquals(16, first.getArea(), 1E-9);
+    // modification du générateur de l'anneau extérieur
+    generator.setControlPoint(2, new DirectPosition(4, 8));
+    Assert.assertEquals(24, JtsGeOxygene.getJtsGeom(polygon).getArea(), 1E-9);
+    // ajout d'un trou à un polygone d'un agrégat
+    GM_MultiSurface<IPolygon> multi = new GM_MultiSurface<IPolygon>();
+    multi.add(polygon);
+    first = JtsGeOxygene.getJtsGeom(multi);
+    Assert.assertSame(first, JtsGeOxygene.getJtsGeom(multi));
+    Assert.assertTrue(multi.contains(new GM_LineString(new DirectPosition(1.5,
+        1.5), new DirectPosition(2.5, 2.5))));
+    polygon.addInterior(new GM_Polygon(new GM_Envelope(1, 3, 1, 3))
+        .getExterior());
+    Assert.assertEquals(20, JtsGeOxygene.getJtsGeom(multi).getArea(), 1E-9);
+    Assert.assertFalse(multi.contains(new GM_LineString(new DirectPosition(
+        1.5, 1.5), new DirectPosition(2.5, 2.5))));
+  }
+}
@@ -0,0 +1,75 @@
+package fr.ign.cogit.geoxygene.util.conversion;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.ign.cogit.geoxygene.api.spatial.geomroot.IGeometry;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.DirectPosition;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Envelope;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_LineString;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.GM_Polygon;
+import fr.ign.cogit.geoxygene.spatial.coordgeom.PackedDirectPositionList;
+import fr.ign.cogit.geoxygene.spatial.geomaggr.GM_MultiSurface;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Point;
+import fr.ign.cogit.geoxygene.spatial.geomprim.GM_Ring;
+
+public class WkbGeOxygeneTest {
+
+  /** Aller-retour WKT -> WKB -> WKT. */
+  private static void allerRetour(String wkt) throws Exception {
+    IGeometry geom = WktGeOxygene.makeGeOxygene(wkt);
+    IGeometry lu = WkbGeOxygene.makeGeOxygene(WkbGeOxygene.makeWkb(geom));
+    Assert.assertEquals(WktGeOxygene.makeWkt(geom), WktGeOxygene.makeWkt(lu));
+  }
+
+  @Test
+  public void testAllerRetour() throws Exception {
+    allerRetour("POINT (1.5 2.5)");
+    allerRetour("POINT (1.5 2.5 3.5)");
+    allerRetour("LINESTRING (0 0, 1 1, 2 0)");
+    allerRetour("LINESTRING (0 0 1, 1 1 2, 2 0 3)");
+    allerRetour("POLYGON ((0 0, 10 0, 10 10, 0 10, 0 0), (2 2, 3 2, 3 3, 2 2))");
+    allerRetour("MULTIPOINT (0 0, 1 1)");
+    allerRetour("MULTILINESTRING ((0 0, 1 1), (2 2, 3 3, 4 2))");
+    allerRetour("MULTIPOLYGON (((0 0, 1 0, 1 1, 0 0)), ((5 5, 6 5, 6 6, 5 5)))");
+    allerRetour("GEOMETRYCOLLECTION (POINT (1 1), LINESTRING (0 0, 1 1))");
+  }
+
+  @Test
+  public void testEwkbPostgis() throws Exception {
+    // SELECT ST_AsEWKB('SRID=2154;LINESTRING(1 2,3 4)'::geometry)
+    String hex = "01020000206A0800000200000000000000"
+        + "0000F03F000000000000004000000000000008400000000000001040";
+    IGeometry geom = WkbGeOxygene.makeGeOxygeneFromHex(hex);
+    Assert.assertTrue(geom instanceof GM_LineString);
+    Assert.assertEquals(2154, geom.getCRS());
+    Assert.assertTrue(geom.coord() instanceof PackedDirectPositionList);
+    Assert.assertEquals(4, geom.coord().get(1).getY(), 0);
+    Assert.assertEquals(hex, WkbGeOxygene.makeHexWkb(geom, 2154));
+    // même point en grand-boutiste, sans SRID
+    IGeometry point = WkbGeOxygene
+        .makeGeOxygeneFromHex("00000000013FF00000000000004000000000000000");
+    Assert.assertEquals(new DirectPosition(1, 2),
+        ((GM_Point) point).getPosition());
+    Assert.assertEquals(-1, point.getCRS());
+  }
+
+  @Test
+  public void testSurfaces() throws Exception {
+    GM_Polygon carre = new GM_Polygon(new GM_Envelope(0, 1, 0, 1));
+    carre.addInterior(new GM_Ring(new GM_LineString(new DirectPosition(0.2,
+        0.2), new DirectPosition(0.4, 0.2), new DirectPosition(0.4, 0.4),
+        new DirectPosition(0.2, 0.2))));
+    GM_MultiSurface<GM_Polygon> multi = new GM_MultiSurface<GM_Polygon>();
+    multi.add(carre);
+    multi.add(new GM_Polygon(new GM_Envelope(2, 3, 2, 3)));
+    IGeometry lu = WkbGeOxygene.makeGeOxygene(WkbGeOxygene.makeWkb(multi, 4326));
+    Assert.assertEquals(4326, lu.getCRS());
+    Assert.assertTrue(multi.equalsExact(lu));
+  }
+
+  @Test(expected = ParseException.class)
+  public void testTronque() throws Exception {
+    WkbGeOxygene.makeGeOxygeneFromHex("0102000000020000000000");
+  }
+}